@@ -1,13 +1,32 @@
 package edu.sbs.cs;
 
+import edu.sbs.cs.database.DatabaseManager;
+import edu.sbs.cs.database.OnlineBackup;
+import edu.sbs.cs.service.ApiServer;
+import edu.sbs.cs.service.CriticalPathEngine;
 import edu.sbs.cs.service.DataManager;
 import edu.sbs.cs.service.ProgressReporterThread;
+import edu.sbs.cs.service.ReplicaFollower;
+import edu.sbs.cs.service.ReplicationPrimary;
+import edu.sbs.cs.service.ReportHistoryStore;
+import edu.sbs.cs.service.TaskCounterCube;
 import edu.sbs.cs.service.TaskProcessor;
+import edu.sbs.cs.service.TaskTransfer;
+import edu.sbs.cs.service.UnitOfWork;
 import edu.sbs.cs.model.*;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.SQLException;
 import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeParseException;
 import java.util.List;
+import java.util.Map;
 import java.util.Scanner;
+import java.util.concurrent.locks.ReadWriteLock;
 
 public class Main {
     private DataManager dataManager;
@@ -86,7 +105,14 @@ public class Main {
             System.out.println("3. 创建新任务 (分配给成员)");
             System.out.println("4. 查看所有项目及状态");
             System.out.println("5. 运行进度报告 (高级)");
-            System.out.println("6. 返回主菜单");
+            System.out.println("6. 自动分配未分配任务");
+            System.out.println("7. 查看历史报告");
+            System.out.println("8. 归档已完成任务");
+            System.out.println("9. 搜索已归档任务");
+            System.out.println("10. 校验统计计数");
+            System.out.println("11. 查询历史时刻的任务状态");
+            System.out.println("12. 任务依赖与关键路径");
+            System.out.println("13. 返回主菜单");
             System.out.print("请选择: ");
 
             int choice = getIntInput("");
@@ -108,6 +134,27 @@ public class Main {
                     runProgressReport();
                     break;
                 case 6:
+                    autoAssignTasks();
+                    break;
+                case 7:
+                    viewReportHistory();
+                    break;
+                case 8:
+                    archiveCompletedTasks();
+                    break;
+                case 9:
+                    searchArchivedTasks();
+                    break;
+                case 10:
+                    verifyTaskCounters();
+                    break;
+                case 11:
+                    viewStateAsOf();
+                    break;
+                case 12:
+                    manageDependencies();
+                    break;
+                case 13:
                     inAdminMenu = false;
                     break;
                 default:
@@ -195,6 +242,9 @@ public class Main {
 
     // 更新任务状态
     private void updateTaskStatus(TaskItem task) {
+        // 记下读取时的版本号，提交时若任务已被他人修改则拒绝
+        long expectedVersion = task.getVersion();
+
         System.out.println("\n=== 更新任务状态 ===");
         System.out.println("1. 待办");
         System.out.println("2. 进行中");
@@ -202,26 +252,32 @@ public class Main {
         System.out.print("选择状态: ");
 
         int statusChoice = getIntInput("");
+        TaskStatus status;
+        double progress;
         switch (statusChoice) {
             case 1:
-                task.setStatus(TaskStatus.TODO);
+                status = TaskStatus.TODO;
+                progress = task.getProgress();
                 break;
             case 2:
-                task.setStatus(TaskStatus.IN_PROGRESS);
+                status = TaskStatus.IN_PROGRESS;
                 System.out.print("输入进度 (0-100): ");
-                double progress = getDoubleInput("");
-                task.setProgress(progress);
+                progress = getDoubleInput("");
                 break;
             case 3:
-                task.setStatus(TaskStatus.COMPLETED);
-                task.setProgress(100.0);
+                status = TaskStatus.COMPLETED;
+                progress = 100.0;
                 break;
             default:
                 System.out.println("无效选择！");
                 return;
         }
 
-        System.out.println("任务状态更新成功！");
+        if (dataManager.updateTaskStatus(task.getTaskId(), status, progress, expectedVersion)) {
+            System.out.println("任务状态更新成功！");
+        } else {
+            System.out.println("任务已被其他人修改，请重新查看后再更新！");
+        }
     }
 
     // 搜索任务
@@ -360,6 +416,8 @@ public class Main {
         try {
             LocalDate dueDate = LocalDate.parse(dueDateStr);
 
+            // 任务创建和分配在同一个工作单元中提交
+            UnitOfWork work = dataManager.beginUnitOfWork();
             if (taskType == 1) {
                 // 功能开发任务
                 System.out.print("故事点: ");
@@ -368,7 +426,7 @@ public class Main {
                 System.out.print("功能类别: ");
                 String category = scanner.nextLine();
 
-                taskId = dataManager.createFeatureTask(projectId, title, description,
+                taskId = work.createFeatureTask(projectId, title, description,
                         priority, dueDate, storyPoints, category);
             } else if (taskType == 2) {
                 // 缺陷报告
@@ -382,13 +440,22 @@ public class Main {
                 System.out.print("环境: ");
                 String environment = scanner.nextLine();
 
-                taskId = dataManager.createBugReport(projectId, title, description,
+                taskId = work.createBugReport(projectId, title, description,
                         priority, dueDate, severity, steps, environment);
             }
 
+            if (taskId != null) {
+                String memberId = askAssignee();
+                if (memberId != null) {
+                    work.assignTask(taskId, memberId);
+                }
+                if (!work.commit()) {
+                    taskId = null;
+                }
+            }
+
             if (taskId != null) {
                 System.out.println("任务创建成功！任务ID: " + taskId);
-                assignTaskToMember(taskId);
             } else {
                 System.out.println("任务创建失败！");
             }
@@ -400,7 +467,9 @@ public class Main {
         }
     }
 
-    private void assignTaskToMember(String taskId) {
+    // 询问是否立即分配任务，返回成员ID；不分配时返回 null
+    // 成员ID在加入工作单元之前校验，输错时重新输入，不会导致整个任务创建失败
+    private String askAssignee() {
         System.out.print("是否立即分配任务？ (1-是, 0-否): ");
         int assignChoice = getIntInput("");
 
@@ -409,26 +478,102 @@ public class Main {
             dataManager.getMembers().values().forEach(member ->
                     System.out.println(member.getMemberId() + ": " + member.getName()));
 
-            System.out.print("输入成员ID: ");
-            String memberId = scanner.nextLine();
+            while (true) {
+                System.out.print("输入成员ID (直接回车不分配): ");
+                String memberId = scanner.nextLine().trim();
+                if (memberId.isEmpty()) return null;
+                if (dataManager.getMembers().containsKey(memberId)) return memberId;
+                System.out.println("成员ID不存在，请重新输入！");
+            }
+        }
+        return null;
+    }
 
-            if (dataManager.assignTask(taskId, memberId)) {
-                System.out.println("任务分配成功！");
-            } else {
-                System.out.println("任务分配失败！");
+    private void autoAssignTasks() {
+        System.out.println("\n=== 自动分配未分配任务 ===");
+        System.out.println("选择项目:");
+        dataManager.getProjects().values().forEach(project ->
+                System.out.println(project.getProjectId() + ": " + project.getName()));
+
+        System.out.print("输入项目ID: ");
+        String projectId = scanner.nextLine().trim();
+
+        long start = System.nanoTime();
+        int assigned = dataManager.autoAssignTasks(projectId);
+        long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+        System.out.println("已自动分配 " + assigned + " 个任务，耗时 " + elapsedMs + " ms");
+    }
+
+    private void archiveCompletedTasks() {
+        System.out.println("\n=== 归档已完成任务 ===");
+        int defaultDays = Integer.getInteger("team.archive.days", 30);
+        System.out.print("归档截止日期早于多少天前的已完成任务 (留空为 " + defaultDays + "): ");
+        String input = scanner.nextLine().trim();
+        int days = defaultDays;
+        if (!input.isEmpty()) {
+            try {
+                days = Integer.parseInt(input);
+            } catch (NumberFormatException e) {
+                System.out.println("请输入有效的数字！");
+                return;
             }
         }
+
+        long start = System.nanoTime();
+        int archived = dataManager.archiveCompletedTasks(days);
+        long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+        System.out.println("已归档 " + archived + " 个任务，耗时 " + elapsedMs + " ms");
+    }
+
+    private void searchArchivedTasks() {
+        System.out.println("\n=== 搜索已归档任务 ===");
+        System.out.print("输入项目ID (留空忽略): ");
+        String projectId = scanner.nextLine().trim();
+        if (projectId.isEmpty()) projectId = null;
+        System.out.print("标题关键字 (留空忽略): ");
+        String keyword = scanner.nextLine().trim();
+        if (keyword.isEmpty()) keyword = null;
+
+        List<TaskItem> results = dataManager.searchArchivedTasks(projectId, keyword);
+        if (results.isEmpty()) {
+            System.out.println("未找到匹配的归档任务。");
+            return;
+        }
+        for (int i = 0; i < results.size(); i++) {
+            TaskItem task = results.get(i);
+            System.out.printf("%d. %s: %s [%s] - 截止: %s%n",
+                    i + 1, task.getTaskId(), task.getTitle(), task.getPriority(), task.getDueDate());
+        }
     }
 
     private void viewAllProjects() {
         System.out.println("\n=== 所有项目状态 ===");
+        TaskCounterCube counters = dataManager.getTaskCounters();
         dataManager.getProjects().values().forEach(project -> {
             double progress = project.calculateProgress();
-            System.out.printf("项目: %s | 进度: %.1f%% | 成员: %d | 任务: %d%n",
-                    project.getName(), progress, project.getMembers().size(), project.getTasks().size());
+            int[] byStatus = counters.countByStatus(project.getProjectId(), null);
+            System.out.printf("项目: %s | 进度: %.1f%% | 成员: %d | 任务: %d (已归档: %d) | 待办: %d 进行中: %d 已完成: %d | 未分配: %d%n",
+                    project.getName(), progress, project.getMembers().size(),
+                    project.getTasks().size() + project.getArchivedTaskCount(), project.getArchivedTaskCount(),
+                    byStatus[TaskStatus.TODO.ordinal()], byStatus[TaskStatus.IN_PROGRESS.ordinal()],
+                    byStatus[TaskStatus.COMPLETED.ordinal()],
+                    counters.count(project.getProjectId(), TaskCounterCube.UNASSIGNED, null, null));
         });
     }
 
+    // 用完整重新计算校验增量维护的任务计数
+    private void verifyTaskCounters() {
+        long start = System.nanoTime();
+        List<String> problems = dataManager.verifyTaskCounters();
+        System.out.printf("校验完成，耗时 %.1f ms%n", (System.nanoTime() - start) / 1_000_000.0);
+        if (problems.isEmpty()) {
+            System.out.println("任务计数与任务数据一致");
+        } else {
+            System.out.println("发现不一致的计数:");
+            problems.forEach(problem -> System.out.println("  " + problem));
+        }
+    }
+
     private void runProgressReport() {
         System.out.println("\n=== 进度报告 ===");
         TaskProcessor<TaskItem> processor = new TaskProcessor<>();
@@ -436,7 +581,7 @@ public class Main {
         for (Project project : dataManager.getProjects().values()) {
             List<TaskItem> tasks = project.getTasks();
             System.out.println("\n项目: " + project.getName());
-            System.out.println("任务状态分布: " + processor.countTasksByStatus(tasks));
+            System.out.println("任务状态分布: " + dataManager.getTaskCounters().statusDistribution(project.getProjectId()));
             System.out.println("平均进度: " + processor.calculateAverageProgress(tasks) + "%");
 
             List<TaskItem> overdueTasks = processor.getOverdueTasks(tasks);
@@ -448,6 +593,153 @@ public class Main {
         }
     }
 
+    // 查看历史进度报告
+    private void viewReportHistory() {
+        ReportHistoryStore historyStore = progressReporter.getHistoryStore();
+        if (historyStore == null) {
+            System.out.println("历史报告存储不可用！");
+            return;
+        }
+
+        System.out.println("\n=== 历史报告 ===");
+        System.out.println("1. 按时间范围查询");
+        System.out.println("2. 查看最近 N 份报告");
+        System.out.print("请选择: ");
+        int choice = getIntInput("");
+
+        try {
+            List<ReportHistoryStore.Report> reports;
+            if (choice == 1) {
+                DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm");
+                System.out.print("开始时间 (YYYY-MM-DD HH:MM): ");
+                LocalDateTime from = LocalDateTime.parse(scanner.nextLine().trim(), formatter);
+                System.out.print("结束时间 (YYYY-MM-DD HH:MM): ");
+                LocalDateTime to = LocalDateTime.parse(scanner.nextLine().trim(), formatter);
+
+                ZoneId zone = ZoneId.systemDefault();
+                reports = historyStore.readRange(from.atZone(zone).toInstant().toEpochMilli(),
+                        to.atZone(zone).toInstant().toEpochMilli() + 59_999);
+            } else if (choice == 2) {
+                int count = getIntInput("报告份数: ");
+                reports = historyStore.readLast(Math.max(count, 0));
+            } else {
+                System.out.println("无效选择！");
+                return;
+            }
+
+            if (reports.isEmpty()) {
+                System.out.println("没有找到历史报告。");
+            }
+            reports.forEach(report -> System.out.print(report.getText()));
+        } catch (DateTimeParseException e) {
+            System.out.println("时间格式错误！");
+        } catch (IOException e) {
+            System.out.println("读取历史报告失败: " + e.getMessage());
+        }
+    }
+
+    // 查询项目在过去某一时刻的任务状态 (按任务的版本历史)
+    private void viewStateAsOf() {
+        System.out.print("项目ID: ");
+        Project project = dataManager.getProjects().get(scanner.nextLine().trim());
+        if (project == null) {
+            System.out.println("项目不存在！");
+            return;
+        }
+        System.out.print("时间 (YYYY-MM-DD HH:MM): ");
+        long time;
+        try {
+            LocalDateTime at = LocalDateTime.parse(scanner.nextLine().trim(), DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm"));
+            time = at.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli() + 59_999;
+        } catch (DateTimeParseException e) {
+            System.out.println("时间格式错误！");
+            return;
+        }
+
+        long start = System.nanoTime();
+        Map<String, Long> states = dataManager.getTaskHistory().projectAsOf(project, time);
+        double elapsed = (System.nanoTime() - start) / 1_000_000.0;
+
+        int[] byStatus = new int[TaskStatus.values().length];
+        double progressSum = 0;
+        for (long state : states.values()) {
+            byStatus[TaskItem.statusOf(state).ordinal()]++;
+            progressSum += TaskItem.progressOf(state);
+        }
+        System.out.printf("项目: %s | 当时任务数: %d | 平均进度: %.1f%% | 待办: %d 进行中: %d 已完成: %d (查询耗时 %.2f ms)%n",
+                project.getName(), states.size(), states.isEmpty() ? 0.0 : progressSum / states.size(),
+                byStatus[TaskStatus.TODO.ordinal()], byStatus[TaskStatus.IN_PROGRESS.ordinal()],
+                byStatus[TaskStatus.COMPLETED.ordinal()], elapsed);
+
+        // 只列出当时与现在状态不同的任务
+        states.forEach((taskId, state) -> {
+            TaskItem task = dataManager.getTasks().get(taskId);
+            if (task == null || task.getState() == state) return;
+            System.out.printf("  - %s %s: 当时 %s %.0f%%，现在 %s %.0f%%%n", taskId, task.getTitle(),
+                    TaskItem.statusOf(state), TaskItem.progressOf(state), task.getStatus(), task.getProgress());
+        });
+        System.out.printf("历史版本: %d 个任务共 %d 个版本%n",
+                dataManager.getTaskHistory().getTaskCount(), dataManager.getTaskHistory().getVersionCount());
+    }
+
+    // 添加/删除任务依赖，查看项目的进度计划
+    private void manageDependencies() {
+        System.out.println("\n=== 任务依赖与关键路径 ===");
+        System.out.println("1. 添加依赖");
+        System.out.println("2. 删除依赖");
+        System.out.println("3. 查看项目进度计划");
+        System.out.print("请选择: ");
+        int choice = getIntInput("");
+
+        if (choice == 1 || choice == 2) {
+            System.out.print("任务ID: ");
+            String taskId = scanner.nextLine().trim();
+            System.out.print("阻塞它的任务ID: ");
+            String blockerId = scanner.nextLine().trim();
+            long start = System.nanoTime();
+            boolean changed = choice == 1
+                    ? dataManager.addTaskDependency(taskId, blockerId)
+                    : dataManager.removeTaskDependency(taskId, blockerId);
+            double elapsed = (System.nanoTime() - start) / 1_000_000.0;
+            if (changed) {
+                System.out.printf("%s成功！(更新进度计划耗时 %.2f ms)%n", choice == 1 ? "添加" : "删除", elapsed);
+            } else {
+                System.out.println(choice == 1
+                        ? "添加失败！(任务不存在、不在同一项目、依赖已存在或会形成循环依赖)"
+                        : "删除失败！依赖不存在。");
+            }
+        } else if (choice == 3) {
+            System.out.print("项目ID: ");
+            String projectId = scanner.nextLine().trim();
+            Project project = dataManager.getProjects().get(projectId);
+            if (project == null) {
+                System.out.println("项目不存在！");
+                return;
+            }
+            CriticalPathEngine schedule = dataManager.getSchedule();
+            LocalDate finish = schedule.projectFinish(projectId);
+            System.out.printf("项目: %s | 依赖: %d | 预计完工: %s | 截止日期: %s%n", project.getName(),
+                    schedule.getDependencyCount(projectId), finish == null ? "-" : finish,
+                    project.getDueDate() == null ? "-" : project.getDueDate());
+
+            System.out.println("关键路径:");
+            for (String taskId : schedule.criticalPath(projectId)) {
+                TaskItem task = dataManager.getTasks().get(taskId);
+                System.out.printf("  - %s %s [%s] 预计完成: %s%n", taskId, task.getTitle(), task.getStatus(),
+                        schedule.earliestFinish(taskId));
+            }
+            List<String> late = schedule.lateTasks(projectId);
+            if (!late.isEmpty()) {
+                System.out.println("赶不上截止日期的任务: " + late.size());
+                late.stream().limit(20).forEach(taskId -> System.out.printf("  - %s %s 预计完成: %s 最晚: %s (延误 %d 天)%n",
+                        taskId, dataManager.getTasks().get(taskId).getTitle(), schedule.earliestFinish(taskId),
+                        schedule.latestFinish(taskId), -schedule.slackDays(taskId)));
+            }
+        } else {
+            System.out.println("无效选择！");
+        }
+    }
+
     // 辅助方法
     private boolean isUserLoggedIn() {
         return dataManager.getCurrentUser() != null;
@@ -483,9 +775,153 @@ public class Main {
     }
 
     public static void main(String[] args) {
+        if (args.length > 0) {
+            runCommand(args);
+            return;
+        }
         Main system = new Main();
         system.start();
     }
+
+    // 命令行模式: import <文件> / export <文件>，格式按扩展名 (.csv / .jsonl) 判断；
+    // server [端口] 启动 HTTP 服务 (压力测试见测试代码中的 ApiLoadTest)；
+    // replica <主节点复制端口> <HTTP端口> [检查点目录] 启动只读副本 (主节点以 -Dteam.replication.port 启动)；
+    // backup [备份文件] 在线增量备份，verify-backup [备份文件] 校验备份；
+    // migrate-shards <分片数> [备份文件] 先备份并校验，再把任务表迁移到分片 (需停止服务器进程)
+    private static void runCommand(String[] args) {
+        String command = args[0];
+        if (command.equals("server")) {
+            runServer(args.length > 1 ? Integer.parseInt(args[1]) : 8080);
+            return;
+        }
+        if (command.equals("replica") && args.length >= 3) {
+            runReplica(Integer.parseInt(args[1]), Integer.parseInt(args[2]),
+                    args.length > 3 ? Paths.get(args[3]) : DatabaseManager.dataDirectory().resolve("replica-" + args[2]));
+            return;
+        }
+        if (command.equals("backup") || command.equals("verify-backup")) {
+            runBackup(command.equals("verify-backup"), args.length > 1 ? Paths.get(args[1]) : DatabaseManager.dataDirectory().resolve(DEFAULT_BACKUP_FILE));
+            return;
+        }
+        if (command.equals("migrate-shards") && args.length >= 2) {
+            runShardMigration(Integer.parseInt(args[1]),
+                    args.length > 2 ? Paths.get(args[2]) : DatabaseManager.dataDirectory().resolve(DEFAULT_BACKUP_FILE));
+            return;
+        }
+        if (!(command.equals("import") || command.equals("export")) || args.length < 2) {
+            System.out.println("用法: import <文件.csv|文件.jsonl> | export <文件.csv|文件.jsonl> | server [端口]"
+                    + " | replica <主节点复制端口> <HTTP端口> [检查点目录]"
+                    + " | backup [备份文件] | verify-backup [备份文件] | migrate-shards <分片数> [备份文件]");
+            return;
+        }
+
+        DataManager dataManager = new DataManager();
+        try {
+            TaskTransfer transfer = new TaskTransfer(dataManager);
+            Path file = Paths.get(args[1]);
+            if (command.equals("import")) {
+                transfer.importTasks(file);
+            } else {
+                long start = System.nanoTime();
+                long count = transfer.exportTasks(file);
+                System.out.println("导出完成: " + count + " 行, 耗时 " + (System.nanoTime() - start) / 1_000_000 + " ms");
+            }
+        } catch (IOException e) {
+            System.err.println(command + " 失败: " + e.getMessage());
+        } finally {
+            dataManager.close();
+        }
+    }
+
+    // 服务器模式：一直运行到进程被终止 (Ctrl+C)，退出时关闭服务和数据库
+    private static void runServer(int port) {
+        DataManager dataManager = new DataManager();
+        ApiServer server;
+        try {
+            server = new ApiServer(dataManager, port);
+        } catch (IOException e) {
+            System.err.println("启动 HTTP 服务失败: " + e.getMessage());
+            dataManager.close();
+            return;
+        }
+        ReplicationPrimary replication = dataManager.getReplicationPrimary();
+        if (replication != null) {
+            server.setReplicationStatus(replication::statusJson);
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.close();
+            dataManager.close();
+        }));
+        server.start();
+    }
+
+    private static final String DEFAULT_BACKUP_FILE = "backup/team_management.backup.db";
+
+    // 备份只使用数据库连接，可以在服务器进程运行期间从另一个进程执行
+    private static void runBackup(boolean verify, Path file) {
+        DatabaseManager databaseManager = new DatabaseManager();
+        try {
+            if (!databaseManager.isConnectionValid()) {
+                System.err.println("数据库不可用，无法备份");
+                return;
+            }
+            OnlineBackup backup = new OnlineBackup(databaseManager, file);
+            if (verify) {
+                System.out.println(backup.verify() ? "备份校验通过" : "备份校验失败");
+            } else {
+                backup.run();
+            }
+        } catch (SQLException e) {
+            System.err.println((verify ? "校验备份" : "备份") + "失败: " + e.getMessage());
+        } finally {
+            databaseManager.close();
+        }
+    }
+
+    // 迁移前的备份校验不通过时不迁移；迁移失败时主数据库中的任务表保持不变
+    private static void runShardMigration(int count, Path backupFile) {
+        DatabaseManager databaseManager = new DatabaseManager();
+        try {
+            if (!databaseManager.isConnectionValid()) {
+                System.err.println("数据库不可用，无法迁移");
+                return;
+            }
+            OnlineBackup backup = new OnlineBackup(databaseManager, backupFile);
+            backup.run();
+            if (!backup.verify()) {
+                System.err.println("备份校验失败，未迁移: " + backupFile);
+                return;
+            }
+            databaseManager.migrateTasksToShards(count);
+        } catch (SQLException e) {
+            System.err.println("迁移到分片失败: " + e.getMessage());
+        } finally {
+            databaseManager.close();
+        }
+    }
+
+    // 只读副本：从主节点复制数据，在自己的 HTTP 端口上提供查询和报告
+    private static void runReplica(int primaryPort, int port, Path directory) {
+        DataManager dataManager = DataManager.createReplica();
+        ReadWriteLock dataLock = dataManager.getDataLock();
+        ReplicaFollower follower = new ReplicaFollower(dataManager, primaryPort, directory, dataLock);
+        ApiServer server;
+        try {
+            follower.start();
+            server = new ApiServer(dataManager, port, dataLock);
+        } catch (IOException e) {
+            System.err.println("启动只读副本失败: " + e.getMessage());
+            follower.close();
+            return;
+        }
+        server.setReplicationStatus(follower::statusJson);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.close();
+            follower.close();
+        }));
+        server.start();
+    }
+
     private void shutdown() {
         System.out.println("正在关闭系统...");
         progressReporter.stopReporting();
@@ -0,0 +1,63 @@
+package edu.sbs.cs.database;
+
+import java.sql.*;
+
+/**
+ * 行级变更序号，供增量备份 (OnlineBackup) 找出上次备份之后修改过的行。
+ * 每个数据库文件 (主数据库和各任务分片) 有自己的计数器 change_sequence；
+ * 被跟踪的表增加 change_seq 列，由触发器在每次插入和修改时写入计数器的下一个值，
+ * 删除的行记录到 change_tombstones (序号, 表名, 主键)。触发器对其他程序的修改同样生效。
+ * backup_targets 记录每个备份文件已备份到的序号，删除记录只清除到所有备份中最小的序号。
+ */
+final class ChangeTracking {
+    // 被跟踪的表及其主键列
+    static final String[] TABLES = {"members", "projects", "project_members", "tasks", "task_dependencies"};
+    private static final String[][] KEY_COLUMNS = {
+            {"member_id"}, {"project_id"}, {"project_id", "member_id"}, {"task_id"}, {"task_id", "blocked_by"}
+    };
+
+    private ChangeTracking() {
+    }
+
+    static String[] keyColumns(String table) {
+        for (int i = 0; i < TABLES.length; i++) {
+            if (TABLES[i].equals(table)) return KEY_COLUMNS[i];
+        }
+        throw new IllegalArgumentException("未跟踪变更的表: " + table);
+    }
+
+    // 为连接所在的数据库文件中的指定表建立变更跟踪 (已建立时不做任何事)
+    static void install(Connection connection, String... tables) throws SQLException {
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("CREATE TABLE IF NOT EXISTS change_sequence (" +
+                    "id INTEGER PRIMARY KEY CHECK (id = 1), value INTEGER NOT NULL)");
+            stmt.execute("INSERT OR IGNORE INTO change_sequence (id, value) VALUES (1, 0)");
+            stmt.execute("CREATE TABLE IF NOT EXISTS change_tombstones (" +
+                    "change_seq INTEGER PRIMARY KEY, table_name TEXT NOT NULL, key1 TEXT, key2 TEXT)");
+            stmt.execute("CREATE TABLE IF NOT EXISTS backup_targets (" +
+                    "target TEXT PRIMARY KEY, change_seq INTEGER NOT NULL, backed_up_at INTEGER NOT NULL)");
+        }
+        for (String table : tables) {
+            String[] keys = keyColumns(table);
+            DatabaseManager.addColumnIfMissing(connection, table, "change_seq", "INTEGER");
+            try (Statement stmt = connection.createStatement()) {
+                stmt.execute("CREATE INDEX IF NOT EXISTS idx_" + table + "_change_seq ON " + table + "(change_seq)");
+                // 升级前已有的行视为序号 0 (在创建触发器之前执行，不触发序号分配)
+                stmt.executeUpdate("UPDATE " + table + " SET change_seq = 0 WHERE change_seq IS NULL");
+
+                String next = "UPDATE change_sequence SET value = value + 1 WHERE id = 1; ";
+                String current = "(SELECT value FROM change_sequence WHERE id = 1)";
+                String stamp = "UPDATE " + table + " SET change_seq = " + current + " WHERE rowid = NEW.rowid; ";
+                stmt.execute("CREATE TRIGGER IF NOT EXISTS trg_" + table + "_insert_change AFTER INSERT ON " + table
+                        + " BEGIN " + next + stamp + "END");
+                // 触发器自己写 change_seq 时 NEW 与 OLD 不同，不会再次分配
+                stmt.execute("CREATE TRIGGER IF NOT EXISTS trg_" + table + "_update_change AFTER UPDATE ON " + table
+                        + " WHEN NEW.change_seq IS OLD.change_seq BEGIN " + next + stamp + "END");
+                stmt.execute("CREATE TRIGGER IF NOT EXISTS trg_" + table + "_delete_change AFTER DELETE ON " + table
+                        + " BEGIN " + next + "INSERT INTO change_tombstones (change_seq, table_name, key1, key2) VALUES ("
+                        + current + ", '" + table + "', OLD." + keys[0] + ", "
+                        + (keys.length > 1 ? "OLD." + keys[1] : "NULL") + "); END");
+            }
+        }
+    }
+}
@@ -4,10 +4,28 @@ import edu.sbs.cs.model.*;
 import java.sql.*;
 import java.time.LocalDate;
 import java.util.*;
+import java.util.function.Function;
 
 public class DatabaseManager {
-    private static final String DB_URL = "jdbc:sqlite:database/team_management.db";
+    // 数据目录 (-Dteam.data.dir，默认当前目录下的 database)，所有数据库文件、日志、快照和归档都放在其中
+    public static final String DATA_DIR_PROPERTY = "team.data.dir";
+    // 主数据库连接；连接上的写操作都持有本对象的锁，与 runInTransaction 互斥，
+    // 其他线程的事务进行中时不会把写入混进该事务 (分片的写操作在分片写线程上执行，不需要此锁)
     private Connection connection;
+    // 字典字符串 -> 编码的缓存 (编码一经写入数据库不再改变)，只包含已提交的字典项
+    private final Map<String, Integer> dictionaryCodes = new java.util.concurrent.ConcurrentHashMap<>();
+    // 当前事务中新增的字典项，提交后才放入 dictionaryCodes (持有本对象的锁时访问)
+    private final Map<String, Integer> pendingDictionaryCodes = new HashMap<>();
+    // 分片存储时任务表所在的分片文件，未分片时为 null
+    private TaskShards taskShards;
+    // 分片属于另一个对象 (见 openSecondary)，关闭时不关闭分片
+    private boolean sharedShards;
+    // 任务ID -> 项目ID，用于把按任务ID的更新路由到分片；查不到时在所有分片上执行
+    private Function<String, String> taskProjectLookup = taskId -> null;
+    // 当前线程的 runInTransaction 中已加入事务的分片
+    private final ThreadLocal<Set<Integer>> transactionShards = new ThreadLocal<>();
+    // runInTransaction 的嵌套深度 (持有本对象的锁时访问)
+    private int transactionDepth;
 
     static {
         // 显式加载 SQLite JDBC 驱动
@@ -24,18 +42,54 @@ public class DatabaseManager {
         initializeDatabase();
     }
 
+    // 见 openSecondary：表已由 primary 创建，只打开新的主数据库连接
+    private DatabaseManager(DatabaseManager primary) throws SQLException {
+        connection = DriverManager.getConnection(databaseUrl());
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("PRAGMA foreign_keys = ON");
+        }
+        taskShards = primary.taskShards;
+        sharedShards = true;
+    }
+
+    /**
+     * 另开一个主数据库连接 (如后台检查点线程使用)，任务分片与本对象共用：
+     * SQLite 每个文件只允许一个写者，分片写连接的使用权由分片自己协调，两个对象的写入依次进行。
+     * 关闭返回的对象时不关闭共用的分片，本对象关闭之后不能再使用它。
+     */
+    public DatabaseManager openSecondary() throws SQLException {
+        return new DatabaseManager(this);
+    }
+
+    // 数据目录，每次调用时读取系统属性
+    public static java.nio.file.Path dataDirectory() {
+        return java.nio.file.Paths.get(System.getProperty(DATA_DIR_PROPERTY, "database"));
+    }
+
+    // 数据目录下的 SQLite 文件的连接地址
+    static String sqliteUrl(String fileName) {
+        return "jdbc:sqlite:" + dataDirectory().resolve(fileName);
+    }
+
+    // 主数据库的连接地址
+    static String databaseUrl() {
+        return sqliteUrl("team_management.db");
+    }
+
     private void initializeDatabase() {
         try {
             // 确保数据库目录存在
-            java.nio.file.Paths.get("database").toFile().mkdirs();
+            dataDirectory().toFile().mkdirs();
 
-            System.out.println("正在连接数据库: " + DB_URL);
-            connection = DriverManager.getConnection(DB_URL);
+            String url = databaseUrl();
+            System.out.println("正在连接数据库: " + url);
+            connection = DriverManager.getConnection(url);
 
             // 设置连接属性
             connection.setAutoCommit(true);
 
             createTables();
+            openTaskShards();
             System.out.println("数据库初始化成功！");
         } catch (SQLException e) {
             System.err.println("数据库初始化失败: " + e.getMessage());
@@ -92,7 +146,45 @@ public class DatabaseManager {
                         "member_id TEXT, " +
                         "PRIMARY KEY (project_id, member_id), " +
                         "FOREIGN KEY (project_id) REFERENCES projects(project_id), " +
-                        "FOREIGN KEY (member_id) REFERENCES members(member_id))"
+                        "FOREIGN KEY (member_id) REFERENCES members(member_id))",
+
+                // ID序列表 (按块预留ID)
+                "CREATE TABLE IF NOT EXISTS id_sequences (" +
+                        "name TEXT PRIMARY KEY, " +
+                        "next_value INTEGER NOT NULL)",
+
+                // 变更日志检查点 (已合并到数据库的最大日志序号)
+                "CREATE TABLE IF NOT EXISTS journal_checkpoint (" +
+                        "id INTEGER PRIMARY KEY CHECK (id = 1), " +
+                        "lsn INTEGER NOT NULL)",
+
+                // 二进制快照标记：与快照文件头中的标记一致时快照有效
+                "CREATE TABLE IF NOT EXISTS snapshot_marker (" +
+                        "id INTEGER PRIMARY KEY CHECK (id = 1), " +
+                        "token INTEGER NOT NULL)",
+
+                // 低基数字符串 (功能类别、运行环境) 的字典，任务表中只存编码
+                "CREATE TABLE IF NOT EXISTS string_dictionary (" +
+                        "code INTEGER PRIMARY KEY, " +
+                        "value TEXT NOT NULL UNIQUE)",
+
+                // 已归档任务的按项目汇总 (任务本身在归档分段文件中)
+                "CREATE TABLE IF NOT EXISTS archive_summary (" +
+                        "project_id TEXT PRIMARY KEY, " +
+                        "task_count INTEGER NOT NULL, " +
+                        "progress_sum REAL NOT NULL)",
+
+                // 任务表的分片数 (没有记录时任务表在主数据库中)
+                "CREATE TABLE IF NOT EXISTS storage_layout (" +
+                        "id INTEGER PRIMARY KEY CHECK (id = 1), " +
+                        "shard_count INTEGER NOT NULL)",
+
+                // 任务依赖：task_id 被 blocked_by 阻塞 (任务表可能在分片中，因此不设外键)
+                "CREATE TABLE IF NOT EXISTS task_dependencies (" +
+                        "task_id TEXT NOT NULL, " +
+                        "blocked_by TEXT NOT NULL, " +
+                        "PRIMARY KEY (task_id, blocked_by))",
+                "CREATE INDEX IF NOT EXISTS idx_task_dependencies_blocked_by ON task_dependencies(blocked_by)"
         };
 
         for (String sql : createTableSQLs) {
@@ -104,6 +196,292 @@ public class DatabaseManager {
                 throw e;
             }
         }
+
+        // 旧数据库升级：补充后来新增的列
+        addColumnIfMissing(connection, "tasks", "version", "INTEGER DEFAULT 0");
+        addColumnIfMissing(connection, "tasks", "category_code", "INTEGER");
+        addColumnIfMissing(connection, "tasks", "environment_code", "INTEGER");
+        addColumnIfMissing(connection, "tasks", "due_day", "INTEGER");
+        addColumnIfMissing(connection, "projects", "start_day", "INTEGER");
+        addColumnIfMissing(connection, "projects", "due_day", "INTEGER");
+
+        createTaskIndexes();
+        createSnapshotTriggers();
+        ChangeTracking.install(connection, ChangeTracking.TABLES);
+    }
+
+    // 数据表的任何修改 (包括其他程序的修改) 都会清除快照标记，使已有的快照失效
+    private static final String[] SNAPSHOT_TABLES = {"members", "projects", "tasks", "project_members",
+            "task_dependencies"};
+
+    private void createSnapshotTriggers() throws SQLException {
+        try (Statement stmt = connection.createStatement()) {
+            for (String table : SNAPSHOT_TABLES) {
+                for (String operation : new String[]{"INSERT", "UPDATE", "DELETE"}) {
+                    stmt.execute("CREATE TRIGGER IF NOT EXISTS trg_" + table + "_" + operation.toLowerCase()
+                            + "_snapshot AFTER " + operation + " ON " + table
+                            + " BEGIN DELETE FROM snapshot_marker; END");
+                }
+            }
+        }
+    }
+
+    // 当前有效的快照标记，没有时返回 0；分片存储时每个分片中的标记也必须一致
+    public long readSnapshotToken() throws SQLException {
+        long token = readSnapshotToken(connection);
+        if (taskShards == null || token == 0) return token;
+        for (long shardToken : taskShards.callEach(DatabaseManager::readSnapshotToken)) {
+            if (shardToken != token) return 0;
+        }
+        return token;
+    }
+
+    private static long readSnapshotToken(Connection connection) throws SQLException {
+        try (Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT token FROM snapshot_marker WHERE id = 1")) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+
+    public synchronized void writeSnapshotToken(long token) throws SQLException {
+        if (taskShards != null) {
+            taskShards.callEach(shard -> writeSnapshotToken(shard, token));
+        }
+        writeSnapshotToken(connection, token);
+    }
+
+    private static Void writeSnapshotToken(Connection connection, long token) throws SQLException {
+        try (PreparedStatement pstmt = connection.prepareStatement(
+                "INSERT OR REPLACE INTO snapshot_marker (id, token) VALUES (1, ?)")) {
+            pstmt.setLong(1, token);
+            pstmt.executeUpdate();
+        }
+        return null;
+    }
+
+    /*
+     * 分片存储：storage_layout 中记录的分片数优先 (确定后不能再改变，否则任务会被路由到其他文件)；
+     * 尚未分片时按 -Dteam.db.shards 启用。主数据库中已有任务时不在启动时迁移，
+     * 仍按未分片存储，由管理员先备份再用 migrate-shards 命令迁移 (见 migrateTasksToShards)。
+     */
+    private void openTaskShards() throws SQLException {
+        int stored = readShardCount();
+        int requested = Integer.getInteger("team.db.shards", 1);
+        if (stored > 0 && System.getProperty("team.db.shards") != null && requested != stored) {
+            System.err.println("数据库已按 " + stored + " 个分片存储，忽略 -Dteam.db.shards=" + requested);
+        }
+        int count = stored > 0 ? stored : requested;
+        if (count <= 1) return;
+
+        if (stored == 0) {
+            long existing = countRows(connection, "SELECT COUNT(*) FROM tasks");
+            if (existing > 0) {
+                System.err.println("主数据库中已有 " + existing + " 个任务，忽略 -Dteam.db.shards=" + requested
+                        + "；请先备份，再用 migrate-shards " + requested + " 迁移到分片");
+                return;
+            }
+        }
+        taskShards = new TaskShards(count);
+        taskShards.callEach(DatabaseManager::createIndexes);
+        if (stored == 0) {
+            writeShardCount(count);
+        }
+        System.out.println("任务表分片存储: " + count + " 个分片");
+    }
+
+    private int readShardCount() throws SQLException {
+        try (Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT shard_count FROM storage_layout WHERE id = 1")) {
+            return rs.next() ? rs.getInt(1) : 0;
+        }
+    }
+
+    private synchronized void writeShardCount(int count) throws SQLException {
+        try (Statement stmt = connection.createStatement()) {
+            stmt.executeUpdate("INSERT OR REPLACE INTO storage_layout (id, shard_count) VALUES (1, " + count + ")");
+        }
+    }
+
+    private static long countRows(Connection source, String sql) throws SQLException {
+        try (Statement stmt = source.createStatement();
+             ResultSet rs = stmt.executeQuery(sql)) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+
+    /**
+     * 把主数据库中的任务按项目复制到 count 个分片 (管理员命令 migrate-shards，调用前应先备份)。
+     * 复制后逐个分片核对行数，全部一致才在一个事务中记录分片数并清空主表；
+     * 核对不一致或中途失败时主表保持不变，仍按未分片存储，分片文件中的副本在下次迁移时清除。
+     * 不能在其他进程使用该数据库期间执行。
+     *
+     * @return 迁移的任务数
+     */
+    public long migrateTasksToShards(int count) throws SQLException {
+        if (!isConnectionValid()) {
+            throw new SQLException("数据库连接不可用");
+        }
+        if (count <= 1) {
+            throw new SQLException("分片数必须大于 1");
+        }
+        if (taskShards != null || readShardCount() > 0) {
+            throw new SQLException("数据库已经分片存储");
+        }
+
+        TaskShards shards = new TaskShards(count);
+        try {
+            shards.callEach(DatabaseManager::createIndexes);
+            // 上次未完成的迁移留下的副本
+            shards.callEach(shard -> {
+                try (Statement stmt = shard.createStatement()) {
+                    stmt.executeUpdate("DELETE FROM tasks");
+                }
+                return null;
+            });
+            long moved = 0;
+            synchronized (this) {
+                try (Statement stmt = connection.createStatement()) {
+                    stmt.execute("CREATE TEMP TABLE IF NOT EXISTS shard_map (project_id TEXT PRIMARY KEY, shard INTEGER NOT NULL)");
+                    stmt.execute("DELETE FROM shard_map");
+                }
+                List<String> projectIds = new ArrayList<>();
+                try (Statement stmt = connection.createStatement();
+                     ResultSet rs = stmt.executeQuery("SELECT DISTINCT project_id FROM tasks WHERE project_id IS NOT NULL")) {
+                    while (rs.next()) projectIds.add(rs.getString(1));
+                }
+                try (PreparedStatement insert = connection.prepareStatement("INSERT INTO shard_map VALUES (?, ?)")) {
+                    for (String projectId : projectIds) {
+                        insert.setString(1, projectId);
+                        insert.setInt(2, shards.shardOf(projectId));
+                        insert.addBatch();
+                    }
+                    insert.executeBatch();
+                }
+
+                String inShard = " FROM main.tasks t WHERE IFNULL((SELECT shard FROM shard_map m"
+                        + " WHERE m.project_id = t.project_id), 0) = ";
+                for (int i = 0; i < shards.size(); i++) {
+                    long expected = countRows(connection, "SELECT COUNT(*)" + inShard + i);
+                    long copied;
+                    try (Statement stmt = connection.createStatement()) {
+                        stmt.execute("ATTACH DATABASE '" + shards.path(i).replace("'", "''") + "' AS shard");
+                        try {
+                            stmt.executeUpdate("INSERT INTO shard.tasks (" + TaskShards.TASK_TABLE_COLUMNS + ") SELECT "
+                                    + TaskShards.TASK_TABLE_COLUMNS + inShard + i);
+                            copied = countRows(connection, "SELECT COUNT(*) FROM shard.tasks");
+                        } finally {
+                            stmt.execute("DETACH DATABASE shard");
+                        }
+                    }
+                    if (copied != expected) {
+                        throw new SQLException("分片 " + i + " 中有 " + copied + " 个任务，应为 " + expected + "，主表未改动");
+                    }
+                    moved += copied;
+                }
+
+                // 核对通过：记录分片数与清空主表在同一事务中，之后任务只从分片读写
+                runInTransaction(() -> {
+                    try (Statement stmt = connection.createStatement()) {
+                        stmt.executeUpdate("DELETE FROM tasks");
+                        stmt.execute("DROP TABLE shard_map");
+                    }
+                    writeShardCount(count);
+                });
+            }
+            taskShards = shards;
+            System.out.println("已把 " + moved + " 个任务迁移到 " + count + " 个分片");
+            return moved;
+        } catch (SQLException | RuntimeException e) {
+            shards.close();
+            throw e;
+        }
+    }
+
+    /**
+     * 设置 任务ID -> 项目ID 的查询，分片存储时按任务ID的更新 (状态、分配、归档) 据此找到所在分片。
+     * 查询在调用数据库方法的线程中执行；未设置或查不到时该更新在所有分片上执行。
+     */
+    public void setTaskProjectLookup(Function<String, String> lookup) {
+        this.taskProjectLookup = lookup;
+    }
+
+    // 分片存储时各分片的连接地址 (供并行加载按分片扫描)，未分片时为空
+    List<String> taskShardUrls() {
+        if (taskShards == null) return Collections.emptyList();
+        List<String> urls = new ArrayList<>(taskShards.size());
+        for (int i = 0; i < taskShards.size(); i++) {
+            urls.add(taskShards.url(i));
+        }
+        return urls;
+    }
+
+    // 表中没有该列时执行 ALTER TABLE 添加
+    static void addColumnIfMissing(Connection connection, String table, String column, String definition)
+            throws SQLException {
+        try (Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery("PRAGMA table_info(" + table + ")")) {
+            while (rs.next()) {
+                if (column.equalsIgnoreCase(rs.getString("name"))) {
+                    return;
+                }
+            }
+        }
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("ALTER TABLE " + table + " ADD COLUMN " + column + " " + definition);
+        }
+    }
+
+    // 任务表的二级索引，批量导入时先删除，导入完成后再重建
+    private static final String[][] TASK_INDEXES = {
+            {"idx_tasks_project", "CREATE INDEX IF NOT EXISTS idx_tasks_project ON tasks(project_id)"},
+            {"idx_tasks_assigned", "CREATE INDEX IF NOT EXISTS idx_tasks_assigned ON tasks(assigned_to)"}
+    };
+
+    public void createTaskIndexes() throws SQLException {
+        createIndexes(connection);
+        if (taskShards != null) {
+            taskShards.callEach(DatabaseManager::createIndexes);
+        }
+    }
+
+    public void dropTaskIndexes() throws SQLException {
+        try (Statement stmt = connection.createStatement()) {
+            for (String[] index : TASK_INDEXES) {
+                stmt.execute("DROP INDEX IF EXISTS " + index[0]);
+            }
+        }
+        if (taskShards != null) {
+            taskShards.callEach(shard -> {
+                try (Statement stmt = shard.createStatement()) {
+                    for (String[] index : TASK_INDEXES) {
+                        stmt.execute("DROP INDEX IF EXISTS " + index[0]);
+                    }
+                }
+                return null;
+            });
+        }
+    }
+
+    private static Void createIndexes(Connection connection) throws SQLException {
+        try (Statement stmt = connection.createStatement()) {
+            for (String[] index : TASK_INDEXES) {
+                stmt.execute(index[1]);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 打开一个只读连接 (open_mode = SQLITE_OPEN_READONLY)，供启动时并行加载使用，用完由调用方关闭。
+     */
+    public Connection openReadOnlyConnection() throws SQLException {
+        return openReadOnlyConnection(databaseUrl());
+    }
+
+    static Connection openReadOnlyConnection(String url) throws SQLException {
+        Properties properties = new Properties();
+        properties.setProperty("open_mode", "1");
+        return DriverManager.getConnection(url, properties);
     }
 
     // 检查连接是否有效
@@ -115,13 +493,22 @@ public class DatabaseManager {
         }
     }
 
+    // 成员和项目的保存：已存在时原地更新这些列 (不删除旧行，引用它们的任务和成员关系不受影响)
+    private static final String SAVE_MEMBER_SQL = "INSERT INTO members (member_id, name, role, email, password) " +
+            "VALUES (?, ?, ?, ?, ?) ON CONFLICT(member_id) DO UPDATE SET name = excluded.name, role = excluded.role, " +
+            "email = excluded.email, password = excluded.password";
+    private static final String SAVE_PROJECT_SQL = "INSERT INTO projects (project_id, name, description, start_date, " +
+            "due_date, start_day, due_day) VALUES (?, ?, ?, NULL, NULL, ?, ?) ON CONFLICT(project_id) DO UPDATE SET " +
+            "name = excluded.name, description = excluded.description, start_date = NULL, due_date = NULL, " +
+            "start_day = excluded.start_day, due_day = excluded.due_day";
+
     // 成员相关操作
-    public void saveMember(TeamMember member) throws SQLException {
+    public synchronized void saveMember(TeamMember member) throws SQLException {
         if (!isConnectionValid()) {
             throw new SQLException("数据库连接不可用");
         }
 
-        String sql = "INSERT OR REPLACE INTO members (member_id, name, role, email, password) VALUES (?, ?, ?, ?, ?)";
+        String sql = SAVE_MEMBER_SQL;
         try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
             pstmt.setString(1, member.getMemberId());
             pstmt.setString(2, member.getName());
@@ -158,18 +545,18 @@ public class DatabaseManager {
     }
 
     // 项目相关操作
-    public void saveProject(Project project) throws SQLException {
+    public synchronized void saveProject(Project project) throws SQLException {
         if (!isConnectionValid()) {
             throw new SQLException("数据库连接不可用");
         }
 
-        String sql = "INSERT OR REPLACE INTO projects (project_id, name, description, start_date, due_date) VALUES (?, ?, ?, ?, ?)";
+        String sql = SAVE_PROJECT_SQL;
         try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
             pstmt.setString(1, project.getProjectId());
             pstmt.setString(2, project.getName());
             pstmt.setString(3, project.getDescription());
-            pstmt.setString(4, project.getStartDate().toString());
-            pstmt.setString(5, project.getDueDate().toString());
+            bindEpochDay(pstmt, 4, project.getStartDay());
+            bindEpochDay(pstmt, 5, project.getDueDay());
             pstmt.executeUpdate();
         }
 
@@ -207,7 +594,8 @@ public class DatabaseManager {
         }
 
         List<Project> projects = new ArrayList<>();
-        String sql = "SELECT * FROM projects";
+        String sql = "SELECT *, " + epochDayColumn("start_day", "start_date") + " AS start_epoch_day, "
+                + epochDayColumn("due_day", "due_date") + " AS due_epoch_day FROM projects";
 
         try (Statement stmt = connection.createStatement();
              ResultSet rs = stmt.executeQuery(sql)) {
@@ -216,10 +604,10 @@ public class DatabaseManager {
                 String projectId = rs.getString("project_id");
                 String name = rs.getString("name");
                 String description = rs.getString("description");
-                LocalDate startDate = LocalDate.parse(rs.getString("start_date"));
-                LocalDate dueDate = LocalDate.parse(rs.getString("due_date"));
 
-                Project project = new Project(projectId, name, description, dueDate);
+                Project project = new Project(projectId, name, description, null);
+                readStartDay(rs, project);
+                project.setDueDay(readEpochDay(rs, "due_epoch_day"));
                 project.getMembers().addAll(loadProjectMembers(projectId));
                 projects.add(project);
             }
@@ -253,128 +641,1075 @@ public class DatabaseManager {
         return members;
     }
 
-    // 任务相关操作
+    /*
+     * 任务相关操作。
+     * 优先级、状态、严重程度按枚举序号存储；功能类别和运行环境存为 string_dictionary 中的编码
+     * (category_code / environment_code)，旧数据中的名称和 feature_category / environment 文本列仍可读取。
+     */
+    private static final String INSERT_TASK_SQL = "INSERT INTO tasks (task_id, title, description, priority, status, due_date, progress, " +
+            "task_type, assigned_to, project_id, story_points, feature_category, severity, steps_to_reproduce, environment, version, " +
+            "category_code, environment_code, due_day) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    // 导入时ID已存在的任务原地更新 (不像 INSERT OR REPLACE 那样先删除旧行，不触发删除触发器)
+    private static final String UPSERT_TASK_SQL = INSERT_TASK_SQL + " ON CONFLICT(task_id) DO UPDATE SET " +
+            "title = excluded.title, description = excluded.description, priority = excluded.priority, " +
+            "status = excluded.status, due_date = excluded.due_date, progress = excluded.progress, " +
+            "task_type = excluded.task_type, assigned_to = excluded.assigned_to, project_id = excluded.project_id, " +
+            "story_points = excluded.story_points, feature_category = excluded.feature_category, " +
+            "severity = excluded.severity, steps_to_reproduce = excluded.steps_to_reproduce, " +
+            "environment = excluded.environment, version = excluded.version, category_code = excluded.category_code, " +
+            "environment_code = excluded.environment_code, due_day = excluded.due_day";
+
+    /*
+     * 日期存为 INTEGER 类型的 epochDay (due_day 等列)；旧数据中的 TEXT 日期列由 SQLite 直接换算为 epochDay，
+     * 加载时不需要在 Java 中解析日期字符串。
+     */
+    static String epochDayColumn(String dayColumn, String textColumn) {
+        return "IFNULL(" + dayColumn + ", CAST(julianday(" + textColumn + ") - 2440587.5 AS INTEGER))";
+    }
+
+    // 加载任务时查询的列：所有列加上换算好的截止日期 due_epoch_day
+    static final String TASK_COLUMNS = "*, " + epochDayColumn("due_day", "due_date") + " AS due_epoch_day";
+
+    private static void bindEpochDay(PreparedStatement pstmt, int index, int epochDay) throws SQLException {
+        if (epochDay == TaskItem.NO_DATE) {
+            pstmt.setNull(index, Types.INTEGER);
+        } else {
+            pstmt.setInt(index, epochDay);
+        }
+    }
+
+    static int readEpochDay(ResultSet rs, String column) throws SQLException {
+        int epochDay = rs.getInt(column);
+        return rs.wasNull() ? TaskItem.NO_DATE : epochDay;
+    }
+
+    // 读取项目开始日期 (start_epoch_day 列)；没有记录开始日期的旧数据保留构造时的默认值
+    static void readStartDay(ResultSet rs, Project project) throws SQLException {
+        int startDay = readEpochDay(rs, "start_epoch_day");
+        if (startDay != TaskItem.NO_DATE) {
+            project.setStartDay(startDay);
+        }
+    }
+
     public void saveTask(TaskItem task, String projectId) throws SQLException {
         if (!isConnectionValid()) {
             throw new SQLException("数据库连接不可用");
         }
 
-        String sql = "INSERT OR REPLACE INTO tasks (task_id, title, description, priority, status, due_date, progress, " +
-                "task_type, assigned_to, project_id, story_points, feature_category, severity, steps_to_reproduce, environment) " +
-                "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+        List<TaskItem> tasks = Collections.singletonList(task);
+        Map<String, Integer> codes = resolveDictionaryCodes(tasks);
+        if (taskShards != null) {
+            writeShards(Collections.singletonMap(taskShards.shardOf(projectId),
+                    shard -> insertTasks(shard, INSERT_TASK_SQL, tasks, id -> projectId, codes)));
+            return;
+        }
+        synchronized (this) {
+            insertTasks(connection, INSERT_TASK_SQL, tasks, id -> projectId, codes);
+        }
+    }
 
-        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
-            pstmt.setString(1, task.getTaskId());
-            pstmt.setString(2, task.getTitle());
-            pstmt.setString(3, task.getDescription());
-            pstmt.setString(4, task.getPriority().toString());
-            pstmt.setString(5, task.getStatus().toString());
-            pstmt.setString(6, task.getDueDate().toString());
-            pstmt.setDouble(7, task.getProgress());
-
-            if (task instanceof FeatureTask) {
-                FeatureTask featureTask = (FeatureTask) task;
-                pstmt.setString(8, "FEATURE");
-                pstmt.setString(9, task.getAssignedTo() != null ? task.getAssignedTo().getMemberId() : null);
-                pstmt.setString(10, projectId);
-                pstmt.setInt(11, featureTask.getStoryPoints());
-                pstmt.setString(12, featureTask.getFeatureCategory());
-                pstmt.setNull(13, Types.VARCHAR);
-                pstmt.setNull(14, Types.VARCHAR);
-                pstmt.setNull(15, Types.VARCHAR);
-            } else if (task instanceof BugReport) {
-                BugReport bugReport = (BugReport) task;
-                pstmt.setString(8, "BUG");
-                pstmt.setString(9, task.getAssignedTo() != null ? task.getAssignedTo().getMemberId() : null);
-                pstmt.setString(10, projectId);
-                pstmt.setNull(11, Types.INTEGER);
-                pstmt.setNull(12, Types.VARCHAR);
-                pstmt.setString(13, bugReport.getSeverity().toString());
-                pstmt.setString(14, bugReport.getStepsToReproduce());
-                pstmt.setString(15, bugReport.getEnvironment());
+    // 批量保存新建的任务 (不单独开启事务，由调用方决定事务边界)；ID已存在时失败。分片存储时各分片同时写入
+    public void saveTasksBatch(List<TaskItem> tasks, Map<String, String> taskProjectIds) throws SQLException {
+        writeTasksBatch(INSERT_TASK_SQL, tasks, taskProjectIds);
+    }
+
+    // 批量导入任务或重放变更日志：ID已存在的任务整行更新 (保留行号，不触发删除)
+    public void upsertTasksBatch(List<TaskItem> tasks, Map<String, String> taskProjectIds) throws SQLException {
+        writeTasksBatch(UPSERT_TASK_SQL, tasks, taskProjectIds);
+    }
+
+    private void writeTasksBatch(String sql, List<TaskItem> tasks, Map<String, String> taskProjectIds) throws SQLException {
+        if (!isConnectionValid()) {
+            throw new SQLException("数据库连接不可用");
+        }
+        if (tasks.isEmpty()) return;
+
+        Map<String, Integer> codes = resolveDictionaryCodes(tasks);
+        if (taskShards != null) {
+            Map<Integer, List<TaskItem>> byShard = new HashMap<>();
+            for (TaskItem task : tasks) {
+                byShard.computeIfAbsent(taskShards.shardOf(taskProjectIds.get(task.getTaskId())),
+                        shard -> new ArrayList<>()).add(task);
             }
+            Map<Integer, TaskShards.ShardWork<?>> work = new HashMap<>();
+            byShard.forEach((shard, shardTasks) ->
+                    work.put(shard, shardConnection -> insertTasks(shardConnection, sql, shardTasks, taskProjectIds::get, codes)));
+            writeShards(work);
+            return;
+        }
+        synchronized (this) {
+            insertTasks(connection, sql, tasks, taskProjectIds::get, codes);
+        }
+    }
 
-            pstmt.executeUpdate();
+    // codes 为 resolveDictionaryCodes 的结果；在分片写线程上执行时不访问主数据库连接
+    private static Void insertTasks(Connection target, String sql, List<TaskItem> tasks,
+                                    Function<String, String> projectIdOf, Map<String, Integer> codes) throws SQLException {
+        try (PreparedStatement pstmt = target.prepareStatement(sql)) {
+            for (TaskItem task : tasks) {
+                bindTask(pstmt, task, projectIdOf.apply(task.getTaskId()), codes);
+                pstmt.addBatch();
+            }
+            pstmt.executeBatch();
+        }
+        return null;
+    }
+
+    private static void bindTask(PreparedStatement pstmt, TaskItem task, String projectId,
+                                 Map<String, Integer> codes) throws SQLException {
+        long state = task.getState();
+        pstmt.setString(1, task.getTaskId());
+        pstmt.setString(2, task.getTitle());
+        pstmt.setString(3, task.getDescription());
+        pstmt.setInt(4, task.getPriority().ordinal());
+        pstmt.setInt(5, TaskItem.statusOf(state).ordinal());
+        pstmt.setNull(6, Types.VARCHAR);
+        bindEpochDay(pstmt, 19, task.getDueDay());
+        pstmt.setDouble(7, TaskItem.progressOf(state));
+        pstmt.setLong(16, TaskItem.versionOf(state));
+        pstmt.setString(9, task.getAssignedTo() != null ? task.getAssignedTo().getMemberId() : null);
+        pstmt.setString(10, projectId);
+
+        if (task instanceof FeatureTask) {
+            FeatureTask featureTask = (FeatureTask) task;
+            pstmt.setString(8, "FEATURE");
+            pstmt.setInt(11, featureTask.getStoryPoints());
+            pstmt.setNull(12, Types.VARCHAR);
+            pstmt.setNull(13, Types.VARCHAR);
+            pstmt.setNull(14, Types.VARCHAR);
+            pstmt.setNull(15, Types.VARCHAR);
+            bindDictionaryCode(pstmt, 17, featureTask.getFeatureCategory(), codes);
+            pstmt.setNull(18, Types.INTEGER);
+        } else if (task instanceof BugReport) {
+            BugReport bugReport = (BugReport) task;
+            pstmt.setString(8, "BUG");
+            pstmt.setNull(11, Types.INTEGER);
+            pstmt.setNull(12, Types.VARCHAR);
+            pstmt.setInt(13, bugReport.getSeverity().ordinal());
+            pstmt.setString(14, bugReport.getStepsToReproduce());
+            pstmt.setNull(15, Types.VARCHAR);
+            pstmt.setNull(17, Types.INTEGER);
+            bindDictionaryCode(pstmt, 18, bugReport.getEnvironment(), codes);
+        }
+    }
+
+    private static void bindDictionaryCode(PreparedStatement pstmt, int index, String value,
+                                           Map<String, Integer> codes) throws SQLException {
+        if (value == null) {
+            pstmt.setNull(index, Types.INTEGER);
+        } else {
+            pstmt.setInt(index, codes.get(value));
+        }
+    }
+
+    // 在调用线程上取得任务中所有功能类别和运行环境的编码，之后写入任务行时不再访问主数据库连接
+    private Map<String, Integer> resolveDictionaryCodes(List<TaskItem> tasks) throws SQLException {
+        Map<String, Integer> codes = new HashMap<>();
+        for (TaskItem task : tasks) {
+            String value = task instanceof FeatureTask ? ((FeatureTask) task).getFeatureCategory()
+                    : task instanceof BugReport ? ((BugReport) task).getEnvironment() : null;
+            if (value != null && !codes.containsKey(value)) {
+                codes.put(value, dictionaryCode(value));
+            }
+        }
+        return codes;
+    }
+
+    /**
+     * 字符串在 string_dictionary 中的编码，不存在时新增；编码由 SQLite 分配，多个连接之间一致。
+     * 新增时持有本对象的锁：其他线程的 runInTransaction 进行中时等它结束，不会把字典项写进别人的事务。
+     */
+    private int dictionaryCode(String value) throws SQLException {
+        Integer cached = dictionaryCodes.get(value);
+        if (cached != null) return cached;
+        synchronized (this) {
+            return insertDictionaryCode(value);
+        }
+    }
+
+    private int insertDictionaryCode(String value) throws SQLException {
+        Integer cached = dictionaryCodes.get(value);
+        if (cached == null) cached = pendingDictionaryCodes.get(value);
+        if (cached != null) return cached;
+
+        try (PreparedStatement insert = connection.prepareStatement(
+                "INSERT OR IGNORE INTO string_dictionary (value) VALUES (?)")) {
+            insert.setString(1, value);
+            insert.executeUpdate();
+        }
+        try (PreparedStatement select = connection.prepareStatement(
+                "SELECT code FROM string_dictionary WHERE value = ?")) {
+            select.setString(1, value);
+            try (ResultSet rs = select.executeQuery()) {
+                rs.next();
+                int code = rs.getInt(1);
+                if (transactionDepth > 0) {
+                    pendingDictionaryCodes.put(value, code);
+                } else {
+                    dictionaryCodes.put(value, code);
+                }
+                return code;
+            }
+        }
+    }
+
+    // 读取整个字典，数组下标为编码
+    String[] readDictionary() throws SQLException {
+        try (Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT code, value FROM string_dictionary ORDER BY code")) {
+            String[] dictionary = new String[16];
+            while (rs.next()) {
+                int code = rs.getInt(1);
+                if (code >= dictionary.length) {
+                    dictionary = Arrays.copyOf(dictionary, Math.max(code + 1, dictionary.length * 2));
+                }
+                dictionary[code] = rs.getString(2);
+            }
+            return dictionary;
         }
     }
 
     public List<TaskItem> loadAllTasks(Map<String, TeamMember> membersMap) throws SQLException {
+        return loadAllTasks(membersMap, null);
+    }
+
+    // taskProjectIds 不为空时，同时收集 任务ID -> 项目ID 的对应关系
+    public List<TaskItem> loadAllTasks(Map<String, TeamMember> membersMap,
+                                       Map<String, String> taskProjectIds) throws SQLException {
         if (!isConnectionValid()) {
             throw new SQLException("数据库连接不可用");
         }
 
+        String[] dictionary = readDictionary();
+        if (taskShards == null) {
+            List<TaskItem> tasks = new ArrayList<>();
+            readTasks(connection, dictionary, membersMap, tasks, taskProjectIds);
+            return tasks;
+        }
+
+        // 分片存储：各分片同时读取，再按分片顺序合并
+        boolean withProjects = taskProjectIds != null;
+        List<Map.Entry<List<TaskItem>, Map<String, String>>> parts = taskShards.callEach(shard -> {
+            List<TaskItem> loaded = new ArrayList<>();
+            Map<String, String> loadedProjects = withProjects ? new HashMap<>() : null;
+            readTasks(shard, dictionary, membersMap, loaded, loadedProjects);
+            return new AbstractMap.SimpleImmutableEntry<>(loaded, loadedProjects);
+        });
         List<TaskItem> tasks = new ArrayList<>();
-        String sql = "SELECT * FROM tasks";
+        for (Map.Entry<List<TaskItem>, Map<String, String>> part : parts) {
+            tasks.addAll(part.getKey());
+            if (withProjects) {
+                taskProjectIds.putAll(part.getValue());
+            }
+        }
+        return tasks;
+    }
 
-        try (Statement stmt = connection.createStatement();
-             ResultSet rs = stmt.executeQuery(sql)) {
+    private static void readTasks(Connection source, String[] dictionary, Map<String, TeamMember> membersMap,
+                                  List<TaskItem> tasks, Map<String, String> taskProjectIds) throws SQLException {
+        try (Statement stmt = source.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT " + TASK_COLUMNS + " FROM tasks")) {
 
             while (rs.next()) {
-                String taskId = rs.getString("task_id");
-                String title = rs.getString("title");
-                String description = rs.getString("description");
-                Priority priority = Priority.valueOf(rs.getString("priority"));
-                TaskStatus status = TaskStatus.valueOf(rs.getString("status"));
-                LocalDate dueDate = LocalDate.parse(rs.getString("due_date"));
-                double progress = rs.getDouble("progress");
-                String taskType = rs.getString("task_type");
+                TaskItem task = readTaskRow(rs, dictionary);
                 String assignedToId = rs.getString("assigned_to");
+                task.setAssignedTo(assignedToId != null ? membersMap.get(assignedToId) : null);
+                tasks.add(task);
 
-                TeamMember assignedTo = assignedToId != null ? membersMap.get(assignedToId) : null;
-
-                TaskItem task;
-                if ("FEATURE".equals(taskType)) {
-                    int storyPoints = rs.getInt("story_points");
-                    String featureCategory = rs.getString("feature_category");
-                    task = new FeatureTask(taskId, title, description, priority, dueDate, storyPoints, featureCategory);
-                } else {
-                    Severity severity = Severity.valueOf(rs.getString("severity"));
-                    String stepsToReproduce = rs.getString("steps_to_reproduce");
-                    String environment = rs.getString("environment");
-                    task = new BugReport(taskId, title, description, priority, dueDate, severity, stepsToReproduce, environment);
+                if (taskProjectIds != null) {
+                    taskProjectIds.put(task.getTaskId(), rs.getString("project_id"));
                 }
+            }
+        }
+    }
 
-                task.setStatus(status);
-                task.setProgress(progress);
-                task.setAssignedTo(assignedTo);
-                tasks.add(task);
+    private static final Priority[] PRIORITIES = Priority.values();
+    private static final TaskStatus[] STATUSES = TaskStatus.values();
+    private static final Severity[] SEVERITIES = Severity.values();
+
+    // 把当前行解码为任务对象 (不设置负责人)，dictionary 为 readDictionary 的结果
+    static TaskItem readTaskRow(ResultSet rs, String[] dictionary) throws SQLException {
+        String taskId = rs.getString("task_id");
+        String title = rs.getString("title");
+        String description = rs.getString("description");
+        Priority priority = parseEnum(PRIORITIES, rs.getString("priority"));
+        TaskStatus status = parseEnum(STATUSES, rs.getString("status"));
+        double progress = rs.getDouble("progress");
+        String taskType = rs.getString("task_type");
+
+        TaskItem task;
+        if ("FEATURE".equals(taskType)) {
+            int storyPoints = rs.getInt("story_points");
+            String featureCategory = dictionaryValue(rs, "category_code", "feature_category", dictionary);
+            task = new FeatureTask(taskId, title, description, priority, null, storyPoints, featureCategory);
+        } else {
+            Severity severity = parseEnum(SEVERITIES, rs.getString("severity"));
+            String stepsToReproduce = rs.getString("steps_to_reproduce");
+            String environment = dictionaryValue(rs, "environment_code", "environment", dictionary);
+            task = new BugReport(taskId, title, description, priority, null, severity, stepsToReproduce, environment);
+        }
+        task.setDueDay(readEpochDay(rs, "due_epoch_day"));
+
+        task.restoreState(status, progress, rs.getLong("version"));
+        return task;
+    }
+
+    // 枚举列既可能是序号 (新格式) 也可能是名称 (旧数据)
+    static <E extends Enum<E>> E parseEnum(E[] values, String stored) {
+        if (stored == null) return null;
+        if (!stored.isEmpty() && Character.isDigit(stored.charAt(0))) {
+            return values[Integer.parseInt(stored)];
+        }
+        return Enum.valueOf(values[0].getDeclaringClass(), stored);
+    }
+
+    // 有字典编码时查字典，否则读取旧的文本列
+    private static String dictionaryValue(ResultSet rs, String codeColumn, String textColumn,
+                                          String[] dictionary) throws SQLException {
+        int code = rs.getInt(codeColumn);
+        if (rs.wasNull()) {
+            return rs.getString(textColumn);
+        }
+        return code < dictionary.length ? dictionary[code] : null;
+    }
+
+    // 任务行回调，row 数组在每行之间复用
+    @FunctionalInterface
+    public interface RowHandler {
+        void handle(String[] row) throws SQLException;
+    }
+
+    // 流式读取 tasks 表的指定列，不在内存中缓存结果集；分片存储时依次读取各分片
+    public void streamTaskRows(String[] columns, RowHandler handler) throws SQLException {
+        if (!isConnectionValid()) {
+            throw new SQLException("数据库连接不可用");
+        }
+
+        // 输出的始终是名称和原始字符串：额外读取字典编码列，再把序号和编码还原
+        String[] dictionary = readDictionary();
+        String sql = "SELECT " + String.join(", ", columns) + ", category_code, environment_code, "
+                + epochDayColumn("due_day", "due_date") + " AS due_epoch_day FROM tasks ORDER BY rowid";
+        String[] row = new String[columns.length];
+        if (taskShards == null) {
+            streamTaskRows(connection, sql, columns, dictionary, row, handler);
+            return;
+        }
+        // 在只读连接上读取，导出期间不占用分片的写线程
+        for (int i = 0; i < taskShards.size(); i++) {
+            try (Connection shard = openReadOnlyConnection(taskShards.url(i))) {
+                streamTaskRows(shard, sql, columns, dictionary, row, handler);
             }
         }
-        return tasks;
     }
 
-    public void updateTaskStatus(String taskId, TaskStatus status, double progress) throws SQLException {
+    private static void streamTaskRows(Connection source, String sql, String[] columns, String[] dictionary,
+                                       String[] row, RowHandler handler) throws SQLException {
+        try (Statement stmt = source.createStatement()) {
+            stmt.setFetchSize(1000);
+            try (ResultSet rs = stmt.executeQuery(sql)) {
+                while (rs.next()) {
+                    for (int i = 0; i < columns.length; i++) {
+                        row[i] = rs.getString(i + 1);
+                        switch (columns[i]) {
+                            case "priority":
+                                row[i] = enumName(PRIORITIES, row[i]);
+                                break;
+                            case "status":
+                                row[i] = enumName(STATUSES, row[i]);
+                                break;
+                            case "severity":
+                                row[i] = enumName(SEVERITIES, row[i]);
+                                break;
+                            case "feature_category":
+                                row[i] = dictionaryValue(rs, "category_code", "feature_category", dictionary);
+                                break;
+                            case "environment":
+                                row[i] = dictionaryValue(rs, "environment_code", "environment", dictionary);
+                                break;
+                            case "due_date":
+                                LocalDate dueDate = TaskItem.toLocalDate(readEpochDay(rs, "due_epoch_day"));
+                                row[i] = dueDate == null ? null : dueDate.toString();
+                                break;
+                            default:
+                                break;
+                        }
+                    }
+                    handler.handle(row);
+                }
+            }
+        }
+    }
+
+    private static <E extends Enum<E>> String enumName(E[] values, String stored) {
+        E value = parseEnum(values, stored);
+        return value == null ? null : value.name();
+    }
+
+    // 按版本号更新任务状态：只写入比数据库中更新的版本，避免并发写入时旧状态覆盖新状态
+    private static final String UPDATE_STATUS_SQL =
+            "UPDATE tasks SET status = ?, progress = ?, version = ? WHERE task_id = ? AND IFNULL(version, 0) < ?";
+
+    public void updateTaskStatus(String taskId, long state) throws SQLException {
         if (!isConnectionValid()) {
             throw new SQLException("数据库连接不可用");
         }
 
-        String sql = "UPDATE tasks SET status = ?, progress = ? WHERE task_id = ?";
-        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
-            pstmt.setString(1, status.toString());
-            pstmt.setDouble(2, progress);
-            pstmt.setString(3, taskId);
-            pstmt.executeUpdate();
+        if (taskShards != null) {
+            updateTaskStatesBatch(Collections.singletonMap(taskId, state));
+            return;
+        }
+        synchronized (this) {
+            try (PreparedStatement pstmt = connection.prepareStatement(UPDATE_STATUS_SQL)) {
+                bindStatusUpdate(pstmt, taskId, state);
+                pstmt.executeUpdate();
+            }
         }
     }
 
+    private static void bindStatusUpdate(PreparedStatement pstmt, String taskId, long state) throws SQLException {
+        long version = TaskItem.versionOf(state);
+        pstmt.setInt(1, TaskItem.statusOf(state).ordinal());
+        pstmt.setDouble(2, TaskItem.progressOf(state));
+        pstmt.setLong(3, version);
+        pstmt.setString(4, taskId);
+        pstmt.setLong(5, version);
+    }
+
     public void assignTask(String taskId, String memberId) throws SQLException {
         if (!isConnectionValid()) {
             throw new SQLException("数据库连接不可用");
         }
 
+        if (taskShards != null) {
+            writeAssignmentsBatch(Collections.singletonMap(taskId, memberId));
+            return;
+        }
+        synchronized (this) {
+            writeAssignments(connection, Collections.singletonList(taskId), Collections.singletonMap(taskId, memberId));
+        }
+    }
+
+    // 批量分配任务：在同一个事务中批量写入，失败时整体回滚
+    public void assignTasksBatch(Map<String, String> taskToMember) throws SQLException {
+        runInTransaction(() -> writeAssignmentsBatch(taskToMember));
+    }
+
+    // 批量写入任务分配 (不单独开启事务，由调用方决定事务边界)
+    public void writeAssignmentsBatch(Map<String, String> taskToMember) throws SQLException {
+        if (!isConnectionValid()) {
+            throw new SQLException("数据库连接不可用");
+        }
+        if (taskToMember.isEmpty()) return;
+
+        if (taskShards != null) {
+            Map<Integer, TaskShards.ShardWork<?>> work = new HashMap<>();
+            groupByShard(taskToMember.keySet()).forEach((shard, taskIds) ->
+                    work.put(shard, shardConnection -> writeAssignments(shardConnection, taskIds, taskToMember)));
+            writeShards(work);
+            return;
+        }
+        synchronized (this) {
+            writeAssignments(connection, taskToMember.keySet(), taskToMember);
+        }
+    }
+
+    private static Void writeAssignments(Connection target, Collection<String> taskIds,
+                                         Map<String, String> taskToMember) throws SQLException {
         String sql = "UPDATE tasks SET assigned_to = ? WHERE task_id = ?";
+        try (PreparedStatement pstmt = target.prepareStatement(sql)) {
+            for (String taskId : taskIds) {
+                pstmt.setString(1, taskToMember.get(taskId));
+                pstmt.setString(2, taskId);
+                pstmt.addBatch();
+            }
+            pstmt.executeBatch();
+        }
+        return null;
+    }
+
+    // 批量更新任务状态 (不单独开启事务，由调用方决定事务边界)
+    public void updateTaskStatusBatch(List<TaskItem> tasks) throws SQLException {
+        if (!isConnectionValid()) {
+            throw new SQLException("数据库连接不可用");
+        }
+        if (tasks.isEmpty()) return;
+
+        if (taskShards != null) {
+            Map<String, Long> taskStates = new LinkedHashMap<>();
+            for (TaskItem task : tasks) {
+                taskStates.put(task.getTaskId(), task.getState());
+            }
+            updateTaskStatesBatch(taskStates);
+            return;
+        }
+        synchronized (this) {
+            try (PreparedStatement pstmt = connection.prepareStatement(UPDATE_STATUS_SQL)) {
+                for (TaskItem task : tasks) {
+                    bindStatusUpdate(pstmt, task.getTaskId(), task.getState());
+                    pstmt.addBatch();
+                }
+                pstmt.executeBatch();
+            }
+        }
+    }
+
+    // 按 任务ID -> 打包状态字 批量更新状态 (不单独开启事务，由调用方决定事务边界)
+    public void updateTaskStatesBatch(Map<String, Long> taskStates) throws SQLException {
+        if (!isConnectionValid()) {
+            throw new SQLException("数据库连接不可用");
+        }
+        if (taskStates.isEmpty()) return;
+
+        if (taskShards != null) {
+            Map<Integer, TaskShards.ShardWork<?>> work = new HashMap<>();
+            groupByShard(taskStates.keySet()).forEach((shard, taskIds) ->
+                    work.put(shard, shardConnection -> writeTaskStates(shardConnection, taskIds, taskStates)));
+            writeShards(work);
+            return;
+        }
+        synchronized (this) {
+            writeTaskStates(connection, taskStates.keySet(), taskStates);
+        }
+    }
+
+    private static Void writeTaskStates(Connection target, Collection<String> taskIds,
+                                        Map<String, Long> taskStates) throws SQLException {
+        try (PreparedStatement pstmt = target.prepareStatement(UPDATE_STATUS_SQL)) {
+            for (String taskId : taskIds) {
+                bindStatusUpdate(pstmt, taskId, taskStates.get(taskId));
+                pstmt.addBatch();
+            }
+            pstmt.executeBatch();
+        }
+        return null;
+    }
+
+    // 按所在分片对任务ID分组；不知道所属项目的任务在每个分片中都执行 (不存在的行不受影响)
+    private Map<Integer, List<String>> groupByShard(Collection<String> taskIds) {
+        Map<Integer, List<String>> groups = new HashMap<>();
+        for (String taskId : taskIds) {
+            String projectId = taskProjectLookup.apply(taskId);
+            if (projectId != null) {
+                groups.computeIfAbsent(taskShards.shardOf(projectId), shard -> new ArrayList<>()).add(taskId);
+                continue;
+            }
+            for (int shard = 0; shard < taskShards.size(); shard++) {
+                groups.computeIfAbsent(shard, s -> new ArrayList<>()).add(taskId);
+            }
+        }
+        return groups;
+    }
+
+    /**
+     * 在分片的写线程上执行写操作，不需要本对象的锁。
+     * 处于 runInTransaction 中时，分片先加入本次事务 (取得分片写连接的使用权直到事务结束)；
+     * 事务外的写入等待正在使用该分片的事务结束后以自动提交方式执行。
+     */
+    private void writeShards(Map<Integer, TaskShards.ShardWork<?>> work) throws SQLException {
+        Set<Integer> transaction = transactionShards.get();
+        if (transaction == null) {
+            taskShards.writeAll(work);
+            return;
+        }
+        for (Integer shard : work.keySet()) {
+            if (transaction.contains(shard)) continue;
+            taskShards.acquire(shard);
+            try {
+                taskShards.call(shard, shardConnection -> {
+                    shardConnection.setAutoCommit(false);
+                    return null;
+                });
+            } catch (SQLException | RuntimeException e) {
+                taskShards.release(shard);
+                throw e;
+            }
+            transaction.add(shard);
+        }
+        taskShards.callAll(work);
+    }
+
+    // 批量保存成员 (新增或更新)
+    public synchronized void saveMembersBatch(Collection<TeamMember> members) throws SQLException {
+        if (!isConnectionValid()) {
+            throw new SQLException("数据库连接不可用");
+        }
+        if (members.isEmpty()) return;
+
+        String sql = SAVE_MEMBER_SQL;
+        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+            for (TeamMember member : members) {
+                pstmt.setString(1, member.getMemberId());
+                pstmt.setString(2, member.getName());
+                pstmt.setString(3, member.getRole().toString());
+                pstmt.setString(4, member.getEmail());
+                pstmt.setString(5, member.getPassword());
+                pstmt.addBatch();
+            }
+            pstmt.executeBatch();
+        }
+    }
+
+    // 批量保存项目基本信息 (新增或更新)，不改动项目成员关系
+    public synchronized void saveProjectsBatch(Collection<Project> projects) throws SQLException {
+        if (!isConnectionValid()) {
+            throw new SQLException("数据库连接不可用");
+        }
+        if (projects.isEmpty()) return;
+
+        String sql = SAVE_PROJECT_SQL;
         try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
-            pstmt.setString(1, memberId);
-            pstmt.setString(2, taskId);
+            for (Project project : projects) {
+                pstmt.setString(1, project.getProjectId());
+                pstmt.setString(2, project.getName());
+                pstmt.setString(3, project.getDescription());
+                bindEpochDay(pstmt, 4, project.getStartDay());
+                bindEpochDay(pstmt, 5, project.getDueDay());
+                pstmt.addBatch();
+            }
+            pstmt.executeBatch();
+        }
+    }
+
+    // 批量添加项目成员关系，projectMemberPairs 中每项为 {projectId, memberId}
+    public synchronized void addProjectMembersBatch(List<String[]> projectMemberPairs) throws SQLException {
+        if (!isConnectionValid()) {
+            throw new SQLException("数据库连接不可用");
+        }
+        if (projectMemberPairs.isEmpty()) return;
+
+        String sql = "INSERT OR IGNORE INTO project_members (project_id, member_id) VALUES (?, ?)";
+        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+            for (String[] pair : projectMemberPairs) {
+                pstmt.setString(1, pair[0]);
+                pstmt.setString(2, pair[1]);
+                pstmt.addBatch();
+            }
+            pstmt.executeBatch();
+        }
+    }
+
+    /**
+     * 基于 id_sequences 表的ID编号段来源。
+     * 序列第一次使用时，以表中现有ID的最大编号 + 1 作为起点。
+     *
+     * @param name     序列名
+     * @param table    对应的数据表
+     * @param idColumn 对应的ID列 (形如 "T001")
+     * @param prefix   ID的前缀 (如 "T")，其后是数字编号
+     */
+    public IdAllocator.BlockSource sequenceSource(String name, String table, String idColumn, String prefix) {
+        return new IdAllocator.BlockSource() {
+            @Override
+            public long reserve(int size) throws SQLException {
+                long[] start = new long[1];
+                // 先执行 UPDATE 获取写锁，保证多个进程之间预留的编号段不重叠
+                runInTransaction(() -> {
+                    try (PreparedStatement update = connection.prepareStatement(
+                            "UPDATE id_sequences SET next_value = next_value + ? WHERE name = ?")) {
+                        update.setLong(1, size);
+                        update.setString(2, name);
+                        if (update.executeUpdate() > 0) {
+                            start[0] = readSequence(name) - size;
+                            return;
+                        }
+                    }
+                    start[0] = maxIdNumber(table, idColumn, prefix) + 1;
+                    try (PreparedStatement insert = connection.prepareStatement(
+                            "INSERT INTO id_sequences (name, next_value) VALUES (?, ?)")) {
+                        insert.setString(1, name);
+                        insert.setLong(2, start[0] + size);
+                        insert.executeUpdate();
+                    }
+                });
+                return start[0];
+            }
+
+            @Override
+            public void advancePast(long value) throws SQLException {
+                runInTransaction(() -> {
+                    try (PreparedStatement update = connection.prepareStatement(
+                            "UPDATE id_sequences SET next_value = MAX(next_value, ?) WHERE name = ?")) {
+                        update.setLong(1, value + 1);
+                        update.setString(2, name);
+                        update.executeUpdate();
+                    }
+                });
+            }
+        };
+    }
+
+    private long readSequence(String name) throws SQLException {
+        try (PreparedStatement pstmt = connection.prepareStatement(
+                "SELECT next_value FROM id_sequences WHERE name = ?")) {
+            pstmt.setString(1, name);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next() ? rs.getLong(1) : 0;
+            }
+        }
+    }
+
+    // 表中现有ID数字部分的最大值，如 T001..T042 -> 42；分片存储的任务表取各分片中的最大值
+    private long maxIdNumber(String table, String idColumn, String prefix) throws SQLException {
+        long max = maxIdNumber(connection, table, idColumn, prefix);
+        if (taskShards != null && table.equals("tasks")) {
+            for (long shardMax : taskShards.callEach(shard -> maxIdNumber(shard, table, idColumn, prefix))) {
+                max = Math.max(max, shardMax);
+            }
+        }
+        return max;
+    }
+
+    // 只统计以 prefix 开头的ID，数字部分从前缀之后开始
+    private static long maxIdNumber(Connection source, String table, String idColumn, String prefix) throws SQLException {
+        String sql = "SELECT MAX(CAST(SUBSTR(" + idColumn + ", ?) AS INTEGER)) FROM " + table +
+                " WHERE SUBSTR(" + idColumn + ", 1, ?) = ?";
+        try (PreparedStatement pstmt = source.prepareStatement(sql)) {
+            pstmt.setInt(1, prefix.length() + 1);
+            pstmt.setInt(2, prefix.length());
+            pstmt.setString(3, prefix);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next() ? rs.getLong(1) : 0;
+            }
+        }
+    }
+
+    /**
+     * 归档任务：在一个事务中从任务表删除这些任务，并累加到各项目的归档汇总。
+     * 调用前任务必须已经写入归档分段文件。
+     *
+     * @param summary 项目ID -> {任务数, 进度之和}
+     */
+    public void archiveTasks(Collection<String> taskIds, Map<String, double[]> summary) throws SQLException {
+        runInTransaction(() -> {
+            if (taskShards != null) {
+                Map<Integer, TaskShards.ShardWork<?>> work = new HashMap<>();
+                groupByShard(taskIds).forEach((shard, shardTaskIds) ->
+                        work.put(shard, shardConnection -> deleteTasks(shardConnection, shardTaskIds)));
+                writeShards(work);
+            } else {
+                deleteTasks(connection, taskIds);
+            }
+            // 归档的任务不再参与进度计划，两个方向的依赖一起删除
+            try (PreparedStatement delete = connection.prepareStatement(
+                    "DELETE FROM task_dependencies WHERE task_id = ? OR blocked_by = ?")) {
+                for (String taskId : taskIds) {
+                    delete.setString(1, taskId);
+                    delete.setString(2, taskId);
+                    delete.addBatch();
+                }
+                delete.executeBatch();
+            }
+            try (PreparedStatement upsert = connection.prepareStatement(
+                    "INSERT INTO archive_summary (project_id, task_count, progress_sum) VALUES (?, ?, ?) " +
+                            "ON CONFLICT(project_id) DO UPDATE SET task_count = task_count + excluded.task_count, " +
+                            "progress_sum = progress_sum + excluded.progress_sum")) {
+                for (Map.Entry<String, double[]> entry : summary.entrySet()) {
+                    upsert.setString(1, entry.getKey());
+                    upsert.setLong(2, (long) entry.getValue()[0]);
+                    upsert.setDouble(3, entry.getValue()[1]);
+                    upsert.addBatch();
+                }
+                upsert.executeBatch();
+            }
+        });
+    }
+
+    private static Void deleteTasks(Connection target, Collection<String> taskIds) throws SQLException {
+        try (PreparedStatement delete = target.prepareStatement("DELETE FROM tasks WHERE task_id = ?")) {
+            for (String taskId : taskIds) {
+                delete.setString(1, taskId);
+                delete.addBatch();
+            }
+            delete.executeBatch();
+        }
+        return null;
+    }
+
+    // 各项目的归档汇总：项目ID -> {任务数, 进度之和}
+    public Map<String, double[]> loadArchiveSummary() throws SQLException {
+        Map<String, double[]> summary = new HashMap<>();
+        try (Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT project_id, task_count, progress_sum FROM archive_summary")) {
+            while (rs.next()) {
+                summary.put(rs.getString(1), new double[]{rs.getLong(2), rs.getDouble(3)});
+            }
+        }
+        return summary;
+    }
+
+    // 任务依赖
+    public synchronized void saveTaskDependency(String taskId, String blockedBy) throws SQLException {
+        try (PreparedStatement pstmt = connection.prepareStatement(
+                "INSERT OR IGNORE INTO task_dependencies (task_id, blocked_by) VALUES (?, ?)")) {
+            pstmt.setString(1, taskId);
+            pstmt.setString(2, blockedBy);
+            pstmt.executeUpdate();
+        }
+    }
+
+    public synchronized void deleteTaskDependency(String taskId, String blockedBy) throws SQLException {
+        try (PreparedStatement pstmt = connection.prepareStatement(
+                "DELETE FROM task_dependencies WHERE task_id = ? AND blocked_by = ?")) {
+            pstmt.setString(1, taskId);
+            pstmt.setString(2, blockedBy);
+            pstmt.executeUpdate();
+        }
+    }
+
+    // 批量保存依赖，每项为 {task_id, blocked_by}
+    public synchronized void saveTaskDependencies(Collection<String[]> dependencies) throws SQLException {
+        if (dependencies.isEmpty()) return;
+        try (PreparedStatement pstmt = connection.prepareStatement(
+                "INSERT OR IGNORE INTO task_dependencies (task_id, blocked_by) VALUES (?, ?)")) {
+            for (String[] dependency : dependencies) {
+                pstmt.setString(1, dependency[0]);
+                pstmt.setString(2, dependency[1]);
+                pstmt.addBatch();
+            }
+            pstmt.executeBatch();
+        }
+    }
+
+    // 批量删除依赖，每项为 {task_id, blocked_by}
+    public synchronized void deleteTaskDependencies(Collection<String[]> dependencies) throws SQLException {
+        if (dependencies.isEmpty()) return;
+        try (PreparedStatement pstmt = connection.prepareStatement(
+                "DELETE FROM task_dependencies WHERE task_id = ? AND blocked_by = ?")) {
+            for (String[] dependency : dependencies) {
+                pstmt.setString(1, dependency[0]);
+                pstmt.setString(2, dependency[1]);
+                pstmt.addBatch();
+            }
+            pstmt.executeBatch();
+        }
+    }
+
+    // 全部依赖，每项为 {task_id, blocked_by}
+    public List<String[]> loadTaskDependencies() throws SQLException {
+        List<String[]> dependencies = new ArrayList<>();
+        try (Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT task_id, blocked_by FROM task_dependencies")) {
+            while (rs.next()) {
+                dependencies.add(new String[]{rs.getString(1), rs.getString(2)});
+            }
+        }
+        return dependencies;
+    }
+
+    // 变更日志检查点
+    public long readJournalCheckpoint() throws SQLException {
+        try (Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT lsn FROM journal_checkpoint WHERE id = 1")) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+
+    private synchronized void writeJournalCheckpoint(long lsn) throws SQLException {
+        try (PreparedStatement pstmt = connection.prepareStatement(
+                "INSERT OR REPLACE INTO journal_checkpoint (id, lsn) VALUES (1, ?)")) {
+            pstmt.setLong(1, lsn);
             pstmt.executeUpdate();
         }
     }
 
+    /**
+     * 把变更日志中已封存的日志段合并写入数据库，并在同一事务中推进检查点，之后删除这些日志段。
+     * 合并时同一任务的多次修改只写入最后结果；状态更新带版本号检查，重复合并也不会写回旧状态。
+     *
+     * @return 合并的日志记录数
+     */
+    public int checkpointJournal(MutationJournal journal) throws SQLException, java.io.IOException {
+        List<java.nio.file.Path> sealed = journal.sealSegments();
+        if (sealed.isEmpty()) return 0;
+
+        long checkpoint = readJournalCheckpoint();
+        Map<String, TeamMember> savedMembers = new LinkedHashMap<>();
+        Map<String, Project> savedProjects = new LinkedHashMap<>();
+        Map<String, TaskItem> created = new LinkedHashMap<>();
+        Map<String, String> createdProjects = new HashMap<>();
+        Map<String, Long> states = new LinkedHashMap<>();
+        Map<String, String> assignments = new LinkedHashMap<>();
+        List<String[]> memberships = new ArrayList<>();
+        // 依赖 {task_id, blocked_by} -> 是否存在，同一条依赖以最后一次修改为准
+        Map<List<String>, Boolean> dependencies = new LinkedHashMap<>();
+        int[] records = new int[1];
+
+        long last = journal.read(sealed, checkpoint, new MutationJournal.RecordHandler() {
+            @Override
+            public void taskCreated(long lsn, TaskItem task, String projectId, String assigneeId) {
+                created.put(task.getTaskId(), task);
+                createdProjects.put(task.getTaskId(), projectId);
+                if (assigneeId != null) {
+                    assignments.put(task.getTaskId(), assigneeId);
+                }
+                records[0]++;
+            }
+
+            @Override
+            public void taskState(long lsn, String taskId, long state) {
+                states.merge(taskId, state, (a, b) -> TaskItem.versionOf(b) >= TaskItem.versionOf(a) ? b : a);
+                records[0]++;
+            }
+
+            @Override
+            public void taskAssigned(long lsn, String taskId, String memberId) {
+                assignments.put(taskId, memberId);
+                records[0]++;
+            }
+
+            @Override
+            public void memberAdded(long lsn, String projectId, String memberId) {
+                memberships.add(new String[]{projectId, memberId});
+                records[0]++;
+            }
+
+            @Override
+            public void memberSaved(long lsn, TeamMember member) {
+                savedMembers.put(member.getMemberId(), member);
+                records[0]++;
+            }
+
+            @Override
+            public void projectSaved(long lsn, Project project, List<String> memberIds) {
+                savedProjects.put(project.getProjectId(), project);
+                for (String memberId : memberIds) {
+                    memberships.add(new String[]{project.getProjectId(), memberId});
+                }
+                records[0]++;
+            }
+
+            @Override
+            public void dependencyAdded(long lsn, String taskId, String blockedBy) {
+                dependencies.put(List.of(taskId, blockedBy), true);
+                records[0]++;
+            }
+
+            @Override
+            public void dependencyRemoved(long lsn, String taskId, String blockedBy) {
+                dependencies.put(List.of(taskId, blockedBy), false);
+                records[0]++;
+            }
+        });
+
+        List<String[]> addedDependencies = new ArrayList<>();
+        List<String[]> removedDependencies = new ArrayList<>();
+        for (Map.Entry<List<String>, Boolean> entry : dependencies.entrySet()) {
+            String[] dependency = entry.getKey().toArray(new String[0]);
+            (entry.getValue() ? addedDependencies : removedDependencies).add(dependency);
+        }
+
+        if (last > checkpoint) {
+            // 先写成员和项目，任务和成员关系引用它们
+            runInTransaction(() -> {
+                saveMembersBatch(savedMembers.values());
+                saveProjectsBatch(savedProjects.values());
+                upsertTasksBatch(new ArrayList<>(created.values()), createdProjects);
+                updateTaskStatesBatch(states);
+                writeAssignmentsBatch(assignments);
+                addProjectMembersBatch(memberships);
+                saveTaskDependencies(addedDependencies);
+                deleteTaskDependencies(removedDependencies);
+                writeJournalCheckpoint(last);
+            });
+        }
+        journal.deleteSegments(sealed);
+        return records[0];
+    }
+
+    // 事务中执行的数据库操作
+    @FunctionalInterface
+    public interface SqlWork {
+        void execute() throws SQLException;
+    }
+
+    /*
+     * 在单个事务中执行一组操作，任一步失败则整体回滚。
+     * 分片存储时，事务中写到的分片各自开启事务，先提交分片再提交主数据库；
+     * 这不是两阶段提交，分片提交之后主数据库提交失败时两边可能不一致。
+     * 嵌套调用时并入外层事务，由最外层提交或回滚。
+     */
+    public synchronized void runInTransaction(SqlWork work) throws SQLException {
+        if (!isConnectionValid()) {
+            throw new SQLException("数据库连接不可用");
+        }
+        if (transactionDepth > 0) {
+            transactionDepth++;
+            try {
+                work.execute();
+            } finally {
+                transactionDepth--;
+            }
+            return;
+        }
+
+        boolean oldAutoCommit = connection.getAutoCommit();
+        Set<Integer> shards = new HashSet<>();
+        connection.setAutoCommit(false);
+        transactionDepth = 1;
+        if (taskShards != null) {
+            transactionShards.set(shards);
+        }
+        try {
+            work.execute();
+            endShardTransactions(shards, true);
+            connection.commit();
+            dictionaryCodes.putAll(pendingDictionaryCodes);
+        } catch (SQLException | RuntimeException e) {
+            try {
+                endShardTransactions(shards, false);
+            } catch (SQLException rollbackFailure) {
+                e.addSuppressed(rollbackFailure);
+            }
+            connection.rollback();
+            throw e;
+        } finally {
+            // 提交后已放入缓存；回滚时这些字典项已不存在
+            pendingDictionaryCodes.clear();
+            transactionShards.remove();
+            transactionDepth = 0;
+            connection.setAutoCommit(oldAutoCommit);
+        }
+    }
+
+    // 提交或回滚已加入事务的分片，并交还这些分片写连接的使用权
+    private void endShardTransactions(Set<Integer> shards, boolean commit) throws SQLException {
+        if (shards.isEmpty()) return;
+        List<Integer> owned = new ArrayList<>(shards);
+        Map<Integer, TaskShards.ShardWork<?>> work = new HashMap<>();
+        for (Integer shard : shards) {
+            work.put(shard, shardConnection -> {
+                try {
+                    if (commit) {
+                        shardConnection.commit();
+                    } else {
+                        shardConnection.rollback();
+                    }
+                } finally {
+                    shardConnection.setAutoCommit(true);
+                }
+                return null;
+            });
+        }
+        shards.clear();
+        try {
+            taskShards.callAll(work);
+        } finally {
+            for (Integer shard : owned) {
+                taskShards.release(shard);
+            }
+        }
+    }
+
     public Connection getConnection() {
         return connection;
     }
 
     public void close() {
+        if (taskShards != null && !sharedShards) {
+            taskShards.close();
+        }
         try {
             if (connection != null && !connection.isClosed()) {
                 connection.close();
@@ -0,0 +1,130 @@
+package edu.sbs.cs.database;
+
+import java.sql.SQLException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 按块预留的ID分配器 (hi/lo 方式)。
+ * 每次从序列表中预留一段连续编号，段内编号用 AtomicLong 无锁发放；
+ * 只有一段用完时才加锁去序列表申请下一段，因此创建对象时通常不需要访问数据库，
+ * 多线程和多进程之间也不会分到重复的ID。
+ * advancePast 在同一个 AtomicLong 上用 CAS 跳过编号，不替换编号段，与并发的 nextId 不会交错出重复编号。
+ */
+public class IdAllocator {
+    // 编号段的来源 (数据库序列表或内存计数器)
+    public interface BlockSource {
+        // 预留 size 个连续编号，返回第一个编号
+        long reserve(int size) throws SQLException;
+
+        // 保证之后预留的编号都大于 value
+        void advancePast(long value) throws SQLException;
+    }
+
+    // 一段已预留的编号 [next, limit)
+    private static final class Block {
+        private final AtomicLong next;
+        private final long limit;
+
+        Block(long start, long limit) {
+            this.next = new AtomicLong(start);
+            this.limit = limit;
+        }
+    }
+
+    private final String prefix;
+    private final int blockSize;
+    private final BlockSource source;
+    private volatile Block current = new Block(0, 0);
+
+    public IdAllocator(String prefix, int blockSize, BlockSource source) {
+        this.prefix = prefix;
+        this.blockSize = blockSize;
+        this.source = source;
+    }
+
+    // 不连接数据库时使用的内存分配器，从 firstValue 开始编号
+    public static IdAllocator inMemory(String prefix, long firstValue) {
+        AtomicLong counter = new AtomicLong(firstValue);
+        return new IdAllocator(prefix, 100, new BlockSource() {
+            @Override
+            public long reserve(int size) {
+                return counter.getAndAdd(size);
+            }
+
+            @Override
+            public void advancePast(long value) {
+                counter.accumulateAndGet(value + 1, Math::max);
+            }
+        });
+    }
+
+    /**
+     * 分配下一个ID。
+     *
+     * @throws IllegalStateException 当前编号段用完且向序列表预留新编号段失败时
+     */
+    public String nextId() {
+        while (true) {
+            Block block = current;
+            long value = block.next.getAndIncrement();
+            if (value < block.limit) {
+                return format(value);
+            }
+            refill(block);
+        }
+    }
+
+    private synchronized void refill(Block exhausted) {
+        if (current != exhausted) {
+            return; // 其他线程已经换了新的编号段
+        }
+        try {
+            long start = source.reserve(blockSize);
+            current = new Block(start, start + blockSize);
+        } catch (SQLException e) {
+            throw new IllegalStateException("预留ID编号段失败: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 外部写入了指定编号的ID (例如批量导入) 后调用，保证之后不会再分出 <= value 的编号。
+     * 与 refill 互斥 (不会换上预留早于本次推进的编号段)，但不阻塞 nextId。
+     */
+    public synchronized void advancePast(long value) {
+        try {
+            source.advancePast(value);
+        } catch (SQLException e) {
+            throw new IllegalStateException("更新ID序列失败: " + e.getMessage(), e);
+        }
+        // 当前编号段中 > value 的编号仍归本分配器所有，只需把段内计数推进到 value + 1；
+        // 推进超过 limit 时段被视为用完，下次 nextId 换新段
+        current.next.accumulateAndGet(value + 1, Math::max);
+    }
+
+    private String format(long value) {
+        // 与原来的 String.format("%03d") 保持一致的格式
+        String digits = Long.toString(value);
+        StringBuilder sb = new StringBuilder(prefix.length() + Math.max(3, digits.length()));
+        sb.append(prefix);
+        for (int i = digits.length(); i < 3; i++) {
+            sb.append('0');
+        }
+        return sb.append(digits).toString();
+    }
+
+    // 解析ID中的数字部分，如 "T042" -> 42；无法解析时返回 0
+    public static long parseNumber(String id) {
+        long value = 0;
+        boolean seenDigit = false;
+        for (int i = 0; i < id.length(); i++) {
+            char c = id.charAt(i);
+            if (c >= '0' && c <= '9') {
+                value = value * 10 + (c - '0');
+                seenDigit = true;
+            } else if (seenDigit) {
+                return 0;
+            }
+        }
+        return value;
+    }
+}
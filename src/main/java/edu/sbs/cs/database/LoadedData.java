@@ -0,0 +1,35 @@
+package edu.sbs.cs.database;
+
+import edu.sbs.cs.model.Project;
+import edu.sbs.cs.model.TaskItem;
+import edu.sbs.cs.model.TeamMember;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 启动时加载的全部数据 (来自快照或数据库)。
+ * 项目成员和任务负责人已经指向 members 中的同一实例。
+ */
+public final class LoadedData {
+    private final List<TeamMember> members;
+    private final List<Project> projects;
+    private final List<TaskItem> tasks;
+    private final Map<String, String> taskProjectIds;
+    private final List<String[]> dependencies;
+
+    LoadedData(List<TeamMember> members, List<Project> projects, List<TaskItem> tasks,
+               Map<String, String> taskProjectIds, List<String[]> dependencies) {
+        this.members = members;
+        this.projects = projects;
+        this.tasks = tasks;
+        this.taskProjectIds = taskProjectIds;
+        this.dependencies = dependencies;
+    }
+
+    public List<TeamMember> getMembers() { return members; }
+    public List<Project> getProjects() { return projects; }
+    public List<TaskItem> getTasks() { return tasks; }
+    public Map<String, String> getTaskProjectIds() { return taskProjectIds; }
+    // 任务依赖，每项为 {taskId, blockerId}
+    public List<String[]> getDependencies() { return dependencies; }
+}
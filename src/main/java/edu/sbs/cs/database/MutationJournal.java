@@ -0,0 +1,498 @@
+package edu.sbs.cs.database;
+
+import edu.sbs.cs.model.Project;
+import edu.sbs.cs.model.Role;
+import edu.sbs.cs.model.TaskItem;
+import edu.sbs.cs.model.TeamMember;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * 只追加的变更日志 (预写日志)。
+ * 每次变更编码为一条二进制记录，追加到内存缓冲区后由同步线程顺序写入日志文件并 fsync；
+ * 同一次 fsync 覆盖这段时间内所有线程追加的记录 (组提交)，调用方用 awaitDurable 等待自己的记录落盘。
+ * SQLite 数据库作为检查点：定期把已封存的日志段合并写入数据库，再删除这些日志段；
+ * 启动时先从数据库加载，再回放检查点之后的日志记录。
+ *
+ * 记录格式: [int 负载长度][long 序号][byte 类型][负载][int CRC32C(序号、类型、负载)]
+ * 日志段文件: journal-&lt;首条记录序号&gt;.log
+ */
+public class MutationJournal implements AutoCloseable {
+    public static final byte TASK_CREATED = 1;
+    public static final byte TASK_STATE = 2;
+    public static final byte TASK_ASSIGNED = 3;
+    public static final byte MEMBER_ADDED = 4;
+    public static final byte MEMBER_SAVED = 5;
+    public static final byte PROJECT_SAVED = 6;
+    // 7 已被复制协议的 TASKS_ARCHIVED 使用
+    public static final byte DEPENDENCY_ADDED = 8;
+    public static final byte DEPENDENCY_REMOVED = 9;
+
+    private static final String SEGMENT_PREFIX = "journal-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final int HEADER_SIZE = 4 + 8 + 1;
+    private static final int RECORD_OVERHEAD = HEADER_SIZE + 4;
+    private static final int BUFFER_SIZE = 256 * 1024;
+
+    // 回放日志记录的回调
+    public interface RecordHandler {
+        void taskCreated(long lsn, TaskItem task, String projectId, String assigneeId);
+
+        void taskState(long lsn, String taskId, long state);
+
+        void taskAssigned(long lsn, String taskId, String memberId);
+
+        void memberAdded(long lsn, String projectId, String memberId);
+
+        void memberSaved(long lsn, TeamMember member);
+
+        // memberIds 为记录时项目的全部成员
+        void projectSaved(long lsn, Project project, List<String> memberIds);
+
+        void dependencyAdded(long lsn, String taskId, String blockedBy);
+
+        void dependencyRemoved(long lsn, String taskId, String blockedBy);
+    }
+
+    private static final Role[] ROLES = Role.values();
+
+    private final Path directory;
+    private final Thread syncThread;
+
+    // 追加锁：保护序号和当前缓冲区
+    private final Object appendLock = new Object();
+    private ByteBuffer activeBuffer = ByteBuffer.allocate(BUFFER_SIZE);
+    private ByteBuffer spareBuffer = ByteBuffer.allocate(BUFFER_SIZE);
+    private long lastLsn;
+
+    // IO 锁：保护日志文件 (写入、fsync、切换日志段)
+    private final Object ioLock = new Object();
+    private FileChannel channel;
+    private Path activeSegment;
+
+    // 已经 fsync 的最大序号
+    private final Object syncLock = new Object();
+    private long syncedLsn;
+    private volatile boolean running = true;
+    private volatile boolean closed;
+    private volatile IOException syncFailure;
+
+    private final CRC32C crc = new CRC32C();
+
+    /**
+     * @param directory     日志目录
+     * @param checkpointLsn 数据库检查点已包含的最大序号，新记录的序号从更大的值开始
+     */
+    public MutationJournal(Path directory, long checkpointLsn) throws IOException {
+        this.directory = directory;
+        Files.createDirectories(directory);
+
+        long last = checkpointLsn;
+        List<Path> segments = listSegments();
+        if (!segments.isEmpty()) {
+            // 最后一个日志段可能在写入时进程退出，截掉末尾不完整的记录
+            Path tail = segments.get(segments.size() - 1);
+            long[] scan = scanSegment(tail);
+            try (FileChannel tailChannel = FileChannel.open(tail, StandardOpenOption.WRITE)) {
+                tailChannel.truncate(scan[0]);
+            }
+            if (scan[1] > 0) last = Math.max(last, scan[1]);
+        }
+        this.lastLsn = last;
+        this.syncedLsn = last;
+        openSegment(last + 1);
+
+        this.syncThread = new Thread(this::runSync, "journal-sync");
+        this.syncThread.setDaemon(true);
+        this.syncThread.start();
+    }
+
+    // 按首条记录序号排序的日志段
+    private List<Path> listSegments() throws IOException {
+        List<Path> segments = new ArrayList<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            files.filter(p -> {
+                String name = p.getFileName().toString();
+                return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX);
+            }).forEach(segments::add);
+        }
+        segments.sort((a, b) -> Long.compare(segmentStart(a), segmentStart(b)));
+        return segments;
+    }
+
+    private static long segmentStart(Path segment) {
+        String name = segment.getFileName().toString();
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    private void openSegment(long firstLsn) throws IOException {
+        activeSegment = directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, firstLsn, SEGMENT_SUFFIX));
+        channel = FileChannel.open(activeSegment, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    // 追加记录：返回记录序号，记录是否已落盘用 awaitDurable 确认
+    public long appendTaskCreated(TaskItem task, String projectId) {
+        int maxSize = TaskCodec.maxEncodedSize(task) + TaskCodec.maxStringSize(projectId);
+        synchronized (appendLock) {
+            int start = beginRecord(maxSize, TASK_CREATED);
+            TaskCodec.writeString(activeBuffer, projectId);
+            TaskCodec.writeTask(activeBuffer, task);
+            return endRecord(start);
+        }
+    }
+
+    public long appendTaskState(String taskId, long state) {
+        synchronized (appendLock) {
+            int start = beginRecord(TaskCodec.maxStringSize(taskId) + 8, TASK_STATE);
+            TaskCodec.writeString(activeBuffer, taskId);
+            activeBuffer.putLong(state);
+            return endRecord(start);
+        }
+    }
+
+    public long appendTaskAssigned(String taskId, String memberId) {
+        synchronized (appendLock) {
+            int start = beginRecord(TaskCodec.maxStringSize(taskId) + TaskCodec.maxStringSize(memberId), TASK_ASSIGNED);
+            TaskCodec.writeString(activeBuffer, taskId);
+            TaskCodec.writeString(activeBuffer, memberId);
+            return endRecord(start);
+        }
+    }
+
+    public long appendMemberAdded(String projectId, String memberId) {
+        synchronized (appendLock) {
+            int start = beginRecord(TaskCodec.maxStringSize(projectId) + TaskCodec.maxStringSize(memberId), MEMBER_ADDED);
+            TaskCodec.writeString(activeBuffer, projectId);
+            TaskCodec.writeString(activeBuffer, memberId);
+            return endRecord(start);
+        }
+    }
+
+    public long appendMemberSaved(TeamMember member) {
+        int maxSize = 1 + TaskCodec.maxStringSize(member.getMemberId()) + TaskCodec.maxStringSize(member.getName())
+                + TaskCodec.maxStringSize(member.getEmail()) + TaskCodec.maxStringSize(member.getPassword());
+        synchronized (appendLock) {
+            int start = beginRecord(maxSize, MEMBER_SAVED);
+            TaskCodec.writeString(activeBuffer, member.getMemberId());
+            TaskCodec.writeString(activeBuffer, member.getName());
+            activeBuffer.put((byte) member.getRole().ordinal());
+            TaskCodec.writeString(activeBuffer, member.getEmail());
+            TaskCodec.writeString(activeBuffer, member.getPassword());
+            return endRecord(start);
+        }
+    }
+
+    public long appendProjectSaved(Project project) {
+        int maxSize = TaskCodec.maxStringSize(project.getProjectId()) + TaskCodec.maxStringSize(project.getName())
+                + TaskCodec.maxStringSize(project.getDescription()) + 4 + 4 + 4;
+        List<TeamMember> projectMembers = new ArrayList<>(project.getMembers());
+        for (TeamMember member : projectMembers) {
+            maxSize += TaskCodec.maxStringSize(member.getMemberId());
+        }
+        synchronized (appendLock) {
+            int start = beginRecord(maxSize, PROJECT_SAVED);
+            TaskCodec.writeString(activeBuffer, project.getProjectId());
+            TaskCodec.writeString(activeBuffer, project.getName());
+            TaskCodec.writeString(activeBuffer, project.getDescription());
+            activeBuffer.putInt(project.getStartDay()).putInt(project.getDueDay());
+            activeBuffer.putInt(projectMembers.size());
+            for (TeamMember member : projectMembers) {
+                TaskCodec.writeString(activeBuffer, member.getMemberId());
+            }
+            return endRecord(start);
+        }
+    }
+
+    public long appendDependencyAdded(String taskId, String blockedBy) {
+        return appendDependency(DEPENDENCY_ADDED, taskId, blockedBy);
+    }
+
+    public long appendDependencyRemoved(String taskId, String blockedBy) {
+        return appendDependency(DEPENDENCY_REMOVED, taskId, blockedBy);
+    }
+
+    private long appendDependency(byte type, String taskId, String blockedBy) {
+        synchronized (appendLock) {
+            int start = beginRecord(TaskCodec.maxStringSize(taskId) + TaskCodec.maxStringSize(blockedBy), type);
+            TaskCodec.writeString(activeBuffer, taskId);
+            TaskCodec.writeString(activeBuffer, blockedBy);
+            return endRecord(start);
+        }
+    }
+
+    // 在当前缓冲区写入记录头，负载长度在 endRecord 中回填
+    private int beginRecord(int maxPayload, byte type) {
+        if (activeBuffer.remaining() < maxPayload + RECORD_OVERHEAD) {
+            ByteBuffer larger = ByteBuffer.allocate(Math.max(activeBuffer.capacity() * 2,
+                    activeBuffer.position() + maxPayload + RECORD_OVERHEAD));
+            activeBuffer.flip();
+            larger.put(activeBuffer);
+            activeBuffer = larger;
+        }
+        int start = activeBuffer.position();
+        activeBuffer.putInt(0).putLong(lastLsn + 1).put(type);
+        return start;
+    }
+
+    private long endRecord(int start) {
+        int payloadLength = activeBuffer.position() - start - HEADER_SIZE;
+        activeBuffer.putInt(start, payloadLength);
+        crc.reset();
+        crc.update(activeBuffer.array(), start + 4, 8 + 1 + payloadLength);
+        activeBuffer.putInt((int) crc.getValue());
+        lastLsn++;
+        appendLock.notifyAll(); // 唤醒同步线程
+        return lastLsn;
+    }
+
+    /**
+     * 等待序号不超过 lsn 的记录全部 fsync 到磁盘。
+     */
+    public void awaitDurable(long lsn) throws IOException {
+        synchronized (syncLock) {
+            while (syncedLsn < lsn) {
+                if (syncFailure != null) throw syncFailure;
+                if (closed) throw new IOException("变更日志已关闭");
+                try {
+                    syncLock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("等待变更日志落盘时被中断");
+                }
+            }
+        }
+    }
+
+    // 同步线程：有新记录时写入文件并 fsync，一次 fsync 覆盖期间追加的所有记录
+    private void runSync() {
+        while (true) {
+            synchronized (appendLock) {
+                while (running && activeBuffer.position() == 0) {
+                    try {
+                        appendLock.wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (!running && activeBuffer.position() == 0) return;
+            }
+            try {
+                flushAndSync(false);
+            } catch (IOException e) {
+                System.err.println("写入变更日志失败: " + e.getMessage());
+                synchronized (syncLock) {
+                    syncFailure = e;
+                    syncLock.notifyAll();
+                }
+                return;
+            }
+        }
+    }
+
+    // 交换缓冲区后写入文件并 fsync；rotate 为 true 时随后切换到新的日志段
+    private void flushAndSync(boolean rotate) throws IOException {
+        long target;
+        synchronized (ioLock) {
+            ByteBuffer pending;
+            synchronized (appendLock) {
+                pending = activeBuffer;
+                activeBuffer = spareBuffer;
+                activeBuffer.clear();
+                spareBuffer = pending;
+                target = lastLsn;
+            }
+            pending.flip();
+            while (pending.hasRemaining()) {
+                channel.write(pending);
+            }
+            pending.clear();
+            channel.force(false);
+            if (rotate) {
+                channel.close();
+                openSegment(target + 1);
+            }
+        }
+        synchronized (syncLock) {
+            syncedLsn = Math.max(syncedLsn, target);
+            syncLock.notifyAll();
+        }
+    }
+
+    /**
+     * 封存当前日志段 (之后的记录写入新段)，返回所有已封存的日志段，供检查点合并。
+     */
+    public List<Path> sealSegments() throws IOException {
+        flushAndSync(true);
+        List<Path> sealed = listSegments();
+        synchronized (ioLock) {
+            sealed.remove(activeSegment);
+        }
+        return sealed;
+    }
+
+    public void deleteSegments(List<Path> segments) throws IOException {
+        for (Path segment : segments) {
+            Files.deleteIfExists(segment);
+        }
+    }
+
+    /**
+     * 按顺序回放所有日志段中序号大于 afterLsn 的记录 (启动时使用)。
+     *
+     * @return 回放的最后一条记录序号，没有记录时返回 afterLsn
+     */
+    public long replay(long afterLsn, RecordHandler handler) throws IOException {
+        return read(listSegments(), afterLsn, handler);
+    }
+
+    /**
+     * 读取指定日志段中序号大于 afterLsn 的记录。遇到不完整或校验失败的记录时停止读取该段。
+     *
+     * @return 读到的最后一条记录序号，没有记录时返回 afterLsn
+     */
+    public long read(List<Path> segments, long afterLsn, RecordHandler handler) throws IOException {
+        long last = afterLsn;
+        String[] assignee = new String[1];
+        TaskCodec.Decoder decoder = new TaskCodec.Decoder();
+        CRC32C checksum = new CRC32C();
+        for (Path segment : segments) {
+            MappedByteBuffer map = mapSegment(segment);
+            if (map == null) continue;
+            while (map.remaining() >= RECORD_OVERHEAD) {
+                int start = map.position();
+                int payloadLength = map.getInt();
+                if (payloadLength < 0 || map.remaining() < 8 + 1 + payloadLength + 4) break;
+                long lsn = map.getLong();
+                byte type = map.get();
+                int payloadStart = map.position();
+
+                checksum.reset();
+                checksum.update(map.duplicate().position(start + 4).limit(payloadStart + payloadLength));
+                map.position(payloadStart + payloadLength);
+                if ((int) checksum.getValue() != map.getInt()) break;
+                if (lsn <= afterLsn) continue;
+
+                ByteBuffer payload = map.duplicate().position(payloadStart).limit(payloadStart + payloadLength);
+                switch (type) {
+                    case TASK_CREATED: {
+                        String projectId = decoder.readString(payload);
+                        TaskItem task = decoder.readTask(payload, assignee);
+                        handler.taskCreated(lsn, task, projectId, assignee[0]);
+                        break;
+                    }
+                    case TASK_STATE:
+                        handler.taskState(lsn, decoder.readString(payload), payload.getLong());
+                        break;
+                    case TASK_ASSIGNED:
+                        handler.taskAssigned(lsn, decoder.readString(payload), decoder.readString(payload));
+                        break;
+                    case MEMBER_ADDED:
+                        handler.memberAdded(lsn, decoder.readString(payload), decoder.readString(payload));
+                        break;
+                    case MEMBER_SAVED: {
+                        String memberId = decoder.readString(payload);
+                        String name = decoder.readString(payload);
+                        Role role = ROLES[payload.get()];
+                        handler.memberSaved(lsn, new TeamMember(memberId, name, role,
+                                decoder.readString(payload), decoder.readString(payload)));
+                        break;
+                    }
+                    case PROJECT_SAVED: {
+                        Project project = new Project(decoder.readString(payload), decoder.readString(payload),
+                                decoder.readString(payload), null);
+                        project.setStartDay(payload.getInt());
+                        project.setDueDay(payload.getInt());
+                        int memberCount = payload.getInt();
+                        List<String> memberIds = new ArrayList<>(memberCount);
+                        for (int i = 0; i < memberCount; i++) {
+                            memberIds.add(decoder.readString(payload));
+                        }
+                        handler.projectSaved(lsn, project, memberIds);
+                        break;
+                    }
+                    case DEPENDENCY_ADDED:
+                        handler.dependencyAdded(lsn, decoder.readString(payload), decoder.readString(payload));
+                        break;
+                    case DEPENDENCY_REMOVED:
+                        handler.dependencyRemoved(lsn, decoder.readString(payload), decoder.readString(payload));
+                        break;
+                    default:
+                        System.err.println("未知的变更日志记录类型: " + type);
+                }
+                last = lsn;
+            }
+        }
+        return last;
+    }
+
+    // 扫描日志段，返回 {完整记录的结束偏移, 最后一条记录序号}
+    private static long[] scanSegment(Path segment) throws IOException {
+        long[] result = {0, 0};
+        MappedByteBuffer map = mapSegment(segment);
+        if (map == null) return result;
+        CRC32C checksum = new CRC32C();
+        while (map.remaining() >= RECORD_OVERHEAD) {
+            int start = map.position();
+            int payloadLength = map.getInt();
+            if (payloadLength < 0 || map.remaining() < 8 + 1 + payloadLength + 4) break;
+            long lsn = map.getLong();
+            checksum.reset();
+            checksum.update(map.duplicate().position(start + 4).limit(start + HEADER_SIZE + payloadLength));
+            map.position(start + HEADER_SIZE + payloadLength);
+            if ((int) checksum.getValue() != map.getInt()) break;
+            result[0] = map.position();
+            result[1] = lsn;
+        }
+        return result;
+    }
+
+    private static MappedByteBuffer mapSegment(Path segment) throws IOException {
+        if (!Files.exists(segment)) return null;
+        try (FileChannel readChannel = FileChannel.open(segment, StandardOpenOption.READ)) {
+            long size = readChannel.size();
+            if (size == 0) return null;
+            return readChannel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+    }
+
+    public long getLastLsn() {
+        synchronized (appendLock) {
+            return lastLsn;
+        }
+    }
+
+    /**
+     * 写完并 fsync 所有已追加的记录后关闭日志文件。
+     */
+    @Override
+    public void close() {
+        synchronized (appendLock) {
+            running = false;
+            appendLock.notifyAll();
+        }
+        try {
+            syncThread.join(5000);
+            flushAndSync(false);
+            synchronized (ioLock) {
+                channel.close();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            System.err.println("关闭变更日志失败: " + e.getMessage());
+            syncFailure = e;
+        }
+        synchronized (syncLock) {
+            closed = true;
+            syncLock.notifyAll();
+        }
+    }
+}
@@ -0,0 +1,626 @@
+package edu.sbs.cs.database;
+
+import java.nio.file.Path;
+import java.sql.*;
+import java.util.*;
+
+/**
+ * 在线增量备份：应用运行期间 (包括另一个进程正在写入时) 把数据库复制到备份文件，不阻塞写入。
+ * 每个源数据库文件 (主数据库和各任务分片) 在备份中记录已备份到的变更序号 (见 ChangeTracking)，
+ * 下次只复制序号更大的行和删除记录。分片中的任务合并到备份的同一张任务表，备份本身是一个未分片的数据库。
+ *
+ * 每个源文件分两个阶段：
+ *   1. 追赶：每批最多 -Dteam.backup.batchRows 行 (默认 500)，每批是源库上一次很短的读取，
+ *      两批之间至少暂停 -Dteam.backup.pauseMs (默认 20 ms) 并且不少于该批的耗时，备份最多占用一半的数据库时间；
+ *   2. 收尾：在源库的一个读事务中复制追赶期间新产生的少量变更，备份因此对应该文件某一时刻的一致状态。
+ * 不同源文件的时刻不同 (例如项目与分片中的任务)，与各分片独立提交的写入方式一致。
+ * 每个源文件在自己的 backup_targets 中记录各备份文件已备份到的序号，删除记录只清除到其中最小的序号，
+ * 同一个数据库可以增量备份到多个备份文件。超过 -Dteam.backup.targetRetentionDays (默认 30 天) 没有备份的
+ * 备份文件不再阻止清除；之后再备份到该文件时，源库已经不保证保留所需的删除记录，该源文件在备份中从头重建。
+ */
+public class OnlineBackup {
+    // 不跟踪变更的小表，每次在收尾阶段整表复制
+    private static final String[] SMALL_TABLES = {"string_dictionary", "id_sequences", "archive_summary"};
+    private static final int MAX_CATCH_UP_ROUNDS = 20;
+    private static final int MAX_REPORTED_PROBLEMS = 10;
+
+    private final DatabaseManager databaseManager;
+    private final Path backupFile;
+    private final int batchRows;
+    private final long pauseMs;
+    private final long targetRetentionMillis;
+    // 在源库 backup_targets 中标识本备份文件
+    private final String target;
+
+    public OnlineBackup(DatabaseManager databaseManager, Path backupFile) {
+        this.databaseManager = databaseManager;
+        this.backupFile = backupFile;
+        this.batchRows = Math.max(1, Integer.getInteger("team.backup.batchRows", 500));
+        this.pauseMs = Long.getLong("team.backup.pauseMs", 20);
+        this.targetRetentionMillis = Long.getLong("team.backup.targetRetentionDays", 30) * 86_400_000L;
+        this.target = backupFile.toAbsolutePath().normalize().toString();
+    }
+
+    // 源数据库文件: 名称 -> 连接地址
+    private Map<String, String> sources() {
+        Map<String, String> sources = new LinkedHashMap<>();
+        sources.put("main", DatabaseManager.databaseUrl());
+        List<String> shardUrls = databaseManager.taskShardUrls();
+        for (int i = 0; i < shardUrls.size(); i++) {
+            sources.put("shard-" + i, shardUrls.get(i));
+        }
+        return sources;
+    }
+
+    private static String[] tablesOf(String source) {
+        return source.equals("main") ? ChangeTracking.TABLES : new String[]{"tasks"};
+    }
+
+    private Connection openBackup() throws SQLException {
+        Path parent = backupFile.toAbsolutePath().getParent();
+        if (parent != null) {
+            parent.toFile().mkdirs();
+        }
+        return DriverManager.getConnection("jdbc:sqlite:" + backupFile);
+    }
+
+    /**
+     * 执行一次增量备份 (第一次为完整备份)。
+     *
+     * @return 复制的行数 (包括应用的删除记录)
+     */
+    public long run() throws SQLException {
+        long start = System.nanoTime();
+        long copied = 0;
+        try (Connection backup = openBackup()) {
+            try (Statement stmt = backup.createStatement()) {
+                stmt.execute("CREATE TABLE IF NOT EXISTS backup_state (" +
+                        "source TEXT PRIMARY KEY, change_seq INTEGER NOT NULL, backed_up_at TEXT NOT NULL)");
+            }
+            // 表结构取自主数据库 (分片的任务表没有外键)
+            try (Connection main = DriverManager.getConnection(DatabaseManager.databaseUrl())) {
+                for (String table : ChangeTracking.TABLES) {
+                    prepareTable(main, backup, table, true);
+                }
+            }
+            // 先备份分片再备份主数据库：成员和项目不会被删除，分片中任务引用的成员和项目在主数据库备份时一定存在
+            List<Map.Entry<String, String>> sources = new ArrayList<>(sources().entrySet());
+            Collections.reverse(sources);
+            for (Map.Entry<String, String> source : sources) {
+                try (Connection connection = DriverManager.getConnection(source.getValue())) {
+                    copied += backupSource(source.getKey(), connection, backup);
+                }
+            }
+        }
+        System.out.printf("备份完成: %s, 复制 %d 行, 耗时 %.1f ms%n",
+                backupFile, copied, (System.nanoTime() - start) / 1_000_000.0);
+        return copied;
+    }
+
+    private long backupSource(String source, Connection connection, Connection backup) throws SQLException {
+        String[] tables = tablesOf(source);
+        List<List<String>> columns = new ArrayList<>(tables.length);
+        for (String table : tables) {
+            columns.add(prepareTable(connection, backup, table, true));
+        }
+        if (source.equals("main")) {
+            for (String table : SMALL_TABLES) {
+                prepareTable(connection, backup, table, false);
+            }
+        }
+
+        long watermark = registerTarget(connection, readWatermark(backup, source));
+        if (watermark < 0) {
+            clearSource(backup, source, tables);
+        }
+        // 每张表和删除记录各自复制到的序号 (下标 tables.length 为删除记录)
+        long[] progress = new long[tables.length + 1];
+        Arrays.fill(progress, watermark);
+        Map<String, PreparedStatement> deletes = new HashMap<>();
+        long copied = 0;
+        try {
+            // 第一阶段：分批追赶，直到一轮中新产生的变更不足一批
+            for (int round = 0; round < MAX_CATCH_UP_ROUNDS; round++) {
+                long roundRows = 0;
+                for (int i = 0; i <= tables.length; i++) {
+                    int rows;
+                    do {
+                        long batchStart = System.nanoTime();
+                        backup.setAutoCommit(false);
+                        rows = i < tables.length
+                                ? copyRows(connection, backup, source, tables[i], columns.get(i), progress, i, batchRows)
+                                : applyTombstones(connection, backup, source, deletes, progress, i, batchRows);
+                        backup.commit();
+                        backup.setAutoCommit(true);
+                        roundRows += rows;
+                        if (rows > 0) {
+                            throttle(System.nanoTime() - batchStart);
+                        }
+                    } while (rows == batchRows);
+                }
+                copied += roundRows;
+                if (roundRows < batchRows) break;
+            }
+
+            // 第二阶段：源库上的一个读事务，复制剩余的变更并记录此刻的序号
+            long sequence;
+            connection.setAutoCommit(false);
+            backup.setAutoCommit(false);
+            try {
+                sequence = readSequence(connection);
+                for (int i = 0; i < tables.length; i++) {
+                    copied += copyRows(connection, backup, source, tables[i], columns.get(i), progress, i, 0);
+                }
+                copied += applyTombstones(connection, backup, source, deletes, progress, tables.length, 0);
+                if (source.equals("main")) {
+                    for (String table : SMALL_TABLES) {
+                        copyWholeTable(connection, backup, table);
+                    }
+                }
+                writeWatermark(backup, source, sequence);
+                backup.commit();
+            } catch (SQLException e) {
+                backup.rollback();
+                throw e;
+            } finally {
+                connection.commit();
+                connection.setAutoCommit(true);
+                backup.setAutoCommit(true);
+            }
+
+            pruneTombstones(connection, sequence);
+        } finally {
+            for (PreparedStatement delete : deletes.values()) {
+                delete.close();
+            }
+        }
+        return copied;
+    }
+
+    /*
+     * 在源库登记本备份文件，返回本次从哪个序号之后开始复制。源库中没有本备份的登记 (第一次备份、
+     * 登记已过期或升级前的备份)，或登记的序号比备份中的新 (备份文件被换成了旧的副本) 时返回 -1：
+     * 所需的删除记录可能已被清除，该源文件需要从头复制。
+     * 登记在复制之前完成，备份进行期间其他备份的清除不会删掉本备份还需要的删除记录。
+     */
+    private long registerTarget(Connection connection, long watermark) throws SQLException {
+        connection.setAutoCommit(false);
+        try {
+            List<Object[]> registered = readRows(connection, "SELECT change_seq FROM backup_targets WHERE target = ?",
+                    1, target);
+            if (registered.isEmpty() || ((Number) registered.get(0)[0]).longValue() > watermark) {
+                if (watermark >= 0) {
+                    System.out.println("源库没有保留该备份所需的删除记录，重新完整备份: " + backupFile);
+                }
+                watermark = -1;
+            }
+            writeTarget(connection, watermark);
+            connection.commit();
+        } catch (SQLException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            connection.setAutoCommit(true);
+        }
+        return watermark;
+    }
+
+    private void writeTarget(Connection connection, long sequence) throws SQLException {
+        try (PreparedStatement upsert = connection.prepareStatement(
+                "INSERT OR REPLACE INTO backup_targets (target, change_seq, backed_up_at) VALUES (?, ?, ?)")) {
+            upsert.setString(1, target);
+            upsert.setLong(2, sequence);
+            upsert.setLong(3, System.currentTimeMillis());
+            upsert.executeUpdate();
+        }
+    }
+
+    // 重新完整备份前，删除备份中来自该源文件的行 (其中可能有源库中已删除、删除记录又已被清除的行)
+    private static void clearSource(Connection backup, String source, String[] tables) throws SQLException {
+        // 先删除备份序号，中途失败时下次仍从头复制
+        try (PreparedStatement delete = backup.prepareStatement("DELETE FROM backup_state WHERE source = ?")) {
+            delete.setString(1, source);
+            delete.executeUpdate();
+        }
+        for (String table : tables) {
+            try (PreparedStatement delete = backup.prepareStatement(
+                    "DELETE FROM " + table + " WHERE backup_source = ?")) {
+                delete.setString(1, source);
+                delete.executeUpdate();
+            }
+        }
+    }
+
+    // 记录本备份已到达的序号，移除过期的备份登记，清除所有登记的备份都已应用的删除记录
+    private void pruneTombstones(Connection connection, long sequence) throws SQLException {
+        connection.setAutoCommit(false);
+        try (PreparedStatement expire = connection.prepareStatement(
+                     "DELETE FROM backup_targets WHERE backed_up_at < ? AND target <> ?");
+             Statement stmt = connection.createStatement()) {
+            writeTarget(connection, sequence);
+            expire.setLong(1, System.currentTimeMillis() - targetRetentionMillis);
+            expire.setString(2, target);
+            expire.executeUpdate();
+            stmt.executeUpdate("DELETE FROM change_tombstones WHERE change_seq <= "
+                    + "(SELECT MIN(change_seq) FROM backup_targets)");
+            connection.commit();
+        } catch (SQLException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            connection.setAutoCommit(true);
+        }
+    }
+
+    // 两批之间暂停，暂停时间不少于该批的耗时
+    private void throttle(long batchNanos) throws SQLException {
+        try {
+            Thread.sleep(Math.max(pauseMs, batchNanos / 1_000_000));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("备份被中断", e);
+        }
+    }
+
+    /*
+     * 复制 change_seq 大于 progress[index] 的行 (limit 为 0 时不限行数)，返回复制的行数。
+     * 先把一批读入内存再写入备份，源库上的读取尽快结束。
+     */
+    private static int copyRows(Connection connection, Connection backup, String source, String table,
+                                List<String> columns, long[] progress, int index, int limit) throws SQLException {
+        List<Object[]> rows = readRows(connection, "SELECT " + String.join(", ", columns) + " FROM " + table
+                + " WHERE change_seq > ? ORDER BY change_seq" + (limit > 0 ? " LIMIT " + limit : ""),
+                columns.size(), progress[index]);
+        if (rows.isEmpty()) return 0;
+
+        String placeholders = String.join(", ", Collections.nCopies(columns.size() + 1, "?"));
+        try (PreparedStatement upsert = backup.prepareStatement("INSERT OR REPLACE INTO " + table + " ("
+                + String.join(", ", columns) + ", backup_source) VALUES (" + placeholders + ")")) {
+            for (Object[] row : rows) {
+                for (int i = 0; i < row.length; i++) {
+                    upsert.setObject(i + 1, row[i]);
+                }
+                upsert.setString(row.length + 1, source);
+                upsert.addBatch();
+            }
+            upsert.executeBatch();
+        }
+        progress[index] = ((Number) rows.get(rows.size() - 1)[columns.indexOf("change_seq")]).longValue();
+        return rows.size();
+    }
+
+    /*
+     * 在备份中应用删除记录。只删除来自同一源文件、且比删除更早写入备份的行：
+     * 同一主键删除后又重新插入时，新插入的行序号更大，不会被旧的删除记录删掉。
+     */
+    private static int applyTombstones(Connection connection, Connection backup, String source,
+                                       Map<String, PreparedStatement> deletes, long[] progress, int index,
+                                       int limit) throws SQLException {
+        List<Object[]> tombstones = readRows(connection, "SELECT change_seq, table_name, key1, key2 FROM change_tombstones"
+                + " WHERE change_seq > ? ORDER BY change_seq" + (limit > 0 ? " LIMIT " + limit : ""), 4, progress[index]);
+        if (tombstones.isEmpty()) return 0;
+
+        for (Object[] tombstone : tombstones) {
+            String table = (String) tombstone[1];
+            String[] keys = ChangeTracking.keyColumns(table);
+            PreparedStatement delete = deletes.get(table);
+            if (delete == null) {
+                delete = backup.prepareStatement("DELETE FROM " + table + " WHERE " + String.join(" = ? AND ", keys)
+                        + " = ? AND backup_source = ? AND change_seq < ?");
+                deletes.put(table, delete);
+            }
+            int parameter = 1;
+            for (int i = 0; i < keys.length; i++) {
+                delete.setObject(parameter++, tombstone[2 + i]);
+            }
+            delete.setString(parameter++, source);
+            delete.setLong(parameter, ((Number) tombstone[0]).longValue());
+            delete.executeUpdate();
+        }
+        progress[index] = ((Number) tombstones.get(tombstones.size() - 1)[0]).longValue();
+        return tombstones.size();
+    }
+
+    private static List<Object[]> readRows(Connection connection, String sql, int columnCount, Object... parameters)
+            throws SQLException {
+        List<Object[]> rows = new ArrayList<>();
+        try (PreparedStatement query = connection.prepareStatement(sql)) {
+            for (int i = 0; i < parameters.length; i++) {
+                query.setObject(i + 1, parameters[i]);
+            }
+            try (ResultSet rs = query.executeQuery()) {
+                while (rs.next()) {
+                    Object[] row = new Object[columnCount];
+                    for (int i = 0; i < columnCount; i++) {
+                        row[i] = rs.getObject(i + 1);
+                    }
+                    rows.add(row);
+                }
+            }
+        }
+        return rows;
+    }
+
+    private static void copyWholeTable(Connection connection, Connection backup, String table) throws SQLException {
+        List<String> columns = columnsOf(connection, table);
+        List<Object[]> rows = readRows(connection, "SELECT " + String.join(", ", columns) + " FROM " + table,
+                columns.size());
+        try (Statement stmt = backup.createStatement()) {
+            stmt.executeUpdate("DELETE FROM " + table);
+        }
+        try (PreparedStatement insert = backup.prepareStatement("INSERT INTO " + table + " (" + String.join(", ", columns)
+                + ") VALUES (" + String.join(", ", Collections.nCopies(columns.size(), "?")) + ")")) {
+            for (Object[] row : rows) {
+                for (int i = 0; i < row.length; i++) {
+                    insert.setObject(i + 1, row[i]);
+                }
+                insert.addBatch();
+            }
+            insert.executeBatch();
+        }
+    }
+
+    /*
+     * 备份中没有该表时按源库的建表语句创建，源库新增的列补到备份中；
+     * 跟踪变更的表在备份中另有 backup_source 列，记录行来自哪个源文件。返回源库的列。
+     */
+    private static List<String> prepareTable(Connection connection, Connection backup, String table, boolean tracked)
+            throws SQLException {
+        List<String> columns = columnsOf(connection, table);
+        List<String> existing = columnsOf(backup, table);
+        if (existing.isEmpty()) {
+            List<Object[]> ddl = readRows(connection, "SELECT sql FROM sqlite_master WHERE type = 'table' AND name = ?",
+                    1, table);
+            if (ddl.isEmpty()) throw new SQLException("源数据库中没有表 " + table);
+            try (Statement stmt = backup.createStatement()) {
+                stmt.execute((String) ddl.get(0)[0]);
+            }
+            existing = columnsOf(backup, table);
+        }
+        for (String column : columns) {
+            if (!existing.contains(column)) {
+                DatabaseManager.addColumnIfMissing(backup, table, column, "");
+            }
+        }
+        if (tracked) {
+            DatabaseManager.addColumnIfMissing(backup, table, "backup_source", "TEXT");
+        }
+        return columns;
+    }
+
+    private static List<String> columnsOf(Connection connection, String table) throws SQLException {
+        List<String> columns = new ArrayList<>();
+        try (Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery("PRAGMA table_info(" + table + ")")) {
+            while (rs.next()) {
+                columns.add(rs.getString("name"));
+            }
+        }
+        return columns;
+    }
+
+    private static long readSequence(Connection connection) throws SQLException {
+        try (Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT value FROM change_sequence WHERE id = 1")) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+
+    // 该源文件已备份到的序号，尚未备份过时为 -1 (升级前已有的行序号为 0)
+    private static long readWatermark(Connection backup, String source) throws SQLException {
+        try (PreparedStatement query = backup.prepareStatement("SELECT change_seq FROM backup_state WHERE source = ?")) {
+            query.setString(1, source);
+            try (ResultSet rs = query.executeQuery()) {
+                return rs.next() ? rs.getLong(1) : -1;
+            }
+        }
+    }
+
+    private static void writeWatermark(Connection backup, String source, long sequence) throws SQLException {
+        try (PreparedStatement upsert = backup.prepareStatement(
+                "INSERT OR REPLACE INTO backup_state (source, change_seq, backed_up_at) VALUES (?, ?, ?)")) {
+            upsert.setString(1, source);
+            upsert.setLong(2, sequence);
+            upsert.setString(3, java.time.LocalDateTime.now().toString());
+            upsert.executeUpdate();
+        }
+    }
+
+    // ===== 校验 =====
+
+    /**
+     * 校验备份：备份文件本身完整、外键关系成立，并与源库逐行比较 (按主键归并，源库分批短读取)。
+     * 源库中序号不超过备份序号的行必须在备份中且内容相同；之后才修改或新增的行跳过；
+     * 备份中多出的行必须在源库中有备份之后的删除记录。
+     *
+     * @return 没有发现问题时返回 true
+     */
+    public boolean verify() throws SQLException {
+        long start = System.nanoTime();
+        List<String> problems = new ArrayList<>();
+        long[] counts = new long[2]; // {比较的行数, 备份之后才修改的行数}
+        Map<String, Connection> connections = new LinkedHashMap<>();
+        try (Connection backup = openBackup()) {
+            try (Statement stmt = backup.createStatement();
+                 ResultSet rs = stmt.executeQuery("PRAGMA integrity_check")) {
+                while (rs.next()) {
+                    if (!"ok".equals(rs.getString(1))) problems.add("完整性检查: " + rs.getString(1));
+                }
+            }
+            try (Statement stmt = backup.createStatement();
+                 ResultSet rs = stmt.executeQuery("PRAGMA foreign_key_check")) {
+                while (rs.next()) {
+                    problems.add("外键不成立: " + rs.getString("table") + " 第 " + rs.getLong("rowid") + " 行");
+                }
+            }
+
+            Map<String, Long> watermarks = new HashMap<>();
+            Map<String, String> sources = sources();
+            for (Map.Entry<String, String> source : sources.entrySet()) {
+                long watermark = readWatermark(backup, source.getKey());
+                if (watermark < 0) {
+                    problems.add("源 " + source.getKey() + " 尚未备份");
+                    continue;
+                }
+                watermarks.put(source.getKey(), watermark);
+                connections.put(source.getKey(), DriverManager.getConnection(source.getValue()));
+            }
+            if (connections.size() == sources.size()) {
+                for (String table : ChangeTracking.TABLES) {
+                    verifyTable(table, backup, connections, watermarks, problems, counts);
+                }
+            }
+        } finally {
+            for (Connection connection : connections.values()) {
+                connection.close();
+            }
+        }
+
+        System.out.printf("校验备份: 比较 %d 行 (%d 行在备份之后修改), 发现 %d 个问题, 耗时 %.1f ms%n",
+                counts[0], counts[1], problems.size(), (System.nanoTime() - start) / 1_000_000.0);
+        for (String problem : problems.subList(0, Math.min(problems.size(), MAX_REPORTED_PROBLEMS))) {
+            System.out.println("  " + problem);
+        }
+        return problems.isEmpty();
+    }
+
+    private void verifyTable(String table, Connection backup, Map<String, Connection> connections,
+                             Map<String, Long> watermarks, List<String> problems, long[] counts) throws SQLException {
+        List<String> columns = columnsOf(connections.get("main"), table);
+        String[] keys = ChangeTracking.keyColumns(table);
+        int[] keyIndexes = new int[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            keyIndexes[i] = columns.indexOf(keys[i]);
+        }
+        int sequenceIndex = columns.indexOf("change_seq");
+
+        List<String> backupColumns = new ArrayList<>(columns);
+        backupColumns.add("backup_source");
+        PagedCursor backupRows = new PagedCursor(backup, null, table, backupColumns, keys, keyIndexes);
+        List<PagedCursor> sourceRows = new ArrayList<>();
+        for (Map.Entry<String, Connection> source : connections.entrySet()) {
+            if (Arrays.asList(tablesOf(source.getKey())).contains(table)) {
+                sourceRows.add(new PagedCursor(source.getValue(), source.getKey(), table, columns, keys, keyIndexes));
+            }
+        }
+
+        while (true) {
+            Object[] backupRow = backupRows.peek();
+            PagedCursor sourceCursor = null;
+            for (PagedCursor cursor : sourceRows) {
+                if (cursor.peek() != null && (sourceCursor == null
+                        || compareKeys(cursor.peek(), sourceCursor.peek(), keyIndexes) < 0)) {
+                    sourceCursor = cursor;
+                }
+            }
+            Object[] sourceRow = sourceCursor == null ? null : sourceCursor.peek();
+            if (backupRow == null && sourceRow == null) break;
+
+            int order = backupRow == null ? 1 : sourceRow == null ? -1 : compareKeys(backupRow, sourceRow, keyIndexes);
+            if (order < 0) {
+                backupRows.next();
+                String source = (String) backupRow[columns.size()];
+                Long watermark = watermarks.get(source);
+                if (watermark == null || !deletedSince(connections.get(source), table, backupRow, keyIndexes, watermark)) {
+                    problems.add(table + " 备份中多出 " + describeKey(backupRow, keyIndexes));
+                }
+            } else if (order > 0) {
+                sourceCursor.next();
+                if (sequenceOf(sourceRow, sequenceIndex) <= watermarks.get(sourceCursor.source)) {
+                    problems.add(table + " 备份中缺少 " + describeKey(sourceRow, keyIndexes));
+                } else {
+                    counts[1]++;
+                }
+            } else {
+                backupRows.next();
+                sourceCursor.next();
+                if (sequenceOf(sourceRow, sequenceIndex) > watermarks.get(sourceCursor.source)) {
+                    counts[1]++;
+                } else if (!Arrays.equals(Arrays.copyOf(backupRow, columns.size()), sourceRow)) {
+                    problems.add(table + " 内容不一致 " + describeKey(sourceRow, keyIndexes));
+                }
+            }
+            counts[0]++;
+        }
+    }
+
+    private static long sequenceOf(Object[] row, int sequenceIndex) {
+        return row[sequenceIndex] == null ? 0 : ((Number) row[sequenceIndex]).longValue();
+    }
+
+    // 源库中是否有备份之后的删除记录
+    private static boolean deletedSince(Connection connection, String table, Object[] row, int[] keyIndexes,
+                                        long watermark) throws SQLException {
+        return !readRows(connection, "SELECT 1 FROM change_tombstones WHERE table_name = ? AND key1 IS ? AND key2 IS ?"
+                        + " AND change_seq > ? LIMIT 1", 1, table, row[keyIndexes[0]],
+                keyIndexes.length > 1 ? row[keyIndexes[1]] : null, watermark).isEmpty();
+    }
+
+    private static int compareKeys(Object[] a, Object[] b, int[] keyIndexes) {
+        for (int index : keyIndexes) {
+            String x = (String) a[index];
+            String y = (String) b[index];
+            if (x == null || y == null) {
+                if (x != y) return x == null ? -1 : 1;
+                continue;
+            }
+            int order = x.compareTo(y);
+            if (order != 0) return order;
+        }
+        return 0;
+    }
+
+    private static String describeKey(Object[] row, int[] keyIndexes) {
+        StringBuilder sb = new StringBuilder();
+        for (int index : keyIndexes) {
+            if (sb.length() > 0) sb.append('/');
+            sb.append(row[index]);
+        }
+        return sb.toString();
+    }
+
+    // 按主键顺序分页读取一张表，每页是一次单独的短读取
+    private final class PagedCursor {
+        private final Connection connection;
+        private final String source;
+        private final String sql;
+        private final int columnCount;
+        private final int[] keyIndexes;
+        private final Deque<Object[]> page = new ArrayDeque<>();
+        private Object[] lastRow;
+        private boolean exhausted;
+
+        PagedCursor(Connection connection, String source, String table, List<String> columns, String[] keys,
+                    int[] keyIndexes) {
+            this.connection = connection;
+            this.source = source;
+            this.columnCount = columns.size();
+            this.keyIndexes = keyIndexes;
+            String keyList = String.join(", ", keys);
+            this.sql = "SELECT " + String.join(", ", columns) + " FROM " + table
+                    + " WHERE (" + keyList + ") > (" + String.join(", ", Collections.nCopies(keys.length, "?")) + ")"
+                    + " ORDER BY " + keyList + " LIMIT " + batchRows;
+        }
+
+        Object[] peek() throws SQLException {
+            if (page.isEmpty() && !exhausted) {
+                Object[] parameters = new Object[keyIndexes.length];
+                for (int i = 0; i < keyIndexes.length; i++) {
+                    // 第一页从空字符串之后开始 (主键不为空)
+                    parameters[i] = lastRow == null ? "" : lastRow[keyIndexes[i]];
+                }
+                List<Object[]> rows = readRows(connection, sql, columnCount, parameters);
+                exhausted = rows.size() < batchRows;
+                page.addAll(rows);
+            }
+            return page.peekFirst();
+        }
+
+        Object[] next() throws SQLException {
+            Object[] row = peek();
+            page.pollFirst();
+            if (row != null) lastRow = row;
+            return row;
+        }
+    }
+}
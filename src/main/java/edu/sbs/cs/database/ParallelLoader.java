@@ -0,0 +1,228 @@
+package edu.sbs.cs.database;
+
+import edu.sbs.cs.model.*;
+import java.sql.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * 启动时并行加载数据库。
+ * 成员表、项目表、项目成员表各用一个只读连接扫描；任务表按 rowid 分成若干区间，每个区间一个只读连接
+ * (分片存储时每个分片文件一个分区)。
+ * 所有扫描同时进行，结束后在调用线程中合并 (解析负责人、项目成员)，
+ * 总耗时接近最大的一个分区，而不是所有扫描之和。
+ */
+public class ParallelLoader {
+    private final DatabaseManager databaseManager;
+    private final int threads;
+
+    // 一个任务分区的扫描结果，assigneeIds / projectIds 与 tasks 按下标对应
+    private static final class TaskPartition {
+        private final List<TaskItem> tasks = new ArrayList<>();
+        private final List<String> assigneeIds = new ArrayList<>();
+        private final List<String> projectIds = new ArrayList<>();
+    }
+
+    // 在只读连接上执行的扫描
+    @FunctionalInterface
+    private interface Scan<T> {
+        T run(Connection connection) throws SQLException;
+    }
+
+    public ParallelLoader(DatabaseManager databaseManager, int threads) {
+        this.databaseManager = databaseManager;
+        this.threads = Math.max(1, threads);
+    }
+
+    public LoadedData load() throws SQLException {
+        ExecutorService pool = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            private int count;
+
+            @Override
+            public synchronized Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "db-loader-" + (++count));
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        try {
+            Future<List<TeamMember>> membersFuture = submit(pool, this::scanMembers);
+            Future<List<Project>> projectsFuture = submit(pool, this::scanProjects);
+            Future<List<String[]>> membershipsFuture = submit(pool, this::scanProjectMembers);
+            Future<List<String[]>> dependenciesFuture = submit(pool, this::scanDependencies);
+
+            // 任务表按 rowid 平均分区
+            String[] dictionary = databaseManager.readDictionary();
+            List<String> shardUrls = databaseManager.taskShardUrls();
+            long[] range = shardUrls.isEmpty() ? rowidRange() : new long[]{0, -1};
+            List<Future<TaskPartition>> partitionFutures = new ArrayList<>();
+            for (String shardUrl : shardUrls) {
+                partitionFutures.add(submit(pool, shardUrl,
+                        connection -> scanTasks(connection, Long.MIN_VALUE, Long.MAX_VALUE, dictionary)));
+            }
+            if (range[1] >= range[0]) {
+                long span = range[1] - range[0] + 1;
+                long step = (span + threads - 1) / threads;
+                for (long from = range[0]; from <= range[1]; from += step) {
+                    long to = Math.min(range[1], from + step - 1);
+                    long partitionFrom = from;
+                    partitionFutures.add(submit(pool, connection -> scanTasks(connection, partitionFrom, to, dictionary)));
+                }
+            }
+
+            // 合并：先建立成员索引，再挂接项目成员和任务负责人
+            List<TeamMember> members = await(membersFuture);
+            Map<String, TeamMember> membersById = new HashMap<>(members.size() * 2);
+            for (TeamMember member : members) {
+                membersById.put(member.getMemberId(), member);
+            }
+
+            List<Project> projects = await(projectsFuture);
+            Map<String, Project> projectsById = new HashMap<>(projects.size() * 2);
+            for (Project project : projects) {
+                projectsById.put(project.getProjectId(), project);
+            }
+            for (String[] pair : await(membershipsFuture)) {
+                Project project = projectsById.get(pair[0]);
+                TeamMember member = membersById.get(pair[1]);
+                if (project != null && member != null) {
+                    project.getMembers().add(member);
+                }
+            }
+
+            List<TaskPartition> partitions = new ArrayList<>(partitionFutures.size());
+            int taskCount = 0;
+            for (Future<TaskPartition> future : partitionFutures) {
+                TaskPartition partition = await(future);
+                partitions.add(partition);
+                taskCount += partition.tasks.size();
+            }
+            List<TaskItem> tasks = new ArrayList<>(taskCount);
+            Map<String, String> taskProjectIds = new HashMap<>(taskCount * 2);
+            for (TaskPartition partition : partitions) {
+                for (int i = 0; i < partition.tasks.size(); i++) {
+                    TaskItem task = partition.tasks.get(i);
+                    String assigneeId = partition.assigneeIds.get(i);
+                    if (assigneeId != null) {
+                        task.setAssignedTo(membersById.get(assigneeId));
+                    }
+                    tasks.add(task);
+                    taskProjectIds.put(task.getTaskId(), partition.projectIds.get(i));
+                }
+            }
+            return new LoadedData(members, projects, tasks, taskProjectIds, await(dependenciesFuture));
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private <T> Future<T> submit(ExecutorService pool, Scan<T> scan) {
+        return pool.submit(() -> {
+            try (Connection connection = databaseManager.openReadOnlyConnection()) {
+                return scan.run(connection);
+            }
+        });
+    }
+
+    // 在指定数据库文件 (任务分片) 的只读连接上扫描
+    private <T> Future<T> submit(ExecutorService pool, String url, Scan<T> scan) {
+        return pool.submit(() -> {
+            try (Connection connection = DatabaseManager.openReadOnlyConnection(url)) {
+                return scan.run(connection);
+            }
+        });
+    }
+
+    private static <T> T await(Future<T> future) throws SQLException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("并行加载被中断", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof SQLException) throw (SQLException) cause;
+            throw new SQLException("并行加载失败: " + cause, cause);
+        }
+    }
+
+    private long[] rowidRange() throws SQLException {
+        try (Statement stmt = databaseManager.getConnection().createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT MIN(rowid), MAX(rowid) FROM tasks")) {
+            if (rs.next() && rs.getObject(1) != null) {
+                return new long[]{rs.getLong(1), rs.getLong(2)};
+            }
+            return new long[]{0, -1};
+        }
+    }
+
+    private List<TeamMember> scanMembers(Connection connection) throws SQLException {
+        List<TeamMember> members = new ArrayList<>();
+        try (Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT member_id, name, role, email, password FROM members")) {
+            while (rs.next()) {
+                members.add(new TeamMember(rs.getString(1), rs.getString(2), Role.valueOf(rs.getString(3)),
+                        rs.getString(4), rs.getString(5)));
+            }
+        }
+        return members;
+    }
+
+    private List<Project> scanProjects(Connection connection) throws SQLException {
+        List<Project> projects = new ArrayList<>();
+        try (Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT project_id, name, description, "
+                     + DatabaseManager.epochDayColumn("start_day", "start_date") + " AS start_epoch_day, "
+                     + DatabaseManager.epochDayColumn("due_day", "due_date") + " AS due_epoch_day FROM projects")) {
+            while (rs.next()) {
+                Project project = new Project(rs.getString(1), rs.getString(2), rs.getString(3), null);
+                DatabaseManager.readStartDay(rs, project);
+                project.setDueDay(DatabaseManager.readEpochDay(rs, "due_epoch_day"));
+                projects.add(project);
+            }
+        }
+        return projects;
+    }
+
+    // 一次扫描整个项目成员表，代替逐个项目查询
+    private List<String[]> scanProjectMembers(Connection connection) throws SQLException {
+        List<String[]> pairs = new ArrayList<>();
+        try (Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT project_id, member_id FROM project_members")) {
+            while (rs.next()) {
+                pairs.add(new String[]{rs.getString(1), rs.getString(2)});
+            }
+        }
+        return pairs;
+    }
+
+    private List<String[]> scanDependencies(Connection connection) throws SQLException {
+        List<String[]> dependencies = new ArrayList<>();
+        try (Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT task_id, blocked_by FROM task_dependencies")) {
+            while (rs.next()) {
+                dependencies.add(new String[]{rs.getString(1), rs.getString(2)});
+            }
+        }
+        return dependencies;
+    }
+
+    private TaskPartition scanTasks(Connection connection, long fromRowid, long toRowid,
+                                    String[] dictionary) throws SQLException {
+        TaskPartition partition = new TaskPartition();
+        try (PreparedStatement pstmt = connection.prepareStatement(
+                "SELECT " + DatabaseManager.TASK_COLUMNS + " FROM tasks WHERE rowid BETWEEN ? AND ? ORDER BY rowid")) {
+            pstmt.setLong(1, fromRowid);
+            pstmt.setLong(2, toRowid);
+            pstmt.setFetchSize(1000);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    partition.tasks.add(DatabaseManager.readTaskRow(rs, dictionary));
+                    partition.assigneeIds.add(rs.getString("assigned_to"));
+                    partition.projectIds.add(rs.getString("project_id"));
+                }
+            }
+        }
+        return partition;
+    }
+}
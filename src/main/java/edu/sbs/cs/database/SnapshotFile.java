@@ -0,0 +1,238 @@
+package edu.sbs.cs.database;
+
+import edu.sbs.cs.model.*;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+import java.util.zip.CRC32C;
+
+/**
+ * 内存数据的二进制快照 (成员、项目、任务及分配关系、任务依赖)。
+ * 启动时内存映射整个文件顺序解码，不需要逐行查询 SQLite 再解析日期和枚举。
+ * 文件头中的标记值与数据库 snapshot_marker 表中的值一致时，快照才与数据库同步 (见 DatabaseManager)。
+ *
+ * 文件格式: [int 魔数][int 格式版本][long 标记][int 成员数][int 项目数][int 任务数][int 依赖数]
+ *          成员 * N, 项目 * N, 任务 * N, 依赖 * N, [int CRC32C(文件头之后的所有内容)]
+ * 项目: [ID][名称][描述][int 开始日期][long 截止日期][int 成员数][成员ID * N]，日期为 epochDay
+ * 依赖: [任务ID][阻塞它的任务ID]
+ */
+public final class SnapshotFile {
+    private static final int MAGIC = 0x544D5331; // "TMS1"
+    private static final int FORMAT_VERSION = 3; // 2: 项目增加开始日期; 3: 增加任务依赖
+    private static final int HEADER_SIZE = 4 + 4 + 8 + 4 + 4 + 4 + 4;
+    private static final int BUFFER_SIZE = 1024 * 1024;
+    private static final long NO_DATE = Long.MIN_VALUE;
+    private static final Role[] ROLES = Role.values();
+
+    private SnapshotFile() {
+    }
+
+    /**
+     * 写入快照。先写临时文件并 fsync，再原子地替换旧快照，写入过程中退出不会留下半个快照。
+     */
+    public static void write(Path file, long token, Collection<TeamMember> members, Collection<Project> projects,
+                             Collection<TaskItem> tasks, Map<String, String> taskProjectIds,
+                             Collection<String[]> dependencies) throws IOException {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            Writer writer = new Writer(channel);
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).putInt(FORMAT_VERSION).putLong(token)
+                    .putInt(members.size()).putInt(projects.size()).putInt(tasks.size())
+                    .putInt(dependencies.size()).flip();
+            while (header.hasRemaining()) {
+                channel.write(header);
+            }
+
+            for (TeamMember member : members) {
+                ByteBuffer buffer = writer.ensure(1 + TaskCodec.maxStringSize(member.getMemberId())
+                        + TaskCodec.maxStringSize(member.getName()) + TaskCodec.maxStringSize(member.getEmail())
+                        + TaskCodec.maxStringSize(member.getPassword()));
+                TaskCodec.writeString(buffer, member.getMemberId());
+                TaskCodec.writeString(buffer, member.getName());
+                buffer.put((byte) member.getRole().ordinal());
+                TaskCodec.writeString(buffer, member.getEmail());
+                TaskCodec.writeString(buffer, member.getPassword());
+            }
+
+            for (Project project : projects) {
+                int size = TaskCodec.maxStringSize(project.getProjectId()) + TaskCodec.maxStringSize(project.getName())
+                        + TaskCodec.maxStringSize(project.getDescription()) + 4 + 8 + 4;
+                for (TeamMember member : project.getMembers()) {
+                    size += TaskCodec.maxStringSize(member.getMemberId());
+                }
+                ByteBuffer buffer = writer.ensure(size);
+                TaskCodec.writeString(buffer, project.getProjectId());
+                TaskCodec.writeString(buffer, project.getName());
+                TaskCodec.writeString(buffer, project.getDescription());
+                buffer.putInt(project.getStartDay());
+                buffer.putLong(project.getDueDay() == TaskItem.NO_DATE ? NO_DATE : project.getDueDay());
+                buffer.putInt(project.getMembers().size());
+                for (TeamMember member : project.getMembers()) {
+                    TaskCodec.writeString(buffer, member.getMemberId());
+                }
+            }
+
+            for (TaskItem task : tasks) {
+                String projectId = taskProjectIds.get(task.getTaskId());
+                ByteBuffer buffer = writer.ensure(TaskCodec.maxStringSize(projectId) + TaskCodec.maxEncodedSize(task));
+                TaskCodec.writeString(buffer, projectId);
+                TaskCodec.writeTask(buffer, task);
+            }
+
+            for (String[] dependency : dependencies) {
+                ByteBuffer buffer = writer.ensure(TaskCodec.maxStringSize(dependency[0])
+                        + TaskCodec.maxStringSize(dependency[1]));
+                TaskCodec.writeString(buffer, dependency[0]);
+                TaskCodec.writeString(buffer, dependency[1]);
+            }
+
+            writer.finish();
+            channel.force(true);
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // 带缓冲的顺序写入，同时计算校验和
+    private static final class Writer {
+        private final FileChannel channel;
+        private final CRC32C crc = new CRC32C();
+        private ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+        Writer(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        // 保证缓冲区至少还能写入 size 个字节
+        ByteBuffer ensure(int size) throws IOException {
+            if (buffer.remaining() < size) {
+                flush();
+                if (buffer.capacity() < size) {
+                    buffer = ByteBuffer.allocateDirect(size);
+                }
+            }
+            return buffer;
+        }
+
+        void flush() throws IOException {
+            buffer.flip();
+            crc.update(buffer.duplicate());
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        void finish() throws IOException {
+            flush();
+            buffer.putInt((int) crc.getValue()).flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+    }
+
+    /**
+     * 只读取快照文件头中的标记值，用于判断快照是否过期。文件不存在或格式不对时返回 0。
+     */
+    public static long readToken(Path file) throws IOException {
+        if (!Files.exists(file)) return 0;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_SIZE + 4) return 0;
+            ByteBuffer header = ByteBuffer.allocate(16);
+            while (header.hasRemaining() && channel.read(header) >= 0) {
+                // 读满文件头
+            }
+            header.flip();
+            if (header.getInt() != MAGIC || header.getInt() != FORMAT_VERSION) return 0;
+            return header.getLong();
+        }
+    }
+
+    /**
+     * 内存映射并解码快照。
+     *
+     * @throws IOException 文件损坏 (校验和不一致) 或超过 2GB 时抛出，调用方应改为从数据库加载
+     */
+    public static LoadedData read(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("快照文件过大: " + size);
+            }
+            MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            if (size < HEADER_SIZE + 4 || map.getInt() != MAGIC || map.getInt() != FORMAT_VERSION) {
+                throw new IOException("快照文件格式不正确");
+            }
+            map.getLong(); // 标记值
+            int memberCount = map.getInt();
+            int projectCount = map.getInt();
+            int taskCount = map.getInt();
+            int dependencyCount = map.getInt();
+
+            CRC32C crc = new CRC32C();
+            crc.update(map.duplicate().position(HEADER_SIZE).limit((int) size - 4));
+            if ((int) crc.getValue() != map.getInt((int) size - 4)) {
+                throw new IOException("快照文件校验失败");
+            }
+
+            TaskCodec.Decoder decoder = new TaskCodec.Decoder();
+            List<TeamMember> members = new ArrayList<>(memberCount);
+            Map<String, TeamMember> membersById = new HashMap<>(memberCount * 2);
+            for (int i = 0; i < memberCount; i++) {
+                String memberId = decoder.readString(map);
+                String name = decoder.readString(map);
+                Role role = ROLES[map.get()];
+                TeamMember member = new TeamMember(memberId, name, role, decoder.readString(map), decoder.readString(map));
+                members.add(member);
+                membersById.put(memberId, member);
+            }
+
+            List<Project> projects = new ArrayList<>(projectCount);
+            for (int i = 0; i < projectCount; i++) {
+                String projectId = decoder.readString(map);
+                String name = decoder.readString(map);
+                String description = decoder.readString(map);
+                int startDay = map.getInt();
+                long epochDay = map.getLong();
+                Project project = new Project(projectId, name, description, null);
+                project.setStartDay(startDay);
+                project.setDueDay(epochDay == NO_DATE ? TaskItem.NO_DATE : (int) epochDay);
+                int projectMembers = map.getInt();
+                for (int j = 0; j < projectMembers; j++) {
+                    TeamMember member = membersById.get(decoder.readSharedString(map));
+                    if (member != null) {
+                        project.getMembers().add(member);
+                    }
+                }
+                projects.add(project);
+            }
+
+            List<TaskItem> tasks = new ArrayList<>(taskCount);
+            Map<String, String> taskProjectIds = new HashMap<>(taskCount * 2);
+            String[] assignee = new String[1];
+            for (int i = 0; i < taskCount; i++) {
+                String projectId = decoder.readSharedString(map);
+                TaskItem task = decoder.readTask(map, assignee);
+                if (assignee[0] != null) {
+                    task.setAssignedTo(membersById.get(assignee[0]));
+                }
+                tasks.add(task);
+                if (projectId != null) {
+                    taskProjectIds.put(task.getTaskId(), projectId);
+                }
+            }
+
+            List<String[]> dependencies = new ArrayList<>(dependencyCount);
+            for (int i = 0; i < dependencyCount; i++) {
+                dependencies.add(new String[]{decoder.readString(map), decoder.readString(map)});
+            }
+            return new LoadedData(members, projects, tasks, taskProjectIds, dependencies);
+        }
+    }
+}
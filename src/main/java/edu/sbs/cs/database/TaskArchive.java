@@ -0,0 +1,125 @@
+package edu.sbs.cs.database;
+
+import edu.sbs.cs.model.TaskItem;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 已归档任务的冷存储。
+ * 每次归档写出一个只读的 gzip 压缩分段文件 (archive-&lt;时间戳&gt;.seg.gz)，内容为
+ * [int 魔数][int 任务数]，之后每个任务为 [int 长度][项目ID][任务编码] (编码见 TaskCodec)。
+ * 归档任务不再加载到内存，只能通过 scan 顺序扫描所有分段查询 (较慢的查询路径)。
+ */
+public class TaskArchive {
+    private static final int MAGIC = 0x54415231; // "TAR1"
+    private static final String SEGMENT_PREFIX = "archive-";
+    private static final String SEGMENT_SUFFIX = ".seg.gz";
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    // 扫描归档任务的回调；负责人只给出成员ID
+    @FunctionalInterface
+    public interface ArchivedTaskHandler {
+        void accept(TaskItem task, String projectId, String assigneeId);
+    }
+
+    private final Path directory;
+
+    public TaskArchive(Path directory) throws IOException {
+        this.directory = directory;
+        Files.createDirectories(directory);
+    }
+
+    /**
+     * 写出一个新的归档分段。先写临时文件并 fsync，再改名，返回分段路径。
+     */
+    public Path writeSegment(List<TaskItem> tasks, Map<String, String> taskProjectIds) throws IOException {
+        long timestamp = System.currentTimeMillis();
+        Path segment = directory.resolve(SEGMENT_PREFIX + timestamp + SEGMENT_SUFFIX);
+        for (int i = 1; Files.exists(segment); i++) {
+            segment = directory.resolve(SEGMENT_PREFIX + timestamp + "-" + i + SEGMENT_SUFFIX);
+        }
+        Path temp = segment.resolveSibling(segment.getFileName() + ".tmp");
+
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            GZIPOutputStream gzip = new GZIPOutputStream(Channels.newOutputStream(channel), BUFFER_SIZE);
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(gzip, BUFFER_SIZE));
+            out.writeInt(MAGIC);
+            out.writeInt(tasks.size());
+
+            ByteBuffer record = ByteBuffer.allocate(1024);
+            for (TaskItem task : tasks) {
+                String projectId = taskProjectIds.get(task.getTaskId());
+                int maxSize = TaskCodec.maxStringSize(projectId) + TaskCodec.maxEncodedSize(task);
+                if (record.capacity() < maxSize) {
+                    record = ByteBuffer.allocate(maxSize);
+                }
+                record.clear();
+                TaskCodec.writeString(record, projectId);
+                TaskCodec.writeTask(record, task);
+                out.writeInt(record.position());
+                out.write(record.array(), 0, record.position());
+            }
+            out.flush();
+            gzip.finish();
+            channel.force(true);
+        }
+        Files.move(temp, segment, StandardCopyOption.ATOMIC_MOVE);
+        return segment;
+    }
+
+    // 分段文件名中的 {时间戳, 同一毫秒内的序号}；按文件名排序时 "-1" 会排在没有序号的分段之前
+    private static long[] segmentOrder(Path segment) {
+        String name = segment.getFileName().toString();
+        String[] parts = name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()).split("-");
+        return new long[]{Long.parseLong(parts[0]), parts.length > 1 ? Long.parseLong(parts[1]) : 0};
+    }
+
+    /**
+     * 按归档时间顺序扫描所有归档任务。
+     */
+    public void scan(ArchivedTaskHandler handler) throws IOException {
+        List<Path> segments = new ArrayList<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            files.filter(p -> p.getFileName().toString().startsWith(SEGMENT_PREFIX)
+                    && p.getFileName().toString().endsWith(SEGMENT_SUFFIX)).forEach(segments::add);
+        }
+        segments.sort(Comparator.comparing(TaskArchive::segmentOrder, Arrays::compare));
+
+        TaskCodec.Decoder decoder = new TaskCodec.Decoder();
+        String[] assignee = new String[1];
+        byte[] bytes = new byte[1024];
+        for (Path segment : segments) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                    new GZIPInputStream(Files.newInputStream(segment), BUFFER_SIZE), BUFFER_SIZE))) {
+                if (in.readInt() != MAGIC) {
+                    System.err.println("忽略格式不正确的归档分段: " + segment.getFileName());
+                    continue;
+                }
+                int count = in.readInt();
+                for (int i = 0; i < count; i++) {
+                    int length = in.readInt();
+                    if (bytes.length < length) {
+                        bytes = new byte[length];
+                    }
+                    in.readFully(bytes, 0, length);
+                    ByteBuffer record = ByteBuffer.wrap(bytes, 0, length);
+                    String projectId = decoder.readSharedString(record);
+                    TaskItem task = decoder.readTask(record, assignee);
+                    handler.accept(task, projectId, assignee[0]);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package edu.sbs.cs.database;
+
+import edu.sbs.cs.model.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 任务的紧凑二进制编码，供变更日志等二进制文件使用。
+ * 字符串编码为 [int 字节数][UTF-8]，null 的字节数为 -1；枚举按序号存为一个字节；日期存为 epochDay。
+ */
+public final class TaskCodec {
+    private static final byte FEATURE = 0;
+    private static final byte BUG = 1;
+    private static final long NO_DATE = Long.MIN_VALUE;
+    private static final Priority[] PRIORITIES = Priority.values();
+    private static final Severity[] SEVERITIES = Severity.values();
+
+    private TaskCodec() {
+    }
+
+    // 编码结果的字节数上限 (UTF-8 每个字符最多 3 字节)，用于预先确保缓冲区容量
+    public static int maxEncodedSize(TaskItem task) {
+        int size = 1 + 1 + 8 + 8 + 4 + maxStringSize(task.getTaskId()) + maxStringSize(task.getTitle())
+                + maxStringSize(task.getDescription())
+                + maxStringSize(task.getAssignedTo() == null ? null : task.getAssignedTo().getMemberId());
+        if (task instanceof FeatureTask) {
+            size += 4 + maxStringSize(((FeatureTask) task).getFeatureCategory());
+        } else if (task instanceof BugReport) {
+            BugReport bug = (BugReport) task;
+            size += 1 + maxStringSize(bug.getStepsToReproduce()) + maxStringSize(bug.getEnvironment());
+        }
+        return size;
+    }
+
+    public static int maxStringSize(String value) {
+        return 4 + (value == null ? 0 : value.length() * 3);
+    }
+
+    public static void writeTask(ByteBuffer buffer, TaskItem task) {
+        buffer.put(task instanceof BugReport ? BUG : FEATURE);
+        writeString(buffer, task.getTaskId());
+        writeString(buffer, task.getTitle());
+        writeString(buffer, task.getDescription());
+        buffer.put((byte) task.getPriority().ordinal());
+        buffer.putLong(task.getDueDay() == TaskItem.NO_DATE ? NO_DATE : task.getDueDay());
+        buffer.putLong(task.getState());
+        writeString(buffer, task.getAssignedTo() == null ? null : task.getAssignedTo().getMemberId());
+
+        if (task instanceof BugReport) {
+            BugReport bug = (BugReport) task;
+            buffer.put((byte) bug.getSeverity().ordinal());
+            writeString(buffer, bug.getStepsToReproduce());
+            writeString(buffer, bug.getEnvironment());
+        } else {
+            FeatureTask feature = (FeatureTask) task;
+            buffer.putInt(feature.getStoryPoints());
+            writeString(buffer, feature.getFeatureCategory());
+        }
+    }
+
+    public static void writeString(ByteBuffer buffer, String value) {
+        if (value == null) {
+            buffer.putInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        buffer.putInt(bytes.length).put(bytes);
+    }
+
+    /**
+     * 解码器。字符串先读入复用的临时数组再构造，解码大量记录时不为每个字符串产生额外的临时数组；
+     * 取值重复度高的短字符串 (项目ID、负责人、分类、环境等) 通过一个小缓存共享同一实例。
+     * 非线程安全，每个解码线程使用自己的实例。
+     */
+    public static final class Decoder {
+        private static final int SHARED_MAX_LENGTH = 32;
+        private static final int SHARED_SLOTS = 1024;
+
+        private byte[] scratch = new byte[256];
+        private final String[] shared = new String[SHARED_SLOTS];
+
+        /**
+         * 解码一个任务。负责人只解码出成员ID，由调用方在成员表中查找后设置，
+         * 因此读出的负责人ID通过 assigneeOut[0] 返回。
+         */
+        public TaskItem readTask(ByteBuffer buffer, String[] assigneeOut) {
+            byte kind = buffer.get();
+            String taskId = readString(buffer);
+            String title = readString(buffer);
+            String description = readString(buffer);
+            Priority priority = PRIORITIES[buffer.get()];
+            long epochDay = buffer.getLong();
+            long state = buffer.getLong();
+            assigneeOut[0] = readSharedString(buffer);
+
+            TaskItem task;
+            if (kind == BUG) {
+                Severity severity = SEVERITIES[buffer.get()];
+                String steps = readSharedString(buffer);
+                String environment = readSharedString(buffer);
+                task = new BugReport(taskId, title, description, priority, null, severity, steps, environment);
+            } else {
+                int storyPoints = buffer.getInt();
+                String category = readSharedString(buffer);
+                task = new FeatureTask(taskId, title, description, priority, null, storyPoints, category);
+            }
+            task.setDueDay(epochDay == NO_DATE ? TaskItem.NO_DATE : (int) epochDay);
+            task.restoreState(TaskItem.statusOf(state), TaskItem.progressOf(state), TaskItem.versionOf(state));
+            return task;
+        }
+
+        public String readString(ByteBuffer buffer) {
+            int length = buffer.getInt();
+            if (length < 0) return null;
+            if (length > scratch.length) {
+                scratch = new byte[Math.max(length, scratch.length * 2)];
+            }
+            buffer.get(scratch, 0, length);
+            return new String(scratch, 0, length, StandardCharsets.UTF_8);
+        }
+
+        // 读取可能重复的短字符串，命中缓存时返回已有实例
+        public String readSharedString(ByteBuffer buffer) {
+            int start = buffer.position();
+            int length = buffer.getInt(start);
+            if (length < 0 || length > SHARED_MAX_LENGTH) return readString(buffer);
+
+            int hash = 0;
+            for (int i = 0; i < length; i++) {
+                byte b = buffer.get(start + 4 + i);
+                if (b < 0) return readString(buffer); // 只缓存 ASCII 字符串
+                hash = hash * 31 + b;
+            }
+            int slot = (hash ^ (hash >>> 16)) & (SHARED_SLOTS - 1);
+            String cached = shared[slot];
+            if (cached != null && cached.length() == length) {
+                boolean same = true;
+                for (int i = 0; i < length && same; i++) {
+                    same = cached.charAt(i) == buffer.get(start + 4 + i);
+                }
+                if (same) {
+                    buffer.position(start + 4 + length);
+                    return cached;
+                }
+            }
+            String value = readString(buffer);
+            shared[slot] = value;
+            return value;
+        }
+    }
+}
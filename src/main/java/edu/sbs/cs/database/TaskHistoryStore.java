@@ -0,0 +1,173 @@
+package edu.sbs.cs.database;
+
+import edu.sbs.cs.model.TaskItem;
+import java.sql.*;
+import java.util.*;
+
+/**
+ * 任务状态的版本历史 (数据目录下的 task_history.db)，与主数据库分开存放，写入不占用主数据库的写锁。
+ * 每次状态变化一行 (任务ID, 生效时间, 版本号, 打包状态字, 项目ID)；表按 (任务ID, 生效时间, 版本号)
+ * 聚簇存储 (WITHOUT ROWID)，"某任务在时刻 t 的状态" 是主键上的一次范围查找。
+ * 版本只追加，超出保留策略的旧版本在 write 中截断或由 prune 删除。
+ */
+public class TaskHistoryStore implements AutoCloseable {
+    // 一个任务版本 (valid_from 起生效，直到同一任务的下一个版本)
+    public static final class Version {
+        private final String taskId;
+        private final String projectId;
+        private final long validFrom;
+        private final long state;
+
+        public Version(String taskId, String projectId, long validFrom, long state) {
+            this.taskId = taskId;
+            this.projectId = projectId;
+            this.validFrom = validFrom;
+            this.state = state;
+        }
+
+        public String getTaskId() { return taskId; }
+        public String getProjectId() { return projectId; }
+        public long getValidFrom() { return validFrom; }
+        public long getState() { return state; }
+    }
+
+    // 按 (任务ID, 生效时间) 顺序读取版本
+    @FunctionalInterface
+    public interface VersionHandler {
+        void version(String taskId, String projectId, long validFrom, long state);
+    }
+
+    private final Connection connection;
+
+    public TaskHistoryStore() throws SQLException {
+        DatabaseManager.dataDirectory().toFile().mkdirs();
+        connection = DriverManager.getConnection(DatabaseManager.sqliteUrl("task_history.db"));
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("CREATE TABLE IF NOT EXISTS task_versions (" +
+                    "task_id TEXT NOT NULL, " +
+                    "valid_from INTEGER NOT NULL, " +
+                    "version INTEGER NOT NULL, " +
+                    "state INTEGER NOT NULL, " +
+                    "project_id TEXT, " +
+                    "PRIMARY KEY (task_id, valid_from, version)) WITHOUT ROWID");
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_task_versions_project " +
+                    "ON task_versions(project_id, valid_from)");
+        } catch (SQLException e) {
+            connection.close();
+            throw e;
+        }
+    }
+
+    /**
+     * 在一个事务中追加一批版本，再删除早于 oldestKept 中各版本的同一任务的旧版本。
+     *
+     * @param oldestKept 每个需要截断的任务保留的最早版本
+     */
+    public synchronized void write(List<Version> versions, List<Version> oldestKept) throws SQLException {
+        if (versions.isEmpty() && oldestKept.isEmpty()) return;
+        connection.setAutoCommit(false);
+        try {
+            try (PreparedStatement pstmt = connection.prepareStatement(
+                    "INSERT OR REPLACE INTO task_versions (task_id, valid_from, version, state, project_id) " +
+                            "VALUES (?, ?, ?, ?, ?)")) {
+                for (Version version : versions) {
+                    pstmt.setString(1, version.taskId);
+                    pstmt.setLong(2, version.validFrom);
+                    pstmt.setLong(3, TaskItem.versionOf(version.state));
+                    pstmt.setLong(4, version.state);
+                    pstmt.setString(5, version.projectId);
+                    pstmt.addBatch();
+                }
+                pstmt.executeBatch();
+            }
+            try (PreparedStatement pstmt = connection.prepareStatement(
+                    "DELETE FROM task_versions WHERE task_id = ? AND (valid_from, version) < (?, ?)")) {
+                for (Version kept : oldestKept) {
+                    pstmt.setString(1, kept.taskId);
+                    pstmt.setLong(2, kept.validFrom);
+                    pstmt.setLong(3, TaskItem.versionOf(kept.state));
+                    pstmt.addBatch();
+                }
+                pstmt.executeBatch();
+            }
+            connection.commit();
+        } catch (SQLException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            connection.setAutoCommit(true);
+        }
+    }
+
+    /**
+     * 删除生效时间早于 cutoff 且在 cutoff 之前已被更新版本取代的版本。
+     * 每个任务保留 cutoff 时刻有效的那个版本，cutoff 之后的查询结果不受影响。
+     *
+     * @return 删除的行数
+     */
+    public synchronized int prune(long cutoff) throws SQLException {
+        try (PreparedStatement pstmt = connection.prepareStatement(
+                "DELETE FROM task_versions WHERE valid_from < ? AND EXISTS (" +
+                        "SELECT 1 FROM task_versions n WHERE n.task_id = task_versions.task_id " +
+                        "AND n.valid_from <= ? " +
+                        "AND (n.valid_from, n.version) > (task_versions.valid_from, task_versions.version))")) {
+            pstmt.setLong(1, cutoff);
+            pstmt.setLong(2, cutoff);
+            return pstmt.executeUpdate();
+        }
+    }
+
+    // 读取全部版本，同一任务的版本按生效时间递增
+    public synchronized void load(VersionHandler handler) throws SQLException {
+        try (Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT task_id, project_id, valid_from, state FROM task_versions " +
+                     "ORDER BY task_id, valid_from, version")) {
+            while (rs.next()) {
+                handler.version(rs.getString(1), rs.getString(2), rs.getLong(3), rs.getLong(4));
+            }
+        }
+    }
+
+    /**
+     * 任务在 time 时刻的打包状态字，没有记录 (尚未创建或已超出保留期) 时返回 -1。
+     */
+    public synchronized long stateAsOf(String taskId, long time) throws SQLException {
+        try (PreparedStatement pstmt = connection.prepareStatement(
+                "SELECT state FROM task_versions WHERE task_id = ? AND valid_from <= ? " +
+                        "ORDER BY valid_from DESC, version DESC LIMIT 1")) {
+            pstmt.setString(1, taskId);
+            pstmt.setLong(2, time);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next() ? rs.getLong(1) : -1;
+            }
+        }
+    }
+
+    // 项目中各任务在 time 时刻的打包状态字 (任务ID -> 状态)，按版本记录中的项目ID归属
+    public synchronized Map<String, Long> projectAsOf(String projectId, long time) throws SQLException {
+        Map<String, Long> states = new LinkedHashMap<>();
+        try (PreparedStatement pstmt = connection.prepareStatement(
+                "SELECT v.task_id, v.state FROM task_versions v WHERE v.project_id = ? AND v.valid_from <= ? " +
+                        "AND NOT EXISTS (SELECT 1 FROM task_versions n WHERE n.task_id = v.task_id " +
+                        "AND n.valid_from <= ? AND (n.valid_from, n.version) > (v.valid_from, v.version))")) {
+            pstmt.setString(1, projectId);
+            pstmt.setLong(2, time);
+            pstmt.setLong(3, time);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    states.put(rs.getString(1), rs.getLong(2));
+                }
+            }
+        }
+        return states;
+    }
+
+    @Override
+    public synchronized void close() {
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            System.err.println("关闭任务历史数据库失败: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,226 @@
+package edu.sbs.cs.database;
+
+import java.sql.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * 按项目分片的任务存储 (-Dteam.db.shards=N，N > 1 时启用)。
+ * 任务表按项目ID的哈希分布到数据目录下的 N 个 SQLite 文件 (team_management.shard-&lt;i&gt;.db)，
+ * 每个分片有自己的写连接和一个写线程，不同分片的写入互不等待 (SQLite 每个文件只允许一个写者)。
+ * 成员、项目、序列、字典等其余表仍在主数据库中，任务行中的字典编码与主数据库一致。
+ */
+class TaskShards {
+    // 与主数据库任务表相同的列 (不含外键，被引用的表在主数据库中)
+    static final String TASK_TABLE_COLUMNS = "task_id, title, description, priority, status, due_date, progress, "
+            + "task_type, assigned_to, project_id, story_points, feature_category, severity, steps_to_reproduce, "
+            + "environment, version, category_code, environment_code, due_day";
+
+    private static final String CREATE_TASKS_SQL = "CREATE TABLE IF NOT EXISTS tasks ("
+            + "task_id TEXT PRIMARY KEY, title TEXT NOT NULL, description TEXT, priority TEXT, status TEXT, "
+            + "due_date TEXT, progress REAL DEFAULT 0.0, task_type TEXT, assigned_to TEXT, project_id TEXT, "
+            + "story_points INTEGER, feature_category TEXT, severity TEXT, steps_to_reproduce TEXT, environment TEXT, "
+            + "version INTEGER DEFAULT 0, category_code INTEGER, environment_code INTEGER, due_day INTEGER)";
+
+    private final Shard[] shards;
+
+    private static final class Shard {
+        private final String url;
+        private final Connection connection;
+        private final ExecutorService writer;
+        // 写连接的使用权：事务从加入到结束一直持有；事务外的写入每次持有一小段，不会混入其他线程未提交的事务
+        private final Semaphore owner = new Semaphore(1, true);
+
+        Shard(int index) throws SQLException {
+            this.url = DatabaseManager.sqliteUrl("team_management.shard-" + index + ".db");
+            this.connection = DriverManager.getConnection(url);
+            this.writer = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "db-shard-" + index);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    // 在分片连接上执行的操作
+    @FunctionalInterface
+    interface ShardWork<T> {
+        T run(Connection connection) throws SQLException;
+    }
+
+    TaskShards(int count) throws SQLException {
+        shards = new Shard[count];
+        try {
+            for (int i = 0; i < count; i++) {
+                shards[i] = new Shard(i);
+                createTables(shards[i].connection);
+            }
+        } catch (SQLException e) {
+            close();
+            throw e;
+        }
+    }
+
+    private static void createTables(Connection connection) throws SQLException {
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute(CREATE_TASKS_SQL);
+            stmt.execute("CREATE TABLE IF NOT EXISTS snapshot_marker (" +
+                    "id INTEGER PRIMARY KEY CHECK (id = 1), token INTEGER NOT NULL)");
+            // 与主数据库相同：任务表的修改清除本分片的快照标记
+            for (String operation : new String[]{"INSERT", "UPDATE", "DELETE"}) {
+                stmt.execute("CREATE TRIGGER IF NOT EXISTS trg_tasks_" + operation.toLowerCase()
+                        + "_snapshot AFTER " + operation + " ON tasks BEGIN DELETE FROM snapshot_marker; END");
+            }
+        }
+        ChangeTracking.install(connection, "tasks");
+    }
+
+    int size() {
+        return shards.length;
+    }
+
+    // 项目所在的分片；没有项目的任务放在第 0 个分片
+    int shardOf(String projectId) {
+        return projectId == null ? 0 : Math.floorMod(projectId.hashCode(), shards.length);
+    }
+
+    String url(int shard) {
+        return shards[shard].url;
+    }
+
+    // 分片文件路径 (用于 ATTACH)
+    String path(int shard) {
+        return shards[shard].url.substring("jdbc:sqlite:".length());
+    }
+
+    // 在分片的写线程上执行并等待结果
+    <T> T call(int shard, ShardWork<T> work) throws SQLException {
+        return await(submit(shard, work));
+    }
+
+    /**
+     * 在各分片的写线程上同时执行 (每个分片一项)，全部完成后返回。
+     * 任一分片失败时抛出第一个异常，其余分片的操作仍会执行完。
+     */
+    void callAll(Map<Integer, ShardWork<?>> work) throws SQLException {
+        if (work.size() == 1) {
+            Map.Entry<Integer, ShardWork<?>> only = work.entrySet().iterator().next();
+            call(only.getKey(), only.getValue());
+            return;
+        }
+        List<Future<?>> futures = new ArrayList<>(work.size());
+        for (Map.Entry<Integer, ShardWork<?>> entry : work.entrySet()) {
+            futures.add(submit(entry.getKey(), entry.getValue()));
+        }
+        SQLException failure = null;
+        for (Future<?> future : futures) {
+            try {
+                await(future);
+            } catch (SQLException e) {
+                if (failure == null) failure = e;
+            }
+        }
+        if (failure != null) throw failure;
+    }
+
+    /**
+     * 事务外的写入：按分片顺序依次取得各分片写连接的使用权后提交，每个分片写完即释放。
+     * 等待使用权时不持有其他分片的使用权，因此不会与正在进行的事务互相等待。
+     */
+    void writeAll(Map<Integer, ShardWork<?>> work) throws SQLException {
+        List<Future<?>> futures = new ArrayList<>(work.size());
+        SQLException failure = null;
+        for (Map.Entry<Integer, ShardWork<?>> entry : new TreeMap<>(work).entrySet()) {
+            Shard shard = shards[entry.getKey()];
+            try {
+                acquire(entry.getKey());
+            } catch (SQLException e) {
+                failure = e;
+                break;
+            }
+            ShardWork<?> shardWork = entry.getValue();
+            try {
+                futures.add(shard.writer.submit(() -> {
+                    try {
+                        return shardWork.run(shard.connection);
+                    } finally {
+                        shard.owner.release();
+                    }
+                }));
+            } catch (RejectedExecutionException e) {
+                shard.owner.release();
+                failure = new SQLException("分片写线程已关闭", e);
+                break;
+            }
+        }
+        for (Future<?> future : futures) {
+            try {
+                await(future);
+            } catch (SQLException e) {
+                if (failure == null) failure = e;
+            }
+        }
+        if (failure != null) throw failure;
+    }
+
+    // 取得分片写连接的使用权 (事务加入分片时调用，事务结束后 release)
+    void acquire(int shard) throws SQLException {
+        try {
+            shards[shard].owner.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("等待分片写连接时被中断", e);
+        }
+    }
+
+    void release(int shard) {
+        shards[shard].owner.release();
+    }
+
+    // 在所有分片上同时执行同一操作，按分片顺序返回各分片的结果
+    <T> List<T> callEach(ShardWork<T> work) throws SQLException {
+        List<Future<T>> futures = new ArrayList<>(shards.length);
+        for (int i = 0; i < shards.length; i++) {
+            futures.add(submit(i, work));
+        }
+        List<T> results = new ArrayList<>(shards.length);
+        for (Future<T> future : futures) {
+            results.add(await(future));
+        }
+        return results;
+    }
+
+    private <T> Future<T> submit(int shard, ShardWork<T> work) {
+        Connection connection = shards[shard].connection;
+        return shards[shard].writer.submit(() -> work.run(connection));
+    }
+
+    private static <T> T await(Future<T> future) throws SQLException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("分片操作被中断", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof SQLException) throw (SQLException) cause;
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            throw new SQLException("分片操作失败: " + cause, cause);
+        }
+    }
+
+    void close() {
+        for (Shard shard : shards) {
+            if (shard == null) continue;
+            shard.writer.shutdown();
+            try {
+                shard.writer.awaitTermination(10, TimeUnit.SECONDS);
+                shard.connection.close();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (SQLException e) {
+                System.err.println("关闭分片连接失败: " + e.getMessage());
+            }
+        }
+    }
+}
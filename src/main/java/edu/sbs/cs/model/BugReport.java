@@ -5,14 +5,14 @@ import java.time.LocalDate;
 public class BugReport extends TaskItem {
     private Severity severity;
     private String stepsToReproduce;
-    private String environment;
+    private String environment; // 共享实例，见 StringDictionary
 
     public BugReport(String taskId, String title, String description, Priority priority,
                      LocalDate dueDate, Severity severity, String stepsToReproduce, String environment) {
         super(taskId, title, description, priority, dueDate);
         this.severity = severity;
         this.stepsToReproduce = stepsToReproduce;
-        this.environment = environment;
+        this.environment = StringDictionary.intern(environment);
     }
 
     @Override
@@ -22,22 +22,29 @@ public class BugReport extends TaskItem {
         System.out.println("标题: " + title);
         System.out.println("描述: " + description);
         System.out.println("优先级: " + priority);
-        System.out.println("状态: " + status);
-        System.out.println("截止日期: " + dueDate);
+        long state = getState();
+        System.out.println("状态: " + statusOf(state));
+        System.out.println("截止日期: " + getDueDate());
         System.out.println("严重程度: " + severity + " ⚠️");
         System.out.println("重现步骤: " + stepsToReproduce);
-        System.out.println("环境: " + environment);
-        System.out.println("进度: " + progress + "%");
+        System.out.println("环境: " + getEnvironment());
+        System.out.println("进度: " + progressOf(state) + "%");
         if (assignedTo != null) {
             System.out.println("分配给: " + assignedTo.getName());
         }
     }
 
+    @Override
+    public int getEffortPoints() {
+        // 严重程度越高，工作量越大 (LOW=1 ... BLOCKER=4)
+        return severity != null ? severity.ordinal() + 1 : 1;
+    }
+
     // Getter和Setter
     public Severity getSeverity() { return severity; }
     public void setSeverity(Severity severity) { this.severity = severity; }
     public String getStepsToReproduce() { return stepsToReproduce; }
     public void setStepsToReproduce(String stepsToReproduce) { this.stepsToReproduce = stepsToReproduce; }
     public String getEnvironment() { return environment; }
-    public void setEnvironment(String environment) { this.environment = environment; }
+    public void setEnvironment(String environment) { this.environment = StringDictionary.intern(environment); }
 }
\ No newline at end of file
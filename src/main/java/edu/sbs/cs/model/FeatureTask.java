@@ -4,13 +4,13 @@ import java.time.LocalDate;
 
 public class FeatureTask extends TaskItem {
     private int storyPoints;
-    private String featureCategory;
+    private String featureCategory; // 共享实例，见 StringDictionary
 
     public FeatureTask(String taskId, String title, String description, Priority priority,
                        LocalDate dueDate, int storyPoints, String featureCategory) {
         super(taskId, title, description, priority, dueDate);
         this.storyPoints = storyPoints;
-        this.featureCategory = featureCategory;
+        this.featureCategory = StringDictionary.intern(featureCategory);
     }
 
     @Override
@@ -20,19 +20,25 @@ public class FeatureTask extends TaskItem {
         System.out.println("标题: " + title);
         System.out.println("描述: " + description);
         System.out.println("优先级: " + priority);
-        System.out.println("状态: " + status);
-        System.out.println("截止日期: " + dueDate);
+        long state = getState();
+        System.out.println("状态: " + statusOf(state));
+        System.out.println("截止日期: " + getDueDate());
         System.out.println("故事点: " + storyPoints);
-        System.out.println("功能类别: " + featureCategory);
-        System.out.println("进度: " + progress + "%");
+        System.out.println("功能类别: " + getFeatureCategory());
+        System.out.println("进度: " + progressOf(state) + "%");
         if (assignedTo != null) {
             System.out.println("分配给: " + assignedTo.getName());
         }
     }
 
+    @Override
+    public int getEffortPoints() {
+        return Math.max(storyPoints, 1);
+    }
+
     // Getter和Setter
     public int getStoryPoints() { return storyPoints; }
     public void setStoryPoints(int storyPoints) { this.storyPoints = storyPoints; }
     public String getFeatureCategory() { return featureCategory; }
-    public void setFeatureCategory(String featureCategory) { this.featureCategory = featureCategory; }
+    public void setFeatureCategory(String featureCategory) { this.featureCategory = StringDictionary.intern(featureCategory); }
 }
\ No newline at end of file
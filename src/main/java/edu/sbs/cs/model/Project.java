@@ -8,17 +8,21 @@ public class Project {
     private String projectId;
     private String name;
     private String description;
-    private LocalDate startDate;
-    private LocalDate dueDate;
+    // 日期存为 epochDay (没有日期时为 TaskItem.NO_DATE)
+    private int startDay;
+    private int dueDay;
     private List<TeamMember> members;
     private List<TaskItem> tasks;
+    // 已归档任务的汇总 (归档任务都是已完成任务，不再保留在 tasks 中)
+    private int archivedTaskCount;
+    private double archivedProgressSum;
 
     public Project(String projectId, String name, String description, LocalDate dueDate) {
         this.projectId = projectId;
         this.name = name;
         this.description = description;
-        this.startDate = LocalDate.now();
-        this.dueDate = dueDate;
+        this.startDay = (int) LocalDate.now().toEpochDay();
+        this.dueDay = TaskItem.toEpochDay(dueDate);
         this.members = new ArrayList<>();
         this.tasks = new ArrayList<>();
     }
@@ -29,11 +33,17 @@ public class Project {
     public void setName(String name) { this.name = name; }
     public String getDescription() { return description; }
     public void setDescription(String description) { this.description = description; }
-    public LocalDate getStartDate() { return startDate; }
-    public LocalDate getDueDate() { return dueDate; }
-    public void setDueDate(LocalDate dueDate) { this.dueDate = dueDate; }
+    public LocalDate getStartDate() { return TaskItem.toLocalDate(startDay); }
+    public LocalDate getDueDate() { return TaskItem.toLocalDate(dueDay); }
+    public void setDueDate(LocalDate dueDate) { this.dueDay = TaskItem.toEpochDay(dueDate); }
+    public int getStartDay() { return startDay; }
+    public void setStartDay(int startDay) { this.startDay = startDay; }
+    public int getDueDay() { return dueDay; }
+    public void setDueDay(int dueDay) { this.dueDay = dueDay; }
     public List<TeamMember> getMembers() { return members; }
     public List<TaskItem> getTasks() { return tasks; }
+    public int getArchivedTaskCount() { return archivedTaskCount; }
+    public double getArchivedProgressSum() { return archivedProgressSum; }
 
     public void addMember(TeamMember member) {
         if (!members.contains(member)) {
@@ -49,12 +59,19 @@ public class Project {
         tasks.add(task);
     }
 
+    // 记录新归档的任务数和进度之和
+    public void addArchived(int count, double progressSum) {
+        archivedTaskCount += count;
+        archivedProgressSum += progressSum;
+    }
+
     public double calculateProgress() {
-        if (tasks.isEmpty()) return 0.0;
+        int total = tasks.size() + archivedTaskCount;
+        if (total == 0) return 0.0;
 
         double totalProgress = tasks.stream()
                 .mapToDouble(TaskItem::getProgress)
-                .sum();
-        return totalProgress / tasks.size();
+                .sum() + archivedProgressSum;
+        return totalProgress / total;
     }
 }
\ No newline at end of file
@@ -0,0 +1,34 @@
+package edu.sbs.cs.model;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 取值种类很少的短字符串 (功能类别、运行环境等) 的共享表。
+ * 相同取值的任务共用表中的同一个 String 实例。表只增不减，因此限制了收录的字符串长度和总数
+ * (-Dteam.dictionary.maxValues，默认 4096)：超长或表满时直接使用调用方的字符串，不再收录。
+ */
+public final class StringDictionary {
+    private static final int MAX_LENGTH = 64;
+    private static final int MAX_VALUES = Integer.getInteger("team.dictionary.maxValues", 4096);
+
+    private static final ConcurrentHashMap<String, String> values = new ConcurrentHashMap<>();
+
+    private StringDictionary() {
+    }
+
+    /**
+     * 返回与 value 相等的共享实例；value 为 null、超长或表已满且未收录时返回 value 本身。
+     */
+    public static String intern(String value) {
+        if (value == null) return null;
+        String shared = values.get(value);
+        if (shared != null) return shared;
+        if (value.length() > MAX_LENGTH || values.size() >= MAX_VALUES) return value;
+        shared = values.putIfAbsent(value, value);
+        return shared != null ? shared : value;
+    }
+
+    public static int size() {
+        return values.size();
+    }
+}
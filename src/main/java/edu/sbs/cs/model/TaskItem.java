@@ -1,30 +1,120 @@
 package edu.sbs.cs.model;
 
 import java.time.LocalDate;
+import java.util.concurrent.atomic.AtomicLong;
 
 public abstract class TaskItem {
     protected String taskId;
     protected String title;
     protected String description;
     protected Priority priority;
-    protected TaskStatus status;
-    protected LocalDate dueDate;
+    // 截止日期存为 epochDay，只在 getDueDate / setDueDate 处与 LocalDate 互相转换
+    protected int dueDay;
     protected TeamMember assignedTo;
-    protected double progress;
+
+    /*
+     * 状态、进度和版本号打包在同一个 long 中，保证三者总是一起被原子地读写:
+     *   bit 0-7   状态 (TaskStatus 序号)
+     *   bit 8-23  进度，单位为 0.01% (0 - 10000)
+     *   bit 24-63 版本号，每次修改加一
+     */
+    private static final int STATUS_BITS = 8;
+    private static final int PROGRESS_BITS = 16;
+    private static final int VERSION_SHIFT = STATUS_BITS + PROGRESS_BITS;
+    private static final long STATUS_MASK = (1L << STATUS_BITS) - 1;
+    private static final long PROGRESS_MASK = (1L << PROGRESS_BITS) - 1;
+    private static final TaskStatus[] STATUSES = TaskStatus.values();
+
+    private final AtomicLong state;
+
+    // 没有日期时 epochDay 字段的取值
+    public static final int NO_DATE = Integer.MIN_VALUE;
 
     public TaskItem(String taskId, String title, String description, Priority priority, LocalDate dueDate) {
         this.taskId = taskId;
         this.title = title;
         this.description = description;
         this.priority = priority;
-        this.dueDate = dueDate;
-        this.status = TaskStatus.TODO;
-        this.progress = 0.0;
+        this.dueDay = toEpochDay(dueDate);
+        this.state = new AtomicLong(pack(TaskStatus.TODO, 0.0, 0));
+    }
+
+    public static int toEpochDay(LocalDate date) {
+        return date == null ? NO_DATE : (int) date.toEpochDay();
+    }
+
+    public static LocalDate toLocalDate(int epochDay) {
+        return epochDay == NO_DATE ? null : LocalDate.ofEpochDay(epochDay);
+    }
+
+    // 打包/解包状态字
+    private static long pack(TaskStatus status, double progress, long version) {
+        return (version << VERSION_SHIFT)
+                | (encodeProgress(progress) << STATUS_BITS)
+                | status.ordinal();
+    }
+
+    private static long encodeProgress(double progress) {
+        double clamped = Math.max(0.0, Math.min(100.0, progress));
+        return Math.round(clamped * 100);
+    }
+
+    public static TaskStatus statusOf(long state) {
+        return STATUSES[(int) (state & STATUS_MASK)];
+    }
+
+    public static double progressOf(long state) {
+        return ((state >>> STATUS_BITS) & PROGRESS_MASK) / 100.0;
+    }
+
+    public static long versionOf(long state) {
+        return state >>> VERSION_SHIFT;
+    }
+
+    // 读取一致的状态快照，用 statusOf / progressOf / versionOf 解码
+    public long getState() { return state.get(); }
+    public long getVersion() { return versionOf(state.get()); }
+
+    // compareAndSetState 失败时的返回值 (状态序号全为 1，不是有效的状态字)
+    public static final long CAS_FAILED = -1L;
+
+    /**
+     * 乐观并发更新：只有当前版本号等于 expectedVersion 时才写入，成功后版本号加一。
+     *
+     * @return 写入的状态字；版本号不匹配 (已被其他人修改) 时返回 CAS_FAILED
+     */
+    public long compareAndSetState(long expectedVersion, TaskStatus status, double progress) {
+        long current = state.get();
+        if (versionOf(current) != expectedVersion) return CAS_FAILED;
+        long updated = pack(status, progress, expectedVersion + 1);
+        return state.compareAndSet(current, updated) ? updated : CAS_FAILED;
+    }
+
+    // 同时更新状态和进度 (不检查版本)，返回更新后的状态字
+    public long updateState(TaskStatus status, double progress) {
+        while (true) {
+            long current = state.get();
+            long updated = pack(status, progress, versionOf(current) + 1);
+            if (state.compareAndSet(current, updated)) return updated;
+        }
+    }
+
+    // 从持久化数据恢复状态 (加载时使用)
+    public void restoreState(TaskStatus status, double progress, long version) {
+        state.set(pack(status, progress, version));
+    }
+
+    // 恢复为之前读取的状态字 (包括版本号)，用于撤销未提交的修改
+    public void restoreState(long packed) {
+        state.set(packed);
     }
 
     // 抽象方法 - 多态体现
     public abstract void displayDetails();
 
+    // 工作量点数 - 用于自动分配时的负载均衡
+    public abstract int getEffortPoints();
+
     // Getter和Setter - 封装体现
     public String getTaskId() { return taskId; }
     public String getTitle() { return title; }
@@ -33,12 +123,24 @@ public abstract class TaskItem {
     public void setDescription(String description) { this.description = description; }
     public Priority getPriority() { return priority; }
     public void setPriority(Priority priority) { this.priority = priority; }
-    public TaskStatus getStatus() { return status; }
-    public void setStatus(TaskStatus status) { this.status = status; }
-    public LocalDate getDueDate() { return dueDate; }
-    public void setDueDate(LocalDate dueDate) { this.dueDate = dueDate; }
+    public TaskStatus getStatus() { return statusOf(state.get()); }
+    public void setStatus(TaskStatus status) {
+        while (true) {
+            long current = state.get();
+            if (state.compareAndSet(current, pack(status, progressOf(current), versionOf(current) + 1))) return;
+        }
+    }
+    public LocalDate getDueDate() { return toLocalDate(dueDay); }
+    public void setDueDate(LocalDate dueDate) { this.dueDay = toEpochDay(dueDate); }
+    public int getDueDay() { return dueDay; }
+    public void setDueDay(int dueDay) { this.dueDay = dueDay; }
     public TeamMember getAssignedTo() { return assignedTo; }
     public void setAssignedTo(TeamMember assignedTo) { this.assignedTo = assignedTo; }
-    public double getProgress() { return progress; }
-    public void setProgress(double progress) { this.progress = progress; }
+    public double getProgress() { return progressOf(state.get()); }
+    public void setProgress(double progress) {
+        while (true) {
+            long current = state.get();
+            if (state.compareAndSet(current, pack(statusOf(current), progress, versionOf(current) + 1))) return;
+        }
+    }
 }
\ No newline at end of file
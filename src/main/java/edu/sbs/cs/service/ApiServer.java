@@ -0,0 +1,511 @@
+package edu.sbs.cs.service;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import edu.sbs.cs.model.*;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.function.Supplier;
+
+/**
+ * 服务器模式：基于 JDK 自带 com.sun.net.httpserver 的本地 HTTP/JSON 接口，多个用户可同时使用同一个进程。
+ * 运行在 Java 21 及以上时每个请求一个虚拟线程，更早的版本退回固定大小的线程池 (-Dteam.server.threads)。
+ * 登录状态保存在各自的会话中 (请求头 Authorization: Bearer &lt;令牌&gt;)，处理请求时通过 DataManager.runAs 切换身份；
+ * DataManager 的内存数据由读写锁保护：查询共享读锁，修改持有写锁。
+ *
+ * 接口:
+ *   POST /api/login               {"email", "password"} -> {"token", "memberId", "name", "role"}
+ *   POST /api/logout
+ *   GET  /api/tasks?projectId=&status=&priority=&limit=   搜索任务
+ *   GET  /api/tasks/mine          分配给当前用户的任务
+ *   POST /api/tasks/{id}/status   {"status", "progress", "version" (可选，乐观并发检查)}
+ *   GET  /api/reports/progress    各项目进度
+ *   GET  /api/schedule?projectId=  按任务依赖计算的预计完工日期、关键路径和赶不上截止日期的任务
+ *   GET  /api/history?asOf=&taskId=|projectId=   任务或项目在过去某一时刻的状态
+ *   GET  /api/replication         复制状态 (主节点的最新序号或副本的延迟)
+ * 在只读副本上运行时 (DataManager.createReplica)，修改接口返回 403。
+ */
+public class ApiServer implements AutoCloseable {
+    private static final long SESSION_IDLE_MS = Long.getLong("team.server.sessionIdleMs", 30 * 60 * 1000L);
+    private static final int DEFAULT_LIMIT = 100;
+    private static final int MAX_BODY_BYTES = 64 * 1024;
+
+    private final DataManager dataManager;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final boolean virtualThreads;
+    private final ReadWriteLock dataLock;
+    private volatile Supplier<String> replicationStatus;
+    private final Map<String, Session> sessions = new ConcurrentHashMap<>();
+    private final SecureRandom random = new SecureRandom();
+
+    private static final class Session {
+        private final TeamMember member;
+        private volatile long lastAccess;
+
+        Session(TeamMember member) {
+            this.member = member;
+            this.lastAccess = System.currentTimeMillis();
+        }
+    }
+
+    // 请求参数错误，返回 400
+    private static final class BadRequestException extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        BadRequestException(String message) {
+            super(message);
+        }
+    }
+
+    // 使用 DataManager 的读写锁，与复制快照 (ReplicationPrimary) 互斥
+    public ApiServer(DataManager dataManager, int port) throws IOException {
+        this(dataManager, port, dataManager.getDataLock());
+    }
+
+    // 副本与复制线程共用同一把读写锁 (见 ReplicaFollower)
+    public ApiServer(DataManager dataManager, int port, ReadWriteLock dataLock) throws IOException {
+        this.dataManager = dataManager;
+        this.dataLock = dataLock;
+        ExecutorService virtual = newVirtualThreadExecutor();
+        this.virtualThreads = virtual != null;
+        this.executor = virtual != null ? virtual
+                : Executors.newFixedThreadPool(Integer.getInteger("team.server.threads", 64), daemonThreads("api-worker"));
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 1024);
+        server.createContext("/api/", this::handle);
+        server.setExecutor(executor);
+    }
+
+    /**
+     * 每个任务一个虚拟线程的执行器。通过反射调用，源码仍按 Java 17 编译；
+     * 当前 JVM 不支持虚拟线程时返回 null。
+     */
+    static ExecutorService newVirtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    static ThreadFactory daemonThreads(String prefix) {
+        AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    public void start() {
+        server.start();
+        System.out.println("HTTP 服务已启动: http://localhost:" + getPort() + "/api/ ("
+                + (virtualThreads ? "虚拟线程" : "线程池") + ")");
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    public boolean usesVirtualThreads() {
+        return virtualThreads;
+    }
+
+    // GET /api/replication 返回的状态 JSON；未设置时该接口返回 404
+    public void setReplicationStatus(Supplier<String> replicationStatus) {
+        this.replicationStatus = replicationStatus;
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) {
+        try {
+            String path = exchange.getRequestURI().getPath();
+            String method = exchange.getRequestMethod();
+
+            if (path.equals("/api/login")) {
+                requireMethod(method, "POST");
+                login(exchange);
+                return;
+            }
+
+            String token = bearerToken(exchange);
+            Session session = token == null ? null : sessions.get(token);
+            long now = System.currentTimeMillis();
+            if (session != null && now - session.lastAccess > SESSION_IDLE_MS) {
+                sessions.remove(token);
+                session = null;
+            }
+            if (session == null) {
+                send(exchange, 401, error("未登录或会话已过期"));
+                return;
+            }
+            session.lastAccess = now;
+
+            if (path.equals("/api/logout")) {
+                requireMethod(method, "POST");
+                sessions.remove(token);
+                send(exchange, 200, "{\"ok\":true}");
+            } else if (path.equals("/api/tasks")) {
+                requireMethod(method, "GET");
+                searchTasks(exchange, session);
+            } else if (path.equals("/api/tasks/mine")) {
+                requireMethod(method, "GET");
+                myTasks(exchange, session);
+            } else if (path.startsWith("/api/tasks/") && path.endsWith("/status")) {
+                requireMethod(method, "POST");
+                String taskId = path.substring("/api/tasks/".length(), path.length() - "/status".length());
+                updateStatus(exchange, session, taskId);
+            } else if (path.equals("/api/reports/progress")) {
+                requireMethod(method, "GET");
+                progressReport(exchange, session);
+            } else if (path.equals("/api/schedule")) {
+                requireMethod(method, "GET");
+                schedule(exchange);
+            } else if (path.equals("/api/history")) {
+                requireMethod(method, "GET");
+                stateAsOf(exchange);
+            } else if (path.equals("/api/replication") && replicationStatus != null) {
+                requireMethod(method, "GET");
+                send(exchange, 200, replicationStatus.get());
+            } else {
+                send(exchange, 404, error("未知接口: " + path));
+            }
+        } catch (BadRequestException | IllegalArgumentException e) {
+            sendQuietly(exchange, 400, error(e.getMessage()));
+        } catch (Exception e) {
+            System.err.println("处理请求失败: " + e.getMessage());
+            sendQuietly(exchange, 500, error("服务器内部错误"));
+        } finally {
+            exchange.close();
+        }
+    }
+
+    // ===== 接口实现 =====
+
+    private void login(HttpExchange exchange) throws IOException, BadRequestException {
+        Map<String, String> body = readBody(exchange);
+        TeamMember member = withReadLock(() -> dataManager.authenticate(body.get("email"), body.get("password")));
+        if (member == null) {
+            send(exchange, 401, error("邮箱或密码错误"));
+            return;
+        }
+
+        // 顺便清理过期会话
+        long now = System.currentTimeMillis();
+        sessions.values().removeIf(session -> now - session.lastAccess > SESSION_IDLE_MS);
+
+        byte[] bytes = new byte[16];
+        random.nextBytes(bytes);
+        String token = HexFormat.of().formatHex(bytes);
+        sessions.put(token, new Session(member));
+
+        StringBuilder json = new StringBuilder(128).append("{\"token\":\"").append(token).append("\",\"memberId\":");
+        FlatJson.appendString(json, member.getMemberId()).append(",\"name\":");
+        FlatJson.appendString(json, member.getName()).append(",\"role\":\"").append(member.getRole()).append("\"}");
+        send(exchange, 200, json.toString());
+    }
+
+    private void searchTasks(HttpExchange exchange, Session session) throws IOException {
+        Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+        String projectId = query.get("projectId");
+        TaskStatus status = query.containsKey("status") ? TaskStatus.valueOf(query.get("status")) : null;
+        Priority priority = query.containsKey("priority") ? Priority.valueOf(query.get("priority")) : null;
+        int limit = query.containsKey("limit") ? Integer.parseInt(query.get("limit")) : DEFAULT_LIMIT;
+
+        String json = withReadLock(() -> dataManager.runAs(session.member, () -> {
+            List<TaskItem> results = dataManager.searchTasks(projectId, status, priority);
+            return taskList(results, limit);
+        }));
+        send(exchange, 200, json);
+    }
+
+    private void myTasks(HttpExchange exchange, Session session) throws IOException {
+        String json = withReadLock(() -> dataManager.runAs(session.member,
+                () -> taskList(dataManager.getAssignedTasks(), Integer.MAX_VALUE)));
+        send(exchange, 200, json);
+    }
+
+    private void updateStatus(HttpExchange exchange, Session session, String taskId)
+            throws IOException, BadRequestException {
+        Map<String, String> body = readBody(exchange);
+        if (dataManager.isReadOnly()) {
+            send(exchange, 403, error("只读副本不能修改数据"));
+            return;
+        }
+        int[] code = new int[1];
+        // 写锁内只修改内存，状态的数据库写入在释放写锁后进行
+        Map<String, Long> stateWrites = new HashMap<>(2);
+        String json = withWriteLock(() -> dataManager.deferStateWrites(stateWrites, () -> dataManager.runAs(session.member, () -> {
+            TaskItem task = dataManager.getTasks().get(taskId);
+            if (task == null) {
+                code[0] = 404;
+                return error("任务不存在: " + taskId);
+            }
+            // 项目经理可以修改任何任务，普通成员只能修改分配给自己的任务
+            if (session.member.getRole() != Role.ADMIN && task.getAssignedTo() != session.member) {
+                code[0] = 403;
+                return error("无权修改该任务");
+            }
+
+            long state = task.getState();
+            TaskStatus status = body.get("status") != null ? TaskStatus.valueOf(body.get("status")) : TaskItem.statusOf(state);
+            double progress = body.get("progress") != null ? Double.parseDouble(body.get("progress")) : TaskItem.progressOf(state);
+            boolean updated = body.get("version") != null
+                    ? dataManager.updateTaskStatus(taskId, status, progress, Long.parseLong(body.get("version")))
+                    : dataManager.updateTaskStatus(taskId, status, progress);
+            code[0] = updated ? 200 : 409;
+            StringBuilder sb = new StringBuilder(256);
+            appendTask(sb, task, dataManager.getTaskProjectIds().get(taskId));
+            return updated ? sb.toString() : "{\"error\":\"任务已被其他人修改\",\"task\":" + sb + "}";
+        })));
+        dataManager.writeDeferredStates(stateWrites);
+        send(exchange, code[0], json);
+    }
+
+    private void progressReport(HttpExchange exchange, Session session) throws IOException {
+        String json = withReadLock(() -> {
+            StringBuilder sb = new StringBuilder(4096).append('[');
+            boolean first = true;
+            for (Project project : dataManager.getProjects().values()) {
+                long completed = project.getArchivedTaskCount()
+                        + dataManager.getTaskCounters().count(project.getProjectId(), null, TaskStatus.COMPLETED, null);
+                if (!first) sb.append(',');
+                first = false;
+                sb.append("{\"projectId\":");
+                FlatJson.appendString(sb, project.getProjectId()).append(",\"name\":");
+                FlatJson.appendString(sb, project.getName())
+                        .append(",\"progress\":").append(project.calculateProgress())
+                        .append(",\"completedTasks\":").append(completed)
+                        .append(",\"totalTasks\":").append(project.getTasks().size() + project.getArchivedTaskCount())
+                        .append('}');
+            }
+            return sb.append(']').toString();
+        });
+        send(exchange, 200, json);
+    }
+
+    private void schedule(HttpExchange exchange) throws IOException {
+        String projectId = parseQuery(exchange.getRequestURI().getRawQuery()).get("projectId");
+        int[] code = {200};
+        String json = withReadLock(() -> {
+            if (!dataManager.getProjects().containsKey(projectId)) {
+                code[0] = 404;
+                return error("项目不存在: " + projectId);
+            }
+            CriticalPathEngine schedule = dataManager.getSchedule();
+            LocalDate finish = schedule.projectFinish(projectId);
+            StringBuilder sb = new StringBuilder(1024).append("{\"projectId\":");
+            FlatJson.appendString(sb, projectId).append(",\"dependencies\":").append(schedule.getDependencyCount(projectId))
+                    .append(",\"finish\":");
+            FlatJson.appendString(sb, finish == null ? null : finish.toString()).append(",\"criticalPath\":[");
+            appendScheduledTasks(sb, schedule, schedule.criticalPath(projectId));
+            sb.append("],\"lateTasks\":[");
+            appendScheduledTasks(sb, schedule, schedule.lateTasks(projectId));
+            return sb.append("]}").toString();
+        });
+        send(exchange, code[0], json);
+    }
+
+    private static void appendScheduledTasks(StringBuilder sb, CriticalPathEngine schedule, List<String> taskIds) {
+        for (int i = 0; i < taskIds.size(); i++) {
+            String taskId = taskIds.get(i);
+            LocalDate latest = schedule.latestFinish(taskId);
+            if (i > 0) sb.append(',');
+            sb.append("{\"taskId\":");
+            FlatJson.appendString(sb, taskId).append(",\"earliestFinish\":");
+            FlatJson.appendString(sb, schedule.earliestFinish(taskId).toString()).append(",\"latestFinish\":");
+            FlatJson.appendString(sb, latest == null ? null : latest.toString())
+                    .append(",\"slackDays\":").append(schedule.slackDays(taskId)).append('}');
+        }
+    }
+
+    // 任务 (taskId) 或项目 (projectId) 在 asOf 时刻的状态；asOf 为毫秒时间戳或本地时间 2024-01-01T09:00
+    private void stateAsOf(HttpExchange exchange) throws IOException, BadRequestException {
+        Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+        String asOf = query.get("asOf");
+        if (asOf == null) {
+            throw new BadRequestException("缺少 asOf 参数");
+        }
+        long time;
+        try {
+            time = asOf.chars().allMatch(Character::isDigit) ? Long.parseLong(asOf)
+                    : LocalDateTime.parse(asOf).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        } catch (DateTimeParseException e) {
+            throw new BadRequestException("asOf 格式错误: " + asOf);
+        }
+
+        int[] code = {200};
+        String json = withReadLock(() -> {
+            TaskHistory history = dataManager.getTaskHistory();
+            Map<String, Long> states;
+            if (query.get("taskId") != null) {
+                long state = history.stateAsOf(query.get("taskId"), time);
+                states = state == TaskHistory.NONE ? Collections.emptyMap()
+                        : Collections.singletonMap(query.get("taskId"), state);
+            } else {
+                Project project = dataManager.getProjects().get(query.get("projectId"));
+                if (project == null) {
+                    code[0] = 404;
+                    return error("项目不存在: " + query.get("projectId"));
+                }
+                states = history.projectAsOf(project, time);
+            }
+            StringBuilder sb = new StringBuilder(64 + states.size() * 80)
+                    .append("{\"asOf\":").append(time).append(",\"tasks\":[");
+            boolean first = true;
+            for (Map.Entry<String, Long> entry : states.entrySet()) {
+                if (!first) sb.append(',');
+                first = false;
+                long state = entry.getValue();
+                sb.append("{\"taskId\":");
+                FlatJson.appendString(sb, entry.getKey())
+                        .append(",\"status\":\"").append(TaskItem.statusOf(state))
+                        .append("\",\"progress\":").append(TaskItem.progressOf(state))
+                        .append(",\"version\":").append(TaskItem.versionOf(state))
+                        .append('}');
+            }
+            return sb.append("]}").toString();
+        });
+        send(exchange, code[0], json);
+    }
+
+    private String taskList(List<TaskItem> tasks, int limit) {
+        Map<String, String> taskProjectIds = dataManager.getTaskProjectIds();
+        int count = Math.min(Math.max(limit, 0), tasks.size());
+        StringBuilder sb = new StringBuilder(64 + count * 200)
+                .append("{\"total\":").append(tasks.size()).append(",\"tasks\":[");
+        for (int i = 0; i < count; i++) {
+            if (i > 0) sb.append(',');
+            TaskItem task = tasks.get(i);
+            appendTask(sb, task, taskProjectIds.get(task.getTaskId()));
+        }
+        return sb.append("]}").toString();
+    }
+
+    private static void appendTask(StringBuilder sb, TaskItem task, String projectId) {
+        long state = task.getState();
+        sb.append("{\"taskId\":");
+        FlatJson.appendString(sb, task.getTaskId())
+                .append(",\"type\":\"").append(task instanceof BugReport ? "BUG" : "FEATURE").append("\",\"projectId\":");
+        FlatJson.appendString(sb, projectId).append(",\"title\":");
+        FlatJson.appendString(sb, task.getTitle())
+                .append(",\"priority\":\"").append(task.getPriority())
+                .append("\",\"status\":\"").append(TaskItem.statusOf(state))
+                .append("\",\"progress\":").append(TaskItem.progressOf(state))
+                .append(",\"version\":").append(TaskItem.versionOf(state))
+                .append(",\"dueDate\":");
+        FlatJson.appendString(sb, task.getDueDate() == null ? null : task.getDueDate().toString())
+                .append(",\"assignee\":");
+        FlatJson.appendString(sb, task.getAssignedTo() == null ? null : task.getAssignedTo().getMemberId())
+                .append('}');
+    }
+
+    // ===== 锁与请求/响应辅助方法 =====
+
+    private <T> T withReadLock(Supplier<T> action) {
+        dataLock.readLock().lock();
+        try {
+            return action.get();
+        } finally {
+            dataLock.readLock().unlock();
+        }
+    }
+
+    private <T> T withWriteLock(Supplier<T> action) {
+        dataLock.writeLock().lock();
+        try {
+            return action.get();
+        } finally {
+            dataLock.writeLock().unlock();
+        }
+    }
+
+    private static void requireMethod(String method, String expected) throws BadRequestException {
+        if (!expected.equals(method)) {
+            throw new BadRequestException("接口只支持 " + expected + " 请求");
+        }
+    }
+
+    private static String bearerToken(HttpExchange exchange) {
+        String header = exchange.getRequestHeaders().getFirst("Authorization");
+        if (header == null || !header.startsWith("Bearer ")) return null;
+        return header.substring("Bearer ".length()).trim();
+    }
+
+    private static Map<String, String> readBody(HttpExchange exchange) throws IOException, BadRequestException {
+        byte[] bytes;
+        try (InputStream in = exchange.getRequestBody()) {
+            bytes = in.readNBytes(MAX_BODY_BYTES + 1);
+        }
+        if (bytes.length > MAX_BODY_BYTES) {
+            throw new BadRequestException("请求体过大");
+        }
+        Map<String, String> fields = new HashMap<>();
+        String text = new String(bytes, StandardCharsets.UTF_8);
+        if (text.isBlank()) return fields;
+        try {
+            FlatJson.parse(text, fields::put);
+        } catch (IOException e) {
+            throw new BadRequestException(e.getMessage());
+        }
+        return fields;
+    }
+
+    private static Map<String, String> parseQuery(String rawQuery) {
+        Map<String, String> query = new HashMap<>();
+        if (rawQuery == null || rawQuery.isEmpty()) return query;
+        for (String pair : rawQuery.split("&")) {
+            int eq = pair.indexOf('=');
+            String key = URLDecoder.decode(eq < 0 ? pair : pair.substring(0, eq), StandardCharsets.UTF_8);
+            String value = eq < 0 ? "" : URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8);
+            if (!value.isEmpty()) {
+                query.put(key, value);
+            }
+        }
+        return query;
+    }
+
+    private static String error(String message) {
+        StringBuilder sb = new StringBuilder("{\"error\":");
+        return FlatJson.appendString(sb, message).append('}').toString();
+    }
+
+    private static void send(HttpExchange exchange, int status, String json) throws IOException {
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static void sendQuietly(HttpExchange exchange, int status, String json) {
+        try {
+            send(exchange, status, json);
+        } catch (IOException | IllegalStateException ignored) {
+            // 响应头已发送或连接已断开
+        }
+    }
+}
@@ -0,0 +1,755 @@
+package edu.sbs.cs.service;
+
+import edu.sbs.cs.model.*;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.function.ToIntFunction;
+
+/**
+ * 任务依赖 ("A 被 B 阻塞"：B 完成后 A 才能开始) 上增量维护的进度计划，每个项目一张图，依赖只能在同一项目内。
+ * 任务工期为剩余工作量：未完成任务为 ceil(工作量点数 × 剩余进度)，一点按一天计；已完成任务为 0。
+ * 所有任务最早从今天开始，对每个任务维护：
+ *   拓扑序号   阻塞者的序号总是小于被阻塞的任务 (Pearce-Kelly 动态拓扑排序，加边时只重排受影响的序号区间)
+ *   最早完成   距今天的天数 = 工期 + 各阻塞者最早完成的最大值
+ *   最晚完成   epochDay，不晚于任务和项目的截止日期，也不晚于它阻塞的每个任务的最晚开始
+ * 边、工期或截止日期变化时，只从变化处沿一个方向按拓扑序重新计算，值不变的地方停止传播。
+ * 关键路径：最早完成最晚的任务沿"决定其最早开始的阻塞者"回溯得到的链，决定项目的预计完工日期。
+ * 与 DataManager 的其他数据一样不做同步；所有状态在更新时维护，查询不修改任何字段，可以在读锁下并发执行。
+ */
+public class CriticalPathEngine {
+    // 没有截止日期约束时的最晚完成
+    private static final int NO_LIMIT = Integer.MAX_VALUE;
+
+    private final Map<String, ProjectGraph> graphs = new HashMap<>();
+    private final Map<String, ProjectGraph> taskGraphs = new HashMap<>();
+    private final ToIntFunction<String> projectDueDays;
+
+    /**
+     * @param projectDueDays 项目ID -> 项目截止日期 (epochDay，没有时为 TaskItem.NO_DATE)
+     */
+    public CriticalPathEngine(ToIntFunction<String> projectDueDays) {
+        this.projectDueDays = projectDueDays;
+    }
+
+    // 剩余工期 (天)
+    static int remainingDays(TaskItem task) {
+        long state = task.getState();
+        if (TaskItem.statusOf(state) == TaskStatus.COMPLETED) return 0;
+        return (int) Math.ceil(task.getEffortPoints() * (100.0 - TaskItem.progressOf(state)) / 100.0);
+    }
+
+    private static int limitOf(int epochDay) {
+        return epochDay == TaskItem.NO_DATE ? NO_LIMIT : epochDay;
+    }
+
+    // ===== 更新 (由 DataManager 和 UnitOfWork 在修改任务之后调用) =====
+
+    // 新任务加入所属项目的图；已在图中时按当前状态和截止日期更新工期与约束
+    void taskChanged(String projectId, TaskItem task) {
+        if (projectId == null) return;
+        ProjectGraph graph = taskGraphs.get(task.getTaskId());
+        if (graph != null && !graph.projectId.equals(projectId)) {
+            // 导入时同ID任务换了项目：原项目中的边作废
+            graph.removeNode(task.getTaskId());
+            graph = null;
+        }
+        if (graph == null) {
+            graph = graphs.computeIfAbsent(projectId, ProjectGraph::new);
+            graph.addNode(task.getTaskId(), remainingDays(task), limitOf(task.getDueDay()));
+            taskGraphs.put(task.getTaskId(), graph);
+            return;
+        }
+        graph.update(graph.nodes.get(task.getTaskId()), remainingDays(task), limitOf(task.getDueDay()));
+    }
+
+    void taskRemoved(String taskId) {
+        ProjectGraph graph = taskGraphs.remove(taskId);
+        if (graph != null) {
+            graph.removeNode(taskId);
+        }
+    }
+
+    // 项目截止日期可能变化：从 projectDueDays 重新读取，变化时重新计算该项目所有任务的最晚完成
+    void projectChanged(String projectId) {
+        ProjectGraph graph = graphs.get(projectId);
+        if (graph != null) {
+            graph.refreshProjectDue();
+        }
+    }
+
+    /**
+     * 添加依赖：taskId 被 blockerId 阻塞。
+     *
+     * @return 两个任务不在同一项目、依赖已存在或会形成循环时返回 false，图不变
+     */
+    boolean addDependency(String taskId, String blockerId) {
+        ProjectGraph graph = taskGraphs.get(taskId);
+        if (graph == null || graph != taskGraphs.get(blockerId)) return false;
+        return graph.addEdge(graph.nodes.get(blockerId), graph.nodes.get(taskId), true);
+    }
+
+    boolean removeDependency(String taskId, String blockerId) {
+        ProjectGraph graph = taskGraphs.get(taskId);
+        if (graph == null || graph != taskGraphs.get(blockerId)) return false;
+        return graph.removeEdge(graph.nodes.get(blockerId), graph.nodes.get(taskId));
+    }
+
+    int rebuild(Collection<TaskItem> tasks, Map<String, String> taskProjectIds, List<String[]> dependencies) {
+        return rebuild(tasks, taskProjectIds, dependencies, new ArrayList<>());
+    }
+
+    /**
+     * 用全部任务和依赖重建 (启动加载时)：先登记所有节点和边，再对每个项目做一次完整的拓扑排序和计算。
+     *
+     * @param dependencies 每项为 {taskId, blockerId}
+     * @param cyclic       收集因形成循环而删除的依赖 {taskId, blockerId}，供调用方从数据库中删除
+     * @return 因任务不存在、跨项目或形成循环而忽略的依赖数
+     */
+    int rebuild(Collection<TaskItem> tasks, Map<String, String> taskProjectIds, List<String[]> dependencies,
+                List<String[]> cyclic) {
+        graphs.clear();
+        taskGraphs.clear();
+        for (TaskItem task : tasks) {
+            String projectId = taskProjectIds.get(task.getTaskId());
+            if (projectId == null) continue;
+            ProjectGraph graph = graphs.computeIfAbsent(projectId, ProjectGraph::new);
+            graph.appendNode(task.getTaskId(), remainingDays(task), limitOf(task.getDueDay()));
+            taskGraphs.put(task.getTaskId(), graph);
+        }
+        int skipped = 0;
+        for (String[] dependency : dependencies) {
+            ProjectGraph graph = taskGraphs.get(dependency[0]);
+            if (graph == null || graph != taskGraphs.get(dependency[1])
+                    || !graph.addEdge(graph.nodes.get(dependency[1]), graph.nodes.get(dependency[0]), false)) {
+                skipped++;
+            }
+        }
+        for (ProjectGraph graph : graphs.values()) {
+            graph.recomputeAll(cyclic);
+        }
+        return skipped + cyclic.size();
+    }
+
+    void clear() {
+        graphs.clear();
+        taskGraphs.clear();
+    }
+
+    // ===== 查询 =====
+
+    // 任务的预计最早完成日期，任务不在图中时返回 null
+    public LocalDate earliestFinish(String taskId) {
+        ProjectGraph graph = taskGraphs.get(taskId);
+        return graph == null ? null : LocalDate.now().plusDays(graph.earliest[graph.nodes.get(taskId)]);
+    }
+
+    // 任务的最晚完成日期 (不耽误任何截止日期)，没有截止日期约束时返回 null
+    public LocalDate latestFinish(String taskId) {
+        ProjectGraph graph = taskGraphs.get(taskId);
+        if (graph == null) return null;
+        int latest = graph.latest[graph.nodes.get(taskId)];
+        return latest == NO_LIMIT ? null : LocalDate.ofEpochDay(latest);
+    }
+
+    // 总时差 (天) = 最晚完成 - 最早完成，负数表示按当前依赖无法赶上截止日期；没有约束时返回 null
+    public Integer slackDays(String taskId) {
+        ProjectGraph graph = taskGraphs.get(taskId);
+        if (graph == null) return null;
+        int node = graph.nodes.get(taskId);
+        return graph.latest[node] == NO_LIMIT ? null
+                : (int) (graph.latest[node] - LocalDate.now().toEpochDay() - graph.earliest[node]);
+    }
+
+    // 项目的预计完工日期 (最早完成的最大值)，项目没有任务时返回 null
+    public LocalDate projectFinish(String projectId) {
+        ProjectGraph graph = graphs.get(projectId);
+        int node = graph == null ? -1 : graph.finish;
+        return node < 0 ? null : LocalDate.now().plusDays(graph.earliest[node]);
+    }
+
+    // 关键路径上的任务ID，从第一个开始的任务到决定完工日期的任务
+    public List<String> criticalPath(String projectId) {
+        ProjectGraph graph = graphs.get(projectId);
+        List<String> path = new ArrayList<>();
+        if (graph == null) return path;
+        for (int node = graph.finish; node >= 0; node = graph.criticalBlocker[node]) {
+            path.add(graph.taskIds[node]);
+        }
+        Collections.reverse(path);
+        return path;
+    }
+
+    // 按拓扑序排列的任务ID (阻塞者在前)
+    public List<String> topologicalOrder(String projectId) {
+        ProjectGraph graph = graphs.get(projectId);
+        if (graph == null) return new ArrayList<>();
+        long[] keys = new long[graph.nodes.size()];
+        int count = 0;
+        for (int node = 0; node < graph.size; node++) {
+            if (graph.taskIds[node] != null) {
+                keys[count++] = ((long) graph.order[node] << 32) | node;
+            }
+        }
+        Arrays.sort(keys, 0, count);
+        List<String> ordered = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            ordered.add(graph.taskIds[(int) keys[i]]);
+        }
+        return ordered;
+    }
+
+    // 总时差为负 (按当前依赖赶不上截止日期) 的任务ID，按时差从小到大
+    public List<String> lateTasks(String projectId) {
+        ProjectGraph graph = graphs.get(projectId);
+        List<String> late = new ArrayList<>();
+        if (graph == null) return late;
+        long today = LocalDate.now().toEpochDay();
+        for (int node = 0; node < graph.size; node++) {
+            if (graph.taskIds[node] != null && graph.latest[node] != NO_LIMIT
+                    && graph.latest[node] - today - graph.earliest[node] < 0) {
+                late.add(graph.taskIds[node]);
+            }
+        }
+        late.sort(Comparator.comparingInt(this::slackDays));
+        return late;
+    }
+
+    // 直接阻塞该任务的任务ID
+    public List<String> blockersOf(String taskId) {
+        ProjectGraph graph = taskGraphs.get(taskId);
+        List<String> blockers = new ArrayList<>();
+        if (graph == null) return blockers;
+        IntList list = graph.blockedBy[graph.nodes.get(taskId)];
+        for (int i = 0; i < list.size; i++) {
+            blockers.add(graph.taskIds[list.values[i]]);
+        }
+        return blockers;
+    }
+
+    // 所有项目的全部依赖，每项为 {taskId, blockerId} (写快照时使用)
+    public List<String[]> allDependencies() {
+        List<String[]> dependencies = new ArrayList<>();
+        for (ProjectGraph graph : graphs.values()) {
+            for (int node = 0; node < graph.size; node++) {
+                if (graph.taskIds[node] == null) continue;
+                IntList list = graph.blockedBy[node];
+                for (int i = 0; i < list.size; i++) {
+                    dependencies.add(new String[]{graph.taskIds[node], graph.taskIds[list.values[i]]});
+                }
+            }
+        }
+        return dependencies;
+    }
+
+    public int getDependencyCount(String projectId) {
+        ProjectGraph graph = graphs.get(projectId);
+        return graph == null ? 0 : graph.edgeCount;
+    }
+
+    // ===== 单个项目的图 =====
+
+    // 节点按整数编号存放在并行数组中，删除的编号放入空闲列表复用
+    private final class ProjectGraph {
+        private final String projectId;
+        private final Map<String, Integer> nodes = new HashMap<>();
+        private int projectDue; // 取自 projectDueDays，由 refreshProjectDue 更新
+        private String[] taskIds = new String[16];
+        private int[] duration = new int[16];
+        private int[] dueDay = new int[16];
+        private int[] order = new int[16];
+        private int[] earliest = new int[16];
+        private int[] latest = new int[16];
+        private int[] criticalBlocker = new int[16];
+        private IntList[] blockedBy = new IntList[16]; // 前驱：阻塞该任务的任务
+        private IntList[] blocks = new IntList[16];    // 后继：被该任务阻塞的任务
+        private int[] visited = new int[16];
+        private int visitStamp;
+        private final IntList freeNodes = new IntList();
+        private int size;
+        private int nextOrder;
+        private int edgeCount;
+
+        // 最早完成最大的任务；传播中该任务的值变小或被删除时标记为过期，传播结束时重新扫描，查询只读
+        private int finish = -1;
+        private boolean finishStale;
+
+        // 待重新计算的节点，向前传播按拓扑序从小到大，向后传播从大到小
+        private final OrderQueue forward = new OrderQueue(false);
+        private final OrderQueue backward = new OrderQueue(true);
+
+        ProjectGraph(String projectId) {
+            this.projectId = projectId;
+            this.projectDue = limitOf(projectDueDays.applyAsInt(projectId));
+        }
+
+        // 登记节点 (不计算)，返回编号
+        int appendNode(String taskId, int days, int due) {
+            int node;
+            if (freeNodes.size > 0) {
+                node = freeNodes.values[--freeNodes.size];
+            } else {
+                node = size++;
+                if (node == taskIds.length) grow();
+            }
+            taskIds[node] = taskId;
+            duration[node] = days;
+            dueDay[node] = due;
+            order[node] = nextOrder++;
+            earliest[node] = days;
+            latest[node] = Math.min(due, projectDue);
+            criticalBlocker[node] = -1;
+            blockedBy[node] = new IntList();
+            blocks[node] = new IntList();
+            nodes.put(taskId, node);
+            return node;
+        }
+
+        // 没有边的新节点排在拓扑序末尾，最早完成就是工期
+        void addNode(String taskId, int days, int due) {
+            int node = appendNode(taskId, days, due);
+            if (finish < 0 || earliest[node] > earliest[finish]) {
+                finish = node;
+            }
+        }
+
+        private void grow() {
+            int capacity = taskIds.length * 2;
+            taskIds = Arrays.copyOf(taskIds, capacity);
+            duration = Arrays.copyOf(duration, capacity);
+            dueDay = Arrays.copyOf(dueDay, capacity);
+            order = Arrays.copyOf(order, capacity);
+            earliest = Arrays.copyOf(earliest, capacity);
+            latest = Arrays.copyOf(latest, capacity);
+            criticalBlocker = Arrays.copyOf(criticalBlocker, capacity);
+            blockedBy = Arrays.copyOf(blockedBy, capacity);
+            blocks = Arrays.copyOf(blocks, capacity);
+            visited = Arrays.copyOf(visited, capacity);
+            forward.grow(capacity);
+            backward.grow(capacity);
+        }
+
+        void removeNode(String taskId) {
+            Integer boxed = nodes.remove(taskId);
+            if (boxed == null) return;
+            int node = boxed;
+            for (int i = 0; i < blockedBy[node].size; i++) {
+                int blocker = blockedBy[node].values[i];
+                blocks[blocker].remove(node);
+                backward.push(blocker);
+            }
+            for (int i = 0; i < blocks[node].size; i++) {
+                int blocked = blocks[node].values[i];
+                blockedBy[blocked].remove(node);
+                forward.push(blocked);
+            }
+            edgeCount -= blockedBy[node].size + blocks[node].size;
+            taskIds[node] = null;
+            blockedBy[node] = null;
+            blocks[node] = null;
+            freeNodes.add(node);
+            if (node == finish) {
+                finishStale = true;
+            }
+            propagate();
+        }
+
+        void refreshProjectDue() {
+            int due = limitOf(projectDueDays.applyAsInt(projectId));
+            if (due == projectDue) return;
+            projectDue = due;
+            for (int node = 0; node < size; node++) {
+                if (taskIds[node] != null) backward.push(node);
+            }
+            propagate();
+        }
+
+        void update(int node, int days, int due) {
+            if (days == duration[node] && due == dueDay[node]) return;
+            boolean durationChanged = days != duration[node];
+            duration[node] = days;
+            dueDay[node] = due;
+            backward.push(node);
+            if (durationChanged) {
+                // 工期影响自己的最早完成和阻塞者的最晚完成 (被阻塞任务的最晚开始)
+                forward.push(node);
+                for (int i = 0; i < blockedBy[node].size; i++) {
+                    backward.push(blockedBy[node].values[i]);
+                }
+            }
+            propagate();
+        }
+
+        // incremental 为 false 时 (重建) 只登记边，拓扑序和循环检查留给 recomputeAll
+        boolean addEdge(int blocker, int blocked, boolean incremental) {
+            if (blocker == blocked || contains(blocker, blocked)) return false;
+            if (incremental && order[blocker] > order[blocked] && !reorder(blocker, blocked)) return false;
+            blocks[blocker].add(blocked);
+            blockedBy[blocked].add(blocker);
+            edgeCount++;
+            if (incremental) {
+                forward.push(blocked);
+                backward.push(blocker);
+                propagate();
+            }
+            return true;
+        }
+
+        boolean removeEdge(int blocker, int blocked) {
+            if (!blocks[blocker].remove(blocked)) return false;
+            blockedBy[blocked].remove(blocker);
+            edgeCount--;
+            forward.push(blocked);
+            backward.push(blocker);
+            propagate();
+            return true;
+        }
+
+        private boolean contains(int blocker, int blocked) {
+            return blocks[blocker].size <= blockedBy[blocked].size
+                    ? blocks[blocker].contains(blocked) : blockedBy[blocked].contains(blocker);
+        }
+
+        /*
+         * Pearce-Kelly：加入 blocker -> blocked 而 order[blocker] > order[blocked] 时，
+         * 只有序号在 [order[blocked], order[blocker]] 之间、从 blocked 可达的节点 (向前集合) 和
+         * 可达 blocker 的节点 (向后集合) 需要调整：把两组原有的序号合在一起排序，先分给向后集合再分给向前集合。
+         * 向前搜索遇到 blocker 说明会形成循环。
+         */
+        private boolean reorder(int blocker, int blocked) {
+            int lower = order[blocked];
+            int upper = order[blocker];
+            int stamp = ++visitStamp;
+            IntList stack = new IntList();
+            IntList forwardSet = new IntList();
+            stack.add(blocked);
+            visited[blocked] = stamp;
+            while (stack.size > 0) {
+                int node = stack.values[--stack.size];
+                forwardSet.add(node);
+                IntList next = blocks[node];
+                for (int i = 0; i < next.size; i++) {
+                    int successor = next.values[i];
+                    if (successor == blocker) return false;
+                    if (visited[successor] != stamp && order[successor] < upper) {
+                        visited[successor] = stamp;
+                        stack.add(successor);
+                    }
+                }
+            }
+            IntList backwardSet = new IntList();
+            stack.add(blocker);
+            visited[blocker] = stamp;
+            while (stack.size > 0) {
+                int node = stack.values[--stack.size];
+                backwardSet.add(node);
+                IntList previous = blockedBy[node];
+                for (int i = 0; i < previous.size; i++) {
+                    int predecessor = previous.values[i];
+                    if (visited[predecessor] != stamp && order[predecessor] > lower) {
+                        visited[predecessor] = stamp;
+                        stack.add(predecessor);
+                    }
+                }
+            }
+
+            int[] backwardNodes = sortByOrder(backwardSet);
+            int[] forwardNodes = sortByOrder(forwardSet);
+            int[] pool = new int[backwardNodes.length + forwardNodes.length];
+            int count = 0;
+            for (int node : backwardNodes) pool[count++] = order[node];
+            for (int node : forwardNodes) pool[count++] = order[node];
+            Arrays.sort(pool);
+            count = 0;
+            for (int node : backwardNodes) order[node] = pool[count++];
+            for (int node : forwardNodes) order[node] = pool[count++];
+            return true;
+        }
+
+        private int[] sortByOrder(IntList list) {
+            long[] keys = new long[list.size];
+            for (int i = 0; i < list.size; i++) {
+                keys[i] = ((long) order[list.values[i]] << 32) | list.values[i];
+            }
+            Arrays.sort(keys);
+            int[] sorted = new int[keys.length];
+            for (int i = 0; i < keys.length; i++) {
+                sorted[i] = (int) keys[i];
+            }
+            return sorted;
+        }
+
+        // 重新计算排队的节点，值变化时把受影响的邻居加入队列
+        private void propagate() {
+            while (!forward.isEmpty()) {
+                int node = forward.pop();
+                if (taskIds[node] == null) continue;
+                if (computeEarliest(node)) {
+                    for (int i = 0; i < blocks[node].size; i++) {
+                        forward.push(blocks[node].values[i]);
+                    }
+                }
+            }
+            while (!backward.isEmpty()) {
+                int node = backward.pop();
+                if (taskIds[node] == null) continue;
+                if (computeLatest(node)) {
+                    for (int i = 0; i < blockedBy[node].size; i++) {
+                        backward.push(blockedBy[node].values[i]);
+                    }
+                }
+            }
+            if (finishStale) {
+                rescanFinish();
+            }
+        }
+
+        // 返回最早完成是否变化
+        private boolean computeEarliest(int node) {
+            int start = 0;
+            int critical = -1;
+            IntList previous = blockedBy[node];
+            for (int i = 0; i < previous.size; i++) {
+                int blocker = previous.values[i];
+                if (critical < 0 || earliest[blocker] > start) {
+                    start = earliest[blocker];
+                    critical = blocker;
+                }
+            }
+            criticalBlocker[node] = critical;
+            int value = start + duration[node];
+            if (value == earliest[node]) return false;
+            if (!finishStale) {
+                if (finish < 0 || value > earliest[finish]) {
+                    finish = node;
+                } else if (node == finish) {
+                    finishStale = true;
+                }
+            }
+            earliest[node] = value;
+            return true;
+        }
+
+        // 返回最晚完成是否变化
+        private boolean computeLatest(int node) {
+            int value = Math.min(dueDay[node], projectDue);
+            IntList next = blocks[node];
+            for (int i = 0; i < next.size; i++) {
+                int blocked = next.values[i];
+                if (latest[blocked] != NO_LIMIT) {
+                    value = Math.min(value, latest[blocked] - duration[blocked]);
+                }
+            }
+            if (value == latest[node]) return false;
+            latest[node] = value;
+            return true;
+        }
+
+        /**
+         * 完整计算 (启动加载时)：Kahn 算法重新编排拓扑序号，再按顺序和逆序各扫描一遍。
+         * 有无法排序的节点 (数据库中被外部修改出的循环) 时，删除同一强连通分量内部的边，删除的边加入 dropped。
+         */
+        void recomputeAll(List<String[]> dropped) {
+            projectDue = limitOf(projectDueDays.applyAsInt(projectId));
+            int[] indegree = new int[size];
+            for (int node = 0; node < size; node++) {
+                if (taskIds[node] != null) indegree[node] = blockedBy[node].size;
+            }
+            IntList sorted = new IntList();
+            for (int node = 0; node < size; node++) {
+                if (taskIds[node] != null && indegree[node] == 0) sorted.add(node);
+            }
+            for (int i = 0; i < sorted.size; i++) {
+                IntList next = blocks[sorted.values[i]];
+                for (int j = 0; j < next.size; j++) {
+                    if (--indegree[next.values[j]] == 0) sorted.add(next.values[j]);
+                }
+            }
+
+            if (sorted.size < nodes.size()) {
+                // 剩下的节点在循环上或在循环之后；只有同一强连通分量内的边构成循环，删除后缩点图无环
+                int[] component = strongComponents(indegree);
+                for (int node = 0; node < size; node++) {
+                    if (component[node] < 0) continue;
+                    IntList previous = blockedBy[node];
+                    for (int i = previous.size - 1; i >= 0; i--) {
+                        int blocker = previous.values[i];
+                        if (component[blocker] == component[node]) {
+                            blocks[blocker].remove(node);
+                            previous.remove(blocker);
+                            edgeCount--;
+                            dropped.add(new String[]{taskIds[node], taskIds[blocker]});
+                        }
+                    }
+                }
+                recomputeAll(dropped);
+                return;
+            }
+
+            for (int i = 0; i < sorted.size; i++) {
+                order[sorted.values[i]] = i;
+            }
+            nextOrder = sorted.size;
+            finish = -1;
+            finishStale = false;
+            for (int i = 0; i < sorted.size; i++) {
+                int node = sorted.values[i];
+                earliest[node] = -1;
+                computeEarliest(node);
+            }
+            for (int i = sorted.size - 1; i >= 0; i--) {
+                computeLatest(sorted.values[i]);
+            }
+            if (finishStale) {
+                rescanFinish();
+            }
+        }
+
+        /*
+         * Tarjan 算法 (迭代实现) 求 Kahn 排序后剩下的节点 (indegree 大于 0) 的强连通分量，
+         * 返回每个节点的分量编号，已排序的节点为 -1。剩下节点的后继也都是剩下的节点。
+         */
+        private int[] strongComponents(int[] indegree) {
+            int[] index = new int[size];
+            int[] low = new int[size];
+            int[] nextEdge = new int[size];
+            int[] component = new int[size];
+            Arrays.fill(component, -1);
+            boolean[] onStack = new boolean[size];
+            IntList stack = new IntList();
+            IntList calls = new IntList();
+            int counter = 0;
+            int components = 0;
+            for (int root = 0; root < size; root++) {
+                if (taskIds[root] == null || indegree[root] == 0 || index[root] > 0) continue;
+                index[root] = low[root] = ++counter;
+                stack.add(root);
+                onStack[root] = true;
+                calls.add(root);
+                while (calls.size > 0) {
+                    int node = calls.values[calls.size - 1];
+                    IntList next = blocks[node];
+                    if (nextEdge[node] < next.size) {
+                        int successor = next.values[nextEdge[node]++];
+                        if (index[successor] == 0) {
+                            index[successor] = low[successor] = ++counter;
+                            stack.add(successor);
+                            onStack[successor] = true;
+                            calls.add(successor);
+                        } else if (onStack[successor]) {
+                            low[node] = Math.min(low[node], index[successor]);
+                        }
+                        continue;
+                    }
+                    calls.size--;
+                    if (calls.size > 0) {
+                        int parent = calls.values[calls.size - 1];
+                        low[parent] = Math.min(low[parent], low[node]);
+                    }
+                    if (low[node] == index[node]) {
+                        int member;
+                        do {
+                            member = stack.values[--stack.size];
+                            onStack[member] = false;
+                            component[member] = components;
+                        } while (member != node);
+                        components++;
+                    }
+                }
+            }
+            return component;
+        }
+
+        private void rescanFinish() {
+            finish = -1;
+            for (int node = 0; node < size; node++) {
+                if (taskIds[node] != null && (finish < 0 || earliest[node] > earliest[finish])) {
+                    finish = node;
+                }
+            }
+            finishStale = false;
+        }
+
+        // 按拓扑序号出队的二叉堆，同一节点在队列中最多一次
+        private final class OrderQueue {
+            private final boolean descending;
+            private int[] heap = new int[16];
+            private boolean[] queued = new boolean[16];
+            private int count;
+
+            OrderQueue(boolean descending) {
+                this.descending = descending;
+            }
+
+            void grow(int capacity) {
+                queued = Arrays.copyOf(queued, capacity);
+            }
+
+            boolean isEmpty() {
+                return count == 0;
+            }
+
+            void push(int node) {
+                if (queued[node]) return;
+                queued[node] = true;
+                if (count == heap.length) heap = Arrays.copyOf(heap, count * 2);
+                int i = count++;
+                while (i > 0) {
+                    int parent = (i - 1) >>> 1;
+                    if (!before(node, heap[parent])) break;
+                    heap[i] = heap[parent];
+                    i = parent;
+                }
+                heap[i] = node;
+            }
+
+            int pop() {
+                int top = heap[0];
+                queued[top] = false;
+                int last = heap[--count];
+                int i = 0;
+                while (true) {
+                    int child = 2 * i + 1;
+                    if (child >= count) break;
+                    if (child + 1 < count && before(heap[child + 1], heap[child])) child++;
+                    if (!before(heap[child], last)) break;
+                    heap[i] = heap[child];
+                    i = child;
+                }
+                heap[i] = last;
+                return top;
+            }
+
+            private boolean before(int a, int b) {
+                return descending ? order[a] > order[b] : order[a] < order[b];
+            }
+        }
+    }
+
+    // 可增长的 int 列表 (邻接表)，删除时用最后一个元素填补
+    private static final class IntList {
+        private int[] values = new int[2];
+        private int size;
+
+        void add(int value) {
+            if (size == values.length) values = Arrays.copyOf(values, size * 2);
+            values[size++] = value;
+        }
+
+        boolean contains(int value) {
+            for (int i = 0; i < size; i++) {
+                if (values[i] == value) return true;
+            }
+            return false;
+        }
+
+        boolean remove(int value) {
+            for (int i = 0; i < size; i++) {
+                if (values[i] == value) {
+                    values[i] = values[--size];
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
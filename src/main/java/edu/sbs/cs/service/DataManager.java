@@ -1,8 +1,25 @@
 package edu.sbs.cs.service;
 
 import edu.sbs.cs.database.DatabaseManager;
+import edu.sbs.cs.database.IdAllocator;
+import edu.sbs.cs.database.LoadedData;
+import edu.sbs.cs.database.MutationJournal;
+import edu.sbs.cs.database.ParallelLoader;
+import edu.sbs.cs.database.SnapshotFile;
+import edu.sbs.cs.database.TaskArchive;
+import edu.sbs.cs.database.TaskHistoryStore;
 import edu.sbs.cs.model.*;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.sql.SQLException;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.stream.Collectors;
 
 public class DataManager {
@@ -11,23 +28,86 @@ public class DataManager {
     private Map<String, TeamMember> members; // Key: memberId
     private Map<String, TaskItem> tasks; // Key: taskId
     private Map<Project, Map<TeamMember, List<TaskItem>>> taskAssignments;
+    private Map<String, String> taskProjectIds; // Key: taskId, Value: projectId
+    // 自上次进度报告以来有变化的项目 (供报告线程增量计算)
+    private final Set<String> dirtyProjects = ConcurrentHashMap.newKeySet();
+    // 变更成功后发布任务事件，供订阅者增量更新
+    private final TaskEventPublisher eventPublisher = new TaskEventPublisher();
+    // 按 (项目, 成员, 状态, 优先级) 的任务计数，随每次变更更新
+    private final TaskCounterCube taskCounters = new TaskCounterCube();
+    // 任务状态的版本链，供按时间点查询 (启动加载完成之后才创建)
+    private TaskHistory taskHistory;
+    // 任务依赖图上增量维护的进度计划 (最早/最晚完成、关键路径)
+    private final CriticalPathEngine schedule = new CriticalPathEngine(projectId -> {
+        Project project = projects.get(projectId);
+        return project == null ? TaskItem.NO_DATE : project.getDueDay();
+    });
+
+    // ID分配器，每次从序列中预留一段编号
+    private static final int ID_BLOCK_SIZE = 100;
+    private IdAllocator taskIdAllocator;
+    private IdAllocator projectIdAllocator;
+    private IdAllocator memberIdAllocator;
+
+    // 可选的变更日志 (-Dteam.journal.enabled=true)：任务、成员和项目变更只顺序追加到日志，由后台定期合并到数据库
+    private static final String JOURNAL_DIR = "journal";
+    private static final String SNAPSHOT_FILE = "snapshot.bin";
+    private MutationJournal journal;
+    // 启动时加载的任务依赖和日志回放中的依赖修改 ({任务ID, 阻塞它的任务ID} -> 是否存在)，buildSchedule 之后清空
+    private List<String[]> loadedDependencies = new ArrayList<>();
+    private final Map<List<String>, Boolean> replayedDependencies = new LinkedHashMap<>();
+    private DatabaseManager checkpointDatabase; // 检查点线程使用的独立主库连接 (分片与 databaseManager 共用)
+    private ScheduledExecutorService journalCheckpointer;
+    private final Object checkpointLock = new Object();
+
+    // 已完成的旧任务归档到压缩分段文件，不再占用内存
+    private static final String ARCHIVE_DIR = "archive";
+    private TaskArchive taskArchive;
+
+    // 可选的复制主节点 (-Dteam.replication.port=端口)：变更推送给只读副本
+    private ReplicationPrimary replication;
+    // 保护内存集合的读写锁：公开的修改方法、UnitOfWork.commit 和导入在写锁内进行 (可重入，ApiServer 和
+    // ReplicaFollower 已持有写锁时直接进入)，ApiServer 的查询和复制快照持有读锁。读锁不能升级，持有读锁时不能调用修改方法
+    private final ReadWriteLock dataLock = new ReentrantReadWriteLock();
+    // 只读副本的数据只来自主节点的复制记录，所有修改方法直接返回失败
+    private final boolean readOnly;
 
     private TeamMember currentUser;
+    // 服务器模式下当前请求所属会话的用户，优先于 currentUser (见 runAs)
+    private final ThreadLocal<TeamMember> sessionUser = new ThreadLocal<>();
+    // 推迟到写锁之外的任务状态写入 (见 deferStateWrites)
+    private final ThreadLocal<Map<String, Long>> deferredStates = new ThreadLocal<>();
     private DatabaseManager databaseManager;
     private boolean databaseEnabled;
 
     public DataManager() {
+        this(false);
+    }
+
+    private DataManager(boolean readOnly) {
+        this.readOnly = readOnly;
         this.projects = new HashMap<>();
         this.members = new HashMap<>();
         this.tasks = new HashMap<>();
         this.taskAssignments = new HashMap<>();
+        this.taskProjectIds = new HashMap<>();
+        if (readOnly) {
+            // 副本不连接数据库，也不生成示例数据，数据由 ReplicaFollower 填充
+            initializeIdAllocators();
+            taskHistory = new TaskHistory(null);
+            return;
+        }
 
         try {
             this.databaseManager = new DatabaseManager();
             this.databaseEnabled = databaseManager.isConnectionValid();
+            databaseManager.setTaskProjectLookup(taskProjectIds::get);
 
             if (databaseEnabled) {
                 loadDataFromDatabase();
+                if (Boolean.getBoolean("team.journal.enabled")) {
+                    openJournal();
+                }
                 System.out.println("数据库模式已启用");
             } else {
                 System.out.println("数据库连接失败，使用内存模式");
@@ -38,59 +118,285 @@ public class DataManager {
             this.databaseEnabled = false;
             initializeSampleData();
         }
+
+        openTaskHistory();
+        buildSchedule();
+        initializeIdAllocators();
+        startReplication();
     }
 
-    private void loadDataFromDatabase() {
+    /**
+     * 创建只读副本使用的空 DataManager (见 ReplicaFollower)。
+     */
+    public static DataManager createReplica() {
+        return new DataManager(true);
+    }
+
+    private void startReplication() {
+        int port = Integer.getInteger("team.replication.port", 0);
+        if (port <= 0) return;
         try {
-            // 加载成员
-            List<TeamMember> loadedMembers = databaseManager.loadAllMembers();
-            for (TeamMember member : loadedMembers) {
-                members.put(member.getMemberId(), member);
-            }
+            replication = new ReplicationPrimary(this, port);
+        } catch (IOException e) {
+            System.err.println("启动复制主节点失败: " + e.getMessage());
+        }
+    }
 
-            // 加载项目
-            List<Project> loadedProjects = databaseManager.loadAllProjects();
-            for (Project project : loadedProjects) {
-                projects.put(project.getProjectId(), project);
-                taskAssignments.put(project, new HashMap<>());
+    // 从历史数据库重建版本链；没有历史或历史落后于当前状态的任务 (升级前的数据、
+    // 上次退出前未写入的版本) 以当前状态为起点
+    private void openTaskHistory() {
+        TaskHistoryStore store = null;
+        if (databaseEnabled) {
+            try {
+                store = new TaskHistoryStore();
+            } catch (SQLException e) {
+                System.err.println("打开任务历史数据库失败，历史只保存在内存中: " + e.getMessage());
+            }
+        }
+        taskHistory = new TaskHistory(store);
+        try {
+            taskHistory.load(tasks.keySet());
+        } catch (SQLException e) {
+            System.err.println("加载任务历史失败: " + e.getMessage());
+        }
+        recordHistory(tasks.values());
+    }
 
-                // 为项目中的每个成员初始化任务分配映射
-                for (TeamMember member : project.getMembers()) {
-                    taskAssignments.get(project).put(member, new ArrayList<>());
+    // 加载时读到的依赖加上日志回放的修改，对每个项目完整计算一次进度计划，之后随变更增量更新
+    private void buildSchedule() {
+        List<String[]> dependencies = loadedDependencies;
+        if (!replayedDependencies.isEmpty()) {
+            Map<List<String>, Boolean> merged = new LinkedHashMap<>();
+            for (String[] dependency : loadedDependencies) {
+                merged.put(List.of(dependency[0], dependency[1]), true);
+            }
+            merged.putAll(replayedDependencies);
+            dependencies = new ArrayList<>(merged.size());
+            for (Map.Entry<List<String>, Boolean> entry : merged.entrySet()) {
+                if (entry.getValue()) {
+                    dependencies.add(entry.getKey().toArray(new String[0]));
                 }
             }
+            replayedDependencies.clear();
+        }
+        loadedDependencies = new ArrayList<>();
+        long start = System.nanoTime();
+        List<String[]> cyclic = new ArrayList<>();
+        int skipped = schedule.rebuild(tasks.values(), taskProjectIds, dependencies, cyclic);
+        if (!dependencies.isEmpty()) {
+            System.out.printf("进度计划: %d 个依赖, 耗时 %.1f ms%n",
+                    dependencies.size() - skipped, (System.nanoTime() - start) / 1_000_000.0);
+        }
+        if (skipped > cyclic.size()) {
+            System.err.println("忽略无效的任务依赖 (任务不存在或跨项目): " + (skipped - cyclic.size()) + " 个");
+        }
+        if (!cyclic.isEmpty()) {
+            // 循环上的依赖从数据库 (或变更日志) 中删除，下次启动不再出现
+            try {
+                if (journal != null) {
+                    long lsn = 0;
+                    for (String[] dependency : cyclic) {
+                        lsn = journal.appendDependencyRemoved(dependency[0], dependency[1]);
+                    }
+                    journal.awaitDurable(lsn);
+                } else {
+                    databaseManager.runInTransaction(() -> databaseManager.deleteTaskDependencies(cyclic));
+                }
+                System.err.println("删除形成循环的任务依赖: " + cyclic.size() + " 个");
+            } catch (IOException | SQLException e) {
+                System.err.println("删除形成循环的任务依赖失败: " + e.getMessage());
+            }
+        }
+    }
 
-            // 加载任务
-            List<TaskItem> loadedTasks = databaseManager.loadAllTasks(members);
-            for (TaskItem task : loadedTasks) {
-                tasks.put(task.getTaskId(), task);
+    // 打开变更日志，回放检查点之后的记录，并启动后台检查点线程
+    private void openJournal() {
+        try {
+            long checkpoint = databaseManager.readJournalCheckpoint();
+            MutationJournal opened = new MutationJournal(DatabaseManager.dataDirectory().resolve(JOURNAL_DIR), checkpoint);
+
+            long start = System.nanoTime();
+            JournalReplayer replayer = new JournalReplayer(true);
+            opened.replay(checkpoint, replayer);
+            System.out.printf("回放变更日志: %d 条记录, 耗时 %.1f ms%n",
+                    replayer.records, (System.nanoTime() - start) / 1_000_000.0);
+
+            try {
+                checkpointDatabase = databaseManager.openSecondary();
+            } catch (SQLException e) {
+                opened.close();
+                throw e;
+            }
+            journal = opened;
+            long interval = Long.getLong("team.journal.checkpointMs", 60000);
+            journalCheckpointer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "journal-checkpoint");
+                thread.setDaemon(true);
+                return thread;
+            });
+            journalCheckpointer.scheduleWithFixedDelay(this::checkpointJournal, interval, interval, TimeUnit.MILLISECONDS);
+        } catch (IOException | SQLException e) {
+            System.err.println("打开变更日志失败，直接写入数据库: " + e.getMessage());
+        }
+    }
 
-                // 将任务添加到对应的项目和成员
-                for (Project project : projects.values()) {
-                    // 查找任务所属的项目
-                    boolean taskInProject = project.getTasks().stream()
-                            .anyMatch(t -> t.getTaskId().equals(task.getTaskId()));
+    // 启动时把日志记录应用到内存数据 (数据库中的数据已经加载)
+    private class JournalReplayer implements MutationJournal.RecordHandler {
+        // 启动时进度计划尚未建立，依赖修改先记下，由 buildSchedule 合并
+        private final boolean startup;
+        private int records;
 
-                    if (!taskInProject) {
-                        // 如果任务不在项目任务列表中，尝试通过project_id查找
-                        // 这里需要从数据库查询任务的项目关系
-                        // 暂时跳过，在保存任务时会建立关系
-                        continue;
-                    }
+        JournalReplayer(boolean startup) {
+            this.startup = startup;
+        }
 
-                    // 更新任务分配映射
-                    if (task.getAssignedTo() != null) {
-                        taskAssignments.get(project).putIfAbsent(task.getAssignedTo(), new ArrayList<>());
-                        taskAssignments.get(project).get(task.getAssignedTo()).add(task);
-                    }
-                    break;
+        @Override
+        public void taskCreated(long lsn, TaskItem task, String projectId, String assigneeId) {
+            records++;
+            Project project = projects.get(projectId);
+            if (project == null) return;
+            task.setAssignedTo(assigneeId == null ? null : members.get(assigneeId));
+            registerImportedTask(task, project, null);
+        }
+
+        @Override
+        public void taskState(long lsn, String taskId, long state) {
+            records++;
+            TaskItem task = tasks.get(taskId);
+            if (task != null && TaskItem.versionOf(state) > task.getVersion()) {
+                TaskStatus before = task.getStatus();
+                task.restoreState(TaskItem.statusOf(state), TaskItem.progressOf(state), TaskItem.versionOf(state));
+                taskCounters.statusChanged(taskProjectIds.get(taskId), task, before);
+                recordHistory(task);
+                scheduleTaskChanged(task);
+            }
+        }
+
+        @Override
+        public void taskAssigned(long lsn, String taskId, String memberId) {
+            records++;
+            TaskItem task = tasks.get(taskId);
+            TeamMember member = members.get(memberId);
+            // 已经分配给该成员时跳过 (副本可能重复收到快照中已包含的分配)
+            if (task == null || member == null || task.getAssignedTo() == member) return;
+            TeamMember previous = task.getAssignedTo();
+            task.setAssignedTo(member);
+            taskCounters.assigneeChanged(taskProjectIds.get(taskId), task, previous);
+            Project project = projects.get(taskProjectIds.get(taskId));
+            if (project != null) {
+                moveAssignment(taskAssignments.get(project), task, previous, member);
+            }
+        }
+
+        @Override
+        public void memberAdded(long lsn, String projectId, String memberId) {
+            records++;
+            Project project = projects.get(projectId);
+            TeamMember member = members.get(memberId);
+            if (project == null || member == null) return;
+            if (!project.getMembers().contains(member)) {
+                project.addMember(member);
+            }
+            taskAssignments.get(project).putIfAbsent(member, new ArrayList<>());
+        }
+
+        @Override
+        public void memberSaved(long lsn, TeamMember member) {
+            records++;
+            applyReplicatedMember(member);
+        }
+
+        @Override
+        public void projectSaved(long lsn, Project project, List<String> memberIds) {
+            records++;
+            applyReplicatedProject(project, memberIds);
+        }
+
+        @Override
+        public void dependencyAdded(long lsn, String taskId, String blockedBy) {
+            records++;
+            if (startup) {
+                replayedDependencies.put(List.of(taskId, blockedBy), true);
+            } else {
+                schedule.addDependency(taskId, blockedBy);
+            }
+        }
+
+        @Override
+        public void dependencyRemoved(long lsn, String taskId, String blockedBy) {
+            records++;
+            if (startup) {
+                replayedDependencies.put(List.of(taskId, blockedBy), false);
+            } else {
+                schedule.removeDependency(taskId, blockedBy);
+            }
+        }
+    }
+
+    /**
+     * 把变更日志合并到数据库 (检查点)。未启用变更日志时不做任何事。
+     * 批量导入导出等直接读写数据库的操作之前应先调用。
+     */
+    public void checkpointJournal() {
+        if (journal == null) return;
+        synchronized (checkpointLock) {
+            try {
+                long start = System.nanoTime();
+                int records = checkpointDatabase.checkpointJournal(journal);
+                if (records > 0) {
+                    System.out.printf("变更日志检查点: 合并 %d 条记录, 耗时 %.1f ms%n",
+                            records, (System.nanoTime() - start) / 1_000_000.0);
                 }
+            } catch (IOException | SQLException e) {
+                System.err.println("变更日志检查点失败: " + e.getMessage());
+            }
+        }
+    }
+
+    private void initializeIdAllocators() {
+        if (databaseEnabled) {
+            taskIdAllocator = new IdAllocator("T", ID_BLOCK_SIZE,
+                    databaseManager.sequenceSource("tasks", "tasks", "task_id", "T"));
+            projectIdAllocator = new IdAllocator("P", ID_BLOCK_SIZE,
+                    databaseManager.sequenceSource("projects", "projects", "project_id", "P"));
+            memberIdAllocator = new IdAllocator("M", ID_BLOCK_SIZE,
+                    databaseManager.sequenceSource("members", "members", "member_id", "M"));
+        } else {
+            taskIdAllocator = IdAllocator.inMemory("T", maxIdNumber(tasks.keySet()) + 1);
+            projectIdAllocator = IdAllocator.inMemory("P", maxIdNumber(projects.keySet()) + 1);
+            memberIdAllocator = IdAllocator.inMemory("M", maxIdNumber(members.keySet()) + 1);
+        }
+    }
+
+    private static long maxIdNumber(Collection<String> ids) {
+        long max = 0;
+        for (String id : ids) {
+            max = Math.max(max, IdAllocator.parseNumber(id));
+        }
+        return max;
+    }
+
+    private void loadDataFromDatabase() {
+        try {
+            long start = System.nanoTime();
+            boolean fromSnapshot = loadFromSnapshot();
+            if (!fromSnapshot && !loadInParallel()) {
+                installMembers(databaseManager.loadAllMembers());
+                installProjects(databaseManager.loadAllProjects());
+
+                // 加载任务，并按 project_id 挂到对应项目下
+                Map<String, String> loadedTaskProjects = new HashMap<>();
+                List<TaskItem> loadedTasks = databaseManager.loadAllTasks(members, loadedTaskProjects);
+                installTasks(loadedTasks, loadedTaskProjects);
+                loadedDependencies = databaseManager.loadTaskDependencies();
             }
+            installArchiveSummary(databaseManager.loadArchiveSummary());
 
-            System.out.println("从数据库加载数据成功！");
+            System.out.println("从" + (fromSnapshot ? "快照" : "数据库") + "加载数据成功！");
             System.out.println("成员数量: " + members.size());
             System.out.println("项目数量: " + projects.size());
             System.out.println("任务数量: " + tasks.size());
+            System.out.printf("加载耗时: %.1f ms%n", (System.nanoTime() - start) / 1_000_000.0);
 
         } catch (Exception e) {
             System.err.println("从数据库加载数据失败: " + e.getMessage());
@@ -100,6 +406,130 @@ public class DataManager {
         }
     }
 
+    // 快照与数据库一致时从快照加载，返回 false 表示需要改为从数据库加载
+    private boolean loadFromSnapshot() {
+        if (!snapshotEnabled()) return false;
+        Path file = DatabaseManager.dataDirectory().resolve(SNAPSHOT_FILE);
+        try {
+            long token = SnapshotFile.readToken(file);
+            if (token == 0) return false;
+            if (token != databaseManager.readSnapshotToken()) {
+                System.out.println("快照已过期，从数据库加载");
+                return false;
+            }
+            LoadedData contents = SnapshotFile.read(file);
+            installMembers(contents.getMembers());
+            installProjects(contents.getProjects());
+            installTasks(contents.getTasks(), contents.getTaskProjectIds());
+            loadedDependencies = contents.getDependencies();
+            return true;
+        } catch (IOException | SQLException e) {
+            System.err.println("读取快照失败，从数据库加载: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /*
+     * 多核时在多个只读连接上并行扫描各表 (任务表按 rowid 分区)，线程数由 -Dteam.load.threads 指定，
+     * 默认为 CPU 核数；只有一个线程或并行加载失败时返回 false，改为在主连接上顺序加载。
+     */
+    private boolean loadInParallel() {
+        int threads = Integer.getInteger("team.load.threads", Runtime.getRuntime().availableProcessors());
+        if (threads <= 1) return false;
+        try {
+            LoadedData data = new ParallelLoader(databaseManager, threads).load();
+            installMembers(data.getMembers());
+            installProjects(data.getProjects());
+            installTasks(data.getTasks(), data.getTaskProjectIds());
+            loadedDependencies = data.getDependencies();
+            return true;
+        } catch (SQLException e) {
+            System.err.println("并行加载失败，改为顺序加载: " + e.getMessage());
+            return false;
+        }
+    }
+
+    // 二进制快照默认启用，-Dteam.snapshot.enabled=false 时始终从数据库加载
+    private static boolean snapshotEnabled() {
+        return !"false".equals(System.getProperty("team.snapshot.enabled"));
+    }
+
+    private void installMembers(List<TeamMember> loadedMembers) {
+        for (TeamMember member : loadedMembers) {
+            members.put(member.getMemberId(), member);
+        }
+    }
+
+    private void installProjects(List<Project> loadedProjects) {
+        for (Project project : loadedProjects) {
+            // 将项目成员替换为成员表中的同一实例，保证按成员做 Map 键时一致
+            List<TeamMember> projectMembers = project.getMembers();
+            for (int i = 0; i < projectMembers.size(); i++) {
+                TeamMember canonical = members.get(projectMembers.get(i).getMemberId());
+                if (canonical != null) {
+                    projectMembers.set(i, canonical);
+                }
+            }
+
+            projects.put(project.getProjectId(), project);
+            taskAssignments.put(project, new HashMap<>());
+
+            // 为项目中的每个成员初始化任务分配映射
+            for (TeamMember member : project.getMembers()) {
+                taskAssignments.get(project).put(member, new ArrayList<>());
+            }
+        }
+    }
+
+    private void installTasks(List<TaskItem> loadedTasks, Map<String, String> loadedTaskProjects) {
+        for (TaskItem task : loadedTasks) {
+            tasks.put(task.getTaskId(), task);
+
+            Project project = projects.get(loadedTaskProjects.get(task.getTaskId()));
+            if (project == null) {
+                continue;
+            }
+            project.addTask(task);
+            taskProjectIds.put(task.getTaskId(), project.getProjectId());
+            taskCounters.add(project.getProjectId(), task);
+
+            // 更新任务分配映射
+            if (task.getAssignedTo() != null) {
+                taskAssignments.get(project).putIfAbsent(task.getAssignedTo(), new ArrayList<>());
+                taskAssignments.get(project).get(task.getAssignedTo()).add(task);
+            }
+        }
+    }
+
+    // 归档汇总不在快照中，两种加载方式都从数据库读取
+    private void installArchiveSummary(Map<String, double[]> summary) {
+        for (Map.Entry<String, double[]> entry : summary.entrySet()) {
+            Project project = projects.get(entry.getKey());
+            if (project != null) {
+                project.addArchived((int) entry.getValue()[0], entry.getValue()[1]);
+            }
+        }
+    }
+
+    /**
+     * 把当前内存数据写成二进制快照，并在数据库中记录对应的标记。
+     * 之后数据库中的任何修改都会清除该标记，下次启动时快照即视为过期。
+     */
+    public void writeSnapshot() {
+        if (!databaseEnabled) return;
+        try {
+            long start = System.nanoTime();
+            long token = ThreadLocalRandom.current().nextLong(1, Long.MAX_VALUE);
+            SnapshotFile.write(DatabaseManager.dataDirectory().resolve(SNAPSHOT_FILE), token, members.values(), projects.values(),
+                    tasks.values(), taskProjectIds, schedule.allDependencies());
+            databaseManager.writeSnapshotToken(token);
+            System.out.printf("写入快照: %d 个任务, 耗时 %.1f ms%n",
+                    tasks.size(), (System.nanoTime() - start) / 1_000_000.0);
+        } catch (IOException | SQLException e) {
+            System.err.println("写入快照失败: " + e.getMessage());
+        }
+    }
+
     private void initializeSampleData() {
         System.out.println("初始化示例数据...");
 
@@ -144,6 +574,10 @@ public class DataManager {
         if (!databaseEnabled) return;
 
         try {
+            if (journal != null) {
+                journal.awaitDurable(journal.appendMemberSaved(member));
+                return;
+            }
             databaseManager.saveMember(member);
         } catch (Exception e) {
             System.err.println("保存成员到数据库失败: " + e.getMessage());
@@ -154,6 +588,10 @@ public class DataManager {
         if (!databaseEnabled) return;
 
         try {
+            if (journal != null) {
+                journal.awaitDurable(journal.appendProjectSaved(project));
+                return;
+            }
             databaseManager.saveProject(project);
         } catch (Exception e) {
             System.err.println("保存项目到数据库失败: " + e.getMessage());
@@ -164,6 +602,10 @@ public class DataManager {
         if (!databaseEnabled) return;
 
         try {
+            if (journal != null) {
+                journal.awaitDurable(journal.appendTaskCreated(task, projectId));
+                return;
+            }
             databaseManager.saveTask(task, projectId);
         } catch (Exception e) {
             System.err.println("保存任务到数据库失败: " + e.getMessage());
@@ -172,186 +614,951 @@ public class DataManager {
 
     // 用户管理方法
     public boolean registerUser(String name, String email, String password, Role role) {
-        String memberId = "M" + String.format("%03d", members.size() + 1);
-        TeamMember newMember = new TeamMember(memberId, name, role, email, password);
-
-        saveMemberToDatabase(newMember);
-        members.put(memberId, newMember);
-        return true;
+        dataLock.writeLock().lock();
+        try {
+            if (readOnly) return false;
+            String memberId = allocateId(memberIdAllocator);
+            if (memberId == null) return false;
+            TeamMember newMember = new TeamMember(memberId, name, role, email, password);
+
+            saveMemberToDatabase(newMember);
+            members.put(memberId, newMember);
+            if (replication != null) {
+                replication.memberSaved(newMember);
+            }
+            return true;
+        } finally {
+            dataLock.writeLock().unlock();
+        }
     }
 
     public boolean login(String email, String password) {
-        Optional<TeamMember> user = members.values().stream()
-                .filter(member -> member.getEmail().equals(email) && member.getPassword().equals(password))
-                .findFirst();
-
-        if (user.isPresent()) {
-            currentUser = user.get();
+        TeamMember user = authenticate(email, password);
+        if (user != null) {
+            currentUser = user;
             return true;
         }
         return false;
     }
 
+    // 校验邮箱和密码，不改变当前登录用户；失败返回 null
+    public TeamMember authenticate(String email, String password) {
+        return members.values().stream()
+                .filter(member -> member.getEmail().equals(email) && member.getPassword().equals(password))
+                .findFirst()
+                .orElse(null);
+    }
+
+    /**
+     * 以指定用户的身份执行操作 (服务器模式下每个请求使用自己会话的用户)。
+     * 执行期间当前线程上的权限检查和"我的任务"等查询都针对该用户，不影响其他线程。
+     */
+    public <T> T runAs(TeamMember user, java.util.function.Supplier<T> action) {
+        TeamMember previous = sessionUser.get();
+        sessionUser.set(user);
+        try {
+            return action.get();
+        } finally {
+            if (previous == null) {
+                sessionUser.remove();
+            } else {
+                sessionUser.set(previous);
+            }
+        }
+    }
+
+    private TeamMember actingUser() {
+        TeamMember user = sessionUser.get();
+        return user != null ? user : currentUser;
+    }
+
     public void logout() {
         currentUser = null;
     }
 
     // 项目管理方法
     public boolean createProject(String name, String description, java.time.LocalDate dueDate) {
-        if (!isAdminLoggedIn()) return false;
+        dataLock.writeLock().lock();
+        try {
+            if (readOnly || !isAdminLoggedIn()) return false;
 
-        String projectId = "P" + String.format("%03d", projects.size() + 1);
-        Project project = new Project(projectId, name, description, dueDate);
-        project.addMember(currentUser); // 项目经理自动加入项目
+            String projectId = allocateId(projectIdAllocator);
+            if (projectId == null) return false;
+            Project project = new Project(projectId, name, description, dueDate);
+            project.addMember(actingUser()); // 项目经理自动加入项目
 
-        saveProjectToDatabase(project);
-        projects.put(projectId, project);
-        taskAssignments.put(project, new HashMap<>());
-        return true;
+            saveProjectToDatabase(project);
+            projects.put(projectId, project);
+            taskAssignments.put(project, new HashMap<>());
+            markProjectDirty(projectId);
+            if (replication != null) {
+                replication.projectSaved(project);
+            }
+            return true;
+        } finally {
+            dataLock.writeLock().unlock();
+        }
     }
 
     public boolean addMemberToProject(String projectId, String memberId) {
-        if (!isAdminLoggedIn()) return false;
+        dataLock.writeLock().lock();
+        try {
+            if (readOnly || !isAdminLoggedIn()) return false;
 
-        Project project = projects.get(projectId);
-        TeamMember member = members.get(memberId);
+            Project project = projects.get(projectId);
+            TeamMember member = members.get(memberId);
 
-        if (project != null && member != null) {
-            project.addMember(member);
+            if (project != null && member != null) {
+                boolean newMember = !project.getMembers().contains(member);
+                project.addMember(member);
 
-            // 更新数据库
-            saveProjectToDatabase(project);
+                // 更新数据库
+                if (journal != null) {
+                    try {
+                        journal.awaitDurable(journal.appendMemberAdded(projectId, memberId));
+                    } catch (IOException e) {
+                        System.err.println("写入变更日志失败: " + e.getMessage());
+                    }
+                } else {
+                    saveProjectToDatabase(project);
+                }
 
-            taskAssignments.get(project).putIfAbsent(member, new ArrayList<>());
-            return true;
+                taskAssignments.get(project).putIfAbsent(member, new ArrayList<>());
+                if (replication != null) {
+                    replication.memberAdded(projectId, memberId);
+                }
+                if (newMember) {
+                    eventPublisher.publish(new TaskEvent.MemberAdded(projectId, memberId));
+                }
+                return true;
+            }
+            return false;
+        } finally {
+            dataLock.writeLock().unlock();
         }
-        return false;
     }
 
     // 任务管理方法
     public String createFeatureTask(String projectId, String title, String description,
                                     Priority priority, java.time.LocalDate dueDate, int storyPoints, String category) {
-        if (!isAdminLoggedIn()) return null;
-
-        Project project = projects.get(projectId);
-        if (project == null) return null;
-
-        String taskId = "T" + String.format("%03d", tasks.size() + 1);
-        FeatureTask task = new FeatureTask(taskId, title, description, priority, dueDate, storyPoints, category);
-
-        saveTaskToDatabase(task, projectId);
-        tasks.put(taskId, task);
-        project.addTask(task);
-        return taskId;
+        dataLock.writeLock().lock();
+        try {
+            if (readOnly || !isAdminLoggedIn()) return null;
+
+            Project project = projects.get(projectId);
+            if (project == null) return null;
+
+            String taskId = allocateId(taskIdAllocator);
+            if (taskId == null) return null;
+            FeatureTask task = new FeatureTask(taskId, title, description, priority, dueDate, storyPoints, category);
+
+            saveTaskToDatabase(task, projectId);
+            tasks.put(taskId, task);
+            taskProjectIds.put(taskId, projectId);
+            project.addTask(task);
+            taskCounters.add(projectId, task);
+            recordHistory(task);
+            scheduleTaskChanged(task);
+            markProjectDirty(projectId);
+            if (replication != null) {
+                replication.taskCreated(task, projectId);
+            }
+            eventPublisher.publish(new TaskEvent.TaskCreated(task, projectId));
+            return taskId;
+        } finally {
+            dataLock.writeLock().unlock();
+        }
     }
 
     public String createBugReport(String projectId, String title, String description,
                                   Priority priority, java.time.LocalDate dueDate, Severity severity,
                                   String steps, String environment) {
-        if (!isAdminLoggedIn()) return null;
+        dataLock.writeLock().lock();
+        try {
+            if (readOnly || !isAdminLoggedIn()) return null;
+
+            Project project = projects.get(projectId);
+            if (project == null) return null;
+
+            String taskId = allocateId(taskIdAllocator);
+            if (taskId == null) return null;
+            BugReport task = new BugReport(taskId, title, description, priority, dueDate, severity, steps, environment);
+
+            saveTaskToDatabase(task, projectId);
+            tasks.put(taskId, task);
+            taskProjectIds.put(taskId, projectId);
+            project.addTask(task);
+            taskCounters.add(projectId, task);
+            recordHistory(task);
+            scheduleTaskChanged(task);
+            markProjectDirty(projectId);
+            if (replication != null) {
+                replication.taskCreated(task, projectId);
+            }
+            eventPublisher.publish(new TaskEvent.TaskCreated(task, projectId));
+            return taskId;
+        } finally {
+            dataLock.writeLock().unlock();
+        }
+    }
 
-        Project project = projects.get(projectId);
-        if (project == null) return null;
+    public boolean assignTask(String taskId, String memberId) {
+        dataLock.writeLock().lock();
+        try {
+            if (readOnly || !isAdminLoggedIn()) return false;
+
+            TaskItem task = tasks.get(taskId);
+            TeamMember member = members.get(memberId);
+
+            if (task != null && member != null) {
+                // 先写数据库 (或变更日志)，写入失败时内存中的分配保持不变
+                if (databaseEnabled) {
+                    try {
+                        if (journal != null) {
+                            journal.awaitDurable(journal.appendTaskAssigned(taskId, memberId));
+                        } else {
+                            databaseManager.assignTask(taskId, memberId);
+                        }
+                    } catch (Exception e) {
+                        System.err.println("更新任务分配到数据库失败: " + e.getMessage());
+                        return false;
+                    }
+                }
 
-        String taskId = "T" + String.format("%03d", tasks.size() + 1);
-        BugReport task = new BugReport(taskId, title, description, priority, dueDate, severity, steps, environment);
+                TeamMember previous = task.getAssignedTo();
+                task.setAssignedTo(member);
+                taskCounters.assigneeChanged(taskProjectIds.get(taskId), task, previous);
 
-        saveTaskToDatabase(task, projectId);
-        tasks.put(taskId, task);
-        project.addTask(task);
-        return taskId;
+                // 更新任务分配映射：从原负责人的列表移到新负责人的列表
+                Project project = projects.get(taskProjectIds.get(taskId));
+                if (project != null) {
+                    moveAssignment(taskAssignments.get(project), task, previous, member);
+                }
+                if (replication != null) {
+                    replication.taskAssigned(taskId, memberId);
+                }
+                eventPublisher.publish(new TaskEvent.Assigned(taskId, taskProjectIds.get(taskId), memberId,
+                        previous == null ? null : previous.getMemberId()));
+                return true;
+            }
+            return false;
+        } finally {
+            dataLock.writeLock().unlock();
+        }
     }
 
-    public boolean assignTask(String taskId, String memberId) {
-        if (!isAdminLoggedIn()) return false;
+    // 把任务从 previous 的分配列表移到 member 的分配列表 (previous 为 null 表示原来未分配)
+    static void moveAssignment(Map<TeamMember, List<TaskItem>> assignment, TaskItem task,
+                               TeamMember previous, TeamMember member) {
+        if (previous != null) {
+            List<TaskItem> previousTasks = assignment.get(previous);
+            if (previousTasks != null) {
+                previousTasks.remove(task);
+            }
+        }
+        if (member != null) {
+            List<TaskItem> memberTasks = assignment.computeIfAbsent(member, m -> new ArrayList<>());
+            if (!memberTasks.contains(task)) {
+                memberTasks.add(task);
+            }
+        }
+    }
 
-        TaskItem task = tasks.get(taskId);
-        TeamMember member = members.get(memberId);
+    /**
+     * 批量自动分配：将项目中所有未分配的任务分给项目成员。
+     * 使用按"未完成工作量点数"排序的最小堆，每次把任务交给当前负载最小的成员；
+     * 任务按工作量从大到小处理，使各成员负载尽量均衡。所有分配在一个批量事务中写入数据库，
+     * 写入失败时事务回滚，内存中的任务也保持未分配。
+     *
+     * @return 本次分配的任务数量，写入数据库失败时为 0
+     */
+    public int autoAssignTasks(String projectId) {
+        dataLock.writeLock().lock();
+        try {
+            if (readOnly || !isAdminLoggedIn()) return 0;
 
-        if (task != null && member != null) {
-            task.setAssignedTo(member);
+            Project project = projects.get(projectId);
+            if (project == null) return 0;
+
+            // 优先分配给普通成员；项目中没有普通成员时才分配给所有成员
+            List<TeamMember> candidates = new ArrayList<>();
+            for (TeamMember member : project.getMembers()) {
+                if (member.getRole() == Role.USER) {
+                    candidates.add(member);
+                }
+            }
+            if (candidates.isEmpty()) {
+                candidates.addAll(project.getMembers());
+            }
+            if (candidates.isEmpty()) return 0;
 
-            // 更新数据库
+            List<TaskItem> unassigned = new ArrayList<>();
+            for (TaskItem task : project.getTasks()) {
+                if (task.getAssignedTo() == null) {
+                    unassigned.add(task);
+                }
+            }
+            if (unassigned.isEmpty()) return 0;
+            unassigned.sort((a, b) -> Integer.compare(b.getEffortPoints(), a.getEffortPoints()));
+
+            // 统计每个候选成员在该项目中现有的未完成工作量
+            Map<TeamMember, List<TaskItem>> assignment = taskAssignments.get(project);
+            PriorityQueue<MemberLoad> loads = new PriorityQueue<>(candidates.size());
+            for (TeamMember member : candidates) {
+                long openPoints = 0;
+                List<TaskItem> assigned = assignment.get(member);
+                if (assigned != null) {
+                    for (TaskItem task : assigned) {
+                        if (task.getStatus() != TaskStatus.COMPLETED) {
+                            openPoints += task.getEffortPoints();
+                        }
+                    }
+                }
+                loads.add(new MemberLoad(member, openPoints));
+            }
+
+            Map<String, String> plan = new LinkedHashMap<>(unassigned.size() * 2);
+            Map<TeamMember, List<TaskItem>> planned = new HashMap<>();
+            for (TaskItem task : unassigned) {
+                MemberLoad lightest = loads.poll();
+                plan.put(task.getTaskId(), lightest.member.getMemberId());
+                planned.computeIfAbsent(lightest.member, m -> new ArrayList<>()).add(task);
+                lightest.openPoints += task.getEffortPoints();
+                loads.add(lightest);
+            }
+
+            // 一次性批量写入数据库
             if (databaseEnabled) {
                 try {
-                    databaseManager.assignTask(taskId, memberId);
+                    if (journal != null) {
+                        long lsn = 0;
+                        for (Map.Entry<String, String> entry : plan.entrySet()) {
+                            lsn = journal.appendTaskAssigned(entry.getKey(), entry.getValue());
+                        }
+                        journal.awaitDurable(lsn);
+                    } else {
+                        databaseManager.assignTasksBatch(plan);
+                    }
                 } catch (Exception e) {
-                    System.err.println("更新任务分配到数据库失败: " + e.getMessage());
+                    // 数据库中没有这些分配，内存中的任务和成员负载都不修改
+                    System.err.println("批量分配任务到数据库失败，已撤销本次分配: " + e.getMessage());
+                    return 0;
                 }
             }
 
-            // 更新任务分配映射
-            for (Map.Entry<Project, Map<TeamMember, List<TaskItem>>> entry : taskAssignments.entrySet()) {
-                if (entry.getKey().getTasks().contains(task)) {
-                    entry.getValue().putIfAbsent(member, new ArrayList<>());
-                    entry.getValue().get(member).add(task);
-                    break;
+            // 数据库写入成功后再更新内存中的任务和分配映射
+            boolean publish = eventPublisher.hasSubscribers();
+            List<TaskEvent> events = publish ? new ArrayList<>(plan.size()) : null;
+            for (Map.Entry<TeamMember, List<TaskItem>> entry : planned.entrySet()) {
+                for (TaskItem task : entry.getValue()) {
+                    task.setAssignedTo(entry.getKey());
+                    taskCounters.assigneeChanged(projectId, task, null);
+                    if (publish) {
+                        events.add(new TaskEvent.Assigned(task.getTaskId(), projectId, entry.getKey().getMemberId(), null));
+                    }
                 }
+                assignment.computeIfAbsent(entry.getKey(), m -> new ArrayList<>()).addAll(entry.getValue());
             }
-            return true;
+            if (replication != null) {
+                for (Map.Entry<String, String> entry : plan.entrySet()) {
+                    replication.taskAssigned(entry.getKey(), entry.getValue());
+                }
+            }
+            if (publish) {
+                eventPublisher.publish(events);
+            }
+            return plan.size();
+        } finally {
+            dataLock.writeLock().unlock();
+        }
+    }
+
+    // 自动分配时成员的负载记录 (最小堆元素)
+    private static class MemberLoad implements Comparable<MemberLoad> {
+        private final TeamMember member;
+        private long openPoints;
+
+        MemberLoad(TeamMember member, long openPoints) {
+            this.member = member;
+            this.openPoints = openPoints;
+        }
+
+        @Override
+        public int compareTo(MemberLoad other) {
+            int byLoad = Long.compare(openPoints, other.openPoints);
+            return byLoad != 0 ? byLoad : member.getMemberId().compareTo(other.member.getMemberId());
         }
-        return false;
     }
 
     public boolean updateTaskStatus(String taskId, TaskStatus status, double progress) {
-        TaskItem task = tasks.get(taskId);
-        if (task != null) {
-            task.setStatus(status);
-            task.setProgress(progress);
+        dataLock.writeLock().lock();
+        try {
+            if (readOnly) return false;
+            TaskItem task = tasks.get(taskId);
+            if (task != null) {
+                long before = task.getState();
+                long state = task.updateState(status, progress);
+                taskCounters.statusChanged(taskProjectIds.get(taskId), task, TaskItem.statusOf(before));
+                recordHistory(task);
+                scheduleTaskChanged(task);
+                markProjectDirty(taskProjectIds.get(taskId));
+                saveTaskStateToDatabase(taskId, state);
+                replicateState(taskId, state);
+                publishStateChange(taskId, before, state);
+                return true;
+            }
+            return false;
+        } finally {
+            dataLock.writeLock().unlock();
+        }
+    }
 
-            // 更新数据库
-            if (databaseEnabled) {
-                try {
-                    databaseManager.updateTaskStatus(taskId, status, progress);
-                } catch (Exception e) {
-                    System.err.println("更新任务状态到数据库失败: " + e.getMessage());
-                }
+    /**
+     * 乐观并发的状态更新：expectedVersion 为调用方读取任务时看到的版本号，
+     * 期间若已有其他人修改了该任务，则拒绝本次 (过期的) 写入。
+     *
+     * @return 更新成功返回 true；任务不存在或版本号不匹配返回 false
+     */
+    public boolean updateTaskStatus(String taskId, TaskStatus status, double progress, long expectedVersion) {
+        dataLock.writeLock().lock();
+        try {
+            TaskItem task = tasks.get(taskId);
+            if (readOnly || task == null) return false;
+            long before = task.getState();
+            if (TaskItem.versionOf(before) != expectedVersion) return false;
+            // 使用 CAS 写入的状态字：之后再读取可能已经是其他线程的修改
+            long state = task.compareAndSetState(expectedVersion, status, progress);
+            if (state == TaskItem.CAS_FAILED) return false;
+            taskCounters.statusChanged(taskProjectIds.get(taskId), task, TaskItem.statusOf(before));
+            recordHistory(task);
+            scheduleTaskChanged(task);
+            markProjectDirty(taskProjectIds.get(taskId));
+            saveTaskStateToDatabase(taskId, state);
+            replicateState(taskId, state);
+            publishStateChange(taskId, before, state);
+            return true;
+        } finally {
+            dataLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 添加任务依赖：taskId 在 blockedById 完成之前不能开始，两个任务必须属于同一项目。
+     *
+     * @return 任务不存在、不在同一项目、依赖已存在或会形成循环依赖时返回 false
+     */
+    public boolean addTaskDependency(String taskId, String blockedById) {
+        dataLock.writeLock().lock();
+        try {
+            if (readOnly || !isAdminLoggedIn()) return false;
+            if (!schedule.addDependency(taskId, blockedById)) return false;
+            // 先持久化，失败时撤销进度计划中的依赖
+            try {
+                saveDependencyChange(taskId, blockedById, true);
+            } catch (IOException | SQLException e) {
+                schedule.removeDependency(taskId, blockedById);
+                System.err.println("保存任务依赖失败: " + e.getMessage());
+                return false;
+            }
+            if (replication != null) {
+                replication.dependencyAdded(taskId, blockedById);
             }
             return true;
+        } finally {
+            dataLock.writeLock().unlock();
+        }
+    }
+
+    public boolean removeTaskDependency(String taskId, String blockedById) {
+        dataLock.writeLock().lock();
+        try {
+            if (readOnly || !isAdminLoggedIn()) return false;
+            if (!schedule.blockersOf(taskId).contains(blockedById)) return false;
+            try {
+                saveDependencyChange(taskId, blockedById, false);
+            } catch (IOException | SQLException e) {
+                System.err.println("删除任务依赖失败: " + e.getMessage());
+                return false;
+            }
+            schedule.removeDependency(taskId, blockedById);
+            if (replication != null) {
+                replication.dependencyRemoved(taskId, blockedById);
+            }
+            return true;
+        } finally {
+            dataLock.writeLock().unlock();
+        }
+    }
+
+    // 启用变更日志时追加日志记录，否则直接写数据库；内存模式不做任何事
+    private void saveDependencyChange(String taskId, String blockedById, boolean added)
+            throws IOException, SQLException {
+        if (journal != null) {
+            journal.awaitDurable(added ? journal.appendDependencyAdded(taskId, blockedById)
+                    : journal.appendDependencyRemoved(taskId, blockedById));
+        } else if (databaseEnabled) {
+            if (added) {
+                databaseManager.saveTaskDependency(taskId, blockedById);
+            } else {
+                databaseManager.deleteTaskDependency(taskId, blockedById);
+            }
+        }
+    }
+
+    // 任务状态变化后更新进度计划 (供同包的批量操作使用)
+    void scheduleTaskChanged(TaskItem task) {
+        schedule.taskChanged(taskProjectIds.get(task.getTaskId()), task);
+    }
+
+    // 在任务的版本链上记录当前状态 (与上一个版本相同时不记录)
+    void recordHistory(TaskItem task) {
+        if (taskHistory != null) {
+            taskHistory.record(task.getTaskId(), taskProjectIds.get(task.getTaskId()), task.getState(),
+                    System.currentTimeMillis());
+        }
+    }
+
+    private void recordHistory(Collection<TaskItem> changed) {
+        for (TaskItem task : changed) {
+            recordHistory(task);
+        }
+    }
+
+    private void replicateState(String taskId, long state) {
+        if (replication != null) {
+            replication.taskState(taskId, state);
+        }
+    }
+
+    private void publishStateChange(String taskId, long before, long after) {
+        if (!eventPublisher.hasSubscribers()) return;
+        List<TaskEvent> events = new ArrayList<>(2);
+        addStateChangeEvents(events, taskId, taskProjectIds.get(taskId), before, after);
+        eventPublisher.publish(events);
+    }
+
+    // 比较更新前后的打包状态，生成状态和进度变化事件
+    static void addStateChangeEvents(List<TaskEvent> events, String taskId, String projectId, long before, long after) {
+        long version = TaskItem.versionOf(after);
+        if (TaskItem.statusOf(before) != TaskItem.statusOf(after)) {
+            events.add(new TaskEvent.StatusChanged(taskId, projectId,
+                    TaskItem.statusOf(before), TaskItem.statusOf(after), version));
+        }
+        if (TaskItem.progressOf(before) != TaskItem.progressOf(after)) {
+            events.add(new TaskEvent.ProgressChanged(taskId, projectId,
+                    TaskItem.progressOf(before), TaskItem.progressOf(after), version));
+        }
+    }
+
+    private void saveTaskStateToDatabase(String taskId, long state) {
+        if (!databaseEnabled) return;
+
+        Map<String, Long> deferred = deferredStates.get();
+        if (deferred != null) {
+            deferred.merge(taskId, state, (a, b) -> TaskItem.versionOf(b) >= TaskItem.versionOf(a) ? b : a);
+            return;
+        }
+        try {
+            if (journal != null) {
+                journal.awaitDurable(journal.appendTaskState(taskId, state));
+                return;
+            }
+            databaseManager.updateTaskStatus(taskId, state);
+        } catch (Exception e) {
+            System.err.println("更新任务状态到数据库失败: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 执行 action，期间本线程的任务状态数据库写入先记在 deferred (任务ID -> 状态) 中，
+     * 由调用方随后用 writeDeferredStates 写入。服务器模式下 action 在写锁内只修改内存，
+     * 释放写锁后再写数据库，不同请求 (不同分片) 的写入可以同时进行；
+     * 数据库只接受版本号更大的状态，多个请求的写入顺序颠倒也不会用旧状态覆盖新状态。
+     */
+    public <T> T deferStateWrites(Map<String, Long> deferred, java.util.function.Supplier<T> action) {
+        Map<String, Long> previous = deferredStates.get();
+        deferredStates.set(deferred);
+        try {
+            return action.get();
+        } finally {
+            if (previous == null) {
+                deferredStates.remove();
+            } else {
+                deferredStates.set(previous);
+            }
+        }
+    }
+
+    public void writeDeferredStates(Map<String, Long> deferred) {
+        for (Map.Entry<String, Long> entry : deferred.entrySet()) {
+            saveTaskStateToDatabase(entry.getKey(), entry.getValue());
         }
-        return false;
     }
 
     // 查询方法
     public List<TaskItem> getAssignedTasks() {
-        if (currentUser == null) return new ArrayList<>();
+        TeamMember user = actingUser();
+        if (user == null) return new ArrayList<>();
 
         List<TaskItem> assignedTasks = new ArrayList<>();
         for (Map<TeamMember, List<TaskItem>> assignment : taskAssignments.values()) {
-            if (assignment.containsKey(currentUser)) {
-                assignedTasks.addAll(assignment.get(currentUser));
+            if (assignment.containsKey(user)) {
+                assignedTasks.addAll(assignment.get(user));
             }
         }
         return assignedTasks;
     }
 
     public List<TaskItem> searchTasks(String projectId, TaskStatus status, Priority priority) {
-        return tasks.values().stream()
-                .filter(task -> projectId == null || taskBelongsToProject(task, projectId))
+        // 指定项目时只扫描该项目的任务
+        Project project = projectId == null ? null : projects.get(projectId);
+        if (projectId != null && project == null) return new ArrayList<>();
+        Collection<TaskItem> candidates = project != null ? project.getTasks() : tasks.values();
+        return candidates.stream()
                 .filter(task -> status == null || task.getStatus() == status)
                 .filter(task -> priority == null || task.getPriority() == priority)
                 .collect(Collectors.toList());
     }
 
-    private boolean taskBelongsToProject(TaskItem task, String projectId) {
-        Project project = projects.get(projectId);
-        return project != null && project.getTasks().contains(task);
+    /**
+     * 归档已完成的旧任务：截止日期早于 olderThanDays 天前的已完成任务写入压缩归档分段，
+     * 然后从数据库任务表和内存中移除，项目只保留归档任务数和进度之和用于进度计算。
+     * 任务没有记录完成时间，因此以截止日期作为任务的"年龄"。
+     *
+     * @return 归档的任务数量
+     */
+    public int archiveCompletedTasks(int olderThanDays) {
+        dataLock.writeLock().lock();
+        try {
+            if (readOnly || !isAdminLoggedIn() || !databaseEnabled) return 0;
+
+            // 先把变更日志合并到数据库，并在归档期间阻止后台检查点写回这些任务
+            checkpointJournal();
+            synchronized (checkpointLock) {
+                int cutoff = (int) java.time.LocalDate.now().minusDays(olderThanDays).toEpochDay();
+                List<TaskItem> archived = new ArrayList<>();
+                Map<String, double[]> summary = new HashMap<>();
+                for (TaskItem task : tasks.values()) {
+                    String projectId = taskProjectIds.get(task.getTaskId());
+                    if (projectId == null || task.getStatus() != TaskStatus.COMPLETED
+                            || task.getDueDay() == TaskItem.NO_DATE || task.getDueDay() >= cutoff) {
+                        continue;
+                    }
+                    archived.add(task);
+                    double[] projectSummary = summary.computeIfAbsent(projectId, id -> new double[2]);
+                    projectSummary[0]++;
+                    projectSummary[1] += task.getProgress();
+                }
+                if (archived.isEmpty()) return 0;
+
+                List<String> archivedIds = new ArrayList<>(archived.size());
+                for (TaskItem task : archived) {
+                    archivedIds.add(task.getTaskId());
+                }
+                try {
+                    if (taskArchive == null) {
+                        taskArchive = new TaskArchive(DatabaseManager.dataDirectory().resolve(ARCHIVE_DIR));
+                    }
+                    // 分段文件落盘之后才从数据库删除，中途失败最多在归档中多出一份副本
+                    taskArchive.writeSegment(archived, taskProjectIds);
+                    databaseManager.archiveTasks(archivedIds, summary);
+                } catch (IOException | SQLException e) {
+                    System.err.println("归档任务失败: " + e.getMessage());
+                    return 0;
+                }
+
+                removeArchivedTasks(archived, summary);
+                if (replication != null) {
+                    replication.tasksArchived(archivedIds);
+                }
+                return archived.size();
+            }
+        } finally {
+            dataLock.writeLock().unlock();
+        }
+    }
+
+    // 从内存中移除已归档的任务，并把汇总计入各项目
+    private void removeArchivedTasks(List<TaskItem> archived, Map<String, double[]> summary) {
+        Set<TaskItem> removed = Collections.newSetFromMap(new IdentityHashMap<>(archived.size() * 2));
+        removed.addAll(archived);
+        for (TaskItem task : archived) {
+            tasks.remove(task.getTaskId());
+            taskCounters.remove(taskProjectIds.remove(task.getTaskId()), task);
+            taskHistory.remove(task.getTaskId());
+            schedule.taskRemoved(task.getTaskId());
+        }
+        for (Map.Entry<String, double[]> entry : summary.entrySet()) {
+            Project project = projects.get(entry.getKey());
+            project.getTasks().removeIf(removed::contains);
+            for (List<TaskItem> assigned : taskAssignments.get(project).values()) {
+                assigned.removeIf(removed::contains);
+            }
+            project.addArchived((int) entry.getValue()[0], entry.getValue()[1]);
+            markProjectDirty(project.getProjectId());
+        }
+    }
+
+    // ===== 只读副本应用复制记录 (由 ReplicaFollower 在持有写锁时调用) =====
+
+    // 任务创建、状态、分配、项目成员和依赖记录与变更日志回放的处理相同
+    MutationJournal.RecordHandler replicaApplier() {
+        return new JournalReplayer(false);
+    }
+
+    // 新成员直接加入；已有成员原地更新，保持作为 Map 键的实例不变
+    void applyReplicatedMember(TeamMember member) {
+        TeamMember existing = members.putIfAbsent(member.getMemberId(), member);
+        if (existing != null) {
+            existing.setName(member.getName());
+            existing.setRole(member.getRole());
+            existing.setEmail(member.getEmail());
+            existing.setPassword(member.getPassword());
+        }
+    }
+
+    void applyReplicatedProject(Project project, List<String> memberIds) {
+        Project existing = projects.get(project.getProjectId());
+        if (existing == null) {
+            existing = project;
+            projects.put(project.getProjectId(), project);
+            taskAssignments.put(project, new HashMap<>());
+        } else {
+            existing.setName(project.getName());
+            existing.setDescription(project.getDescription());
+            existing.setStartDay(project.getStartDay());
+            existing.setDueDay(project.getDueDay());
+        }
+        for (String memberId : memberIds) {
+            TeamMember member = members.get(memberId);
+            if (member != null && !existing.getMembers().contains(member)) {
+                existing.addMember(member);
+            }
+        }
+        // 截止日期变化时重新计算最晚完成 (项目的任务可能先于项目记录到达)
+        schedule.projectChanged(project.getProjectId());
+        markProjectDirty(project.getProjectId());
+    }
+
+    // 快照中可能已经不含这些任务 (快照晚于归档)，只处理仍在内存中的任务
+    void applyReplicatedArchive(List<String> taskIds) {
+        List<TaskItem> archived = new ArrayList<>(taskIds.size());
+        Map<String, double[]> summary = new HashMap<>();
+        for (String taskId : taskIds) {
+            TaskItem task = tasks.get(taskId);
+            String projectId = taskProjectIds.get(taskId);
+            if (task == null || projectId == null) continue;
+            archived.add(task);
+            double[] projectSummary = summary.computeIfAbsent(projectId, id -> new double[2]);
+            projectSummary[0]++;
+            projectSummary[1] += task.getProgress();
+        }
+        removeArchivedTasks(archived, summary);
+    }
+
+    // 用主节点的快照 (或副本的检查点) 替换全部数据
+    void resetReplica(LoadedData data, Map<String, double[]> archiveSummary) {
+        members.clear();
+        projects.clear();
+        tasks.clear();
+        taskAssignments.clear();
+        taskProjectIds.clear();
+        taskCounters.clear();
+        installMembers(data.getMembers());
+        installProjects(data.getProjects());
+        installTasks(data.getTasks(), data.getTaskProjectIds());
+        installArchiveSummary(archiveSummary);
+        // 版本链跨快照保留，快照中的状态与链上最后一个版本不同时记为新版本
+        taskHistory.retain(tasks.keySet());
+        recordHistory(tasks.values());
+        schedule.rebuild(tasks.values(), taskProjectIds, data.getDependencies());
+        for (String projectId : projects.keySet()) {
+            markProjectDirty(projectId);
+        }
+    }
+
+    /**
+     * 在归档分段中查找任务 (顺序扫描所有分段，比内存查询慢得多)。
+     * 同一任务因归档中途失败而出现多份时只返回一次。
+     *
+     * @param projectId 为 null 时不按项目筛选
+     * @param keyword   标题关键字，为 null 时不筛选
+     */
+    public List<TaskItem> searchArchivedTasks(String projectId, String keyword) {
+        if (!databaseEnabled) return new ArrayList<>();
+        Map<String, TaskItem> found = new LinkedHashMap<>();
+        try {
+            if (taskArchive == null) {
+                taskArchive = new TaskArchive(DatabaseManager.dataDirectory().resolve(ARCHIVE_DIR));
+            }
+            taskArchive.scan((task, taskProjectId, assigneeId) -> {
+                if ((projectId == null || projectId.equals(taskProjectId))
+                        && (keyword == null || (task.getTitle() != null && task.getTitle().contains(keyword)))) {
+                    task.setAssignedTo(assigneeId == null ? null : members.get(assigneeId));
+                    found.putIfAbsent(task.getTaskId(), task);
+                }
+            });
+        } catch (IOException e) {
+            System.err.println("读取归档任务失败: " + e.getMessage());
+        }
+        return new ArrayList<>(found.values());
+    }
+
+    // 批量导入：登记已写入数据库的任务，不做权限检查 (由命令行导入使用)；events 不为 null 时收集事件
+    void registerImportedTask(TaskItem task, Project project, List<TaskEvent> events) {
+        TaskItem previous = tasks.put(task.getTaskId(), task);
+        if (previous != null) {
+            // 覆盖同ID的旧任务
+            Project oldProject = projects.get(taskProjectIds.get(previous.getTaskId()));
+            if (oldProject != null) {
+                oldProject.getTasks().remove(previous);
+                taskCounters.remove(oldProject.getProjectId(), previous);
+                markProjectDirty(oldProject.getProjectId());
+                if (previous.getAssignedTo() != null) {
+                    List<TaskItem> oldList = taskAssignments.get(oldProject).get(previous.getAssignedTo());
+                    if (oldList != null) oldList.remove(previous);
+                }
+            }
+        }
+
+        taskProjectIds.put(task.getTaskId(), project.getProjectId());
+        project.addTask(task);
+        taskCounters.add(project.getProjectId(), task);
+        recordHistory(task);
+        scheduleTaskChanged(task);
+        markProjectDirty(project.getProjectId());
+        if (task.getAssignedTo() != null) {
+            taskAssignments.get(project).computeIfAbsent(task.getAssignedTo(), m -> new ArrayList<>()).add(task);
+        }
+        if (events != null) {
+            events.add(new TaskEvent.TaskCreated(task, project.getProjectId()));
+        }
+    }
+
+    // 脏项目跟踪
+    void markProjectDirty(String projectId) {
+        if (projectId != null) {
+            dirtyProjects.add(projectId);
+        }
+    }
+
+    /**
+     * 取出并清空自上次调用以来有变化的项目ID。
+     * 先取出再计算：计算期间发生的新变化会在下一次调用时返回。
+     */
+    public Set<String> drainDirtyProjects() {
+        Set<String> drained = new HashSet<>();
+        drainDirtyProjects(drained);
+        return drained;
+    }
+
+    // 取出到调用方提供 (可复用) 的集合中，返回取出的数量
+    public int drainDirtyProjects(Collection<String> target) {
+        int count = 0;
+        for (Iterator<String> it = dirtyProjects.iterator(); it.hasNext(); ) {
+            target.add(it.next());
+            it.remove();
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * 任务事件流。订阅者收到的每个元素是一批事件，按变更发生的顺序排列。
+     */
+    public TaskEventPublisher getEventPublisher() {
+        return eventPublisher;
     }
 
+    /**
+     * 按 (项目, 成员, 状态, 优先级) 的任务计数，统计查询不需要遍历任务。
+     */
+    public TaskCounterCube getTaskCounters() {
+        return taskCounters;
+    }
+
+    // 用完整重新计算校验任务计数，返回不一致的描述 (最多 20 条)
+    public List<String> verifyTaskCounters() {
+        return taskCounters.verify(projects.values(), 20);
+    }
+
+    /**
+     * 任务状态的版本历史，按时间点查询任务或项目当时的状态。
+     */
+    public TaskHistory getTaskHistory() {
+        return taskHistory;
+    }
+
+    /**
+     * 按任务依赖计算的进度计划：预计完工日期、关键路径、赶不上截止日期的任务。
+     */
+    public CriticalPathEngine getSchedule() {
+        return schedule;
+    }
+
+    // 开启一个批量变更的工作单元
+    public UnitOfWork beginUnitOfWork() {
+        if (readOnly) {
+            throw new IllegalStateException("只读副本不能修改数据");
+        }
+        return new UnitOfWork(this);
+    }
+
+    // 预留编号段失败时返回 null (错误已输出)
+    String nextTaskId() {
+        return allocateId(taskIdAllocator);
+    }
+
+    private static String allocateId(IdAllocator allocator) {
+        try {
+            return allocator.nextId();
+        } catch (IllegalStateException e) {
+            System.err.println("分配ID失败: " + e.getMessage());
+            return null;
+        }
+    }
+
+    IdAllocator getTaskIdAllocator() { return taskIdAllocator; }
+
     // 辅助方法
-    private boolean isAdminLoggedIn() {
-        return currentUser != null && currentUser.getRole() == Role.ADMIN;
+    boolean isAdminLoggedIn() {
+        TeamMember user = actingUser();
+        return user != null && user.getRole() == Role.ADMIN;
     }
 
     // Getter方法
-    public TeamMember getCurrentUser() { return currentUser; }
+    public TeamMember getCurrentUser() { return actingUser(); }
     public Map<String, Project> getProjects() { return projects; }
+    public ReadWriteLock getDataLock() { return dataLock; }
     public Map<String, TeamMember> getMembers() { return members; }
     public Map<String, TaskItem> getTasks() { return tasks; }
     public boolean isDatabaseEnabled() { return databaseEnabled; }
+    public boolean isReadOnly() { return readOnly; }
+    public ReplicationPrimary getReplicationPrimary() { return replication; }
+
+    // 供同包的批量操作使用
+    DatabaseManager getDatabaseManager() { return databaseManager; }
+    MutationJournal getJournal() { return journal; }
+    Map<Project, Map<TeamMember, List<TaskItem>>> getTaskAssignments() { return taskAssignments; }
+    Map<String, String> getTaskProjectIds() { return taskProjectIds; }
 
     // 关闭数据库连接
     public void close() {
+        eventPublisher.close();
+        if (replication != null) {
+            replication.close();
+        }
+        taskHistory.close();
+        if (journal != null) {
+            journalCheckpointer.shutdown();
+            checkpointJournal();
+            journal.close();
+            checkpointDatabase.close();
+        }
+        // 关闭时写快照，下次启动可以直接从快照加载
+        if (snapshotEnabled()) {
+            writeSnapshot();
+        }
         if (databaseManager != null) {
             databaseManager.close();
         }
@@ -0,0 +1,135 @@
+package edu.sbs.cs.service;
+
+import java.io.IOException;
+
+/**
+ * 扁平 JSON 对象的读写 (导入导出文件和 HTTP 接口共用)。
+ * 只支持一层对象，值为字符串、数字、布尔或 null；非字符串的值按原文返回。
+ */
+final class FlatJson {
+
+    // 解析出的每个键值对的回调，null 值以 null 传入
+    @FunctionalInterface
+    interface FieldHandler {
+        void field(String key, String value);
+    }
+
+    private final String text;
+    private int pos;
+
+    private FlatJson(String text) {
+        this.text = text;
+    }
+
+    static void parse(String text, FieldHandler handler) throws IOException {
+        new FlatJson(text).parseObject(handler);
+    }
+
+    static void writeString(Appendable out, String value) throws IOException {
+        out.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"': out.append("\\\""); break;
+                case '\\': out.append("\\\\"); break;
+                case '\n': out.append("\\n"); break;
+                case '\r': out.append("\\r"); break;
+                case '\t': out.append("\\t"); break;
+                default:
+                    if (c < 0x20) {
+                        out.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        out.append(c);
+                    }
+            }
+        }
+        out.append('"');
+    }
+
+    // 写入 StringBuilder 不会抛出 IOException
+    static StringBuilder appendString(StringBuilder out, String value) {
+        if (value == null) {
+            return out.append("null");
+        }
+        try {
+            writeString(out, value);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return out;
+    }
+
+    private void parseObject(FieldHandler handler) throws IOException {
+        skipSpaces();
+        expect('{');
+        skipSpaces();
+        if (peek() == '}') return;
+        while (true) {
+            skipSpaces();
+            String key = readString();
+            skipSpaces();
+            expect(':');
+            skipSpaces();
+            handler.field(key, readValue());
+            skipSpaces();
+            char c = next();
+            if (c == '}') return;
+            if (c != ',') throw new IOException("JSON 格式错误，位置 " + pos);
+        }
+    }
+
+    private String readValue() throws IOException {
+        char c = peek();
+        if (c == '"') return readString();
+        int start = pos;
+        while (pos < text.length() && ",} \t\r\n".indexOf(text.charAt(pos)) < 0) pos++;
+        String literal = text.substring(start, pos);
+        return "null".equals(literal) ? null : literal;
+    }
+
+    private String readString() throws IOException {
+        expect('"');
+        StringBuilder sb = new StringBuilder();
+        while (true) {
+            char c = next();
+            if (c == '"') return sb.toString();
+            if (c != '\\') {
+                sb.append(c);
+                continue;
+            }
+            char escaped = next();
+            switch (escaped) {
+                case 'n': sb.append('\n'); break;
+                case 'r': sb.append('\r'); break;
+                case 't': sb.append('\t'); break;
+                case 'b': sb.append('\b'); break;
+                case 'f': sb.append('\f'); break;
+                case 'u':
+                    if (pos + 4 > text.length()) throw new IOException("JSON 转义不完整");
+                    sb.append((char) Integer.parseInt(text.substring(pos, pos + 4), 16));
+                    pos += 4;
+                    break;
+                default: sb.append(escaped);
+            }
+        }
+    }
+
+    private void skipSpaces() {
+        while (pos < text.length() && Character.isWhitespace(text.charAt(pos))) pos++;
+    }
+
+    private char peek() throws IOException {
+        if (pos >= text.length()) throw new IOException("JSON 意外结束");
+        return text.charAt(pos);
+    }
+
+    private char next() throws IOException {
+        char c = peek();
+        pos++;
+        return c;
+    }
+
+    private void expect(char expected) throws IOException {
+        if (next() != expected) throw new IOException("JSON 格式错误，期望 '" + expected + "'，位置 " + (pos - 1));
+    }
+}
@@ -1,65 +1,419 @@
 package edu.sbs.cs.service;
 
 import edu.sbs.cs.model.Project;
-import java.io.FileWriter;
+import edu.sbs.cs.model.TaskItem;
+import edu.sbs.cs.model.TaskStatus;
 import java.io.IOException;
-import java.io.PrintWriter;
-import java.time.LocalDateTime;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
+import java.time.zone.ZoneOffsetTransition;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * 后台进度报告器。
+ * 由 ScheduledExecutorService 按可配置的间隔定期触发 (固定频率或固定延迟)，
+ * 每个项目的统计在 ForkJoinPool 上并行计算，再按项目ID顺序合并输出，保证报告顺序稳定。
+ * 只重新计算上次报告之后有变化的项目，其余项目沿用缓存的报告行；没有任何变化时跳过本轮报告。
+ * 统计对象、报告文本缓冲区、并行任务和写入缓冲区都跨轮复用，稳定运行时每轮报告
+ * 在报告线程、计算线程和写入线程上都不随项目数分配内存 (见 ProgressReporterThreadTest)。
+ */
+public class ProgressReporterThread {
+    // 调度方式
+    public enum ScheduleMode {
+        FIXED_RATE,  // 按固定频率触发，不受单次报告耗时影响
+        FIXED_DELAY  // 上一次报告结束后再等待固定间隔
+    }
 
-public class ProgressReporterThread extends Thread {
-    private DataManager dataManager;
-    private volatile boolean running;
     private static final String REPORT_FILE = "progress_reports.log";
+    private static final String HISTORY_DIR = "reports";
+    private static final String SERIES_DIR = "reports/series";
+    private static final long DEFAULT_INTERVAL_MS = 30000;
+    // 项目数少于该值时直接串行计算，避免并行调度的开销
+    private static final int PARALLEL_THRESHOLD = 64;
+    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd ");
+    private static final boolean TRACE_ALLOCATION = Boolean.getBoolean("team.report.traceAlloc");
+    private static final com.sun.management.ThreadMXBean THREAD_MX_BEAN = initThreadMXBean();
+
+    private final DataManager dataManager;
+    private final long intervalMillis;
+    private final ScheduleMode mode;
+    private final ForkJoinPool computePool;
+    private final ScheduledExecutorService scheduler;
+    private final ReportLogWriter logWriter;
+    private final ReportHistoryStore historyStore;
+    private final ProgressSeriesStore seriesStore;
+    private ScheduledFuture<?> scheduledReport;
+
+    // 按项目ID排序的报告行缓存，以及每轮复用的缓冲区，只在调度线程中访问
+    private final TreeMap<String, ProjectStats> cachedStats = new TreeMap<>();
+    private final ArrayList<String> dirtyBuffer = new ArrayList<>();
+    private final ArrayList<ProjectStats> changedStats = new ArrayList<>();
+    private final StringBuilder reportBuilder = new StringBuilder(4096);
+    // 并行计算时复用的任务：根任务把 changedStats 分成若干段，每段一个子任务
+    private final ComputeAll computeAll;
+    // 报告时间的日期部分缓存：[dayWindowStart, dayWindowEnd) 内日期和时区偏移不变，时分秒用整数运算得到
+    private final StringBuilder datePrefix = new StringBuilder(16);
+    private long dayWindowStart = Long.MAX_VALUE;
+    private long dayWindowEnd = Long.MIN_VALUE;
+    private long localMidnight;
+    private boolean initialized;
+    private volatile long lastCycleAllocatedBytes = -1;
+    private volatile int lastCycleRecomputed;
 
     public ProgressReporterThread(DataManager dataManager) {
+        this(dataManager, Long.getLong("team.report.intervalMs", DEFAULT_INTERVAL_MS),
+                ScheduleMode.valueOf(System.getProperty("team.report.mode", ScheduleMode.FIXED_RATE.name())));
+    }
+
+    public ProgressReporterThread(DataManager dataManager, long intervalMillis, ScheduleMode mode) {
+        this(dataManager, intervalMillis, mode, Paths.get(""));
+    }
+
+    // baseDirectory: 报告日志、历史报告和时间序列所在的目录
+    ProgressReporterThread(DataManager dataManager, long intervalMillis, ScheduleMode mode, Path baseDirectory) {
         this.dataManager = dataManager;
-        this.running = true;
-        this.setDaemon(true); // 设置为守护线程
+        this.intervalMillis = intervalMillis;
+        this.mode = mode;
+        this.historyStore = openHistoryStore(baseDirectory.resolve(HISTORY_DIR));
+        this.seriesStore = openSeriesStore(baseDirectory.resolve(SERIES_DIR));
+        this.logWriter = new ReportLogWriter(baseDirectory.resolve(REPORT_FILE), historyStore);
+        int parallelism = Runtime.getRuntime().availableProcessors();
+        this.computePool = new ForkJoinPool(parallelism, pool -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setName("progress-compute-" + thread.getPoolIndex());
+            return thread;
+        }, null, false);
+        this.computeAll = new ComputeAll(parallelism);
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "progress-reporter");
+            thread.setDaemon(true); // 设置为守护线程
+            return thread;
+        });
     }
 
-    @Override
-    public void run() {
-        while (running) {
+    private static com.sun.management.ThreadMXBean initThreadMXBean() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean hotspotBean = (com.sun.management.ThreadMXBean) bean;
+            if (hotspotBean.isThreadAllocatedMemorySupported()) {
+                hotspotBean.setThreadAllocatedMemoryEnabled(true);
+                return hotspotBean;
+            }
+        }
+        return null;
+    }
+
+    private static ReportHistoryStore openHistoryStore(Path directory) {
+        try {
+            return new ReportHistoryStore(directory);
+        } catch (IOException e) {
+            System.err.println("打开历史报告存储失败，历史报告将不可查询: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private static ProgressSeriesStore openSeriesStore(Path directory) {
+        try {
+            return new ProgressSeriesStore(directory);
+        } catch (IOException e) {
+            System.err.println("打开进度时间序列失败: " + e.getMessage());
+            return null;
+        }
+    }
+
+    // 每个项目的进度时间序列，打开失败时为 null
+    public ProgressSeriesStore getSeriesStore() {
+        return seriesStore;
+    }
+
+    // 历史报告存储，打开失败时为 null
+    public ReportHistoryStore getHistoryStore() {
+        return historyStore;
+    }
+
+    public synchronized void start() {
+        if (scheduledReport != null) return;
+
+        Runnable task = () -> {
             try {
-                // 每30秒生成一次报告
-                Thread.sleep(30000);
                 generateProgressReport();
-            } catch (InterruptedException e) {
-                System.out.println("进度报告线程被中断");
-                break;
+            } catch (RuntimeException e) {
+                // 单次报告失败不能终止后续调度
+                System.err.println("生成进度报告失败: " + e.getMessage());
+            }
+        };
+        if (mode == ScheduleMode.FIXED_RATE) {
+            scheduledReport = scheduler.scheduleAtFixedRate(task, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+        } else {
+            scheduledReport = scheduler.scheduleWithFixedDelay(task, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /*
+     * 单个项目的统计结果及格式化好的报告行。
+     * 每个项目一个对象，重新计算时原地更新并复用行缓冲区，稳定运行时不为每个项目分配新对象。
+     */
+    private static final class ProjectStats {
+        private Project project;
+        private double progress;
+        private long completedTasks;
+        private long totalTasks;
+        private final StringBuilder line = new StringBuilder(96);
+
+        void compute(Project project) {
+            this.project = project;
+            List<TaskItem> tasks = project.getTasks();
+            long completed = 0;
+            double progressSum = 0;
+            int total = tasks.size();
+            for (int i = 0; i < total; i++) {
+                long state = tasks.get(i).getState();
+                progressSum += TaskItem.progressOf(state);
+                if (TaskItem.statusOf(state) == TaskStatus.COMPLETED) {
+                    completed++;
+                }
+            }
+            // 归档任务只保留汇总，且都已完成
+            int archived = project.getArchivedTaskCount();
+            progressSum += project.getArchivedProgressSum();
+            completed += archived;
+            long all = (long) total + archived;
+            this.progress = all == 0 ? 0.0 : progressSum / all;
+            this.completedTasks = completed;
+            this.totalTasks = all;
+            formatLine();
+        }
+
+        // 等价于 "项目: %s | 进度: %.1f%% | 任务: %d/%d 完成"，但不创建格式化对象
+        private void formatLine() {
+            long tenths = Math.round(progress * 10);
+            line.setLength(0);
+            line.append("项目: ").append(project.getName())
+                    .append(" | 进度: ").append(tenths / 10).append('.').append(tenths % 10)
+                    .append("% | 任务: ").append(completedTasks).append('/').append(totalTasks)
+                    .append(" 完成");
+        }
+    }
+
+    // 计算 changedStats 中的一段 [from, to)
+    private final class ComputeRange extends RecursiveAction {
+        // RecursiveAction 实现了 Serializable，这些任务不会被序列化
+        private static final long serialVersionUID = 1L;
+        private int from;
+        private int to;
+
+        @Override
+        protected void compute() {
+            for (int i = from; i < to; i++) {
+                ProjectStats stats = changedStats.get(i);
+                stats.compute(stats.project);
             }
         }
     }
 
+    // 把 changedStats 平均分给各子任务，第一段在当前线程上计算；每轮 reinitialize 后复用
+    private final class ComputeAll extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final ComputeRange[] ranges;
+        private int count;
+
+        ComputeAll(int parallelism) {
+            ranges = new ComputeRange[Math.max(1, parallelism)];
+            for (int i = 0; i < ranges.length; i++) {
+                ranges[i] = new ComputeRange();
+            }
+        }
+
+        @Override
+        protected void compute() {
+            int parts = ranges.length;
+            for (int i = 0; i < parts; i++) {
+                ComputeRange range = ranges[i];
+                range.reinitialize();
+                range.from = (int) ((long) count * i / parts);
+                range.to = (int) ((long) count * (i + 1) / parts);
+            }
+            // 用 execute 而不是 fork：调用 invoke 的报告线程可能自己执行根任务，fork 会把子任务放进公共池
+            for (int i = parts - 1; i > 0; i--) {
+                computePool.execute(ranges[i]);
+            }
+            // 出错时也等所有子任务结束，下一轮才能安全地 reinitialize
+            try {
+                ranges[0].compute();
+            } finally {
+                for (int i = 1; i < parts; i++) {
+                    ranges[i].quietlyJoin();
+                }
+            }
+            for (int i = 1; i < parts; i++) {
+                ranges[i].join(); // 子任务异常在这里重新抛出
+            }
+        }
+    }
+
+    // 在调度线程上立即执行一轮报告并等待完成 (供测试使用)
+    void runOnce() throws InterruptedException, ExecutionException {
+        scheduler.submit(this::generateProgressReport).get();
+    }
+
+    // 已写入报告日志的报告数
+    long getWrittenReports() {
+        return logWriter.getWrittenReports();
+    }
+
     private void generateProgressReport() {
-        try (FileWriter fw = new FileWriter(REPORT_FILE, true);
-             PrintWriter pw = new PrintWriter(fw)) {
+        long allocatedBefore = threadAllocatedBytes();
+
+        Map<String, Project> allProjects = dataManager.getProjects();
+        dirtyBuffer.clear();
+        dataManager.drainDirtyProjects(dirtyBuffer);
+        if (!initialized) {
+            // 第一次报告时计算所有项目
+            dirtyBuffer.addAll(allProjects.keySet());
+            initialized = true;
+        } else if (dirtyBuffer.isEmpty()) {
+            return; // 没有任何变化，跳过本轮
+        }
+
+        changedStats.clear();
+        for (int i = 0; i < dirtyBuffer.size(); i++) {
+            String projectId = dirtyBuffer.get(i);
+            Project project = allProjects.get(projectId);
+            if (project == null) {
+                cachedStats.remove(projectId);
+                continue;
+            }
+            ProjectStats stats = cachedStats.get(projectId);
+            if (stats == null) {
+                stats = new ProjectStats();
+                cachedStats.put(projectId, stats);
+            }
+            stats.project = project;
+            changedStats.add(stats);
+        }
 
-            LocalDateTime now = LocalDateTime.now();
-            DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+        // 每个统计对象只由一个线程更新
+        int changedCount = changedStats.size();
+        if (changedCount < PARALLEL_THRESHOLD) {
+            for (int i = 0; i < changedCount; i++) {
+                ProjectStats stats = changedStats.get(i);
+                stats.compute(stats.project);
+            }
+        } else {
+            try {
+                computeAll.reinitialize();
+                computeAll.count = changedCount;
+                computePool.invoke(computeAll);
+            } catch (RuntimeException e) {
+                System.err.println("计算项目进度失败: " + e);
+                return;
+            }
+        }
+        long timestamp = System.currentTimeMillis();
+        recordSeries(timestamp);
 
-            pw.println("=== 项目进度报告 - " + now.format(formatter) + " ===");
+        // 缓存按项目ID排序，合并顺序稳定；写文件交给后台写入线程，不阻塞计算
+        reportBuilder.setLength(0);
+        reportBuilder.append("=== 项目进度报告 - ");
+        appendTime(reportBuilder, timestamp);
+        reportBuilder.append(" ===\n");
+        for (ProjectStats stats : cachedStats.values()) {
+            reportBuilder.append(stats.line).append('\n');
+        }
+        reportBuilder.append("=== 报告结束 ===\n\n");
+        // 写入器在返回前复制文本，reportBuilder 下一轮可以直接复用
+        logWriter.submit(timestamp, reportBuilder);
 
-            for (Project project : dataManager.getProjects().values()) {
-                double progress = project.calculateProgress();
-                long totalTasks = project.getTasks().size();
-                long completedTasks = project.getTasks().stream()
-                        .filter(task -> task.getStatus() == edu.sbs.cs.model.TaskStatus.COMPLETED)
-                        .count();
+        lastCycleAllocatedBytes = threadAllocatedBytes() - allocatedBefore;
+        lastCycleRecomputed = changedCount;
+        if (TRACE_ALLOCATION) {
+            System.err.println("进度报告: 重新计算 " + changedCount + " 个项目, 报告线程分配 "
+                    + lastCycleAllocatedBytes + " 字节");
+        }
+    }
 
-                pw.printf("项目: %s | 进度: %.1f%% | 任务: %d/%d 完成%n",
-                        project.getName(), progress, completedTasks, totalTasks);
+    // 按 "yyyy-MM-dd HH:mm:ss" 追加本地时间；只在跨天或时区偏移变化时重新计算日期部分
+    private void appendTime(StringBuilder out, long millis) {
+        if (millis < dayWindowStart || millis >= dayWindowEnd) {
+            ZonedDateTime time = Instant.ofEpochMilli(millis).atZone(ZoneId.systemDefault());
+            localMidnight = time.toLocalDate().atStartOfDay().toEpochSecond(time.getOffset()) * 1000;
+            dayWindowStart = millis;
+            dayWindowEnd = localMidnight + TimeUnit.DAYS.toMillis(1);
+            ZoneOffsetTransition transition = time.getZone().getRules().nextTransition(time.toInstant());
+            if (transition != null) {
+                dayWindowEnd = Math.min(dayWindowEnd, transition.toEpochSecond() * 1000);
             }
-            pw.println("=== 报告结束 ===\n");
+            datePrefix.setLength(0);
+            DATE_FORMATTER.formatTo(time, datePrefix);
+        }
+        int seconds = (int) ((millis - localMidnight) / 1000);
+        out.append(datePrefix);
+        appendTwoDigits(out, seconds / 3600);
+        out.append(':');
+        appendTwoDigits(out, seconds / 60 % 60);
+        out.append(':');
+        appendTwoDigits(out, seconds % 60);
+    }
 
+    private static void appendTwoDigits(StringBuilder out, int value) {
+        out.append((char) ('0' + value / 10)).append((char) ('0' + value % 10));
+    }
+
+    // 为本轮重新计算过的项目追加二进制采样；未变化的项目沿用上一个采样值
+    private void recordSeries(long timestamp) {
+        if (seriesStore == null) return;
+        try {
+            for (int i = 0; i < changedStats.size(); i++) {
+                ProjectStats stats = changedStats.get(i);
+                seriesStore.append(timestamp, stats.project.getProjectId(), stats.progress,
+                        stats.completedTasks, stats.totalTasks);
+            }
+            seriesStore.flush();
         } catch (IOException e) {
-            System.err.println("写入进度报告失败: " + e.getMessage());
+            System.err.println("写入进度时间序列失败: " + e.getMessage());
         }
     }
 
-    public void stopReporting() {
-        running = false;
-        this.interrupt();
+    // 当前线程累计分配的字节数；JVM 不支持时返回 -1
+    private static long threadAllocatedBytes() {
+        if (THREAD_MX_BEAN == null) return -1;
+        return THREAD_MX_BEAN.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    // 最近一轮报告在报告线程上分配的字节数 (用于验证稳定运行时不随项目数增长)
+    public long getLastCycleAllocatedBytes() {
+        return lastCycleAllocatedBytes;
+    }
+
+    public int getLastCycleRecomputed() {
+        return lastCycleRecomputed;
+    }
+
+    public synchronized void stopReporting() {
+        if (scheduledReport != null) {
+            scheduledReport.cancel(false);
+        }
+        scheduler.shutdown();
+        try {
+            // 等待正在进行的报告写完，再关闭计算线程池
+            if (!scheduler.awaitTermination(5, TimeUnit.SECONDS)) {
+                scheduler.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            scheduler.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+        computePool.shutdown();
+        logWriter.close();
+        if (seriesStore != null) {
+            seriesStore.close();
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,457 @@
+package edu.sbs.cs.service;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * 按项目记录进度变化的二进制时间序列。
+ * 原始采样按列追加到定长列文件 (时间戳、项目序号、进度、已完成数、任务总数各一个文件)，
+ * 同时在写入时计算分钟/小时/天三级汇总，每个时间桶结束时追加到对应的汇总文件。
+ * 汇总按项目分文件存放 (rollup-minute/&lt;项目序号&gt;.bin 等)，查询一个项目只读取它自己的行。
+ * 采样和汇总都按时间有序，查询时在内存映射上二分查找时间范围，不需要解析文本日志。
+ */
+public class ProgressSeriesStore implements AutoCloseable {
+    // 查询粒度
+    public enum Resolution {
+        RAW(0), MINUTE(60_000L), HOUR(3_600_000L), DAY(86_400_000L);
+
+        private final long millis;
+
+        Resolution(long millis) {
+            this.millis = millis;
+        }
+    }
+
+    // 一个采样点或一个时间桶的汇总
+    public static final class Sample {
+        private final long timestamp;
+        private final float progress;
+        private final float minProgress;
+        private final float maxProgress;
+        private final int completedTasks;
+        private final int totalTasks;
+
+        Sample(long timestamp, float progress, float minProgress, float maxProgress, int completedTasks, int totalTasks) {
+            this.timestamp = timestamp;
+            this.progress = progress;
+            this.minProgress = minProgress;
+            this.maxProgress = maxProgress;
+            this.completedTasks = completedTasks;
+            this.totalTasks = totalTasks;
+        }
+
+        public long getTimestamp() { return timestamp; }
+        public float getProgress() { return progress; }
+        public float getMinProgress() { return minProgress; }
+        public float getMaxProgress() { return maxProgress; }
+        public int getCompletedTasks() { return completedTasks; }
+        public int getTotalTasks() { return totalTasks; }
+    }
+
+    // 原始采样的列文件及每列宽度
+    private static final String[] COLUMN_FILES = {"ts.col", "project.col", "progress.col", "completed.col", "total.col"};
+    private static final int[] COLUMN_WIDTHS = {8, 4, 4, 4, 4};
+    private static final int TS = 0, PROJECT = 1, PROGRESS = 2, COMPLETED = 3, TOTAL = 4;
+    // 汇总记录: 桶起始时间, 平均进度, 最小进度, 最大进度, 已完成数, 任务总数 (项目由文件名区分)
+    private static final int ROLLUP_WIDTH = 8 + 4 + 4 + 4 + 4 + 4;
+    // 旧版本所有项目共用一个汇总文件，每行多一个项目序号，打开时拆分到各项目的文件
+    private static final int LEGACY_ROLLUP_WIDTH = 8 + 4 + 4 + 4 + 4 + 4 + 4;
+    private static final Resolution[] ROLLUPS = {Resolution.MINUTE, Resolution.HOUR, Resolution.DAY};
+    private static final int BUFFER_SAMPLES = 4096;
+    private static final String ORDINAL_FILE = "projects.txt";
+
+    // 某个项目在一个时间桶内的累计值
+    private static final class Bucket {
+        private int count;
+        private double progressSum;
+        private float min = Float.MAX_VALUE;
+        private float max = -Float.MAX_VALUE;
+        private int completed;
+        private int total;
+
+        void reset() {
+            count = 0;
+            progressSum = 0;
+            min = Float.MAX_VALUE;
+            max = -Float.MAX_VALUE;
+        }
+
+        void add(float progress, int completed, int total) {
+            count++;
+            progressSum += progress;
+            min = Math.min(min, progress);
+            max = Math.max(max, progress);
+            this.completed = completed;
+            this.total = total;
+        }
+
+        Sample toSample(long bucketStart) {
+            return new Sample(bucketStart, (float) (progressSum / count), min, max, completed, total);
+        }
+    }
+
+    // 一个汇总级别的写入状态
+    private static final class RollupLevel {
+        private final Resolution resolution;
+        private final Path directory;
+        private long currentBucket = Long.MIN_VALUE;
+        private long lastFlushedBucket = Long.MIN_VALUE;
+        // 按项目序号索引的当前时间桶，复用对象，稳定运行时写入不分配内存
+        private Bucket[] openBuckets = new Bucket[16];
+        private int openCount;
+        // 按项目序号索引的汇总文件及其中的完整行数，文件第一次写入时打开，之后一直保持打开
+        private FileChannel[] channels = new FileChannel[16];
+        private long[] rows = new long[16];
+
+        // 项目的汇总文件，create 为 false 且文件不存在时返回 null
+        FileChannel channelFor(int ordinal, boolean create) throws IOException {
+            if (ordinal >= channels.length) {
+                int length = Math.max(ordinal + 1, channels.length * 2);
+                channels = Arrays.copyOf(channels, length);
+                rows = Arrays.copyOf(rows, length);
+            }
+            FileChannel channel = channels[ordinal];
+            if (channel != null) return channel;
+
+            Path file = directory.resolve(ordinal + ".bin");
+            if (!create && !Files.exists(file)) return null;
+            channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            // 写入中途退出时截断不完整的最后一行
+            long count = channel.size() / ROLLUP_WIDTH;
+            channel.truncate(count * ROLLUP_WIDTH);
+            channel.position(count * ROLLUP_WIDTH);
+            if (count > 0) {
+                ByteBuffer last = ByteBuffer.allocate(8);
+                channel.read(last, (count - 1) * ROLLUP_WIDTH);
+                lastFlushedBucket = Math.max(lastFlushedBucket, last.flip().getLong());
+            }
+            channels[ordinal] = channel;
+            rows[ordinal] = count;
+            return channel;
+        }
+
+        long rowCount(int ordinal) {
+            return ordinal < rows.length ? rows[ordinal] : 0;
+        }
+
+        Bucket bucketFor(int ordinal) {
+            if (ordinal >= openBuckets.length) {
+                openBuckets = Arrays.copyOf(openBuckets, Math.max(ordinal + 1, openBuckets.length * 2));
+            }
+            Bucket bucket = openBuckets[ordinal];
+            if (bucket == null) {
+                bucket = new Bucket();
+                openBuckets[ordinal] = bucket;
+            }
+            return bucket;
+        }
+
+        Bucket openBucket(int ordinal) {
+            if (ordinal >= openBuckets.length) return null;
+            Bucket bucket = openBuckets[ordinal];
+            return bucket != null && bucket.count > 0 ? bucket : null;
+        }
+
+        RollupLevel(Resolution resolution, Path directory) {
+            this.resolution = resolution;
+            this.directory = directory;
+        }
+
+        void close() throws IOException {
+            for (FileChannel channel : channels) {
+                if (channel != null) channel.close();
+            }
+        }
+    }
+
+    private final Path directory;
+    private final FileChannel[] columns = new FileChannel[COLUMN_FILES.length];
+    private final ByteBuffer[] columnBuffers = new ByteBuffer[COLUMN_FILES.length];
+    private final RollupLevel[] levels = new RollupLevel[ROLLUPS.length];
+    private final ByteBuffer rollupBuffer = ByteBuffer.allocate(ROLLUP_WIDTH);
+    private final Map<String, Integer> ordinals = new HashMap<>();
+    private final List<String> projectIds = new ArrayList<>();
+    private long flushedSamples;
+    private int bufferedSamples;
+
+    public ProgressSeriesStore(Path directory) throws IOException {
+        this.directory = directory;
+        Files.createDirectories(directory);
+        loadOrdinals();
+
+        // 各列长度不一致时 (写入中途退出)，截断到最短的完整行数
+        long samples = Long.MAX_VALUE;
+        for (int i = 0; i < COLUMN_FILES.length; i++) {
+            columns[i] = FileChannel.open(directory.resolve(COLUMN_FILES[i]), StandardOpenOption.CREATE,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+            columnBuffers[i] = ByteBuffer.allocate(COLUMN_WIDTHS[i] * BUFFER_SAMPLES);
+            samples = Math.min(samples, columns[i].size() / COLUMN_WIDTHS[i]);
+        }
+        for (int i = 0; i < columns.length; i++) {
+            columns[i].truncate(samples * COLUMN_WIDTHS[i]);
+            columns[i].position(samples * COLUMN_WIDTHS[i]);
+        }
+        flushedSamples = samples;
+
+        for (int i = 0; i < ROLLUPS.length; i++) {
+            String name = "rollup-" + ROLLUPS[i].name().toLowerCase();
+            levels[i] = new RollupLevel(ROLLUPS[i], Files.createDirectories(directory.resolve(name)));
+            // 打开已有项目的汇总文件，得到上次写出的最后一个时间桶
+            for (int ordinal = 0; ordinal < projectIds.size(); ordinal++) {
+                levels[i].channelFor(ordinal, false);
+            }
+            splitLegacyRollup(levels[i], directory.resolve(name + ".bin"));
+        }
+        recoverOpenBuckets();
+    }
+
+    // 把旧版本的共用汇总文件按项目拆分，拆分完成后删除旧文件
+    private void splitLegacyRollup(RollupLevel level, Path legacyFile) throws IOException {
+        if (!Files.exists(legacyFile)) return;
+        try (FileChannel legacy = FileChannel.open(legacyFile, StandardOpenOption.READ)) {
+            long count = legacy.size() / LEGACY_ROLLUP_WIDTH;
+            if (count > 0) {
+                MappedByteBuffer rows = legacy.map(FileChannel.MapMode.READ_ONLY, 0, count * LEGACY_ROLLUP_WIDTH);
+                for (long i = 0; i < count; i++) {
+                    int offset = (int) (i * LEGACY_ROLLUP_WIDTH);
+                    long bucketStart = rows.getLong(offset);
+                    int ordinal = rows.getInt(offset + 8);
+                    // 拆分中途退出后重新拆分时，跳过已写入项目文件的行
+                    if (bucketStart <= lastBucketOf(level, ordinal)) continue;
+                    rollupBuffer.clear();
+                    rollupBuffer.putLong(bucketStart).putFloat(rows.getFloat(offset + 12))
+                            .putFloat(rows.getFloat(offset + 16)).putFloat(rows.getFloat(offset + 20))
+                            .putInt(rows.getInt(offset + 24)).putInt(rows.getInt(offset + 28)).flip();
+                    writeRollupRow(level, ordinal);
+                }
+            }
+        }
+        for (FileChannel channel : level.channels) {
+            if (channel != null) channel.force(false);
+        }
+        Files.delete(legacyFile);
+    }
+
+    private long lastBucketOf(RollupLevel level, int ordinal) throws IOException {
+        FileChannel channel = level.channelFor(ordinal, false);
+        long count = level.rowCount(ordinal);
+        if (channel == null || count == 0) return Long.MIN_VALUE;
+        ByteBuffer last = ByteBuffer.allocate(8);
+        channel.read(last, (count - 1) * ROLLUP_WIDTH);
+        return last.flip().getLong();
+    }
+
+    // 把 rollupBuffer 中的一行追加到项目的汇总文件
+    private void writeRollupRow(RollupLevel level, int ordinal) throws IOException {
+        FileChannel channel = level.channelFor(ordinal, true);
+        while (rollupBuffer.hasRemaining()) {
+            channel.write(rollupBuffer);
+        }
+        level.rows[ordinal]++;
+        level.lastFlushedBucket = Math.max(level.lastFlushedBucket, rollupBuffer.getLong(0));
+    }
+
+    // 重启后用最近一天的原始采样重建尚未写出的时间桶
+    private void recoverOpenBuckets() throws IOException {
+        if (flushedSamples == 0) return;
+        MappedByteBuffer ts = mapColumn(TS, flushedSamples);
+        long lastTimestamp = ts.getLong((int) ((flushedSamples - 1) * 8));
+        long from = lastTimestamp - lastTimestamp % Resolution.DAY.millis;
+        long start = lowerBound(ts, flushedSamples, from);
+
+        MappedByteBuffer project = mapColumn(PROJECT, flushedSamples);
+        MappedByteBuffer progress = mapColumn(PROGRESS, flushedSamples);
+        MappedByteBuffer completed = mapColumn(COMPLETED, flushedSamples);
+        MappedByteBuffer total = mapColumn(TOTAL, flushedSamples);
+        for (long i = start; i < flushedSamples; i++) {
+            int row = (int) i;
+            aggregate(ts.getLong(row * 8), project.getInt(row * 4), progress.getFloat(row * 4),
+                    completed.getInt(row * 4), total.getInt(row * 4));
+        }
+    }
+
+    private void loadOrdinals() throws IOException {
+        Path file = directory.resolve(ORDINAL_FILE);
+        if (!Files.exists(file)) return;
+        for (String projectId : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+            if (projectId.isEmpty()) continue;
+            ordinals.put(projectId, projectIds.size());
+            projectIds.add(projectId);
+        }
+    }
+
+    // 项目ID对应的序号，第一次出现时分配并持久化
+    private int ordinalFor(String projectId) throws IOException {
+        Integer ordinal = ordinals.get(projectId);
+        if (ordinal != null) return ordinal;
+
+        ordinal = projectIds.size();
+        Files.writeString(directory.resolve(ORDINAL_FILE), projectId + "\n", StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        ordinals.put(projectId, ordinal);
+        projectIds.add(projectId);
+        return ordinal;
+    }
+
+    /**
+     * 追加一个采样点。时间戳应单调不减。数据先写入缓冲区，调用 flush() 后对查询可见。
+     */
+    public synchronized void append(long timestamp, String projectId, double progress,
+                                    long completedTasks, long totalTasks) throws IOException {
+        int ordinal = ordinalFor(projectId);
+        if (bufferedSamples == BUFFER_SAMPLES) {
+            flushColumns();
+        }
+        columnBuffers[TS].putLong(timestamp);
+        columnBuffers[PROJECT].putInt(ordinal);
+        columnBuffers[PROGRESS].putFloat((float) progress);
+        columnBuffers[COMPLETED].putInt((int) completedTasks);
+        columnBuffers[TOTAL].putInt((int) totalTasks);
+        bufferedSamples++;
+
+        aggregate(timestamp, ordinal, (float) progress, (int) completedTasks, (int) totalTasks);
+    }
+
+    // 写入时计算各级汇总：进入新的时间桶时，先把上一个桶的所有项目汇总写出
+    private void aggregate(long timestamp, int ordinal, float progress, int completed, int total) throws IOException {
+        for (RollupLevel level : levels) {
+            long bucket = timestamp - Math.floorMod(timestamp, level.resolution.millis);
+            if (bucket <= level.lastFlushedBucket) continue; // 恢复时已写出的桶
+            if (bucket != level.currentBucket) {
+                writeOpenBuckets(level);
+                level.currentBucket = bucket;
+            }
+            Bucket open = level.bucketFor(ordinal);
+            if (open.count == 0) level.openCount++;
+            open.add(progress, completed, total);
+        }
+    }
+
+    private void writeOpenBuckets(RollupLevel level) throws IOException {
+        if (level.openCount == 0) return;
+        // 按项目序号顺序写出
+        for (int ordinal = 0; ordinal < level.openBuckets.length; ordinal++) {
+            Bucket bucket = level.openBuckets[ordinal];
+            if (bucket == null || bucket.count == 0) continue;
+            rollupBuffer.clear();
+            rollupBuffer.putLong(level.currentBucket)
+                    .putFloat((float) (bucket.progressSum / bucket.count)).putFloat(bucket.min).putFloat(bucket.max)
+                    .putInt(bucket.completed).putInt(bucket.total).flip();
+            writeRollupRow(level, ordinal);
+            bucket.reset();
+        }
+        level.lastFlushedBucket = level.currentBucket;
+        level.openCount = 0;
+    }
+
+    public synchronized void flush() throws IOException {
+        flushColumns();
+    }
+
+    private void flushColumns() throws IOException {
+        if (bufferedSamples == 0) return;
+        for (int i = 0; i < columns.length; i++) {
+            ByteBuffer buffer = columnBuffers[i];
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                columns[i].write(buffer);
+            }
+            buffer.clear();
+        }
+        flushedSamples += bufferedSamples;
+        bufferedSamples = 0;
+    }
+
+    /**
+     * 查询项目在 [fromMillis, toMillis] 内的进度序列。
+     * RAW 返回原始采样；MINUTE/HOUR/DAY 返回写入时计算好的汇总 (包括尚未结束的当前时间桶)。
+     */
+    public synchronized List<Sample> getSeries(String projectId, Resolution resolution,
+                                               long fromMillis, long toMillis) throws IOException {
+        List<Sample> result = new ArrayList<>();
+        Integer ordinal = ordinals.get(projectId);
+        if (ordinal == null) return result;
+
+        if (resolution == Resolution.RAW) {
+            flushColumns();
+            if (flushedSamples == 0) return result;
+            MappedByteBuffer ts = mapColumn(TS, flushedSamples);
+            MappedByteBuffer project = mapColumn(PROJECT, flushedSamples);
+            MappedByteBuffer progress = mapColumn(PROGRESS, flushedSamples);
+            MappedByteBuffer completed = mapColumn(COMPLETED, flushedSamples);
+            MappedByteBuffer total = mapColumn(TOTAL, flushedSamples);
+            for (long i = lowerBound(ts, flushedSamples, fromMillis); i < flushedSamples; i++) {
+                int row = (int) i;
+                long timestamp = ts.getLong(row * 8);
+                if (timestamp > toMillis) break;
+                if (project.getInt(row * 4) != ordinal) continue;
+                float value = progress.getFloat(row * 4);
+                result.add(new Sample(timestamp, value, value, value, completed.getInt(row * 4), total.getInt(row * 4)));
+            }
+            return result;
+        }
+
+        RollupLevel level = levels[Arrays.asList(ROLLUPS).indexOf(resolution)];
+        FileChannel channel = level.channelFor(ordinal, false);
+        long count = level.rowCount(ordinal);
+        if (channel != null && count > 0) {
+            MappedByteBuffer rows = channel.map(FileChannel.MapMode.READ_ONLY, 0, count * ROLLUP_WIDTH);
+            long fromBucket = fromMillis - Math.floorMod(fromMillis, resolution.millis);
+            for (long i = lowerBoundRollup(rows, count, fromBucket); i < count; i++) {
+                int offset = (int) (i * ROLLUP_WIDTH);
+                long bucketStart = rows.getLong(offset);
+                if (bucketStart > toMillis) break;
+                result.add(new Sample(bucketStart, rows.getFloat(offset + 8), rows.getFloat(offset + 12),
+                        rows.getFloat(offset + 16), rows.getInt(offset + 20), rows.getInt(offset + 24)));
+            }
+        }
+        Bucket open = level.openBucket(ordinal);
+        if (open != null && level.currentBucket <= toMillis && level.currentBucket + resolution.millis > fromMillis) {
+            result.add(open.toSample(level.currentBucket));
+        }
+        return result;
+    }
+
+    private MappedByteBuffer mapColumn(int column, long samples) throws IOException {
+        if (samples * COLUMN_WIDTHS[column] > Integer.MAX_VALUE) {
+            throw new IOException("原始采样过多，请使用分钟/小时/天汇总查询");
+        }
+        return columns[column].map(FileChannel.MapMode.READ_ONLY, 0, samples * COLUMN_WIDTHS[column]);
+    }
+
+    // 第一个时间戳 >= value 的行号
+    private static long lowerBound(MappedByteBuffer ts, long count, long value) {
+        long low = 0, high = count;
+        while (low < high) {
+            long mid = (low + high) >>> 1;
+            if (ts.getLong((int) (mid * 8)) < value) low = mid + 1; else high = mid;
+        }
+        return low;
+    }
+
+    private static long lowerBoundRollup(MappedByteBuffer rows, long count, long value) {
+        long low = 0, high = count;
+        while (low < high) {
+            long mid = (low + high) >>> 1;
+            if (rows.getLong((int) (mid * ROLLUP_WIDTH)) < value) low = mid + 1; else high = mid;
+        }
+        return low;
+    }
+
+    @Override
+    public synchronized void close() {
+        try {
+            flushColumns();
+            for (FileChannel column : columns) column.close();
+            // 未结束的时间桶不写出，重启后由 recoverOpenBuckets 从原始采样重建
+            for (RollupLevel level : levels) level.close();
+        } catch (IOException e) {
+            System.err.println("关闭进度时间序列失败: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,413 @@
+package edu.sbs.cs.service;
+
+import edu.sbs.cs.database.LoadedData;
+import edu.sbs.cs.database.MutationJournal;
+import edu.sbs.cs.database.SnapshotFile;
+import edu.sbs.cs.database.TaskCodec;
+import edu.sbs.cs.model.*;
+import java.io.*;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+
+/**
+ * 只读副本：连接本机的复制主节点 (ReplicationPrimary)，把收到的记录应用到只读的 DataManager，
+ * 供 HTTP 服务 (ApiServer) 在副本上执行查询和报告。
+ * 副本定期在自己的目录中写检查点 (快照文件 + 已应用的序号)，重启后先加载检查点，再向主节点请求之后的记录。
+ * 延迟按主节点心跳中的最新序号和记录中的主节点时间计算 (主节点与副本在同一台机器上，时钟一致)。
+ */
+public class ReplicaFollower implements AutoCloseable {
+    private static final String CHECKPOINT_FILE = "checkpoint.bin";
+    private static final String POSITION_FILE = "checkpoint.pos";
+    private static final long RECONNECT_MS = 1000;
+    private static final int APPLY_BATCH = 4096;
+    private static final Role[] ROLES = Role.values();
+
+    private final DataManager dataManager;
+    private final int primaryPort;
+    private final Path directory;
+    private final ReadWriteLock dataLock;
+    private final long checkpointIntervalMs;
+    private final Thread thread;
+    private volatile boolean running = true;
+    private volatile Socket socket;
+
+    // 以下位置信息由复制线程更新，其他线程只读
+    private volatile long logId;
+    private volatile long appliedLsn;
+    private volatile long primaryLsn;
+    private volatile long lastAppliedPrimaryTime;
+    private volatile boolean connected;
+    private long lastCheckpointLsn;
+    private long lastCheckpointTime;
+
+    /**
+     * @param dataManager 只读模式的 DataManager (DataManager.createReplica)
+     * @param directory   副本自己的检查点目录，每个副本使用不同的目录
+     * @param dataLock    与 ApiServer 共用的读写锁，应用记录时持有写锁
+     */
+    public ReplicaFollower(DataManager dataManager, int primaryPort, Path directory, ReadWriteLock dataLock) {
+        this.dataManager = dataManager;
+        this.primaryPort = primaryPort;
+        this.directory = directory;
+        this.dataLock = dataLock;
+        this.checkpointIntervalMs = Long.getLong("team.replica.checkpointMs", 30000);
+        this.thread = new Thread(this::run, "replica-follower");
+        this.thread.setDaemon(true);
+    }
+
+    public void start() throws IOException {
+        Files.createDirectories(directory);
+        loadCheckpoint();
+        lastCheckpointTime = System.currentTimeMillis();
+        thread.start();
+    }
+
+    public long getAppliedLsn() {
+        return appliedLsn;
+    }
+
+    // 落后主节点的记录数
+    public long getLagRecords() {
+        return Math.max(0, primaryLsn - appliedLsn);
+    }
+
+    // 落后的时间：已追上时为 0，否则为当前时间减去最后应用的记录在主节点上产生的时间
+    public long getLagMillis() {
+        if (getLagRecords() == 0 || lastAppliedPrimaryTime == 0) return 0;
+        return Math.max(0, System.currentTimeMillis() - lastAppliedPrimaryTime);
+    }
+
+    public String statusJson() {
+        return "{\"role\":\"replica\",\"connected\":" + connected + ",\"appliedLsn\":" + appliedLsn
+                + ",\"primaryLsn\":" + primaryLsn + ",\"lagRecords\":" + getLagRecords()
+                + ",\"lagMillis\":" + getLagMillis() + "}";
+    }
+
+    // 复制线程：断线后每秒重连一次
+    private void run() {
+        while (running) {
+            try (Socket connection = new Socket()) {
+                connection.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(), primaryPort), 5000);
+                connection.setTcpNoDelay(true);
+                socket = connection;
+                follow(connection);
+            } catch (IOException e) {
+                if (running && connected && ReplicationProtocol.VERBOSE) {
+                    System.out.println("与主节点的连接断开: " + e.getMessage());
+                }
+            } finally {
+                connected = false;
+                socket = null;
+            }
+            if (!running) return;
+            try {
+                Thread.sleep(RECONNECT_MS);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    private void follow(Socket connection) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(connection.getOutputStream()));
+        DataInputStream in = new DataInputStream(new BufferedInputStream(connection.getInputStream(), 1 << 16));
+        ReplicationProtocol.writeHandshake(out, logId, appliedLsn);
+
+        byte[][] content = {new byte[4096]};
+        int[] length = new int[1];
+        if (ReplicationProtocol.readFrame(in, content, length) != ReplicationProtocol.HELLO) {
+            throw new IOException("复制协议错误：缺少握手响应");
+        }
+        ByteBuffer hello = ByteBuffer.wrap(content[0], 0, length[0]);
+        long primaryLogId = hello.getLong();
+        primaryLsn = hello.getLong();
+        connected = true;
+        if (ReplicationProtocol.VERBOSE) {
+            System.out.println("已连接主节点，已应用序号 " + appliedLsn + "，主节点序号 " + primaryLsn);
+        }
+
+        RecordApplier applier = new RecordApplier();
+        while (running) {
+            byte type = ReplicationProtocol.readFrame(in, content, length);
+            switch (type) {
+                case ReplicationProtocol.SNAPSHOT:
+                    installSnapshot(ByteBuffer.wrap(content[0], 0, length[0]), primaryLogId);
+                    break;
+                case ReplicationProtocol.RECORD:
+                    // 已经到达的记录在同一次持有写锁期间一起应用
+                    dataLock.writeLock().lock();
+                    try {
+                        applier.apply(ByteBuffer.wrap(content[0], 0, length[0]));
+                        for (int i = 1; i < APPLY_BATCH && in.available() > 0; i++) {
+                            type = ReplicationProtocol.readFrame(in, content, length);
+                            if (type != ReplicationProtocol.RECORD) {
+                                handleHeartbeat(type, content[0], length[0]);
+                                break;
+                            }
+                            applier.apply(ByteBuffer.wrap(content[0], 0, length[0]));
+                        }
+                    } finally {
+                        dataLock.writeLock().unlock();
+                    }
+                    logId = primaryLogId;
+                    break;
+                default:
+                    handleHeartbeat(type, content[0], length[0]);
+            }
+            maybeCheckpoint();
+        }
+    }
+
+    private void handleHeartbeat(byte type, byte[] content, int length) throws IOException {
+        if (type != ReplicationProtocol.HEARTBEAT) {
+            throw new IOException("复制协议错误：未知的帧类型 " + type);
+        }
+        primaryLsn = Math.max(primaryLsn, ByteBuffer.wrap(content, 0, length).getLong());
+    }
+
+    // 把记录应用到 DataManager (调用方持有写锁)
+    private final class RecordApplier {
+        private final TaskCodec.Decoder decoder = new TaskCodec.Decoder();
+        private final MutationJournal.RecordHandler handler = dataManager.replicaApplier();
+        private final String[] assignee = new String[1];
+
+        void apply(ByteBuffer frame) throws IOException {
+            long lsn = frame.getLong();
+            long primaryTime = frame.getLong();
+            byte type = frame.get();
+            if (lsn <= appliedLsn) return;
+
+            boolean known;
+            try {
+                known = applyRecord(lsn, type, frame);
+            } catch (RuntimeException e) {
+                throw resync("复制记录无法应用 (序号 " + lsn + "): " + e);
+            }
+            if (!known) {
+                throw resync("复制协议错误：未知的记录类型 " + type + " (序号 " + lsn + ")");
+            }
+            appliedLsn = lsn;
+            primaryLsn = Math.max(primaryLsn, lsn);
+            lastAppliedPrimaryTime = primaryTime;
+        }
+
+        // 应用一条记录，记录类型未知时返回 false
+        private boolean applyRecord(long lsn, byte type, ByteBuffer frame) {
+            switch (type) {
+                case ReplicationProtocol.TASK_CREATED: {
+                    String projectId = decoder.readString(frame);
+                    TaskItem task = decoder.readTask(frame, assignee);
+                    handler.taskCreated(lsn, task, projectId, assignee[0]);
+                    break;
+                }
+                case ReplicationProtocol.TASK_STATE:
+                    handler.taskState(lsn, decoder.readString(frame), frame.getLong());
+                    break;
+                case ReplicationProtocol.TASK_ASSIGNED:
+                    handler.taskAssigned(lsn, decoder.readString(frame), decoder.readString(frame));
+                    break;
+                case ReplicationProtocol.MEMBER_ADDED:
+                    handler.memberAdded(lsn, decoder.readString(frame), decoder.readString(frame));
+                    break;
+                case ReplicationProtocol.MEMBER_SAVED: {
+                    String memberId = decoder.readString(frame);
+                    String name = decoder.readString(frame);
+                    Role role = ROLES[frame.get()];
+                    dataManager.applyReplicatedMember(new TeamMember(memberId, name, role,
+                            decoder.readString(frame), decoder.readString(frame)));
+                    break;
+                }
+                case ReplicationProtocol.PROJECT_SAVED: {
+                    Project project = new Project(decoder.readString(frame), decoder.readString(frame),
+                            decoder.readString(frame), null);
+                    project.setStartDay(frame.getInt());
+                    project.setDueDay(frame.getInt());
+                    int memberCount = frame.getInt();
+                    List<String> memberIds = new ArrayList<>(memberCount);
+                    for (int i = 0; i < memberCount; i++) {
+                        memberIds.add(decoder.readString(frame));
+                    }
+                    dataManager.applyReplicatedProject(project, memberIds);
+                    break;
+                }
+                case ReplicationProtocol.TASKS_ARCHIVED: {
+                    int count = frame.getInt();
+                    List<String> taskIds = new ArrayList<>(count);
+                    for (int i = 0; i < count; i++) {
+                        taskIds.add(decoder.readString(frame));
+                    }
+                    dataManager.applyReplicatedArchive(taskIds);
+                    break;
+                }
+                case ReplicationProtocol.DEPENDENCY_ADDED:
+                    handler.dependencyAdded(lsn, decoder.readString(frame), decoder.readString(frame));
+                    break;
+                case ReplicationProtocol.DEPENDENCY_REMOVED:
+                    handler.dependencyRemoved(lsn, decoder.readString(frame), decoder.readString(frame));
+                    break;
+                default:
+                    return false;
+            }
+            return true;
+        }
+    }
+
+    // 跳过记录会使副本与主节点不一致：断开连接，重连时以无效的日志ID握手，主节点发送完整快照重新同步
+    private IOException resync(String message) {
+        System.err.println(message + "，断开连接并重新同步");
+        logId = 0;
+        return new IOException(message);
+    }
+
+    // 用主节点发送的快照替换全部数据；日志ID与序号一起更新后再写检查点，重启后可以从该位置续传
+    private void installSnapshot(ByteBuffer frame, long primaryLogId) throws IOException {
+        long snapshotLsn = frame.getLong();
+        Map<String, double[]> archived = readArchiveSummary(frame);
+        Path temp = directory.resolve("incoming.bin");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (frame.hasRemaining()) {
+                channel.write(frame);
+            }
+        }
+        LoadedData data = SnapshotFile.read(temp);
+        Files.deleteIfExists(temp);
+
+        dataLock.writeLock().lock();
+        try {
+            dataManager.resetReplica(data, archived);
+            logId = primaryLogId;
+            appliedLsn = snapshotLsn;
+        } finally {
+            dataLock.writeLock().unlock();
+        }
+        if (ReplicationProtocol.VERBOSE) {
+            System.out.printf("已加载主节点快照: 序号 %d, %d 个任务%n", snapshotLsn, data.getTasks().size());
+        }
+        writeCheckpoint();
+    }
+
+    private static Map<String, double[]> readArchiveSummary(ByteBuffer buffer) {
+        TaskCodec.Decoder decoder = new TaskCodec.Decoder();
+        int count = buffer.getInt();
+        Map<String, double[]> archived = new HashMap<>(count * 2);
+        for (int i = 0; i < count; i++) {
+            String projectId = decoder.readString(buffer);
+            archived.put(projectId, new double[]{buffer.getInt(), buffer.getDouble()});
+        }
+        return archived;
+    }
+
+    // ===== 检查点 =====
+
+    private void maybeCheckpoint() {
+        long now = System.currentTimeMillis();
+        if (appliedLsn != lastCheckpointLsn && now - lastCheckpointTime >= checkpointIntervalMs) {
+            writeCheckpoint();
+        }
+    }
+
+    /*
+     * 检查点 = 快照文件 (标记为已应用的序号) + 位置文件 [long 日志ID][long 序号][归档汇总]。
+     * 先写快照再原子替换位置文件，两者序号一致时检查点才有效。
+     */
+    private void writeCheckpoint() {
+        long start = System.nanoTime();
+        long lsn;
+        long currentLogId = logId;
+        dataLock.readLock().lock();
+        try {
+            lsn = appliedLsn;
+            SnapshotFile.write(directory.resolve(CHECKPOINT_FILE), lsn, dataManager.getMembers().values(),
+                    dataManager.getProjects().values(), dataManager.getTasks().values(), dataManager.getTaskProjectIds(),
+                    dataManager.getSchedule().allDependencies());
+            int size = 8 + 8 + 4;
+            for (Project project : dataManager.getProjects().values()) {
+                size += TaskCodec.maxStringSize(project.getProjectId()) + 4 + 8;
+            }
+            ByteBuffer position = ByteBuffer.allocate(size);
+            position.putLong(currentLogId).putLong(lsn).putInt(0);
+            int archivedProjects = 0;
+            for (Project project : dataManager.getProjects().values()) {
+                if (project.getArchivedTaskCount() == 0) continue;
+                TaskCodec.writeString(position, project.getProjectId());
+                position.putInt(project.getArchivedTaskCount()).putDouble(project.getArchivedProgressSum());
+                archivedProjects++;
+            }
+            position.putInt(16, archivedProjects);
+            Path temp = directory.resolve(POSITION_FILE + ".tmp");
+            Files.write(temp, Arrays.copyOf(position.array(), position.position()));
+            Files.move(temp, directory.resolve(POSITION_FILE),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.err.println("写入副本检查点失败: " + e.getMessage());
+            return;
+        } finally {
+            dataLock.readLock().unlock();
+        }
+        lastCheckpointLsn = lsn;
+        lastCheckpointTime = System.currentTimeMillis();
+        if (ReplicationProtocol.VERBOSE) {
+            System.out.printf("副本检查点: 序号 %d, 耗时 %.1f ms%n", lsn, (System.nanoTime() - start) / 1_000_000.0);
+        }
+    }
+
+    private void loadCheckpoint() {
+        Path positionFile = directory.resolve(POSITION_FILE);
+        Path checkpointFile = directory.resolve(CHECKPOINT_FILE);
+        if (!Files.exists(positionFile) || !Files.exists(checkpointFile)) return;
+        try {
+            ByteBuffer position = ByteBuffer.wrap(Files.readAllBytes(positionFile));
+            long savedLogId = position.getLong();
+            long lsn = position.getLong();
+            if (SnapshotFile.readToken(checkpointFile) != lsn) {
+                System.out.println("副本检查点不完整，将从主节点重新同步");
+                return;
+            }
+            Map<String, double[]> archived = readArchiveSummary(position);
+            LoadedData data = SnapshotFile.read(checkpointFile);
+            dataLock.writeLock().lock();
+            try {
+                dataManager.resetReplica(data, archived);
+            } finally {
+                dataLock.writeLock().unlock();
+            }
+            logId = savedLogId;
+            appliedLsn = lsn;
+            lastCheckpointLsn = lsn;
+            if (ReplicationProtocol.VERBOSE) {
+                System.out.printf("已加载副本检查点: 序号 %d, %d 个任务%n", lsn, data.getTasks().size());
+            }
+        } catch (IOException | RuntimeException e) {
+            System.err.println("读取副本检查点失败，将从主节点重新同步: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        Socket current = socket;
+        if (current != null) {
+            try {
+                current.close();
+            } catch (IOException ignored) {
+                // 连接已断开
+            }
+        }
+        thread.interrupt();
+        try {
+            thread.join(5000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (appliedLsn != lastCheckpointLsn) {
+            writeCheckpoint();
+        }
+    }
+}
@@ -0,0 +1,367 @@
+package edu.sbs.cs.service;
+
+import edu.sbs.cs.database.SnapshotFile;
+import edu.sbs.cs.database.TaskCodec;
+import edu.sbs.cs.model.*;
+import java.io.*;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * 复制主节点：把 DataManager 的每次变更编码为带序号的记录，通过本机 TCP 连接推送给只读副本 (ReplicaFollower)。
+ * 最近的记录保存在内存环形缓冲区中 (-Dteam.replication.retainRecords，默认 262144 条)，
+ * 副本重连时从自己的位置续传；位置已经不在缓冲区中 (或属于上一次启动的主节点) 时，先发送当前数据的快照。
+ * 快照的数据在 DataManager 的读锁 (getDataLock) 内复制，写文件和发送时不阻塞修改；
+ * 副本应用记录是幂等的 (状态按版本号、其余按ID覆盖)，从快照序号续传后结果一致。
+ */
+public class ReplicationPrimary implements AutoCloseable {
+    private static final int DEFAULT_RETAIN_RECORDS = 1 << 18;
+    private static final long HEARTBEAT_MS = 1000;
+    private static final int SEND_BATCH = 1024;
+
+    private final DataManager dataManager;
+    private final long logId = ThreadLocalRandom.current().nextLong(1, Long.MAX_VALUE);
+    private final ServerSocket serverSocket;
+    private final Thread acceptThread;
+    private final Set<Socket> followers = Collections.synchronizedSet(new HashSet<>());
+    private final AtomicInteger senderCount = new AtomicInteger();
+    private volatile boolean running = true;
+
+    // 环形缓冲区：序号为 lsn 的记录 (完整的 RECORD 帧) 在 ring[lsn % ring.length]，由 this 保护
+    private final byte[][] ring;
+    private long lastLsn;
+
+    public ReplicationPrimary(DataManager dataManager, int port) throws IOException {
+        this.dataManager = dataManager;
+        this.ring = new byte[Math.max(1024, Integer.getInteger("team.replication.retainRecords",
+                DEFAULT_RETAIN_RECORDS))][];
+        this.serverSocket = new ServerSocket();
+        serverSocket.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+        this.acceptThread = new Thread(this::acceptLoop, "replication-accept");
+        acceptThread.setDaemon(true);
+        acceptThread.start();
+        System.out.println("复制主节点已启动: 端口 " + serverSocket.getLocalPort());
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    public synchronized long getLastLsn() {
+        return lastLsn;
+    }
+
+    public int getFollowerCount() {
+        return followers.size();
+    }
+
+    public String statusJson() {
+        return "{\"role\":\"primary\",\"lastLsn\":" + getLastLsn() + ",\"followers\":" + getFollowerCount() + "}";
+    }
+
+    // ===== 记录变更 (由 DataManager 在变更成功后调用) =====
+
+    public void memberSaved(TeamMember member) {
+        ByteBuffer payload = ByteBuffer.allocate(1 + TaskCodec.maxStringSize(member.getMemberId())
+                + TaskCodec.maxStringSize(member.getName()) + TaskCodec.maxStringSize(member.getEmail())
+                + TaskCodec.maxStringSize(member.getPassword()));
+        TaskCodec.writeString(payload, member.getMemberId());
+        TaskCodec.writeString(payload, member.getName());
+        payload.put((byte) member.getRole().ordinal());
+        TaskCodec.writeString(payload, member.getEmail());
+        TaskCodec.writeString(payload, member.getPassword());
+        append(ReplicationProtocol.MEMBER_SAVED, payload);
+    }
+
+    public void projectSaved(Project project) {
+        int size = TaskCodec.maxStringSize(project.getProjectId()) + TaskCodec.maxStringSize(project.getName())
+                + TaskCodec.maxStringSize(project.getDescription()) + 4 + 4 + 4;
+        for (TeamMember member : project.getMembers()) {
+            size += TaskCodec.maxStringSize(member.getMemberId());
+        }
+        ByteBuffer payload = ByteBuffer.allocate(size);
+        TaskCodec.writeString(payload, project.getProjectId());
+        TaskCodec.writeString(payload, project.getName());
+        TaskCodec.writeString(payload, project.getDescription());
+        payload.putInt(project.getStartDay());
+        payload.putInt(project.getDueDay());
+        payload.putInt(project.getMembers().size());
+        for (TeamMember member : project.getMembers()) {
+            TaskCodec.writeString(payload, member.getMemberId());
+        }
+        append(ReplicationProtocol.PROJECT_SAVED, payload);
+    }
+
+    public void memberAdded(String projectId, String memberId) {
+        append(ReplicationProtocol.MEMBER_ADDED, strings(projectId, memberId));
+    }
+
+    public void taskCreated(TaskItem task, String projectId) {
+        ByteBuffer payload = ByteBuffer.allocate(TaskCodec.maxStringSize(projectId) + TaskCodec.maxEncodedSize(task));
+        TaskCodec.writeString(payload, projectId);
+        TaskCodec.writeTask(payload, task);
+        append(ReplicationProtocol.TASK_CREATED, payload);
+    }
+
+    public void taskState(String taskId, long state) {
+        ByteBuffer payload = ByteBuffer.allocate(TaskCodec.maxStringSize(taskId) + 8);
+        TaskCodec.writeString(payload, taskId);
+        payload.putLong(state);
+        append(ReplicationProtocol.TASK_STATE, payload);
+    }
+
+    public void taskAssigned(String taskId, String memberId) {
+        append(ReplicationProtocol.TASK_ASSIGNED, strings(taskId, memberId));
+    }
+
+    public void dependencyAdded(String taskId, String blockedBy) {
+        append(ReplicationProtocol.DEPENDENCY_ADDED, strings(taskId, blockedBy));
+    }
+
+    public void dependencyRemoved(String taskId, String blockedBy) {
+        append(ReplicationProtocol.DEPENDENCY_REMOVED, strings(taskId, blockedBy));
+    }
+
+    public void tasksArchived(Collection<String> taskIds) {
+        int size = 4;
+        for (String taskId : taskIds) {
+            size += TaskCodec.maxStringSize(taskId);
+        }
+        ByteBuffer payload = ByteBuffer.allocate(size);
+        payload.putInt(taskIds.size());
+        for (String taskId : taskIds) {
+            TaskCodec.writeString(payload, taskId);
+        }
+        append(ReplicationProtocol.TASKS_ARCHIVED, payload);
+    }
+
+    private static ByteBuffer strings(String first, String second) {
+        ByteBuffer payload = ByteBuffer.allocate(TaskCodec.maxStringSize(first) + TaskCodec.maxStringSize(second));
+        TaskCodec.writeString(payload, first);
+        TaskCodec.writeString(payload, second);
+        return payload;
+    }
+
+    // 编码为完整的 RECORD 帧放入环形缓冲区，并唤醒发送线程
+    private void append(byte type, ByteBuffer payload) {
+        int payloadLength = payload.position();
+        int frameLength = ReplicationProtocol.RECORD_HEADER_SIZE + payloadLength;
+        ByteBuffer frame = ByteBuffer.allocate(1 + 4 + frameLength);
+        frame.put(ReplicationProtocol.RECORD).putInt(frameLength);
+        int lsnOffset = frame.position();
+        frame.putLong(0).putLong(System.currentTimeMillis()).put(type).put(payload.array(), 0, payloadLength);
+        synchronized (this) {
+            lastLsn++;
+            frame.putLong(lsnOffset, lastLsn);
+            ring[(int) (lastLsn % ring.length)] = frame.array();
+            notifyAll();
+        }
+    }
+
+    // 缓冲区中仍保留的最小序号
+    private long firstRetainedLsn() {
+        return Math.max(1, lastLsn - ring.length + 1);
+    }
+
+    // ===== 向副本发送 =====
+
+    private void acceptLoop() {
+        while (running) {
+            try {
+                Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                followers.add(socket);
+                Thread sender = new Thread(() -> serve(socket), "replication-sender-" + senderCount.incrementAndGet());
+                sender.setDaemon(true);
+                sender.start();
+            } catch (IOException e) {
+                if (running) {
+                    System.err.println("接受复制连接失败: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        try (socket;
+             DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 1 << 16))) {
+            long followerLogId = in.readLong();
+            long applied = in.readLong();
+
+            long next;
+            synchronized (this) {
+                ReplicationProtocol.writeFrameHeader(out, ReplicationProtocol.HELLO, 16);
+                out.writeLong(logId);
+                out.writeLong(lastLsn);
+                boolean canResume = followerLogId == logId && applied >= firstRetainedLsn() - 1 && applied <= lastLsn;
+                next = canResume ? applied + 1 : -1;
+            }
+            if (next < 0) {
+                next = sendSnapshot(out) + 1;
+            }
+            out.flush();
+            if (ReplicationProtocol.VERBOSE) {
+                System.out.println("副本已连接: " + socket.getRemoteSocketAddress() + "，从序号 " + next + " 开始发送");
+            }
+            streamRecords(out, next);
+        } catch (IOException e) {
+            if (running && ReplicationProtocol.VERBOSE) {
+                System.out.println("副本连接断开: " + e.getMessage());
+            }
+        } finally {
+            followers.remove(socket);
+        }
+    }
+
+    // 发送记录直到连接断开；空闲时每秒发送心跳，副本据此计算延迟
+    private void streamRecords(DataOutputStream out, long next) throws IOException {
+        List<byte[]> batch = new ArrayList<>(SEND_BATCH);
+        while (running) {
+            long primaryLsn;
+            synchronized (this) {
+                if (next > lastLsn) {
+                    try {
+                        wait(HEARTBEAT_MS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                }
+                if (next < firstRetainedLsn()) {
+                    // 副本太慢，需要的记录已被覆盖；断开后副本重连会收到新的快照
+                    throw new IOException("副本落后超过保留的记录数");
+                }
+                while (next <= lastLsn && batch.size() < SEND_BATCH) {
+                    batch.add(ring[(int) (next % ring.length)]);
+                    next++;
+                }
+                primaryLsn = lastLsn;
+            }
+            if (batch.isEmpty()) {
+                ReplicationProtocol.writeFrameHeader(out, ReplicationProtocol.HEARTBEAT, 16);
+                out.writeLong(primaryLsn);
+                out.writeLong(System.currentTimeMillis());
+            } else {
+                for (byte[] frame : batch) {
+                    out.write(frame);
+                }
+                batch.clear();
+            }
+            out.flush();
+        }
+    }
+
+    /**
+     * 发送当前数据的快照，返回快照对应的序号。序号和数据在 DataManager 的读锁内一起取得，
+     * 快照与序号一致；任务对象不复制，写入文件时任务字段可能已经包含之后的修改，副本续传时重复应用是安全的。
+     */
+    private long sendSnapshot(DataOutputStream out) throws IOException {
+        Path temp = Files.createTempFile("replica-snapshot", ".bin");
+        try {
+            Map<String, double[]> archived = new HashMap<>();
+            long snapshotLsn = writeSnapshotFile(temp, archived);
+            long fileSize = Files.size(temp);
+            int archiveSize = 4;
+            for (String projectId : archived.keySet()) {
+                archiveSize += TaskCodec.maxStringSize(projectId) + 4 + 8;
+            }
+            ByteBuffer archive = ByteBuffer.allocate(archiveSize);
+            archive.putInt(archived.size());
+            for (Map.Entry<String, double[]> entry : archived.entrySet()) {
+                TaskCodec.writeString(archive, entry.getKey());
+                archive.putInt((int) entry.getValue()[0]);
+                archive.putDouble(entry.getValue()[1]);
+            }
+            long frameLength = 8 + archive.position() + fileSize;
+            if (frameLength > Integer.MAX_VALUE) {
+                throw new IOException("快照过大，无法通过复制连接发送");
+            }
+            ReplicationProtocol.writeFrameHeader(out, ReplicationProtocol.SNAPSHOT, (int) frameLength);
+            out.writeLong(snapshotLsn);
+            out.write(archive.array(), 0, archive.position());
+            Files.copy(temp, out);
+            if (ReplicationProtocol.VERBOSE) {
+                System.out.printf("向副本发送快照: 序号 %d, %.1f MB%n", snapshotLsn, fileSize / 1048576.0);
+            }
+            return snapshotLsn;
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    // 在读锁内复制成员、项目 (含成员列表和归档汇总) 和任务列表并记下序号，释放读锁后写文件；
+    // archived 收集各项目的归档汇总 {任务数, 进度之和}，返回快照序号
+    private long writeSnapshotFile(Path file, Map<String, double[]> archived) throws IOException {
+        long snapshotLsn;
+        List<TeamMember> members;
+        List<Project> projects;
+        List<TaskItem> tasks;
+        Map<String, String> taskProjectIds;
+        List<String[]> dependencies;
+        Lock readLock = dataManager.getDataLock().readLock();
+        readLock.lock();
+        try {
+            snapshotLsn = getLastLsn();
+            members = new ArrayList<>(dataManager.getMembers().values());
+            projects = new ArrayList<>(dataManager.getProjects().size());
+            for (Project project : dataManager.getProjects().values()) {
+                projects.add(copyProject(project));
+            }
+            tasks = new ArrayList<>(dataManager.getTasks().values());
+            taskProjectIds = new HashMap<>(dataManager.getTaskProjectIds());
+            dependencies = dataManager.getSchedule().allDependencies();
+        } finally {
+            readLock.unlock();
+        }
+        SnapshotFile.write(file, snapshotLsn, members, projects, tasks, taskProjectIds, dependencies);
+        for (Project project : projects) {
+            if (project.getArchivedTaskCount() > 0) {
+                archived.put(project.getProjectId(),
+                        new double[]{project.getArchivedTaskCount(), project.getArchivedProgressSum()});
+            }
+        }
+        return snapshotLsn;
+    }
+
+    // 快照用的项目副本：只复制快照写入的字段，不含任务列表
+    private static Project copyProject(Project project) {
+        Project copy = new Project(project.getProjectId(), project.getName(), project.getDescription(), null);
+        copy.setStartDay(project.getStartDay());
+        copy.setDueDay(project.getDueDay());
+        copy.getMembers().addAll(project.getMembers());
+        copy.addArchived(project.getArchivedTaskCount(), project.getArchivedProgressSum());
+        return copy;
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        try {
+            serverSocket.close();
+        } catch (IOException ignored) {
+            // 已经关闭
+        }
+        synchronized (followers) {
+            for (Socket socket : followers) {
+                try {
+                    socket.close();
+                } catch (IOException ignored) {
+                    // 连接已断开
+                }
+            }
+        }
+        synchronized (this) {
+            notifyAll();
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package edu.sbs.cs.service;
+
+import edu.sbs.cs.database.MutationJournal;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * 主节点与只读副本之间的复制协议 (本机 TCP 连接)。
+ * 副本连接后先发送握手 [long 日志ID][long 已应用的序号]，之后主节点单向发送帧 [byte 帧类型][int 长度][内容]：
+ *   HELLO:     [long 日志ID][long 最新序号]
+ *   SNAPSHOT:  [long 快照序号][int 归档汇总条数]{项目ID, int 任务数, double 进度之和}[快照文件内容]
+ *              (副本的位置无法从保留的记录续传时发送，之后从快照序号续传)
+ *   RECORD:    [long 序号][long 主节点时间毫秒][byte 记录类型][负载]
+ *   HEARTBEAT: [long 最新序号][long 主节点时间毫秒]
+ * 日志ID在主节点每次启动时随机生成，副本据此判断自己的位置是否属于当前主节点。
+ * 记录类型 1~4、8~9 及其负载与变更日志 (MutationJournal) 相同。
+ */
+final class ReplicationProtocol {
+    static final byte HELLO = 1;
+    static final byte SNAPSHOT = 2;
+    static final byte RECORD = 3;
+    static final byte HEARTBEAT = 4;
+
+    static final byte TASK_CREATED = MutationJournal.TASK_CREATED;
+    static final byte TASK_STATE = MutationJournal.TASK_STATE;
+    static final byte TASK_ASSIGNED = MutationJournal.TASK_ASSIGNED;
+    static final byte MEMBER_ADDED = MutationJournal.MEMBER_ADDED;
+    // 负载: [成员ID][姓名][byte 角色][邮箱][密码]
+    static final byte MEMBER_SAVED = 5;
+    // 负载: [项目ID][名称][描述][int 截止日期 epochDay][int 成员数]{成员ID}
+    static final byte PROJECT_SAVED = 6;
+    // 负载: [int 任务数]{任务ID}
+    static final byte TASKS_ARCHIVED = 7;
+    // 负载: [任务ID][阻塞它的任务ID]
+    static final byte DEPENDENCY_ADDED = MutationJournal.DEPENDENCY_ADDED;
+    static final byte DEPENDENCY_REMOVED = MutationJournal.DEPENDENCY_REMOVED;
+
+    // RECORD 帧中负载之前的字节数: 序号 + 时间 + 记录类型
+    static final int RECORD_HEADER_SIZE = 8 + 8 + 1;
+
+    // 连接、快照和检查点的日志 (-Dteam.replication.verbose=true 时输出)；错误总是输出
+    static final boolean VERBOSE = Boolean.getBoolean("team.replication.verbose");
+
+    private ReplicationProtocol() {
+    }
+
+    static void writeHandshake(DataOutputStream out, long logId, long appliedLsn) throws IOException {
+        out.writeLong(logId);
+        out.writeLong(appliedLsn);
+        out.flush();
+    }
+
+    static void writeFrameHeader(DataOutputStream out, byte type, int length) throws IOException {
+        out.writeByte(type);
+        out.writeInt(length);
+    }
+
+    // 读取一帧的内容，返回帧类型；content[0] 为帧内容 (必要时替换为更大的数组，调用方复用)
+    static byte readFrame(DataInputStream in, byte[][] content, int[] length) throws IOException {
+        byte type = in.readByte();
+        int size = in.readInt();
+        if (size < 0) throw new IOException("复制帧长度无效: " + size);
+        if (content[0].length < size) {
+            content[0] = new byte[Math.max(size, content[0].length * 2)];
+        }
+        in.readFully(content[0], 0, size);
+        length[0] = size;
+        return type;
+    }
+}
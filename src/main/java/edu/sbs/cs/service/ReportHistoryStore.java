@@ -0,0 +1,277 @@
+package edu.sbs.cs.service;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.stream.Stream;
+
+/**
+ * 带时间索引的历史报告存储，供管理员按时间范围或最近 N 份读取历史报告。
+ * 报告按追加顺序写入分段文件 (history-&lt;首个时间戳&gt;.seg)，每条记录格式为
+ * [int 长度][long 时间戳][UTF-8 文本][int 长度]，尾部长度用于从文件末尾向前读取。
+ * 每个分段有一个稀疏索引文件 (.idx)，每隔 INDEX_INTERVAL 字节记录一次 (时间戳, 偏移)；
+ * 查询时先在索引中二分查找，再用内存映射从该偏移开始读取，不需要扫描整个历史。
+ */
+public class ReportHistoryStore implements AutoCloseable {
+    private static final String SEGMENT_PREFIX = "history-";
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final String INDEX_SUFFIX = ".idx";
+    private static final long SEGMENT_SIZE = 64L * 1024 * 1024;
+    private static final long INDEX_INTERVAL = 64L * 1024;
+    private static final int RECORD_OVERHEAD = 4 + 8 + 4;
+    private static final int INDEX_ENTRY_SIZE = 16;
+
+    // 一份历史报告
+    public static final class Report {
+        private final long timestamp;
+        private final String text;
+
+        Report(long timestamp, String text) {
+            this.timestamp = timestamp;
+            this.text = text;
+        }
+
+        public long getTimestamp() { return timestamp; }
+        public String getText() { return text; }
+    }
+
+    private final Path directory;
+
+    // 当前写入的分段，只在写入线程中修改
+    private volatile Path activeSegment;
+    private FileChannel segmentChannel;
+    private FileChannel indexChannel;
+    private long lastIndexedOffset = -INDEX_INTERVAL;
+    private volatile long committedSize; // 当前分段中已完整写入的字节数，读取不超过此位置
+    private ByteBuffer writeBuffer = ByteBuffer.allocate(64 * 1024);
+    private final ByteBuffer indexBuffer = ByteBuffer.allocate(INDEX_ENTRY_SIZE);
+
+    public ReportHistoryStore(Path directory) throws IOException {
+        this.directory = directory;
+        Files.createDirectories(directory);
+
+        List<Path> segments = listSegments();
+        if (!segments.isEmpty()) {
+            openForAppend(segments.get(segments.size() - 1));
+        }
+    }
+
+    // 按首个时间戳排序的分段列表
+    private List<Path> listSegments() throws IOException {
+        List<Path> segments = new ArrayList<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            files.filter(p -> {
+                String name = p.getFileName().toString();
+                return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX);
+            }).forEach(segments::add);
+        }
+        segments.sort(Comparator.comparingLong(ReportHistoryStore::segmentStartTime));
+        return segments;
+    }
+
+    private static long segmentStartTime(Path segment) {
+        String name = segment.getFileName().toString();
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    private static Path indexFor(Path segment) {
+        String name = segment.getFileName().toString();
+        return segment.resolveSibling(name.substring(0, name.length() - SEGMENT_SUFFIX.length()) + INDEX_SUFFIX);
+    }
+
+    // 打开已有分段继续追加，截掉末尾不完整的记录 (如写入时进程退出)
+    private void openForAppend(Path segment) throws IOException {
+        segmentChannel = FileChannel.open(segment, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        indexChannel = FileChannel.open(indexFor(segment), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+        long[] index = readIndex(indexFor(segment));
+        long offset = index.length == 0 ? 0 : index[index.length - 1];
+        long size = segmentChannel.size();
+        ByteBuffer header = ByteBuffer.allocate(4);
+        while (offset + RECORD_OVERHEAD <= size) {
+            header.clear();
+            segmentChannel.read(header, offset);
+            int length = header.flip().getInt();
+            if (length < 0 || offset + RECORD_OVERHEAD + length > size) break;
+            offset += RECORD_OVERHEAD + length;
+        }
+        segmentChannel.truncate(offset);
+        segmentChannel.position(offset);
+        indexChannel.position(indexChannel.size() - indexChannel.size() % INDEX_ENTRY_SIZE);
+
+        activeSegment = segment;
+        committedSize = offset;
+        lastIndexedOffset = index.length == 0 ? -INDEX_INTERVAL : index[index.length - 1];
+    }
+
+    private void startSegment(long timestamp) throws IOException {
+        closeChannels();
+        Path segment = directory.resolve(SEGMENT_PREFIX + timestamp + SEGMENT_SUFFIX);
+        segmentChannel = FileChannel.open(segment, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        indexChannel = FileChannel.open(indexFor(segment), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        activeSegment = segment;
+        committedSize = 0;
+        lastIndexedOffset = -INDEX_INTERVAL;
+    }
+
+    /**
+     * 追加一份报告。时间戳应单调不减 (同一写入线程按生成顺序调用)。
+     */
+    public void append(long timestamp, String text) throws IOException {
+        append(timestamp, ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * 追加一份已编码为 UTF-8 的报告 (从 utf8 的当前位置到 limit)，调用返回后 utf8 可以复用。
+     */
+    public synchronized void append(long timestamp, ByteBuffer utf8) throws IOException {
+        int length = utf8.remaining();
+        int recordSize = RECORD_OVERHEAD + length;
+        if (segmentChannel == null || committedSize + recordSize > SEGMENT_SIZE) {
+            startSegment(timestamp);
+        }
+
+        long offset = committedSize;
+        if (offset - lastIndexedOffset >= INDEX_INTERVAL) {
+            indexBuffer.clear();
+            indexBuffer.putLong(timestamp).putLong(offset).flip();
+            while (indexBuffer.hasRemaining()) {
+                indexChannel.write(indexBuffer);
+            }
+            lastIndexedOffset = offset;
+        }
+
+        if (writeBuffer.capacity() < recordSize) {
+            writeBuffer = ByteBuffer.allocate(recordSize);
+        }
+        writeBuffer.clear();
+        writeBuffer.putInt(length).putLong(timestamp).put(utf8).putInt(length).flip();
+        while (writeBuffer.hasRemaining()) {
+            segmentChannel.write(writeBuffer);
+        }
+        committedSize = offset + recordSize;
+    }
+
+    /**
+     * 读取时间在 [fromMillis, toMillis] 之间的报告，按时间顺序返回。
+     */
+    public List<Report> readRange(long fromMillis, long toMillis) throws IOException {
+        List<Report> result = new ArrayList<>();
+        List<Path> segments = listSegments();
+        for (int i = 0; i < segments.size(); i++) {
+            Path segment = segments.get(i);
+            if (segmentStartTime(segment) > toMillis) break;
+            // 下一个分段的起始时间早于 fromMillis 时，本分段的报告都早于查询范围
+            if (i + 1 < segments.size() && segmentStartTime(segments.get(i + 1)) < fromMillis) continue;
+
+            long[] index = readIndex(indexFor(segment));
+            long offset = findStartOffset(index, fromMillis);
+            MappedByteBuffer map = mapSegment(segment);
+            if (map == null) continue;
+
+            map.position((int) offset);
+            while (map.remaining() >= RECORD_OVERHEAD) {
+                int length = map.getInt();
+                long timestamp = map.getLong();
+                if (length < 0 || map.remaining() < length + 4) break;
+                if (timestamp > toMillis) return result;
+                if (timestamp >= fromMillis) {
+                    byte[] bytes = new byte[length];
+                    map.get(bytes);
+                    result.add(new Report(timestamp, new String(bytes, StandardCharsets.UTF_8)));
+                } else {
+                    map.position(map.position() + length);
+                }
+                map.getInt();
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 读取最近的 count 份报告，按时间顺序返回。从最新分段末尾向前读取。
+     */
+    public List<Report> readLast(int count) throws IOException {
+        LinkedList<Report> result = new LinkedList<>();
+        List<Path> segments = listSegments();
+        for (int i = segments.size() - 1; i >= 0 && result.size() < count; i--) {
+            MappedByteBuffer map = mapSegment(segments.get(i));
+            if (map == null) continue;
+
+            int end = map.limit();
+            while (end >= RECORD_OVERHEAD && result.size() < count) {
+                int length = map.getInt(end - 4);
+                int start = end - RECORD_OVERHEAD - length;
+                if (length < 0 || start < 0) break;
+                long timestamp = map.getLong(start + 4);
+                byte[] bytes = new byte[length];
+                map.get(start + 12, bytes);
+                result.addFirst(new Report(timestamp, new String(bytes, StandardCharsets.UTF_8)));
+                end = start;
+            }
+        }
+        return result;
+    }
+
+    // 在稀疏索引中二分查找最后一个时间戳 <= fromMillis 的偏移
+    private static long findStartOffset(long[] index, long fromMillis) {
+        int low = 0;
+        int high = index.length / 2 - 1;
+        long offset = 0;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (index[mid * 2] <= fromMillis) {
+                offset = index[mid * 2 + 1];
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return offset;
+    }
+
+    // 索引文件内容: 依次为 时间戳, 偏移
+    private static long[] readIndex(Path indexFile) throws IOException {
+        if (!Files.exists(indexFile)) return new long[0];
+        try (FileChannel channel = FileChannel.open(indexFile, StandardOpenOption.READ)) {
+            long entries = channel.size() / INDEX_ENTRY_SIZE;
+            if (entries == 0) return new long[0];
+            MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0, entries * INDEX_ENTRY_SIZE);
+            long[] index = new long[(int) entries * 2];
+            map.asLongBuffer().get(index);
+            return index;
+        }
+    }
+
+    // 只读映射分段文件；当前写入中的分段只映射已完整写入的部分
+    private MappedByteBuffer mapSegment(Path segment) throws IOException {
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ)) {
+            long size = segment.equals(activeSegment) ? Math.min(committedSize, channel.size()) : channel.size();
+            if (size == 0) return null;
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+    }
+
+    private void closeChannels() throws IOException {
+        if (segmentChannel != null) segmentChannel.close();
+        if (indexChannel != null) indexChannel.close();
+        segmentChannel = null;
+        indexChannel = null;
+    }
+
+    @Override
+    public synchronized void close() {
+        try {
+            closeChannels();
+        } catch (IOException e) {
+            System.err.println("关闭历史报告存储失败: " + e.getMessage());
+        }
+    }
+}
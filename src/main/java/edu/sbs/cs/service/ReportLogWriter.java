@@ -0,0 +1,264 @@
+package edu.sbs.cs.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 异步、带缓冲、可滚动的报告日志写入器。
+ * 报告线程把文本复制到一个空闲的复用缓冲区再放进有界队列，立即返回；后台线程保持文件通道常开，
+ * 把报告编码到复用的字节缓冲区后写入，并在文件超过大小上限或到达时间间隔时滚动，
+ * 滚动出的旧文件在后台压缩为 .gz。配置了历史存储时，同一后台线程也把编码好的报告追加到历史存储中。
+ * 缓冲区只在报告变长时扩容，稳定运行时提交和写入报告都不分配内存。
+ */
+public class ReportLogWriter implements AutoCloseable {
+    private static final int QUEUE_CAPACITY = 16;
+    private static final int BUFFER_SIZE = 256 * 1024;
+    private static final DateTimeFormatter SEGMENT_SUFFIX = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+
+    // 一份待写报告，写完后放回空闲队列复用
+    private static final class PendingReport {
+        private long timestamp;
+        private char[] chars = new char[4096];
+        private CharBuffer view = CharBuffer.wrap(chars);
+
+        void set(long timestamp, CharSequence text) {
+            int length = text.length();
+            if (chars.length < length) {
+                chars = new char[Math.max(length, chars.length * 2)];
+                view = CharBuffer.wrap(chars);
+            }
+            for (int i = 0; i < length; i++) {
+                chars[i] = text.charAt(i);
+            }
+            view.clear().limit(length);
+            this.timestamp = timestamp;
+        }
+    }
+
+    private static final PendingReport POISON = new PendingReport();
+
+    private final Path file;
+    private final long maxBytes;
+    private final long rotateIntervalMillis;
+    private final ReportHistoryStore historyStore;
+    private final BlockingQueue<PendingReport> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY + 1);
+    private final BlockingQueue<PendingReport> freeReports = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final AtomicLong droppedReports = new AtomicLong();
+    private final AtomicLong writtenReports = new AtomicLong();
+    private final Thread writerThread;
+
+    // 以下字段只在后台写入线程中访问
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder();
+    private ByteBuffer encoded = ByteBuffer.allocate(16 * 1024); // 一份报告的 UTF-8 编码
+    private FileChannel channel;
+    private long segmentOpenedAt;
+
+    public ReportLogWriter(Path file, ReportHistoryStore historyStore) {
+        this(file, historyStore, Long.getLong("team.report.maxBytes", 10L * 1024 * 1024),
+                Long.getLong("team.report.rotateMs", 24L * 60 * 60 * 1000));
+    }
+
+    public ReportLogWriter(Path file, ReportHistoryStore historyStore, long maxBytes, long rotateIntervalMillis) {
+        this.file = file;
+        this.historyStore = historyStore;
+        this.maxBytes = maxBytes;
+        this.rotateIntervalMillis = rotateIntervalMillis;
+        for (int i = 0; i < QUEUE_CAPACITY; i++) {
+            freeReports.add(new PendingReport());
+        }
+        this.writerThread = new Thread(this::runWriter, "report-log-writer");
+        this.writerThread.setDaemon(true);
+        this.writerThread.start();
+    }
+
+    /**
+     * 提交一份报告，不阻塞调用方。文本在返回前复制完毕，调用方可以立即复用 report。
+     * 没有空闲缓冲区 (写入线程落后 QUEUE_CAPACITY 份) 时丢弃该报告并计数。
+     */
+    public void submit(long timestamp, CharSequence report) {
+        PendingReport pending = freeReports.poll();
+        if (pending == null) {
+            if (droppedReports.incrementAndGet() == 1) {
+                System.err.println("报告日志写入过慢，部分报告被丢弃");
+            }
+            return;
+        }
+        pending.set(timestamp, report);
+        queue.add(pending);
+    }
+
+    public long getDroppedReports() {
+        return droppedReports.get();
+    }
+
+    // 已写入日志文件的报告数
+    public long getWrittenReports() {
+        return writtenReports.get();
+    }
+
+    private void runWriter() {
+        List<PendingReport> batch = new ArrayList<>();
+        boolean running = true;
+        while (running) {
+            try {
+                batch.add(queue.take());
+                queue.drainTo(batch);
+                int written = 0;
+                for (int i = 0; i < batch.size(); i++) {
+                    PendingReport report = batch.get(i);
+                    if (report == POISON) {
+                        running = false;
+                        break;
+                    }
+                    writeReport(report);
+                    written++;
+                }
+                flushBuffer();
+                writtenReports.addAndGet(written);
+            } catch (InterruptedException e) {
+                running = false;
+            } catch (IOException e) {
+                System.err.println("写入进度报告失败: " + e.getMessage());
+                buffer.clear();
+                closeChannel();
+            } finally {
+                // 写入失败时本批剩余的报告也放回空闲队列
+                for (int i = 0; i < batch.size(); i++) {
+                    if (batch.get(i) != POISON) {
+                        freeReports.add(batch.get(i));
+                    }
+                }
+                batch.clear();
+            }
+        }
+        try {
+            flushBuffer();
+        } catch (IOException e) {
+            System.err.println("写入进度报告失败: " + e.getMessage());
+        }
+        closeChannel();
+        if (historyStore != null) {
+            historyStore.close();
+        }
+    }
+
+    private void writeReport(PendingReport report) throws IOException {
+        ensureChannel();
+        // UTF-8 每个 char 最多 3 个字节，按上限准备缓冲区，一次编码完成
+        CharBuffer chars = report.view;
+        int maxBytes = chars.remaining() * 3;
+        if (encoded.capacity() < maxBytes) {
+            encoded = ByteBuffer.allocate(Math.max(maxBytes, encoded.capacity() * 2));
+        }
+        encoded.clear();
+        encoder.reset();
+        encoder.encode(chars, encoded, true);
+        encoder.flush(encoded);
+        encoded.flip();
+
+        int length = encoded.remaining();
+        if (buffer.remaining() < length) {
+            flushBuffer();
+        }
+        if (length > buffer.capacity()) {
+            while (encoded.hasRemaining()) {
+                channel.write(encoded);
+            }
+        } else {
+            buffer.put(encoded);
+        }
+        if (historyStore != null) {
+            encoded.position(0);
+            historyStore.append(report.timestamp, encoded);
+        }
+    }
+
+    private void flushBuffer() throws IOException {
+        if (channel == null || buffer.position() == 0) return;
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    // 打开日志文件，必要时先滚动
+    private void ensureChannel() throws IOException {
+        if (channel != null) {
+            long now = System.currentTimeMillis();
+            boolean tooLarge = channel.size() + buffer.position() >= maxBytes;
+            boolean tooOld = now - segmentOpenedAt >= rotateIntervalMillis;
+            if (!tooLarge && !tooOld) return;
+            flushBuffer();
+            closeChannel();
+            rotate();
+        }
+
+        channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        segmentOpenedAt = System.currentTimeMillis();
+    }
+
+    // 将当前文件改名为带时间戳的旧段，并压缩为 .gz
+    private void rotate() throws IOException {
+        if (!Files.exists(file) || Files.size(file) == 0) return;
+
+        // 同一秒内多次滚动时追加序号，避免覆盖已有的旧段
+        String suffix = LocalDateTime.now().format(SEGMENT_SUFFIX);
+        Path segment = file.resolveSibling(file.getFileName() + "." + suffix);
+        Path gzip = segment.resolveSibling(segment.getFileName() + ".gz");
+        for (int i = 1; Files.exists(gzip); i++) {
+            segment = file.resolveSibling(file.getFileName() + "." + suffix + "-" + i);
+            gzip = segment.resolveSibling(segment.getFileName() + ".gz");
+        }
+        Files.move(file, segment, StandardCopyOption.REPLACE_EXISTING);
+
+        try (InputStream in = Files.newInputStream(segment);
+             OutputStream out = new GZIPOutputStream(Files.newOutputStream(gzip), BUFFER_SIZE)) {
+            in.transferTo(out);
+        }
+        Files.delete(segment);
+    }
+
+    private void closeChannel() {
+        if (channel == null) return;
+        try {
+            channel.close();
+        } catch (IOException e) {
+            System.err.println("关闭进度报告文件失败: " + e.getMessage());
+        }
+        channel = null;
+    }
+
+    /**
+     * 写完队列中剩余的报告后关闭文件。
+     */
+    @Override
+    public void close() {
+        try {
+            queue.put(POISON);
+            writerThread.join(5000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,283 @@
+package edu.sbs.cs.service;
+
+import edu.sbs.cs.model.*;
+import java.util.*;
+
+/**
+ * 按 (项目, 成员, 状态, 优先级) 维护的任务数计数立方体，由 DataManager 在每次变更时以 O(1) 更新。
+ * 项目和成员按首次出现的顺序编号，每个项目一个 int 数组 [成员序号][状态][优先级]，成员序号 0 表示未分配；
+ * 任意维度的汇总只遍历计数单元，不访问任务。只统计属于项目的未归档任务 (与 Project.getTasks 一致)。
+ * 与 DataManager 的其他数据一样不做同步，由调用方保证修改与查询不并发 (服务器模式下由读写锁保证)。
+ */
+public class TaskCounterCube {
+    // 查询参数中表示"未分配"的成员ID；成员ID为 null 表示不按成员筛选
+    public static final String UNASSIGNED = "";
+
+    private static final TaskStatus[] STATUSES = TaskStatus.values();
+    private static final Priority[] PRIORITIES = Priority.values();
+    private static final int CELLS_PER_MEMBER = STATUSES.length * PRIORITIES.length;
+
+    private final Map<String, Integer> projectOrdinals = new HashMap<>();
+    private final Map<String, Integer> memberOrdinals = new HashMap<>();
+    private final List<String> projectIds = new ArrayList<>();
+    private final List<String> memberIds = new ArrayList<>();
+    private int[][] cells = new int[16][];
+
+    public TaskCounterCube() {
+        memberOrdinals.put(UNASSIGNED, 0);
+        memberIds.add(UNASSIGNED);
+    }
+
+    // ===== 更新 (由 DataManager 和 UnitOfWork 在修改任务的同时调用) =====
+
+    void add(String projectId, TaskItem task) {
+        if (projectId == null) return;
+        increment(projectOrdinal(projectId), memberOrdinal(task.getAssignedTo()), task.getStatus(), task.getPriority(), 1);
+    }
+
+    void remove(String projectId, TaskItem task) {
+        if (projectId == null) return;
+        increment(projectOrdinal(projectId), memberOrdinal(task.getAssignedTo()), task.getStatus(), task.getPriority(), -1);
+    }
+
+    // 任务状态已从 before 改为当前状态
+    void statusChanged(String projectId, TaskItem task, TaskStatus before) {
+        TaskStatus after = task.getStatus();
+        if (projectId == null || before == after) return;
+        int project = projectOrdinal(projectId);
+        int member = memberOrdinal(task.getAssignedTo());
+        increment(project, member, before, task.getPriority(), -1);
+        increment(project, member, after, task.getPriority(), 1);
+    }
+
+    // 任务已从 before (可以为 null) 改为分配给当前成员
+    void assigneeChanged(String projectId, TaskItem task, TeamMember before) {
+        if (projectId == null || before == task.getAssignedTo()) return;
+        int project = projectOrdinal(projectId);
+        increment(project, memberOrdinal(before), task.getStatus(), task.getPriority(), -1);
+        increment(project, memberOrdinal(task.getAssignedTo()), task.getStatus(), task.getPriority(), 1);
+    }
+
+    void clear() {
+        for (int[] block : cells) {
+            if (block != null) Arrays.fill(block, 0);
+        }
+    }
+
+    private int projectOrdinal(String projectId) {
+        Integer ordinal = projectOrdinals.get(projectId);
+        if (ordinal == null) {
+            ordinal = projectIds.size();
+            projectOrdinals.put(projectId, ordinal);
+            projectIds.add(projectId);
+            if (ordinal >= cells.length) {
+                cells = Arrays.copyOf(cells, cells.length * 2);
+            }
+            cells[ordinal] = new int[CELLS_PER_MEMBER * 4];
+        }
+        return ordinal;
+    }
+
+    private int memberOrdinal(TeamMember member) {
+        if (member == null) return 0;
+        Integer ordinal = memberOrdinals.get(member.getMemberId());
+        if (ordinal == null) {
+            ordinal = memberIds.size();
+            memberOrdinals.put(member.getMemberId(), ordinal);
+            memberIds.add(member.getMemberId());
+        }
+        return ordinal;
+    }
+
+    // 成员是外层维度，新成员只需要在项目数组末尾扩容
+    private void increment(int project, int member, TaskStatus status, Priority priority, int delta) {
+        int index = member * CELLS_PER_MEMBER + status.ordinal() * PRIORITIES.length + priority.ordinal();
+        int[] block = cells[project];
+        if (index >= block.length) {
+            block = Arrays.copyOf(block, Math.max(block.length * 2, (member + 1) * CELLS_PER_MEMBER));
+            cells[project] = block;
+        }
+        block[index] += delta;
+    }
+
+    // ===== 汇总 =====
+
+    /**
+     * 满足条件的任务数，参数为 null 表示该维度不筛选 (全部汇总)。
+     *
+     * @param memberId 成员ID，UNASSIGNED 表示未分配的任务
+     */
+    public int count(String projectId, String memberId, TaskStatus status, Priority priority) {
+        int total = 0;
+        for (int[] block : blocks(projectId)) {
+            for (int member : members(memberId, block)) {
+                int base = member * CELLS_PER_MEMBER;
+                for (int s = 0; s < STATUSES.length; s++) {
+                    if (status != null && s != status.ordinal()) continue;
+                    int row = base + s * PRIORITIES.length;
+                    if (priority != null) {
+                        total += block[row + priority.ordinal()];
+                    } else {
+                        for (int p = 0; p < PRIORITIES.length; p++) {
+                            total += block[row + p];
+                        }
+                    }
+                }
+            }
+        }
+        return total;
+    }
+
+    // 按状态汇总，下标为 TaskStatus.ordinal()
+    public int[] countByStatus(String projectId, String memberId) {
+        int[] counts = new int[STATUSES.length];
+        for (int[] block : blocks(projectId)) {
+            for (int member : members(memberId, block)) {
+                int base = member * CELLS_PER_MEMBER;
+                for (int i = 0; i < CELLS_PER_MEMBER; i++) {
+                    counts[i / PRIORITIES.length] += block[base + i];
+                }
+            }
+        }
+        return counts;
+    }
+
+    // 按优先级汇总，下标为 Priority.ordinal()
+    public int[] countByPriority(String projectId, String memberId, TaskStatus status) {
+        int[] counts = new int[PRIORITIES.length];
+        for (int[] block : blocks(projectId)) {
+            for (int member : members(memberId, block)) {
+                int base = member * CELLS_PER_MEMBER;
+                for (int i = 0; i < CELLS_PER_MEMBER; i++) {
+                    if (status == null || i / PRIORITIES.length == status.ordinal()) {
+                        counts[i % PRIORITIES.length] += block[base + i];
+                    }
+                }
+            }
+        }
+        return counts;
+    }
+
+    // 按成员汇总 (只包含任务数不为 0 的成员，未分配的任务计在 UNASSIGNED 下)
+    public Map<String, Integer> countByMember(String projectId, TaskStatus status) {
+        int[] counts = new int[memberIds.size()];
+        for (int[] block : blocks(projectId)) {
+            int members = Math.min(counts.length, block.length / CELLS_PER_MEMBER);
+            for (int member = 0; member < members; member++) {
+                int base = member * CELLS_PER_MEMBER;
+                for (int i = 0; i < CELLS_PER_MEMBER; i++) {
+                    if (status == null || i / PRIORITIES.length == status.ordinal()) {
+                        counts[member] += block[base + i];
+                    }
+                }
+            }
+        }
+        Map<String, Integer> result = new LinkedHashMap<>();
+        for (int member = 0; member < counts.length; member++) {
+            if (counts[member] != 0) {
+                result.put(memberIds.get(member), counts[member]);
+            }
+        }
+        return result;
+    }
+
+    // 按状态汇总为 Map (与 TaskProcessor.countTasksByStatus 的输出形式相同，省略为 0 的状态)
+    public Map<TaskStatus, Long> statusDistribution(String projectId) {
+        int[] counts = countByStatus(projectId, null);
+        Map<TaskStatus, Long> distribution = new EnumMap<>(TaskStatus.class);
+        for (TaskStatus status : STATUSES) {
+            if (counts[status.ordinal()] != 0) {
+                distribution.put(status, (long) counts[status.ordinal()]);
+            }
+        }
+        return distribution;
+    }
+
+    private List<int[]> blocks(String projectId) {
+        if (projectId != null) {
+            Integer ordinal = projectOrdinals.get(projectId);
+            return ordinal == null ? Collections.emptyList() : Collections.singletonList(cells[ordinal]);
+        }
+        List<int[]> blocks = new ArrayList<>(projectIds.size());
+        for (int i = 0; i < projectIds.size(); i++) {
+            blocks.add(cells[i]);
+        }
+        return blocks;
+    }
+
+    private int[] members(String memberId, int[] block) {
+        int available = block.length / CELLS_PER_MEMBER;
+        if (memberId != null) {
+            Integer ordinal = memberOrdinals.get(memberId);
+            return ordinal == null || ordinal >= available ? new int[0] : new int[]{ordinal};
+        }
+        int[] all = new int[available];
+        for (int i = 0; i < available; i++) {
+            all[i] = i;
+        }
+        return all;
+    }
+
+    // ===== 一致性检查 =====
+
+    /**
+     * 从各项目的任务列表完整重新计算，与当前计数逐个单元比较。
+     *
+     * @return 不一致的描述 (最多 limit 条)，一致时为空
+     */
+    public List<String> verify(Collection<Project> projects, int limit) {
+        TaskCounterCube expected = new TaskCounterCube();
+        for (Project project : projects) {
+            for (TaskItem task : project.getTasks()) {
+                expected.add(project.getProjectId(), task);
+            }
+        }
+
+        List<String> problems = new ArrayList<>();
+        Set<String> allProjects = new LinkedHashSet<>(projectIds);
+        allProjects.addAll(expected.projectIds);
+        for (String projectId : allProjects) {
+            // 只比较两边有非零单元的成员，其余单元都为 0
+            Set<String> members = new LinkedHashSet<>(membersWithCounts(projectId));
+            members.addAll(expected.membersWithCounts(projectId));
+            for (String memberId : members) {
+                for (TaskStatus status : STATUSES) {
+                    for (Priority priority : PRIORITIES) {
+                        int actual = cell(projectId, memberId, status, priority);
+                        int wanted = expected.cell(projectId, memberId, status, priority);
+                        if (actual != wanted && problems.size() < limit) {
+                            problems.add(String.format("项目 %s 成员 %s %s/%s: 计数 %d, 实际 %d", projectId,
+                                    memberId.isEmpty() ? "(未分配)" : memberId, status, priority, actual, wanted));
+                        }
+                    }
+                }
+            }
+        }
+        return problems;
+    }
+
+    private int cell(String projectId, String memberId, TaskStatus status, Priority priority) {
+        Integer project = projectOrdinals.get(projectId);
+        Integer member = memberOrdinals.get(memberId);
+        if (project == null || member == null) return 0;
+        int index = member * CELLS_PER_MEMBER + status.ordinal() * PRIORITIES.length + priority.ordinal();
+        int[] block = cells[project];
+        return index < block.length ? block[index] : 0;
+    }
+
+    private List<String> membersWithCounts(String projectId) {
+        Integer project = projectOrdinals.get(projectId);
+        if (project == null) return Collections.emptyList();
+        int[] block = cells[project];
+        List<String> members = new ArrayList<>();
+        for (int member = 0; member < block.length / CELLS_PER_MEMBER; member++) {
+            for (int i = member * CELLS_PER_MEMBER; i < (member + 1) * CELLS_PER_MEMBER; i++) {
+                if (block[i] != 0) {
+                    members.add(memberIds.get(member));
+                    break;
+                }
+            }
+        }
+        return members;
+    }
+}
@@ -0,0 +1,142 @@
+package edu.sbs.cs.service;
+
+import edu.sbs.cs.model.Priority;
+import edu.sbs.cs.model.TaskItem;
+import edu.sbs.cs.model.TaskStatus;
+
+/**
+ * DataManager 在每次变更成功后发布的任务事件。
+ * 事件是不可变的快照，订阅者 (报告器、缓存、索引等) 据此增量更新，不必重新扫描全部数据。
+ */
+public abstract class TaskEvent {
+    public enum Type {
+        TASK_CREATED,
+        STATUS_CHANGED,
+        PROGRESS_CHANGED,
+        ASSIGNED,
+        MEMBER_ADDED
+    }
+
+    private final Type type;
+    private final String projectId;
+    private final long timestamp;
+
+    protected TaskEvent(Type type, String projectId) {
+        this.type = type;
+        this.projectId = projectId;
+        this.timestamp = System.currentTimeMillis();
+    }
+
+    public Type getType() { return type; }
+    public String getProjectId() { return projectId; }
+    public long getTimestamp() { return timestamp; }
+
+    // 新建任务 (包括批量导入)；复制创建时的字段，之后对任务的修改不影响事件
+    public static final class TaskCreated extends TaskEvent {
+        private final String taskId;
+        private final String taskType;
+        private final String title;
+        private final Priority priority;
+        private final int dueDay;
+        private final int effortPoints;
+        private final String assigneeId;
+        private final long state;
+
+        public TaskCreated(TaskItem task, String projectId) {
+            super(Type.TASK_CREATED, projectId);
+            this.taskId = task.getTaskId();
+            this.taskType = task.getClass().getSimpleName();
+            this.title = task.getTitle();
+            this.priority = task.getPriority();
+            this.dueDay = task.getDueDay();
+            this.effortPoints = task.getEffortPoints();
+            this.assigneeId = task.getAssignedTo() == null ? null : task.getAssignedTo().getMemberId();
+            this.state = task.getState();
+        }
+
+        public String getTaskId() { return taskId; }
+        // 任务类型的类名 (FeatureTask、BugReport)
+        public String getTaskType() { return taskType; }
+        public String getTitle() { return title; }
+        public Priority getPriority() { return priority; }
+        // 截止日期的纪元日，没有截止日期时为 TaskItem.NO_DATE
+        public int getDueDay() { return dueDay; }
+        public int getEffortPoints() { return effortPoints; }
+        public String getAssigneeId() { return assigneeId; }
+        public TaskStatus getStatus() { return TaskItem.statusOf(state); }
+        public double getProgress() { return TaskItem.progressOf(state); }
+        public long getVersion() { return TaskItem.versionOf(state); }
+    }
+
+    // 任务状态改变
+    public static final class StatusChanged extends TaskEvent {
+        private final String taskId;
+        private final TaskStatus oldStatus;
+        private final TaskStatus newStatus;
+        private final long version;
+
+        public StatusChanged(String taskId, String projectId, TaskStatus oldStatus, TaskStatus newStatus, long version) {
+            super(Type.STATUS_CHANGED, projectId);
+            this.taskId = taskId;
+            this.oldStatus = oldStatus;
+            this.newStatus = newStatus;
+            this.version = version;
+        }
+
+        public String getTaskId() { return taskId; }
+        public TaskStatus getOldStatus() { return oldStatus; }
+        public TaskStatus getNewStatus() { return newStatus; }
+        public long getVersion() { return version; }
+    }
+
+    // 任务进度改变
+    public static final class ProgressChanged extends TaskEvent {
+        private final String taskId;
+        private final double oldProgress;
+        private final double newProgress;
+        private final long version;
+
+        public ProgressChanged(String taskId, String projectId, double oldProgress, double newProgress, long version) {
+            super(Type.PROGRESS_CHANGED, projectId);
+            this.taskId = taskId;
+            this.oldProgress = oldProgress;
+            this.newProgress = newProgress;
+            this.version = version;
+        }
+
+        public String getTaskId() { return taskId; }
+        public double getOldProgress() { return oldProgress; }
+        public double getNewProgress() { return newProgress; }
+        public long getVersion() { return version; }
+    }
+
+    // 任务分配给成员；previousMemberId 为原负责人，原来未分配时为 null
+    public static final class Assigned extends TaskEvent {
+        private final String taskId;
+        private final String memberId;
+        private final String previousMemberId;
+
+        public Assigned(String taskId, String projectId, String memberId, String previousMemberId) {
+            super(Type.ASSIGNED, projectId);
+            this.taskId = taskId;
+            this.memberId = memberId;
+            this.previousMemberId = previousMemberId;
+        }
+
+        public String getTaskId() { return taskId; }
+        public String getMemberId() { return memberId; }
+        public String getPreviousMemberId() { return previousMemberId; }
+    }
+
+    // 成员加入项目
+    public static final class MemberAdded extends TaskEvent {
+        private final String memberId;
+
+        public MemberAdded(String projectId, String memberId) {
+            super(Type.MEMBER_ADDED, projectId);
+            this.memberId = memberId;
+        }
+
+        public String getMemberId() { return memberId; }
+    }
+}
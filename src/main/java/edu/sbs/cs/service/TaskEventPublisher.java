@@ -0,0 +1,84 @@
+package edu.sbs.cs.service;
+
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 任务事件的发布者 (java.util.concurrent.Flow)。
+ * 每个元素是一批事件：单次变更发布一个只含一个事件的批次，工作单元提交或批量导入时整批发布。
+ * 每个订阅者有自己的有界缓冲区，按订阅者 request(n) 的数量投递 (背压)；
+ * 某个订阅者的缓冲区满时，发布方最多等待 offerTimeoutMillis，仍然放不下则对该订阅者丢弃本批并计数，
+ * 不会无限阻塞修改数据的线程。
+ */
+public class TaskEventPublisher implements Flow.Publisher<List<TaskEvent>>, AutoCloseable {
+    private static final int DEFAULT_BUFFER_SIZE = 256;
+    private static final long DEFAULT_OFFER_TIMEOUT_MS = 100;
+
+    private final ExecutorService executor;
+    private final SubmissionPublisher<List<TaskEvent>> publisher;
+    private final long offerTimeoutMillis;
+    private final AtomicLong droppedBatches = new AtomicLong();
+    private final AtomicLong publishedEvents = new AtomicLong();
+
+    public TaskEventPublisher() {
+        this(Integer.getInteger("team.events.bufferSize", DEFAULT_BUFFER_SIZE),
+                Long.getLong("team.events.offerTimeoutMs", DEFAULT_OFFER_TIMEOUT_MS));
+    }
+
+    public TaskEventPublisher(int bufferSize, long offerTimeoutMillis) {
+        this.offerTimeoutMillis = offerTimeoutMillis;
+        this.executor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "task-events");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.publisher = new SubmissionPublisher<>(executor, bufferSize);
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super List<TaskEvent>> subscriber) {
+        publisher.subscribe(subscriber);
+    }
+
+    // 没有订阅者时调用方可以跳过构造事件
+    public boolean hasSubscribers() {
+        return publisher.hasSubscribers();
+    }
+
+    public void publish(TaskEvent event) {
+        if (!publisher.hasSubscribers()) return;
+        publish(List.of(event));
+    }
+
+    public void publish(List<TaskEvent> events) {
+        if (events.isEmpty() || !publisher.hasSubscribers() || publisher.isClosed()) return;
+
+        // 订阅者拿到的批次不能再被发布方修改
+        List<TaskEvent> batch = List.copyOf(events);
+        publisher.offer(batch, offerTimeoutMillis, TimeUnit.MILLISECONDS, (subscriber, dropped) -> {
+            if (droppedBatches.incrementAndGet() == 1) {
+                System.err.println("任务事件订阅者处理过慢，部分事件被丢弃");
+            }
+            return false;
+        });
+        publishedEvents.addAndGet(batch.size());
+    }
+
+    public long getDroppedBatches() {
+        return droppedBatches.get();
+    }
+
+    public long getPublishedEvents() {
+        return publishedEvents.get();
+    }
+
+    /**
+     * 通知所有订阅者 onComplete，并停止投递线程。
+     */
+    @Override
+    public void close() {
+        publisher.close();
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,264 @@
+package edu.sbs.cs.service;
+
+import edu.sbs.cs.database.TaskHistoryStore;
+import edu.sbs.cs.model.*;
+import java.sql.SQLException;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * 任务状态的版本链，回答"某任务 / 某项目在时刻 t 是什么状态"。
+ * 每个任务一条按生效时间递增的链，[生效时间, 打包状态字] 成对存放在一个 long 数组中，查询时二分查找：
+ * 单个任务 O(log 版本数)，整个项目 O(任务数 × log 版本数)。
+ * 保留策略：每个任务的版本数超过 team.history.maxVersions (默认 64) 的 1.25 倍时截断到该数目；
+ * 早于 team.history.retentionDays 天 (默认 90) 的版本只保留那一时刻有效的一个。截断之前的时刻查询没有结果。
+ * 启用数据库时新版本由后台线程批量写入 TaskHistoryStore，启动时从中重建；已归档任务的历史只在数据库中。
+ * 与 DataManager 的其他数据一样不做同步，后台线程只访问待写队列。
+ */
+public class TaskHistory implements AutoCloseable {
+    // 没有记录时的查询结果 (打包状态字不会是负数)
+    public static final long NONE = -1;
+
+    private static final int MAX_VERSIONS = Math.max(2, Integer.getInteger("team.history.maxVersions", 64));
+    private static final long RETENTION_MILLIS = TimeUnit.DAYS.toMillis(Long.getLong("team.history.retentionDays", 90));
+    private static final long FLUSH_INTERVAL_MS = Long.getLong("team.history.flushMs", 1000);
+    private static final long PRUNE_INTERVAL_MS = TimeUnit.HOURS.toMillis(1);
+
+    // 一个任务的版本链
+    private static final class Chain {
+        private long[] entries = new long[4];
+        private int size; // 版本数，使用 entries 的前 2 * size 个元素
+
+        long time(int index) { return entries[2 * index]; }
+        long state(int index) { return entries[2 * index + 1]; }
+
+        void append(long time, long state) {
+            if (2 * size == entries.length) {
+                entries = Arrays.copyOf(entries, entries.length * 2);
+            }
+            entries[2 * size] = time;
+            entries[2 * size + 1] = state;
+            size++;
+        }
+
+        // 生效时间 <= time 的最后一个版本的下标，没有时为 -1
+        int floor(long time) {
+            int low = 0;
+            int high = size - 1;
+            int found = -1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                if (entries[2 * mid] <= time) {
+                    found = mid;
+                    low = mid + 1;
+                } else {
+                    high = mid - 1;
+                }
+            }
+            return found;
+        }
+
+        void dropOldest(int count) {
+            System.arraycopy(entries, 2 * count, entries, 0, 2 * (size - count));
+            size -= count;
+        }
+    }
+
+    private final Map<String, Chain> chains = new HashMap<>();
+    private long versionCount;
+
+    // 为 null 时历史只在内存中 (内存模式和只读副本)
+    private final TaskHistoryStore store;
+    private final Object pendingLock = new Object();
+    private List<TaskHistoryStore.Version> pendingVersions = new ArrayList<>();
+    private List<TaskHistoryStore.Version> pendingTrims = new ArrayList<>();
+    private ScheduledExecutorService writer;
+    private long lastPrune;
+
+    public TaskHistory(TaskHistoryStore store) {
+        this.store = store;
+        if (store != null) {
+            writer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "task-history-writer");
+                thread.setDaemon(true);
+                return thread;
+            });
+            writer.scheduleWithFixedDelay(this::flush, FLUSH_INTERVAL_MS, FLUSH_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * 从数据库重建内存中的版本链，只加载 taskIds 中的任务 (已归档任务的历史留在数据库中)。
+     */
+    void load(Set<String> taskIds) throws SQLException {
+        if (store == null) return;
+        long cutoff = System.currentTimeMillis() - RETENTION_MILLIS;
+        store.load((taskId, projectId, validFrom, state) -> {
+            if (!taskIds.contains(taskId)) return;
+            Chain chain = chains.computeIfAbsent(taskId, id -> new Chain());
+            chain.append(validFrom, state);
+            versionCount++;
+            // 保留策略可能在上次运行之后调小，数据库中多出的版本在下次写入该任务时截断
+            trim(chain, cutoff);
+        });
+    }
+
+    // ===== 记录 (由 DataManager 和 UnitOfWork 在修改任务之后调用) =====
+
+    // 任务在 time 时刻变为 state；与链上最后一个版本相同时不记录
+    void record(String taskId, String projectId, long state, long time) {
+        Chain chain = chains.get(taskId);
+        if (chain == null) {
+            chain = new Chain();
+            chains.put(taskId, chain);
+        } else if (chain.state(chain.size - 1) == state) {
+            return;
+        } else {
+            // 系统时钟回拨时沿用上一个版本的时间，保持链按时间有序
+            time = Math.max(time, chain.time(chain.size - 1));
+        }
+        chain.append(time, state);
+        versionCount++;
+        boolean trimmed = trim(chain, time - RETENTION_MILLIS);
+
+        if (store != null) {
+            synchronized (pendingLock) {
+                pendingVersions.add(new TaskHistoryStore.Version(taskId, projectId, time, state));
+                if (trimmed) {
+                    pendingTrims.add(new TaskHistoryStore.Version(taskId, projectId, chain.time(0), chain.state(0)));
+                }
+            }
+        }
+    }
+
+    // 按保留策略截断链的头部，返回是否删除了版本
+    private boolean trim(Chain chain, long cutoff) {
+        int drop = 0;
+        while (drop + 1 < chain.size && chain.time(drop + 1) <= cutoff) {
+            drop++;
+        }
+        if (chain.size - drop > MAX_VERSIONS + MAX_VERSIONS / 4) {
+            drop = chain.size - MAX_VERSIONS;
+        }
+        if (drop == 0) return false;
+        chain.dropOldest(drop);
+        versionCount -= drop;
+        return true;
+    }
+
+    // 任务已归档：内存中的链不再需要，数据库中的历史保留
+    void remove(String taskId) {
+        Chain chain = chains.remove(taskId);
+        if (chain != null) {
+            versionCount -= chain.size;
+        }
+    }
+
+    // 只保留 taskIds 中任务的链 (副本用快照替换全部数据时)
+    void retain(Set<String> taskIds) {
+        chains.entrySet().removeIf(entry -> {
+            if (taskIds.contains(entry.getKey())) return false;
+            versionCount -= entry.getValue().size;
+            return true;
+        });
+    }
+
+    // ===== 查询 =====
+
+    /**
+     * 任务在 time (毫秒时间戳) 时刻的打包状态字 (用 TaskItem.statusOf / progressOf 解析)。
+     * 不在内存中的任务 (已归档) 查询数据库。
+     *
+     * @return 当时任务尚未创建或已超出保留期时返回 NONE
+     */
+    public long stateAsOf(String taskId, long time) {
+        Chain chain = chains.get(taskId);
+        if (chain != null) {
+            int index = chain.floor(time);
+            return index < 0 ? NONE : chain.state(index);
+        }
+        if (store == null) return NONE;
+        flush();
+        try {
+            return store.stateAsOf(taskId, time);
+        } catch (SQLException e) {
+            System.err.println("查询任务历史失败: " + e.getMessage());
+            return NONE;
+        }
+    }
+
+    /**
+     * 项目中各任务在 time 时刻的打包状态字 (任务ID -> 状态)，不包含当时尚未创建的任务。
+     * 项目有已归档任务时，不在内存中的任务从数据库查询。
+     */
+    public Map<String, Long> projectAsOf(Project project, long time) {
+        Map<String, Long> states = new LinkedHashMap<>();
+        for (TaskItem task : project.getTasks()) {
+            Chain chain = chains.get(task.getTaskId());
+            int index = chain == null ? -1 : chain.floor(time);
+            if (index >= 0) {
+                states.put(task.getTaskId(), chain.state(index));
+            }
+        }
+        if (store != null && project.getArchivedTaskCount() > 0) {
+            flush();
+            try {
+                store.projectAsOf(project.getProjectId(), time).forEach((taskId, state) -> {
+                    if (!chains.containsKey(taskId)) {
+                        states.put(taskId, state);
+                    }
+                });
+            } catch (SQLException e) {
+                System.err.println("查询已归档任务的历史失败: " + e.getMessage());
+            }
+        }
+        return states;
+    }
+
+    public int getTaskCount() { return chains.size(); }
+    public long getVersionCount() { return versionCount; }
+
+    // ===== 写入数据库 =====
+
+    /**
+     * 把待写的版本写入数据库，并定期按保留期清理数据库中的旧版本 (包括已归档任务的历史)。
+     * 写入失败时这些版本只丢失持久化，内存中的链不受影响。
+     */
+    public synchronized void flush() {
+        if (store == null) return;
+        List<TaskHistoryStore.Version> versions;
+        List<TaskHistoryStore.Version> trims;
+        synchronized (pendingLock) {
+            versions = pendingVersions;
+            trims = pendingTrims;
+            pendingVersions = new ArrayList<>();
+            pendingTrims = new ArrayList<>();
+        }
+        try {
+            store.write(versions, trims);
+            long now = System.currentTimeMillis();
+            if (now - lastPrune >= PRUNE_INTERVAL_MS) {
+                lastPrune = now;
+                int pruned = store.prune(now - RETENTION_MILLIS);
+                if (pruned > 0) {
+                    System.out.printf("任务历史: 清理超出保留期的版本 %d 个%n", pruned);
+                }
+            }
+        } catch (SQLException e) {
+            System.err.println("写入任务历史失败: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public void close() {
+        if (store == null) return;
+        writer.shutdown();
+        try {
+            writer.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+        store.close();
+    }
+}
@@ -33,11 +33,12 @@ public class TaskProcessor<T extends TaskItem> {
                 .orElse(0.0);
     }
 
-    // 获取逾期任务
+    // 获取逾期任务 (今天只计算一次，逐个任务直接比较 epochDay)
     public List<T> getOverdueTasks(List<T> tasks) {
+        int today = (int) java.time.LocalDate.now().toEpochDay();
         return tasks.stream()
                 .filter(task -> task.getStatus() != TaskStatus.COMPLETED)
-                .filter(task -> java.time.LocalDate.now().isAfter(task.getDueDate()))
+                .filter(task -> task.getDueDay() != TaskItem.NO_DATE && task.getDueDay() < today)
                 .collect(Collectors.toList());
     }
 }
\ No newline at end of file
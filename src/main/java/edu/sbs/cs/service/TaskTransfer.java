@@ -0,0 +1,394 @@
+package edu.sbs.cs.service;
+
+import edu.sbs.cs.database.DatabaseManager;
+import edu.sbs.cs.database.IdAllocator;
+import edu.sbs.cs.model.*;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * 任务的批量导入/导出 (CSV 或 JSON Lines)。
+ * 导出和导入都是逐行流式处理，读写缓冲区大小固定，内存占用不随行数增长；
+ * 导入时按块使用 JDBC 批处理写入，每块一个事务，并在导入期间暂时删除任务表索引，结束后统一重建。
+ */
+public class TaskTransfer {
+    // 文件中的列顺序，与 tasks 表列名一致
+    private static final String[] COLUMNS = {
+            "task_id", "task_type", "project_id", "title", "description", "priority", "status",
+            "due_date", "progress", "assigned_to", "story_points", "feature_category",
+            "severity", "steps_to_reproduce", "environment"
+    };
+    private static final List<String> COLUMN_LIST = Arrays.asList(COLUMNS);
+    private static final int CHUNK_SIZE = 5000;
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final DataManager dataManager;
+
+    public TaskTransfer(DataManager dataManager) {
+        this.dataManager = dataManager;
+    }
+
+    // 根据文件扩展名判断格式
+    private static boolean isJsonLines(Path file) {
+        String name = file.getFileName().toString().toLowerCase();
+        return name.endsWith(".jsonl") || name.endsWith(".ndjson");
+    }
+
+    /**
+     * 导出所有任务到文件。
+     *
+     * @return 导出的行数
+     */
+    public long exportTasks(Path file) throws IOException {
+        boolean json = isJsonLines(file);
+        long[] count = {0};
+
+        try (Writer writer = new BufferedWriter(
+                new OutputStreamWriter(Files.newOutputStream(file), StandardCharsets.UTF_8), BUFFER_SIZE)) {
+            if (!json) {
+                writeCsvRow(writer, COLUMNS);
+            }
+
+            if (dataManager.isDatabaseEnabled()) {
+                // 直接从结果集流式读取，不经过对象模型；先把变更日志合并到数据库
+                dataManager.checkpointJournal();
+                try {
+                    dataManager.getDatabaseManager().streamTaskRows(COLUMNS, row -> {
+                        try {
+                            writeRow(writer, row, json);
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                        count[0]++;
+                    });
+                } catch (SQLException e) {
+                    throw new IOException("从数据库读取任务失败: " + e.getMessage(), e);
+                } catch (UncheckedIOException e) {
+                    throw e.getCause();
+                }
+            } else {
+                String[] row = new String[COLUMNS.length];
+                for (TaskItem task : dataManager.getTasks().values()) {
+                    toRow(task, dataManager.getTaskProjectIds().get(task.getTaskId()), row);
+                    writeRow(writer, row, json);
+                    count[0]++;
+                }
+            }
+        }
+        return count[0];
+    }
+
+    /**
+     * 从文件导入任务。已存在的同ID任务会被覆盖；所属项目不存在或格式错误的行会被跳过。
+     *
+     * @return 成功导入的行数
+     */
+    public long importTasks(Path file) throws IOException {
+        if (dataManager.isReadOnly()) {
+            throw new IOException("只读副本不能导入任务");
+        }
+        boolean json = isJsonLines(file);
+        DatabaseManager databaseManager = dataManager.getDatabaseManager();
+        boolean useDatabase = dataManager.isDatabaseEnabled();
+        if (useDatabase) {
+            // 导入直接写数据库，先合并变更日志，避免之后的检查点用旧记录覆盖导入的任务
+            dataManager.checkpointJournal();
+        }
+
+        List<TaskItem> chunk = new ArrayList<>(CHUNK_SIZE);
+        Map<String, String> chunkProjects = new HashMap<>(CHUNK_SIZE * 2);
+        long imported = 0;
+        long skipped = 0;
+        long start = System.nanoTime();
+
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(Files.newInputStream(file), StandardCharsets.UTF_8), BUFFER_SIZE)) {
+            if (useDatabase) {
+                databaseManager.dropTaskIndexes();
+            }
+
+            int[] columnIndex = json ? null : readCsvHeader(reader);
+            String[] row = new String[COLUMNS.length];
+            while (json ? readJsonRow(reader, row) : readCsvRow(reader, columnIndex, row)) {
+                TaskItem task;
+                try {
+                    task = fromRow(row);
+                } catch (RuntimeException e) {
+                    skipped++;
+                    continue;
+                }
+                String projectId = row[2];
+                if (task == null || !dataManager.getProjects().containsKey(projectId)) {
+                    skipped++;
+                    continue;
+                }
+
+                chunk.add(task);
+                chunkProjects.put(task.getTaskId(), projectId);
+                if (chunk.size() == CHUNK_SIZE) {
+                    imported += flushChunk(chunk, chunkProjects);
+                }
+            }
+            imported += flushChunk(chunk, chunkProjects);
+        } catch (SQLException e) {
+            throw new IOException("写入数据库失败: " + e.getMessage(), e);
+        } finally {
+            if (useDatabase) {
+                try {
+                    databaseManager.createTaskIndexes();
+                } catch (SQLException e) {
+                    System.err.println("重建任务索引失败: " + e.getMessage());
+                }
+            }
+        }
+
+        long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+        System.out.println("导入完成: " + imported + " 行, 跳过 " + skipped + " 行, 耗时 " + elapsedMs + " ms");
+        return imported;
+    }
+
+    // 写入一块任务：先在一个事务中批量写库，成功后再登记到内存
+    private int flushChunk(List<TaskItem> chunk, Map<String, String> chunkProjects) throws SQLException {
+        if (chunk.isEmpty()) return 0;
+
+        if (dataManager.isDatabaseEnabled()) {
+            DatabaseManager databaseManager = dataManager.getDatabaseManager();
+            databaseManager.runInTransaction(() -> databaseManager.upsertTasksBatch(chunk, chunkProjects));
+        }
+        long maxIdNumber = 0;
+        List<TaskEvent> events = dataManager.getEventPublisher().hasSubscribers() ? new ArrayList<>(chunk.size()) : null;
+        // 登记到内存与复制记录在同一次持有写锁期间完成
+        Lock writeLock = dataManager.getDataLock().writeLock();
+        writeLock.lock();
+        try {
+            for (TaskItem task : chunk) {
+                dataManager.registerImportedTask(task, dataManager.getProjects().get(chunkProjects.get(task.getTaskId())), events);
+                maxIdNumber = Math.max(maxIdNumber, IdAllocator.parseNumber(task.getTaskId()));
+            }
+            ReplicationPrimary replication = dataManager.getReplicationPrimary();
+            if (replication != null) {
+                for (TaskItem task : chunk) {
+                    replication.taskCreated(task, chunkProjects.get(task.getTaskId()));
+                }
+            }
+        } finally {
+            writeLock.unlock();
+        }
+        // 导入的ID保留原值，之后新建的任务要跳过这些编号
+        dataManager.getTaskIdAllocator().advancePast(maxIdNumber);
+        if (events != null) {
+            dataManager.getEventPublisher().publish(events); // 每个块发布一批
+        }
+
+        int size = chunk.size();
+        chunk.clear();
+        chunkProjects.clear();
+        return size;
+    }
+
+    // 行与任务对象之间的转换
+    private static void toRow(TaskItem task, String projectId, String[] row) {
+        Arrays.fill(row, null);
+        row[0] = task.getTaskId();
+        row[2] = projectId;
+        row[3] = task.getTitle();
+        row[4] = task.getDescription();
+        row[5] = task.getPriority().toString();
+        row[6] = task.getStatus().toString();
+        row[7] = task.getDueDate().toString();
+        row[8] = Double.toString(task.getProgress());
+        row[9] = task.getAssignedTo() != null ? task.getAssignedTo().getMemberId() : null;
+
+        if (task instanceof FeatureTask) {
+            FeatureTask featureTask = (FeatureTask) task;
+            row[1] = "FEATURE";
+            row[10] = Integer.toString(featureTask.getStoryPoints());
+            row[11] = featureTask.getFeatureCategory();
+        } else if (task instanceof BugReport) {
+            BugReport bugReport = (BugReport) task;
+            row[1] = "BUG";
+            row[12] = bugReport.getSeverity().toString();
+            row[13] = bugReport.getStepsToReproduce();
+            row[14] = bugReport.getEnvironment();
+        }
+    }
+
+    private TaskItem fromRow(String[] row) {
+        if (isBlank(row[0]) || isBlank(row[1])) return null;
+
+        String taskId = row[0];
+        Priority priority = Priority.valueOf(row[5]);
+        LocalDate dueDate = LocalDate.parse(row[7]);
+
+        TaskItem task;
+        if ("FEATURE".equals(row[1])) {
+            int storyPoints = isBlank(row[10]) ? 0 : Integer.parseInt(row[10]);
+            task = new FeatureTask(taskId, row[3], row[4], priority, dueDate, storyPoints, row[11]);
+        } else if ("BUG".equals(row[1])) {
+            task = new BugReport(taskId, row[3], row[4], priority, dueDate,
+                    Severity.valueOf(row[12]), row[13], row[14]);
+        } else {
+            return null;
+        }
+
+        task.setStatus(isBlank(row[6]) ? TaskStatus.TODO : TaskStatus.valueOf(row[6]));
+        task.setProgress(isBlank(row[8]) ? 0.0 : Double.parseDouble(row[8]));
+        task.setAssignedTo(isBlank(row[9]) ? null : dataManager.getMembers().get(row[9]));
+        return task;
+    }
+
+    private static boolean isBlank(String value) {
+        return value == null || value.isEmpty();
+    }
+
+    private static void writeRow(Writer writer, String[] row, boolean json) throws IOException {
+        if (json) {
+            writeJsonRow(writer, row);
+        } else {
+            writeCsvRow(writer, row);
+        }
+    }
+
+    // ===== CSV (RFC 4180) =====
+    private static void writeCsvRow(Writer writer, String[] row) throws IOException {
+        for (int i = 0; i < row.length; i++) {
+            if (i > 0) writer.write(',');
+            String value = row[i];
+            if (value == null) continue;
+
+            boolean needsQuote = false;
+            for (int j = 0; j < value.length() && !needsQuote; j++) {
+                char c = value.charAt(j);
+                needsQuote = c == ',' || c == '"' || c == '\n' || c == '\r';
+            }
+            if (!needsQuote) {
+                writer.write(value);
+                continue;
+            }
+            writer.write('"');
+            for (int j = 0; j < value.length(); j++) {
+                char c = value.charAt(j);
+                if (c == '"') writer.write('"');
+                writer.write(c);
+            }
+            writer.write('"');
+        }
+        writer.write('\n');
+    }
+
+    // 读取表头，返回 文件列 -> COLUMNS 下标 的映射 (未知列为 -1)
+    private static int[] readCsvHeader(BufferedReader reader) throws IOException {
+        List<String> header = new ArrayList<>();
+        if (!readCsvRecord(reader, header)) {
+            throw new IOException("CSV 文件为空");
+        }
+        List<String> known = Arrays.asList(COLUMNS);
+        int[] columnIndex = new int[header.size()];
+        for (int i = 0; i < header.size(); i++) {
+            columnIndex[i] = known.indexOf(header.get(i).trim());
+        }
+        return columnIndex;
+    }
+
+    private final List<String> csvFields = new ArrayList<>(COLUMNS.length);
+
+    private boolean readCsvRow(BufferedReader reader, int[] columnIndex, String[] row) throws IOException {
+        while (readCsvRecord(reader, csvFields)) {
+            if (csvFields.size() == 1 && csvFields.get(0) == null) {
+                continue; // 空行
+            }
+            Arrays.fill(row, null);
+            for (int i = 0; i < csvFields.size() && i < columnIndex.length; i++) {
+                if (columnIndex[i] >= 0) {
+                    row[columnIndex[i]] = csvFields.get(i);
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    // 读取一条 CSV 记录 (引号内可以包含换行)，空字段记为 null
+    private static boolean readCsvRecord(BufferedReader reader, List<String> fields) throws IOException {
+        fields.clear();
+        StringBuilder field = new StringBuilder();
+        boolean inQuotes = false;
+        boolean quoted = false;
+        int c = reader.read();
+        if (c == -1) return false;
+
+        while (true) {
+            if (inQuotes) {
+                if (c == -1) {
+                    throw new IOException("CSV 引号未闭合");
+                } else if (c == '"') {
+                    reader.mark(1);
+                    int next = reader.read();
+                    if (next == '"') {
+                        field.append('"');
+                    } else {
+                        inQuotes = false;
+                        reader.reset();
+                    }
+                } else {
+                    field.append((char) c);
+                }
+            } else if (c == '"' && field.length() == 0) {
+                inQuotes = true;
+                quoted = true;
+            } else if (c == ',' || c == '\n' || c == -1) {
+                fields.add(field.length() == 0 && !quoted ? null : field.toString());
+                field.setLength(0);
+                quoted = false;
+                if (c != ',') return true;
+            } else if (c != '\r') {
+                field.append((char) c);
+            }
+            c = reader.read();
+        }
+    }
+
+    // ===== JSON Lines (每行一个扁平对象) =====
+    private static void writeJsonRow(Writer writer, String[] row) throws IOException {
+        writer.write('{');
+        for (int i = 0; i < COLUMNS.length; i++) {
+            if (i > 0) writer.write(',');
+            writer.write('"');
+            writer.write(COLUMNS[i]);
+            writer.write("\":");
+            String value = row[i];
+            if (value == null) {
+                writer.write("null");
+            } else if (i == 8 || i == 10) {
+                writer.write(value); // 数值列
+            } else {
+                FlatJson.writeString(writer, value);
+            }
+        }
+        writer.write("}\n");
+    }
+
+    private static boolean readJsonRow(BufferedReader reader, String[] row) throws IOException {
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.isBlank()) continue;
+            Arrays.fill(row, null);
+            try {
+                FlatJson.parse(line, (key, value) -> {
+                    int index = COLUMN_LIST.indexOf(key);
+                    if (index >= 0) row[index] = value;
+                });
+            } catch (IOException e) {
+                Arrays.fill(row, null); // 格式错误的行按无效行跳过
+            }
+            return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,465 @@
+package edu.sbs.cs.service;
+
+import edu.sbs.cs.database.MutationJournal;
+import edu.sbs.cs.model.*;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * 批量变更的工作单元。
+ * 先登记一组操作 (批量创建任务、批量更新状态、批量分配、批量添加成员)，
+ * commit() 时依次应用到内存，再在一个数据库事务中用 JDBC 批处理写入；
+ * 任一步失败时回滚数据库事务，并按相反顺序撤销内存中的修改。
+ */
+public class UnitOfWork {
+    // 单个操作：应用到内存，并能撤销
+    private interface Operation {
+        boolean requiresAdmin();
+        boolean apply();
+        void undo();
+        // 提交成功后生成该操作对应的事件
+        void addEvents(List<TaskEvent> events);
+    }
+
+    private final DataManager dataManager;
+    private final List<Operation> operations = new ArrayList<>();
+    private boolean finished;
+    // 登记创建任务时分配ID失败，提交时整个工作单元失败
+    private boolean idAllocationFailed;
+
+    // 提交时收集的数据库写入
+    private final List<TaskItem> createdTasks = new ArrayList<>();
+    private final List<TaskItem> statusUpdates = new ArrayList<>();
+    private final Map<String, String> assignments = new LinkedHashMap<>();
+    private final List<String[]> memberAdditions = new ArrayList<>();
+
+    private int appliedCount;
+    private long elapsedNanos;
+
+    UnitOfWork(DataManager dataManager) {
+        this.dataManager = dataManager;
+    }
+
+    // 登记操作
+    public String createFeatureTask(String projectId, String title, String description,
+                                    Priority priority, LocalDate dueDate, int storyPoints, String category) {
+        String taskId = dataManager.nextTaskId();
+        if (taskId == null) {
+            idAllocationFailed = true;
+            return null;
+        }
+        FeatureTask task = new FeatureTask(taskId, title, description, priority, dueDate, storyPoints, category);
+        operations.add(new CreateTaskOperation(task, projectId));
+        return taskId;
+    }
+
+    public String createBugReport(String projectId, String title, String description,
+                                  Priority priority, LocalDate dueDate, Severity severity,
+                                  String steps, String environment) {
+        String taskId = dataManager.nextTaskId();
+        if (taskId == null) {
+            idAllocationFailed = true;
+            return null;
+        }
+        BugReport task = new BugReport(taskId, title, description, priority, dueDate, severity, steps, environment);
+        operations.add(new CreateTaskOperation(task, projectId));
+        return taskId;
+    }
+
+    public UnitOfWork updateTaskStatus(String taskId, TaskStatus status, double progress) {
+        operations.add(new StatusOperation(taskId, status, progress));
+        return this;
+    }
+
+    public UnitOfWork assignTask(String taskId, String memberId) {
+        operations.add(new AssignOperation(taskId, memberId));
+        return this;
+    }
+
+    public UnitOfWork addMemberToProject(String projectId, String memberId) {
+        operations.add(new AddMemberOperation(projectId, memberId));
+        return this;
+    }
+
+    public int size() {
+        return operations.size();
+    }
+
+    /**
+     * 原子地提交所有操作。
+     *
+     * 应用、写入和撤销都在 DataManager 的写锁内进行，复制快照和服务器请求看不到提交到一半的状态。
+     *
+     * @return 全部成功返回 true；任一操作无效或数据库写入失败时全部回滚并返回 false
+     */
+    public boolean commit() {
+        Lock writeLock = dataManager.getDataLock().writeLock();
+        writeLock.lock();
+        try {
+            return applyAndWrite();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private boolean applyAndWrite() {
+        if (finished) {
+            throw new IllegalStateException("工作单元已提交，不能重复使用");
+        }
+        finished = true;
+        if (idAllocationFailed) {
+            System.err.println("批量操作中有任务未能分配ID，工作单元未提交");
+            return false;
+        }
+        long start = System.nanoTime();
+
+        Deque<Operation> applied = new ArrayDeque<>();
+        boolean success = true;
+        for (Operation operation : operations) {
+            boolean ok;
+            try {
+                ok = (!operation.requiresAdmin() || dataManager.isAdminLoggedIn()) && operation.apply();
+            } catch (RuntimeException e) {
+                // 各操作在 apply 中先完成查找和校验再修改内存，抛出异常的操作本身不需要撤销
+                System.err.println("批量操作执行异常，已回滚: " + e);
+                ok = false;
+            }
+            if (!ok) {
+                success = false;
+                break;
+            }
+            applied.push(operation);
+        }
+
+        if (success && dataManager.getJournal() != null) {
+            // 变更日志模式：所有记录追加后只等待一次落盘
+            try {
+                dataManager.getJournal().awaitDurable(appendToJournal(dataManager.getJournal()));
+            } catch (IOException e) {
+                System.err.println("批量写入变更日志失败，已回滚: " + e.getMessage());
+                success = false;
+            }
+        } else if (success && dataManager.isDatabaseEnabled()) {
+            try {
+                dataManager.getDatabaseManager().runInTransaction(() -> {
+                    dataManager.getDatabaseManager().saveTasksBatch(createdTasks, dataManager.getTaskProjectIds());
+                    dataManager.getDatabaseManager().updateTaskStatusBatch(statusUpdates);
+                    dataManager.getDatabaseManager().writeAssignmentsBatch(assignments);
+                    dataManager.getDatabaseManager().addProjectMembersBatch(memberAdditions);
+                });
+            } catch (SQLException | RuntimeException e) {
+                System.err.println("批量提交到数据库失败，已回滚: " + e.getMessage());
+                success = false;
+            }
+        }
+
+        if (success && dataManager.getReplicationPrimary() != null) {
+            replicate(dataManager.getReplicationPrimary());
+        }
+        if (success) {
+            // 版本历史和进度计划只反映提交成功的最终状态
+            createdTasks.forEach(dataManager::recordHistory);
+            statusUpdates.forEach(dataManager::recordHistory);
+            createdTasks.forEach(dataManager::scheduleTaskChanged);
+            statusUpdates.forEach(dataManager::scheduleTaskChanged);
+        }
+
+        if (!success) {
+            while (!applied.isEmpty()) {
+                applied.pop().undo();
+            }
+        } else if (dataManager.getEventPublisher().hasSubscribers()) {
+            // 整个工作单元作为一批事件发布
+            List<TaskEvent> events = new ArrayList<>(operations.size());
+            for (Operation operation : operations) {
+                operation.addEvents(events);
+            }
+            dataManager.getEventPublisher().publish(events);
+        }
+
+        appliedCount = success ? operations.size() : 0;
+        elapsedNanos = System.nanoTime() - start;
+        if (success && appliedCount >= 1000) {
+            System.out.printf("批量提交完成: %d 项, 耗时 %.1f ms, 吞吐量 %.0f 项/秒%n",
+                    appliedCount, elapsedNanos / 1_000_000.0, getOperationsPerSecond());
+        }
+        return success;
+    }
+
+    // 按数据库批处理相同的顺序追加日志记录，返回最后一条记录的序号
+    private long appendToJournal(MutationJournal journal) {
+        long lsn = 0;
+        for (TaskItem task : createdTasks) {
+            lsn = journal.appendTaskCreated(task, dataManager.getTaskProjectIds().get(task.getTaskId()));
+        }
+        for (TaskItem task : statusUpdates) {
+            lsn = journal.appendTaskState(task.getTaskId(), task.getState());
+        }
+        for (Map.Entry<String, String> entry : assignments.entrySet()) {
+            lsn = journal.appendTaskAssigned(entry.getKey(), entry.getValue());
+        }
+        for (String[] pair : memberAdditions) {
+            lsn = journal.appendMemberAdded(pair[0], pair[1]);
+        }
+        return lsn;
+    }
+
+    // 与日志记录相同的顺序推送给只读副本
+    private void replicate(ReplicationPrimary replication) {
+        for (TaskItem task : createdTasks) {
+            replication.taskCreated(task, dataManager.getTaskProjectIds().get(task.getTaskId()));
+        }
+        for (TaskItem task : statusUpdates) {
+            replication.taskState(task.getTaskId(), task.getState());
+        }
+        for (Map.Entry<String, String> entry : assignments.entrySet()) {
+            replication.taskAssigned(entry.getKey(), entry.getValue());
+        }
+        for (String[] pair : memberAdditions) {
+            replication.memberAdded(pair[0], pair[1]);
+        }
+    }
+
+    public int getAppliedCount() { return appliedCount; }
+    public long getElapsedNanos() { return elapsedNanos; }
+
+    public double getOperationsPerSecond() {
+        return elapsedNanos == 0 ? 0.0 : appliedCount * 1_000_000_000.0 / elapsedNanos;
+    }
+
+    // 具体操作实现
+    private class CreateTaskOperation implements Operation {
+        private final TaskItem task;
+        private final String projectId;
+        private Project project;
+        // 创建时的快照，同一工作单元中之后的分配和状态更新各自有事件
+        private TaskEvent.TaskCreated event;
+
+        CreateTaskOperation(TaskItem task, String projectId) {
+            this.task = task;
+            this.projectId = projectId;
+        }
+
+        @Override
+        public boolean requiresAdmin() { return true; }
+
+        @Override
+        public boolean apply() {
+            project = dataManager.getProjects().get(projectId);
+            if (project == null || dataManager.getTasks().containsKey(task.getTaskId())) return false;
+
+            dataManager.getTasks().put(task.getTaskId(), task);
+            dataManager.getTaskProjectIds().put(task.getTaskId(), projectId);
+            project.addTask(task);
+            dataManager.getTaskCounters().add(projectId, task);
+            dataManager.markProjectDirty(projectId);
+            createdTasks.add(task);
+            if (dataManager.getEventPublisher().hasSubscribers()) {
+                event = new TaskEvent.TaskCreated(task, projectId);
+            }
+            return true;
+        }
+
+        @Override
+        public void undo() {
+            dataManager.getTasks().remove(task.getTaskId());
+            dataManager.getTaskProjectIds().remove(task.getTaskId());
+            // 撤销按相反顺序进行，该任务一定是项目任务列表中的最后一个
+            project.getTasks().remove(project.getTasks().size() - 1);
+            dataManager.getTaskCounters().remove(projectId, task);
+            dataManager.markProjectDirty(projectId);
+            createdTasks.remove(createdTasks.size() - 1);
+        }
+
+        @Override
+        public void addEvents(List<TaskEvent> events) {
+            if (event != null) {
+                events.add(event);
+            }
+        }
+    }
+
+    private class StatusOperation implements Operation {
+        private final String taskId;
+        private final TaskStatus status;
+        private final double progress;
+        private TaskItem task;
+        private long oldState;
+        private long newState;
+
+        StatusOperation(String taskId, TaskStatus status, double progress) {
+            this.taskId = taskId;
+            this.status = status;
+            this.progress = progress;
+        }
+
+        @Override
+        public boolean requiresAdmin() { return false; }
+
+        @Override
+        public boolean apply() {
+            task = dataManager.getTasks().get(taskId);
+            if (task == null) return false;
+
+            oldState = task.getState();
+            newState = task.updateState(status, progress);
+            dataManager.getTaskCounters().statusChanged(dataManager.getTaskProjectIds().get(taskId), task,
+                    TaskItem.statusOf(oldState));
+            dataManager.markProjectDirty(dataManager.getTaskProjectIds().get(taskId));
+            statusUpdates.add(task);
+            return true;
+        }
+
+        @Override
+        public void undo() {
+            // 恢复完整的原状态字 (包括版本号)，撤销后版本号与提交前相同
+            task.restoreState(oldState);
+            dataManager.getTaskCounters().statusChanged(dataManager.getTaskProjectIds().get(taskId), task,
+                    TaskItem.statusOf(newState));
+            dataManager.markProjectDirty(dataManager.getTaskProjectIds().get(taskId));
+            statusUpdates.remove(statusUpdates.size() - 1);
+        }
+
+        @Override
+        public void addEvents(List<TaskEvent> events) {
+            DataManager.addStateChangeEvents(events, taskId, dataManager.getTaskProjectIds().get(taskId),
+                    oldState, newState);
+        }
+    }
+
+    private class AssignOperation implements Operation {
+        private final String taskId;
+        private final String memberId;
+        private TaskItem task;
+        private TeamMember member;
+        private TeamMember oldAssignee;
+        private Map<TeamMember, List<TaskItem>> assignment;
+        // 任务在原负责人列表中的位置 (不在列表中为 -1)，撤销时放回原处
+        private int oldIndex = -1;
+        private boolean listCreated;
+        private boolean addedToList;
+        private String oldPlanned;
+
+        AssignOperation(String taskId, String memberId) {
+            this.taskId = taskId;
+            this.memberId = memberId;
+        }
+
+        @Override
+        public boolean requiresAdmin() { return true; }
+
+        @Override
+        public boolean apply() {
+            task = dataManager.getTasks().get(taskId);
+            member = dataManager.getMembers().get(memberId);
+            if (task == null || member == null) return false;
+
+            oldAssignee = task.getAssignedTo();
+            Project project = dataManager.getProjects().get(dataManager.getTaskProjectIds().get(taskId));
+            if (project != null) {
+                // 从原负责人的列表移到新负责人的列表
+                assignment = dataManager.getTaskAssignments().get(project);
+                List<TaskItem> oldList = oldAssignee == null ? null : assignment.get(oldAssignee);
+                oldIndex = oldList == null ? -1 : oldList.indexOf(task);
+                if (oldIndex >= 0) {
+                    oldList.remove(oldIndex);
+                }
+                listCreated = !assignment.containsKey(member);
+                List<TaskItem> newList = assignment.computeIfAbsent(member, m -> new ArrayList<>());
+                addedToList = !newList.contains(task);
+                if (addedToList) {
+                    newList.add(task);
+                }
+            }
+
+            task.setAssignedTo(member);
+            dataManager.getTaskCounters().assigneeChanged(dataManager.getTaskProjectIds().get(taskId), task, oldAssignee);
+            oldPlanned = assignments.put(taskId, memberId);
+            return true;
+        }
+
+        @Override
+        public void undo() {
+            TeamMember undone = task.getAssignedTo();
+            task.setAssignedTo(oldAssignee);
+            dataManager.getTaskCounters().assigneeChanged(dataManager.getTaskProjectIds().get(taskId), task, undone);
+            dataManager.markProjectDirty(dataManager.getTaskProjectIds().get(taskId));
+            if (assignment != null) {
+                if (addedToList) {
+                    List<TaskItem> newList = assignment.get(member);
+                    newList.remove(newList.size() - 1);
+                }
+                if (listCreated) {
+                    assignment.remove(member);
+                }
+                if (oldIndex >= 0) {
+                    assignment.get(oldAssignee).add(oldIndex, task);
+                }
+            }
+            if (oldPlanned != null) {
+                assignments.put(taskId, oldPlanned);
+            } else {
+                assignments.remove(taskId);
+            }
+        }
+
+        @Override
+        public void addEvents(List<TaskEvent> events) {
+            events.add(new TaskEvent.Assigned(taskId, dataManager.getTaskProjectIds().get(taskId), memberId,
+                    oldAssignee == null ? null : oldAssignee.getMemberId()));
+        }
+    }
+
+    private class AddMemberOperation implements Operation {
+        private final String projectId;
+        private final String memberId;
+        private Project project;
+        private TeamMember member;
+        private boolean memberAdded;
+        private boolean assignmentCreated;
+
+        AddMemberOperation(String projectId, String memberId) {
+            this.projectId = projectId;
+            this.memberId = memberId;
+        }
+
+        @Override
+        public boolean requiresAdmin() { return true; }
+
+        @Override
+        public boolean apply() {
+            project = dataManager.getProjects().get(projectId);
+            member = dataManager.getMembers().get(memberId);
+            if (project == null || member == null) return false;
+
+            Map<TeamMember, List<TaskItem>> assignment = dataManager.getTaskAssignments().get(project);
+            memberAdded = !project.getMembers().contains(member);
+            project.addMember(member);
+            assignmentCreated = assignment.putIfAbsent(member, new ArrayList<>()) == null;
+            memberAdditions.add(new String[]{projectId, memberId});
+            return true;
+        }
+
+        @Override
+        public void undo() {
+            if (memberAdded) {
+                project.removeMember(member);
+            }
+            if (assignmentCreated) {
+                dataManager.getTaskAssignments().get(project).remove(member);
+            }
+            dataManager.markProjectDirty(projectId);
+            memberAdditions.remove(memberAdditions.size() - 1);
+        }
+
+        @Override
+        public void addEvents(List<TaskEvent> events) {
+            if (memberAdded) {
+                events.add(new TaskEvent.MemberAdded(projectId, memberId));
+            }
+        }
+    }
+}
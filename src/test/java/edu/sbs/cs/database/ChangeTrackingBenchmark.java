@@ -0,0 +1,101 @@
+package edu.sbs.cs.database;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.*;
+import java.util.Arrays;
+
+/**
+ * 变更跟踪触发器 (见 ChangeTracking) 在 SQLite 上的开销：同样的任务表，一个不带触发器，一个带触发器，
+ * 分别批量插入和修改 N 行 (默认 100000，每个事务 1000 行)，输出每行耗时的中位数。
+ * 带触发器时每次插入和修改额外执行计数器的 UPDATE 和写回 change_seq 的 UPDATE。
+ * 数据库建在指定目录下 (默认新建一个临时目录)，每轮重新建库。
+ *
+ * 用法: java -cp target/classes:target/test-classes edu.sbs.cs.database.ChangeTrackingBenchmark
+ *       [行数] [轮数] [目录]
+ */
+public class ChangeTrackingBenchmark {
+    private static final int ROWS_PER_TRANSACTION = 1000;
+
+    public static void main(String[] args) throws Exception {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        Path directory = args.length > 2 ? Paths.get(args[2]) : Files.createTempDirectory("bench-change-tracking");
+        Files.createDirectories(directory);
+
+        double[][] plain = new double[2][rounds];
+        double[][] tracked = new double[2][rounds];
+        for (int round = 0; round < rounds; round++) {
+            measure(directory.resolve("plain.db"), false, rows, plain, round);
+            measure(directory.resolve("tracked.db"), true, rows, tracked, round);
+        }
+        for (int operation = 0; operation < 2; operation++) {
+            double base = median(plain[operation]);
+            double withTriggers = median(tracked[operation]);
+            System.out.printf("%s %d 行: 无触发器 %.2f us/行, 有触发器 %.2f us/行, 增加 %.2f us/行 (%.0f%%)%n",
+                    operation == 0 ? "插入" : "修改", rows, base, withTriggers, withTriggers - base,
+                    (withTriggers - base) / base * 100);
+        }
+    }
+
+    // 重新建库，插入 rows 行后逐行修改一次，结果写入 results[操作][round] (微秒/行)
+    private static void measure(Path file, boolean track, int rows, double[][] results, int round) throws Exception {
+        Files.deleteIfExists(file);
+        try (Connection connection = DriverManager.getConnection("jdbc:sqlite:" + file)) {
+            try (Statement stmt = connection.createStatement()) {
+                stmt.execute("CREATE TABLE tasks (task_id TEXT PRIMARY KEY, project_id TEXT, title TEXT, " +
+                        "description TEXT, status TEXT, priority TEXT, progress INTEGER, due_day INTEGER)");
+            }
+            if (track) {
+                ChangeTracking.install(connection, "tasks");
+            }
+
+            long start = System.nanoTime();
+            try (PreparedStatement insert = connection.prepareStatement("INSERT INTO tasks (task_id, project_id, " +
+                    "title, description, status, priority, progress, due_day) VALUES (?, ?, ?, '', 'TODO', 'MEDIUM', 0, ?)")) {
+                runBatches(connection, insert, rows, i -> {
+                    insert.setString(1, "T" + i);
+                    insert.setString(2, "P" + (i % 100));
+                    insert.setString(3, "任务" + i);
+                    insert.setInt(4, 20_000 + i % 365);
+                });
+            }
+            results[0][round] = (System.nanoTime() - start) / 1000.0 / rows;
+
+            start = System.nanoTime();
+            try (PreparedStatement update = connection.prepareStatement(
+                    "UPDATE tasks SET status = 'IN_PROGRESS', progress = ? WHERE task_id = ?")) {
+                runBatches(connection, update, rows, i -> {
+                    update.setInt(1, i % 100);
+                    update.setString(2, "T" + i);
+                });
+            }
+            results[1][round] = (System.nanoTime() - start) / 1000.0 / rows;
+        }
+    }
+
+    private interface RowBinder {
+        void bind(int row) throws SQLException;
+    }
+
+    private static void runBatches(Connection connection, PreparedStatement statement, int rows, RowBinder binder)
+            throws SQLException {
+        connection.setAutoCommit(false);
+        for (int i = 0; i < rows; i++) {
+            binder.bind(i);
+            statement.addBatch();
+            if ((i + 1) % ROWS_PER_TRANSACTION == 0 || i == rows - 1) {
+                statement.executeBatch();
+                connection.commit();
+            }
+        }
+        connection.setAutoCommit(true);
+    }
+
+    private static double median(double[] values) {
+        double[] sorted = values.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+}
@@ -0,0 +1,157 @@
+package edu.sbs.cs.database;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.file.Path;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * IdAllocator 的编号段补充、与 nextId 并发的 advancePast，以及ID前缀的解析。
+ */
+class IdAllocatorTest {
+    @TempDir
+    Path directory;
+
+    @AfterEach
+    void clearDataDirectory() {
+        TestDataDirectory.clear();
+    }
+
+    // 内存中的序列，记录预留次数；failNext 为 true 时下一次预留失败
+    private static final class CountingSource implements IdAllocator.BlockSource {
+        private final AtomicLong next = new AtomicLong(1);
+        private final AtomicInteger reservations = new AtomicInteger();
+        private volatile boolean failNext;
+
+        @Override
+        public long reserve(int size) throws SQLException {
+            if (failNext) {
+                failNext = false;
+                throw new SQLException("预留失败");
+            }
+            reservations.incrementAndGet();
+            return next.getAndAdd(size);
+        }
+
+        @Override
+        public void advancePast(long value) {
+            next.accumulateAndGet(value + 1, Math::max);
+        }
+    }
+
+    @Test
+    void refillsOneBlockAtATime() {
+        CountingSource source = new CountingSource();
+        IdAllocator allocator = new IdAllocator("T", 3, source);
+
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < 7; i++) {
+            ids.add(allocator.nextId());
+        }
+        assertEquals(List.of("T001", "T002", "T003", "T004", "T005", "T006", "T007"), ids);
+        assertEquals(3, source.reservations.get());
+
+        // 共用一个序列的两个分配器 (两个进程) 分到不重叠的编号段
+        IdAllocator other = new IdAllocator("T", 3, source);
+        assertEquals("T010", other.nextId());
+        assertEquals("T008", allocator.nextId());
+        assertEquals("T009", allocator.nextId());
+        assertEquals("T013", allocator.nextId());
+        assertEquals("T011", other.nextId());
+    }
+
+    @Test
+    void failedRefillThrowsAndLaterSucceeds() {
+        CountingSource source = new CountingSource();
+        IdAllocator allocator = new IdAllocator("T", 2, source);
+        source.failNext = true;
+
+        assertThrows(IllegalStateException.class, allocator::nextId);
+        assertEquals("T001", allocator.nextId());
+    }
+
+    @Test
+    void advancePastConcurrentWithNextIdNeverReusesOrGoesBack() throws Exception {
+        int threads = 6;
+        for (int round = 0; round < 20; round++) {
+            IdAllocator allocator = new IdAllocator("T", 50, new CountingSource());
+            AtomicLong advanced = new AtomicLong();
+            Set<Long> issued = ConcurrentHashMap.newKeySet();
+            ExecutorService executor = Executors.newFixedThreadPool(threads + 1);
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < 5000; i++) {
+                        // 在 advancePast 返回之后取得的编号必须大于推进到的值
+                        long floor = advanced.get();
+                        long value = IdAllocator.parseNumber(allocator.nextId());
+                        assertTrue(value > floor, value + " <= " + floor);
+                        assertTrue(issued.add(value), "重复的编号 " + value);
+                    }
+                    return null;
+                }));
+            }
+            futures.add(executor.submit(() -> {
+                start.await();
+                for (int i = 1; i <= 200; i++) {
+                    long value = i * 100L + ThreadLocalRandom.current().nextInt(100);
+                    allocator.advancePast(value);
+                    advanced.accumulateAndGet(value, Math::max);
+                }
+                return null;
+            }));
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get(30, TimeUnit.SECONDS);
+            }
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void parsesTheNumberAfterThePrefix() {
+        assertEquals(42, IdAllocator.parseNumber("T042"));
+        assertEquals(1000, IdAllocator.parseNumber("T1000"));
+        assertEquals(0, IdAllocator.parseNumber("T"));
+        assertEquals(0, IdAllocator.parseNumber("T12a3"));
+        assertEquals(7, IdAllocator.parseNumber("PRJ007"));
+    }
+
+    @Test
+    void sequenceStartsAfterTheLargestIdWithThePrefix() throws Exception {
+        TestDataDirectory.use(directory);
+        DatabaseManager databaseManager = new DatabaseManager();
+        try {
+            try (PreparedStatement insert = databaseManager.getConnection().prepareStatement(
+                    "INSERT INTO members (member_id, name, role, email, password) VALUES (?, 'x', 'USER', ?, 'x')")) {
+                // 没有该前缀的ID (其他方式创建的账号) 不参与计算
+                for (String id : new String[]{"M007", "M012", "MX99", "ADMIN500", "999"}) {
+                    insert.setString(1, id);
+                    insert.setString(2, id + "@test.com");
+                    insert.executeUpdate();
+                }
+            }
+            IdAllocator.BlockSource source = databaseManager.sequenceSource("members", "members", "member_id", "M");
+            assertEquals(13, source.reserve(10));
+            assertEquals(23, source.reserve(10));
+            source.advancePast(100);
+            assertEquals(101, source.reserve(10));
+
+            IdAllocator allocator = new IdAllocator("PRJ", 10,
+                    databaseManager.sequenceSource("projects", "projects", "project_id", "PRJ"));
+            assertEquals("PRJ001", allocator.nextId());
+        } finally {
+            databaseManager.close();
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package edu.sbs.cs.database;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import edu.sbs.cs.model.*;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+import java.util.*;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * 变更日志：重启后按顺序回放记录，截掉进程退出时写了一半的末尾记录；
+ * 检查点把已封存的日志段合并写入数据库、推进检查点序号并删除这些日志段。
+ */
+class MutationJournalTest {
+    @TempDir
+    Path directory;
+
+    private Path journalDirectory;
+    private final List<AutoCloseable> opened = new ArrayList<>();
+
+    @BeforeEach
+    void useTemporaryDirectory() {
+        TestDataDirectory.use(directory);
+        journalDirectory = directory.resolve("journal");
+    }
+
+    @AfterEach
+    void closeAll() throws Exception {
+        Collections.reverse(opened);
+        for (AutoCloseable closeable : opened) {
+            closeable.close();
+        }
+        TestDataDirectory.clear();
+    }
+
+    private MutationJournal open(long checkpointLsn) throws IOException {
+        MutationJournal journal = new MutationJournal(journalDirectory, checkpointLsn);
+        opened.add(journal);
+        return journal;
+    }
+
+    // 把每条记录记为 "序号 类型 内容"
+    private static final class Recorder implements MutationJournal.RecordHandler {
+        final List<String> records = new ArrayList<>();
+
+        @Override
+        public void taskCreated(long lsn, TaskItem task, String projectId, String assigneeId) {
+            records.add(lsn + " created " + task.getTaskId() + " " + projectId + " " + assigneeId);
+        }
+
+        @Override
+        public void taskState(long lsn, String taskId, long state) {
+            records.add(lsn + " state " + taskId + " " + TaskItem.statusOf(state) + " " + TaskItem.progressOf(state));
+        }
+
+        @Override
+        public void taskAssigned(long lsn, String taskId, String memberId) {
+            records.add(lsn + " assigned " + taskId + " " + memberId);
+        }
+
+        @Override
+        public void memberAdded(long lsn, String projectId, String memberId) {
+            records.add(lsn + " memberAdded " + projectId + " " + memberId);
+        }
+
+        @Override
+        public void memberSaved(long lsn, TeamMember member) {
+            records.add(lsn + " memberSaved " + member.getMemberId());
+        }
+
+        @Override
+        public void projectSaved(long lsn, Project project, List<String> memberIds) {
+            records.add(lsn + " projectSaved " + project.getProjectId() + " " + memberIds);
+        }
+
+        @Override
+        public void dependencyAdded(long lsn, String taskId, String blockedBy) {
+            records.add(lsn + " dependencyAdded " + taskId + " " + blockedBy);
+        }
+
+        @Override
+        public void dependencyRemoved(long lsn, String taskId, String blockedBy) {
+            records.add(lsn + " dependencyRemoved " + taskId + " " + blockedBy);
+        }
+    }
+
+    private List<Path> segments() throws IOException {
+        try (Stream<Path> files = Files.list(journalDirectory)) {
+            List<Path> segments = new ArrayList<>();
+            files.filter(p -> p.getFileName().toString().endsWith(".log")).sorted().forEach(segments::add);
+            return segments;
+        }
+    }
+
+    @Test
+    void reopenedJournalReplaysRecordsAndDropsTornTail() throws IOException {
+        MutationJournal journal = open(0);
+        TaskItem task = new FeatureTask("T001", "任务", "", Priority.MEDIUM, null, 3, "后端");
+        journal.appendTaskCreated(task, "P001");
+        task.updateState(TaskStatus.IN_PROGRESS, 40);
+        journal.appendTaskState("T001", task.getState());
+        journal.appendTaskAssigned("T001", "M001");
+        journal.awaitDurable(journal.appendDependencyAdded("T001", "T000"));
+        journal.close();
+
+        // 进程退出时最后一条记录只写了一部分
+        Path tail = segments().get(segments().size() - 1);
+        try (FileChannel channel = FileChannel.open(tail, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            channel.write(ByteBuffer.allocate(12).putInt(100).putLong(5).flip());
+        }
+
+        MutationJournal reopened = open(0);
+        long lsn = reopened.appendDependencyRemoved("T001", "T000");
+        assertEquals(5, lsn, "新记录接在最后一条完整记录之后");
+        reopened.awaitDurable(lsn);
+        Recorder recorder = new Recorder();
+        assertEquals(5, reopened.replay(0, recorder));
+        assertEquals(List.of(
+                "1 created T001 P001 null",
+                "2 state T001 IN_PROGRESS 40.0",
+                "3 assigned T001 M001",
+                "4 dependencyAdded T001 T000",
+                "5 dependencyRemoved T001 T000"), recorder.records);
+
+        // 只回放检查点之后的记录
+        Recorder afterCheckpoint = new Recorder();
+        reopened.replay(3, afterCheckpoint);
+        assertEquals(List.of("4 dependencyAdded T001 T000", "5 dependencyRemoved T001 T000"), afterCheckpoint.records);
+    }
+
+    @Test
+    void checkpointMergesSealedSegmentsIntoTheDatabase() throws IOException, SQLException {
+        DatabaseManager databaseManager = new DatabaseManager();
+        opened.add(databaseManager::close);
+        MutationJournal journal = open(databaseManager.readJournalCheckpoint());
+
+        TeamMember member = new TeamMember("M001", "成员", Role.USER, "m001@test.com", "x");
+        Project project = new Project("P001", "项目", "", null);
+        project.addMember(member);
+        TaskItem task = new FeatureTask("T001", "任务", "", Priority.MEDIUM, null, 3, "后端");
+        TaskItem blocker = new FeatureTask("T002", "前置任务", "", Priority.MEDIUM, null, 3, "后端");
+        journal.appendMemberSaved(member);
+        journal.appendProjectSaved(project);
+        journal.appendTaskCreated(task, "P001");
+        journal.appendTaskCreated(blocker, "P001");
+        journal.appendTaskAssigned("T001", "M001");
+        task.updateState(TaskStatus.IN_PROGRESS, 40);
+        journal.appendTaskState("T001", task.getState());
+        task.updateState(TaskStatus.IN_PROGRESS, 60);
+        journal.appendTaskState("T001", task.getState());
+        journal.appendDependencyAdded("T001", "T002");
+        journal.appendDependencyAdded("T002", "T001");
+        journal.awaitDurable(journal.appendDependencyRemoved("T002", "T001"));
+
+        assertEquals(10, databaseManager.checkpointJournal(journal));
+        assertEquals(10, databaseManager.readJournalCheckpoint());
+        assertEquals(1, segments().size(), "只留下当前日志段");
+        assertEquals(0, databaseManager.checkpointJournal(journal));
+
+        Map<String, TeamMember> members = new HashMap<>();
+        for (TeamMember loaded : databaseManager.loadAllMembers()) members.put(loaded.getMemberId(), loaded);
+        assertEquals(Set.of("M001"), members.keySet());
+        Map<String, TaskItem> tasks = new HashMap<>();
+        for (TaskItem loaded : databaseManager.loadAllTasks(members)) tasks.put(loaded.getTaskId(), loaded);
+        assertEquals(Set.of("T001", "T002"), tasks.keySet());
+        assertEquals(60.0, tasks.get("T001").getProgress());
+        assertEquals(task.getVersion(), tasks.get("T001").getVersion());
+        assertEquals("M001", tasks.get("T001").getAssignedTo().getMemberId());
+        List<String> dependencies = new ArrayList<>();
+        for (String[] dependency : databaseManager.loadTaskDependencies()) {
+            dependencies.add(dependency[0] + "<-" + dependency[1]);
+        }
+        assertEquals(List.of("T001<-T002"), dependencies);
+
+        // 重启时检查点之前的记录已在数据库中，不再回放
+        journal.close();
+        MutationJournal reopened = open(databaseManager.readJournalCheckpoint());
+        Recorder recorder = new Recorder();
+        assertEquals(10, reopened.replay(databaseManager.readJournalCheckpoint(), recorder));
+        assertEquals(List.of(), recorder.records);
+        assertEquals(11, reopened.appendTaskAssigned("T001", null));
+    }
+}
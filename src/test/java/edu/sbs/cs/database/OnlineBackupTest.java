@@ -0,0 +1,153 @@
+package edu.sbs.cs.database;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import edu.sbs.cs.model.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.*;
+import java.util.*;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * 在线增量备份：第一次完整复制，之后只复制变更 (包括删除)，每次备份都能通过校验；
+ * 备份中的行被改动时校验失败；把备份文件作为数据库打开得到与源库相同的数据 (分片的任务合并到一张表)。
+ */
+class OnlineBackupTest {
+    @TempDir
+    Path directory;
+
+    private final List<DatabaseManager> opened = new ArrayList<>();
+    private final Map<String, String> taskProjectIds = new HashMap<>();
+
+    @BeforeEach
+    void useTemporaryDirectory() {
+        TestDataDirectory.use(directory.resolve("data"));
+        System.setProperty("team.backup.pauseMs", "0");
+        System.setProperty("team.backup.batchRows", "3");
+    }
+
+    @AfterEach
+    void closeDatabases() {
+        for (DatabaseManager databaseManager : opened) {
+            databaseManager.close();
+        }
+        System.clearProperty("team.backup.pauseMs");
+        System.clearProperty("team.backup.batchRows");
+        System.clearProperty("team.db.shards");
+        TestDataDirectory.clear();
+    }
+
+    private DatabaseManager open() {
+        DatabaseManager databaseManager = new DatabaseManager();
+        databaseManager.setTaskProjectLookup(taskProjectIds::get);
+        opened.add(databaseManager);
+        return databaseManager;
+    }
+
+    @Test
+    void incrementalBackupsVerifyAndRestore() throws Exception {
+        backupAndRestore(open());
+    }
+
+    @Test
+    void shardedTasksRestoreIntoOneTable() throws Exception {
+        System.setProperty("team.db.shards", "2");
+        DatabaseManager databaseManager = open();
+        assertEquals(2, databaseManager.taskShardUrls().size());
+        backupAndRestore(databaseManager);
+    }
+
+    private void backupAndRestore(DatabaseManager databaseManager) throws Exception {
+        TeamMember member = new TeamMember("M001", "成员", Role.USER, "m001@test.com", "x");
+        databaseManager.saveMember(member);
+        List<TaskItem> tasks = new ArrayList<>();
+        for (String projectId : new String[]{"P001", "P002"}) {
+            Project project = new Project(projectId, "项目" + projectId, "", null);
+            project.addMember(member);
+            databaseManager.saveProject(project);
+            for (int i = 1; i <= 4; i++) {
+                TaskItem task = new FeatureTask(projectId + "-T" + i, "任务" + i, "", Priority.MEDIUM, null, i, "后端");
+                task.setAssignedTo(i % 2 == 0 ? member : null);
+                tasks.add(task);
+                taskProjectIds.put(task.getTaskId(), projectId);
+            }
+        }
+        databaseManager.runInTransaction(() -> databaseManager.saveTasksBatch(tasks, taskProjectIds));
+        databaseManager.saveTaskDependency("P001-T2", "P001-T1");
+        databaseManager.saveTaskDependency("P001-T3", "P001-T2");
+
+        Path backupFile = directory.resolve("backup").resolve("team.backup.db");
+        OnlineBackup backup = new OnlineBackup(databaseManager, backupFile);
+        long full = backup.run();
+        // 第一次完整复制: 成员、项目、项目成员、任务、依赖
+        assertEquals(1 + 2 + 2 + tasks.size() + 2, full);
+        assertTrue(backup.verify());
+        assertEquals(0, backup.run(), "没有变更时不复制");
+
+        // 修改、新增和删除 (归档删除任务及其依赖)
+        TaskItem changed = tasks.get(0);
+        changed.updateState(TaskStatus.IN_PROGRESS, 60);
+        databaseManager.updateTaskStatus(changed.getTaskId(), changed.getState());
+        databaseManager.assignTask("P002-T1", "M001");
+        databaseManager.saveMember(new TeamMember("M002", "新成员", Role.ADMIN, "m002@test.com", "y"));
+        databaseManager.deleteTaskDependency("P001-T3", "P001-T2");
+        databaseManager.archiveTasks(List.of("P001-T4", "P001-T2"), Map.of("P001", new double[]{2, 100}));
+
+        long incremental = backup.run();
+        assertTrue(incremental > 0 && incremental < full, "增量复制: " + incremental);
+        assertTrue(backup.verify());
+
+        // 改动备份副本中的一行，校验发现不一致
+        Path tampered = directory.resolve("backup").resolve("tampered.db");
+        Files.copy(backupFile, tampered);
+        try (Connection connection = DriverManager.getConnection("jdbc:sqlite:" + tampered);
+             Statement stmt = connection.createStatement()) {
+            assertEquals(1, stmt.executeUpdate("UPDATE tasks SET title = '被改动' WHERE task_id = 'P002-T3'"));
+        }
+        assertFalse(new OnlineBackup(databaseManager, tampered).verify());
+
+        // 恢复：备份文件作为新数据目录中的数据库打开
+        String expected = describe(databaseManager);
+        Path restoredDirectory = directory.resolve("restored");
+        Files.createDirectories(restoredDirectory);
+        Files.copy(backupFile, restoredDirectory.resolve("team_management.db"));
+        System.clearProperty("team.db.shards");
+        TestDataDirectory.use(restoredDirectory);
+        DatabaseManager restored = open();
+        assertTrue(restored.taskShardUrls().isEmpty());
+        assertEquals(expected, describe(restored));
+    }
+
+    // 成员、任务 (状态、负责人、所属项目)、依赖和归档汇总
+    private static String describe(DatabaseManager databaseManager) throws SQLException {
+        Map<String, TeamMember> members = new TreeMap<>();
+        for (TeamMember member : databaseManager.loadAllMembers()) {
+            members.put(member.getMemberId(), member);
+        }
+        StringBuilder sb = new StringBuilder();
+        for (TeamMember member : members.values()) {
+            sb.append(member.getMemberId()).append(' ').append(member.getRole()).append('\n');
+        }
+        Map<String, String> projectIds = new HashMap<>();
+        Map<String, String> tasks = new TreeMap<>();
+        for (TaskItem task : databaseManager.loadAllTasks(members, projectIds)) {
+            tasks.put(task.getTaskId(), task.getTitle() + " " + task.getState() + " "
+                    + (task.getAssignedTo() == null ? null : task.getAssignedTo().getMemberId())
+                    + " " + projectIds.get(task.getTaskId()));
+        }
+        tasks.forEach((taskId, row) -> sb.append(taskId).append(' ').append(row).append('\n'));
+        Set<String> dependencies = new TreeSet<>();
+        for (String[] dependency : databaseManager.loadTaskDependencies()) {
+            dependencies.add(dependency[0] + "<-" + dependency[1]);
+        }
+        sb.append(dependencies).append('\n');
+        for (Map.Entry<String, double[]> entry : new TreeMap<>(databaseManager.loadArchiveSummary()).entrySet()) {
+            sb.append(entry.getKey()).append(' ').append(Arrays.toString(entry.getValue())).append('\n');
+        }
+        return sb.toString();
+    }
+}
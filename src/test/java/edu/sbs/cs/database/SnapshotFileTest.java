@@ -0,0 +1,139 @@
+package edu.sbs.cs.database;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import edu.sbs.cs.model.*;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.*;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * 二进制快照：写入后读回相同的数据，内容损坏时读取失败；
+ * 快照涉及的表 (包括分片中的任务表) 有任何修改都会清除数据库中的标记，使快照过期。
+ */
+class SnapshotFileTest {
+    @TempDir
+    Path directory;
+
+    private final List<DatabaseManager> opened = new ArrayList<>();
+
+    @BeforeEach
+    void useTemporaryDirectory() {
+        TestDataDirectory.use(directory);
+    }
+
+    @AfterEach
+    void closeDatabases() {
+        for (DatabaseManager databaseManager : opened) {
+            databaseManager.close();
+        }
+        System.clearProperty("team.db.shards");
+        TestDataDirectory.clear();
+    }
+
+    private DatabaseManager open() {
+        DatabaseManager databaseManager = new DatabaseManager();
+        databaseManager.setTaskProjectLookup(taskId -> "P001");
+        opened.add(databaseManager);
+        return databaseManager;
+    }
+
+    @Test
+    void snapshotRoundTripsAndDetectsCorruption() throws IOException {
+        TeamMember member = new TeamMember("M001", "成员", Role.USER, "m001@test.com", "x");
+        Project project = new Project("P001", "项目", "说明", LocalDate.of(2026, 12, 31));
+        project.addMember(member);
+        TaskItem feature = new FeatureTask("T001", "功能", "", Priority.HIGH, LocalDate.of(2026, 11, 1), 5, "后端");
+        feature.setAssignedTo(member);
+        feature.updateState(TaskStatus.IN_PROGRESS, 30);
+        TaskItem bug = new BugReport("T002", "缺陷", "", Priority.LOW, null, Severity.HIGH, "步骤", "环境");
+        Path file = directory.resolve("data.snapshot");
+
+        SnapshotFile.write(file, 42, List.of(member), List.of(project), List.of(feature, bug),
+                Map.of("T001", "P001", "T002", "P001"), List.<String[]>of(new String[]{"T001", "T002"}));
+        assertEquals(42, SnapshotFile.readToken(file));
+
+        LoadedData data = SnapshotFile.read(file);
+        assertEquals(List.of("M001"), data.getMembers().stream().map(TeamMember::getMemberId).toList());
+        Project loadedProject = data.getProjects().get(0);
+        assertEquals(project.getDueDay(), loadedProject.getDueDay());
+        assertSame(data.getMembers().get(0), loadedProject.getMembers().get(0));
+        TaskItem loadedFeature = data.getTasks().get(0);
+        assertEquals(feature.getState(), loadedFeature.getState());
+        assertEquals(feature.getDueDay(), loadedFeature.getDueDay());
+        assertSame(data.getMembers().get(0), loadedFeature.getAssignedTo());
+        assertInstanceOf(BugReport.class, data.getTasks().get(1));
+        assertEquals(Map.of("T001", "P001", "T002", "P001"), data.getTaskProjectIds());
+        assertEquals(1, data.getDependencies().size());
+        assertArrayEquals(new String[]{"T001", "T002"}, data.getDependencies().get(0));
+
+        // 改动文件头之后的任意一个字节，校验和不一致
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer one = ByteBuffer.allocate(1);
+            channel.read(one, 40);
+            one.put(0, (byte) (one.get(0) ^ 0x5A)).rewind();
+            channel.write(one, 40);
+        }
+        assertThrows(IOException.class, () -> SnapshotFile.read(file));
+    }
+
+    @Test
+    void writesToSnapshotTablesClearTheMarker() throws SQLException {
+        DatabaseManager databaseManager = open();
+        TeamMember member = new TeamMember("M001", "成员", Role.USER, "m001@test.com", "x");
+        Project project = new Project("P001", "项目", "", null);
+        TaskItem task = new FeatureTask("T001", "功能", "", Priority.MEDIUM, null, 3, "后端");
+        TaskItem blocker = new FeatureTask("T002", "前置", "", Priority.MEDIUM, null, 3, "后端");
+
+        Map<String, DatabaseManager.SqlWork> writes = new LinkedHashMap<>();
+        writes.put("members", () -> databaseManager.saveMember(member));
+        writes.put("projects", () -> databaseManager.saveProject(project));
+        writes.put("tasks 插入", () -> databaseManager.saveTasksBatch(List.of(task, blocker),
+                Map.of("T001", "P001", "T002", "P001")));
+        writes.put("project_members", () -> databaseManager.addProjectMembersBatch(
+                List.<String[]>of(new String[]{"P001", "M001"})));
+        writes.put("tasks 修改", () -> {
+            task.updateState(TaskStatus.IN_PROGRESS, 50);
+            databaseManager.updateTaskStatus("T001", task.getState());
+        });
+        writes.put("task_dependencies 插入", () -> databaseManager.saveTaskDependency("T001", "T002"));
+        writes.put("task_dependencies 删除", () -> databaseManager.deleteTaskDependency("T001", "T002"));
+        assertMarkerClearedBy(databaseManager, writes);
+    }
+
+    @Test
+    void writesToTaskShardsClearTheMarker() throws SQLException {
+        System.setProperty("team.db.shards", "2");
+        DatabaseManager databaseManager = open();
+        assertEquals(2, databaseManager.taskShardUrls().size());
+        databaseManager.saveMember(new TeamMember("M001", "成员", Role.USER, "m001@test.com", "x"));
+        databaseManager.saveProject(new Project("P001", "项目", "", null));
+        TaskItem task = new FeatureTask("T001", "功能", "", Priority.MEDIUM, null, 3, "后端");
+
+        Map<String, DatabaseManager.SqlWork> writes = new LinkedHashMap<>();
+        writes.put("分片任务插入", () -> databaseManager.runInTransaction(
+                () -> databaseManager.saveTasksBatch(List.of(task), Map.of("T001", "P001"))));
+        writes.put("分片任务分配", () -> databaseManager.assignTask("T001", "M001"));
+        assertMarkerClearedBy(databaseManager, writes);
+    }
+
+    private static void assertMarkerClearedBy(DatabaseManager databaseManager,
+                                              Map<String, DatabaseManager.SqlWork> writes) throws SQLException {
+        long token = 1;
+        for (Map.Entry<String, DatabaseManager.SqlWork> write : writes.entrySet()) {
+            databaseManager.writeSnapshotToken(++token);
+            assertEquals(token, databaseManager.readSnapshotToken());
+            write.getValue().execute();
+            assertEquals(0, databaseManager.readSnapshotToken(), write.getKey());
+        }
+    }
+}
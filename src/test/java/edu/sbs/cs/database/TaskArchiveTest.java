@@ -0,0 +1,56 @@
+package edu.sbs.cs.database;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import edu.sbs.cs.model.*;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * 归档分段：写出的任务按归档顺序 (同一毫秒内按序号) 原样扫描回来，写了一半的临时文件不参与扫描。
+ */
+class TaskArchiveTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    void segmentsScanBackInArchiveOrder() throws IOException {
+        TaskArchive archive = new TaskArchive(directory);
+        TeamMember member = new TeamMember("M001", "成员", Role.USER, "m001@test.com", "x");
+        TaskItem feature = new FeatureTask("T001", "功能", "描述", Priority.HIGH, LocalDate.of(2026, 1, 5), 5, "后端");
+        feature.setAssignedTo(member);
+        feature.updateState(TaskStatus.COMPLETED, 100);
+        TaskItem bug = new BugReport("T002", "缺陷", "", Priority.LOW, LocalDate.of(2026, 2, 1), Severity.BLOCKER,
+                "步骤", "环境");
+        bug.updateState(TaskStatus.COMPLETED, 100);
+        TaskItem later = new FeatureTask("T003", "后归档", "", Priority.MEDIUM, null, 1, "前端");
+
+        // 同一毫秒内写出的两个分段 (第二个带序号)
+        Path first = archive.writeSegment(List.of(feature, bug), Map.of("T001", "P001", "T002", "P002"));
+        Files.move(first, directory.resolve("archive-1700000000000.seg.gz"));
+        Path second = archive.writeSegment(List.of(later), Map.of("T003", "P001"));
+        Files.move(second, directory.resolve("archive-1700000000000-1.seg.gz"));
+        Files.write(directory.resolve("archive-99999999999999.seg.gz.tmp"), new byte[]{1, 2, 3});
+
+        List<String> scanned = new ArrayList<>();
+        Map<String, TaskItem> tasks = new HashMap<>();
+        archive.scan((task, projectId, assigneeId) -> {
+            scanned.add(task.getTaskId() + " " + projectId + " " + assigneeId);
+            tasks.put(task.getTaskId(), task);
+        });
+        assertEquals(List.of("T001 P001 M001", "T002 P002 null", "T003 P001 null"), scanned);
+
+        TaskItem loaded = tasks.get("T001");
+        assertEquals("描述", loaded.getDescription());
+        assertEquals(feature.getState(), loaded.getState());
+        assertEquals(feature.getDueDay(), loaded.getDueDay());
+        assertEquals(5, loaded.getEffortPoints());
+        BugReport loadedBug = assertInstanceOf(BugReport.class, tasks.get("T002"));
+        assertEquals(Severity.BLOCKER, loadedBug.getSeverity());
+    }
+}
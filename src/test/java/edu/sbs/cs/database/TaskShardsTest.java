@@ -0,0 +1,194 @@
+package edu.sbs.cs.database;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import edu.sbs.cs.model.*;
+import java.nio.file.Path;
+import java.sql.*;
+import java.util.*;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * 分片存储：任务按项目写入对应的分片，按任务ID的更新路由到所在分片；
+ * 已有任务的数据库只通过 migrateTasksToShards 迁移，失败时主表保持不变。
+ */
+class TaskShardsTest {
+    private static final int SHARDS = 3;
+    private static final String[] PROJECTS = {"P1", "P2", "P3", "P4", "P5", "P6"};
+
+    @TempDir
+    Path directory;
+
+    private final List<DatabaseManager> opened = new ArrayList<>();
+    private final Map<String, String> taskProjectIds = new HashMap<>();
+
+    @BeforeEach
+    void useTemporaryDirectory() {
+        TestDataDirectory.use(directory);
+    }
+
+    @AfterEach
+    void closeDatabases() {
+        for (DatabaseManager databaseManager : opened) {
+            databaseManager.close();
+        }
+        System.clearProperty("team.db.shards");
+        TestDataDirectory.clear();
+    }
+
+    private DatabaseManager open(Integer shards) {
+        if (shards == null) {
+            System.clearProperty("team.db.shards");
+        } else {
+            System.setProperty("team.db.shards", shards.toString());
+        }
+        DatabaseManager databaseManager = new DatabaseManager();
+        databaseManager.setTaskProjectLookup(taskProjectIds::get);
+        opened.add(databaseManager);
+        return databaseManager;
+    }
+
+    // 每个项目两个任务，都分配给 M001
+    private List<TaskItem> populate(DatabaseManager databaseManager) throws SQLException {
+        TeamMember member = new TeamMember("M001", "成员", Role.USER, "m001@test.com", "x");
+        databaseManager.saveMember(member);
+        List<TaskItem> tasks = new ArrayList<>();
+        for (String projectId : PROJECTS) {
+            databaseManager.saveProject(new Project(projectId, projectId, "", null));
+            for (int i = 1; i <= 2; i++) {
+                TaskItem task = new FeatureTask(projectId + "-T" + i, "任务", "", Priority.MEDIUM, null, 3, "后端");
+                task.setAssignedTo(member);
+                tasks.add(task);
+                taskProjectIds.put(task.getTaskId(), projectId);
+            }
+        }
+        databaseManager.runInTransaction(() -> databaseManager.saveTasksBatch(tasks, taskProjectIds));
+        return tasks;
+    }
+
+    private static int shardOf(String projectId) {
+        return Math.floorMod(projectId.hashCode(), SHARDS);
+    }
+
+    // 分片文件中的 任务ID -> 列值
+    private static Map<String, String> readShard(String url, String column) throws SQLException {
+        Map<String, String> rows = new TreeMap<>();
+        try (Connection connection = DriverManager.getConnection(url);
+             Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT task_id, " + column + " FROM tasks")) {
+            while (rs.next()) {
+                rows.put(rs.getString(1), rs.getString(2));
+            }
+        }
+        return rows;
+    }
+
+    private static long mainTaskCount(DatabaseManager databaseManager) throws SQLException {
+        try (Statement stmt = databaseManager.getConnection().createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM tasks")) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+
+    private void assertRoutedByProject(DatabaseManager databaseManager) throws SQLException {
+        List<String> urls = databaseManager.taskShardUrls();
+        assertEquals(SHARDS, urls.size());
+        assertEquals(0, mainTaskCount(databaseManager));
+        for (int shard = 0; shard < SHARDS; shard++) {
+            Set<String> expected = new TreeSet<>();
+            for (Map.Entry<String, String> entry : taskProjectIds.entrySet()) {
+                if (shardOf(entry.getValue()) == shard) expected.add(entry.getKey());
+            }
+            assertEquals(expected, readShard(urls.get(shard), "project_id").keySet(), "分片 " + shard);
+        }
+    }
+
+    @Test
+    void tasksAndUpdatesGoToTheProjectsShard() throws SQLException {
+        DatabaseManager databaseManager = open(SHARDS);
+        List<TaskItem> tasks = populate(databaseManager);
+        assertRoutedByProject(databaseManager);
+
+        TaskItem task = tasks.get(0);
+        task.setProgress(40);
+        databaseManager.updateTaskStatus(task.getTaskId(), task.getState());
+        databaseManager.assignTask(tasks.get(1).getTaskId(), null);
+        // 查不到所属项目的任务在所有分片上执行，只有所在分片中的行受影响
+        taskProjectIds.remove(tasks.get(2).getTaskId());
+        databaseManager.assignTask(tasks.get(2).getTaskId(), null);
+
+        String url = databaseManager.taskShardUrls().get(shardOf("P1"));
+        assertEquals(40.0, Double.parseDouble(readShard(url, "progress").get(task.getTaskId())));
+        assertNull(readShard(url, "assigned_to").get(tasks.get(1).getTaskId()));
+        String other = databaseManager.taskShardUrls().get(shardOf("P2"));
+        assertNull(readShard(other, "assigned_to").get(tasks.get(2).getTaskId()));
+        assertEquals("M001", readShard(other, "assigned_to").get(tasks.get(3).getTaskId()));
+
+        Map<String, TeamMember> members = new HashMap<>();
+        for (TeamMember member : databaseManager.loadAllMembers()) members.put(member.getMemberId(), member);
+        assertEquals(tasks.size(), databaseManager.loadAllTasks(members).size());
+    }
+
+    @Test
+    void existingTasksMoveOnlyThroughExplicitMigration() throws SQLException {
+        DatabaseManager unsharded = open(null);
+        List<TaskItem> tasks = populate(unsharded);
+        unsharded.close();
+        opened.remove(unsharded);
+
+        // 只设置分片数不迁移，仍按未分片存储
+        DatabaseManager databaseManager = open(SHARDS);
+        assertTrue(databaseManager.taskShardUrls().isEmpty());
+        assertEquals(tasks.size(), mainTaskCount(databaseManager));
+
+        assertEquals(tasks.size(), databaseManager.migrateTasksToShards(SHARDS));
+        assertRoutedByProject(databaseManager);
+        assertThrows(SQLException.class, () -> databaseManager.migrateTasksToShards(SHARDS));
+        databaseManager.close();
+        opened.remove(databaseManager);
+
+        // 记录的分片数优先于系统属性
+        assertRoutedByProject(open(null));
+    }
+
+    @Test
+    void failedMigrationLeavesTheMainTableInPlace() throws SQLException {
+        DatabaseManager databaseManager = open(null);
+        List<TaskItem> tasks = populate(databaseManager);
+        // 让其中一个分片拒绝写入
+        try (Connection shard = DriverManager.getConnection(DatabaseManager.sqliteUrl("team_management.shard-1.db"));
+             Statement stmt = shard.createStatement()) {
+            stmt.execute("CREATE TABLE IF NOT EXISTS tasks (" + TaskShards.TASK_TABLE_COLUMNS + ")");
+            stmt.execute("CREATE TRIGGER fail_insert BEFORE INSERT ON tasks BEGIN SELECT RAISE(ABORT, 'forced failure'); END");
+        }
+
+        assertThrows(SQLException.class, () -> databaseManager.migrateTasksToShards(SHARDS));
+        assertTrue(databaseManager.taskShardUrls().isEmpty());
+        assertEquals(tasks.size(), mainTaskCount(databaseManager));
+
+        DatabaseManager reopened = open(null);
+        assertTrue(reopened.taskShardUrls().isEmpty());
+        assertEquals(tasks.size(), mainTaskCount(reopened));
+    }
+
+    @Test
+    void secondaryConnectionSharesTheShards() throws SQLException {
+        DatabaseManager databaseManager = open(SHARDS);
+        List<TaskItem> tasks = populate(databaseManager);
+
+        DatabaseManager secondary = databaseManager.openSecondary();
+        TaskItem task = tasks.get(0);
+        task.setProgress(70);
+        secondary.runInTransaction(() -> secondary.updateTaskStatesBatch(Map.of(task.getTaskId(), task.getState())));
+        secondary.close();
+
+        // 关闭第二个连接不影响本对象的分片
+        task.setProgress(80);
+        databaseManager.updateTaskStatus(task.getTaskId(), task.getState());
+        String url = databaseManager.taskShardUrls().get(shardOf("P1"));
+        assertEquals(80.0, Double.parseDouble(readShard(url, "progress").get(task.getTaskId())));
+    }
+}
@@ -0,0 +1,34 @@
+package edu.sbs.cs.database;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * 测试和基准测试使用的数据目录 (-Dteam.data.dir)，避免读写当前目录下的 database/team_management.db。
+ */
+public final class TestDataDirectory {
+    private TestDataDirectory() {
+    }
+
+    // 之后创建的 DatabaseManager / DataManager 使用 directory 下的数据库、日志、快照和归档
+    public static void use(Path directory) {
+        System.setProperty(DatabaseManager.DATA_DIR_PROPERTY, directory.toString());
+    }
+
+    public static void clear() {
+        System.clearProperty(DatabaseManager.DATA_DIR_PROPERTY);
+    }
+
+    /**
+     * 基准测试入口调用：没有用 -Dteam.data.dir 指定目录时使用一个新的临时目录，返回实际使用的目录。
+     */
+    public static Path useTemporaryUnlessSet(String prefix) throws IOException {
+        String configured = System.getProperty(DatabaseManager.DATA_DIR_PROPERTY);
+        if (configured != null) return Path.of(configured);
+        Path directory = Files.createTempDirectory(prefix);
+        use(directory);
+        System.out.println("数据目录: " + directory);
+        return directory;
+    }
+}
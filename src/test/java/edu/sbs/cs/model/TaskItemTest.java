@@ -0,0 +1,115 @@
+package edu.sbs.cs.model;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.jupiter.api.Test;
+
+/**
+ * 打包状态字 (状态 8 位、进度 16 位、版本号 40 位) 的边界值和乐观并发更新。
+ */
+class TaskItemTest {
+    private static final long MAX_VERSION = (1L << 40) - 1;
+
+    private static TaskItem newTask() {
+        return new FeatureTask("T1", "任务", "", Priority.MEDIUM, null, 3, "test");
+    }
+
+    @Test
+    void fullProgressAndEveryStatusRoundTrip() {
+        TaskItem task = newTask();
+        for (TaskStatus status : TaskStatus.values()) {
+            long state = task.updateState(status, 100.0);
+            assertEquals(status, TaskItem.statusOf(state));
+            assertEquals(100.0, TaskItem.progressOf(state));
+        }
+        // 超出范围的进度按 0 - 100 截断，0.01% 的精度保留
+        assertEquals(100.0, TaskItem.progressOf(task.updateState(TaskStatus.TODO, 250.0)));
+        assertEquals(0.0, TaskItem.progressOf(task.updateState(TaskStatus.TODO, -5.0)));
+        assertEquals(99.99, TaskItem.progressOf(task.updateState(TaskStatus.TODO, 99.99)));
+    }
+
+    @Test
+    void versionReachingBit63DoesNotDisturbOtherFields() {
+        TaskItem task = newTask();
+        task.restoreState(TaskStatus.IN_PROGRESS, 100.0, (1L << 39) - 1);
+        long state = task.updateState(TaskStatus.COMPLETED, 100.0);
+
+        // 版本号的最高位落在 bit 63，状态字为负数，解包仍按无符号处理
+        assertTrue(state < 0);
+        assertEquals(1L << 39, TaskItem.versionOf(state));
+        assertEquals(TaskStatus.COMPLETED, TaskItem.statusOf(state));
+        assertEquals(100.0, TaskItem.progressOf(state));
+
+        task.restoreState(TaskStatus.COMPLETED, 12.34, MAX_VERSION);
+        assertEquals(MAX_VERSION, task.getVersion());
+        assertEquals(TaskStatus.COMPLETED, task.getStatus());
+        assertEquals(12.34, task.getProgress());
+    }
+
+    @Test
+    void compareAndSetReturnsTheInstalledWord() {
+        TaskItem task = newTask();
+        long installed = task.compareAndSetState(0, TaskStatus.IN_PROGRESS, 40.0);
+
+        assertEquals(task.getState(), installed);
+        assertEquals(1, TaskItem.versionOf(installed));
+        assertEquals(TaskStatus.IN_PROGRESS, TaskItem.statusOf(installed));
+        assertEquals(40.0, TaskItem.progressOf(installed));
+
+        // 过期的版本号不写入，状态不变
+        assertEquals(TaskItem.CAS_FAILED, task.compareAndSetState(0, TaskStatus.COMPLETED, 100.0));
+        assertEquals(installed, task.getState());
+    }
+
+    @Test
+    void compareAndSetAtBit63() {
+        TaskItem task = newTask();
+        task.restoreState(TaskStatus.TODO, 0.0, (1L << 39) - 1);
+        long installed = task.compareAndSetState((1L << 39) - 1, TaskStatus.IN_PROGRESS, 100.0);
+
+        assertNotEquals(TaskItem.CAS_FAILED, installed);
+        assertEquals(1L << 39, TaskItem.versionOf(installed));
+        assertEquals(TaskItem.CAS_FAILED, task.compareAndSetState((1L << 39) - 1, TaskStatus.TODO, 0.0));
+        assertEquals((1L << 39) + 1, TaskItem.versionOf(task.compareAndSetState(1L << 39, TaskStatus.COMPLETED, 100.0)));
+    }
+
+    @Test
+    void concurrentCompareAndSetFromTheSameVersionHasOneWinner() throws Exception {
+        TaskItem task = newTask();
+        int threads = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            for (int round = 0; round < 200; round++) {
+                long version = task.getVersion();
+                CountDownLatch start = new CountDownLatch(1);
+                List<Future<Long>> results = new ArrayList<>();
+                for (int i = 0; i < threads; i++) {
+                    double progress = i;
+                    results.add(executor.submit(() -> {
+                        start.await();
+                        return task.compareAndSetState(version, TaskStatus.IN_PROGRESS, progress);
+                    }));
+                }
+                start.countDown();
+                int winners = 0;
+                for (Future<Long> result : results) {
+                    long installed = result.get();
+                    if (installed != TaskItem.CAS_FAILED) {
+                        winners++;
+                        assertEquals(task.getState(), installed);
+                    }
+                }
+                assertEquals(1, winners);
+                assertEquals(version + 1, task.getVersion());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,283 @@
+package edu.sbs.cs.service;
+
+import edu.sbs.cs.database.TestDataDirectory;
+import edu.sbs.cs.model.Priority;
+import edu.sbs.cs.model.Project;
+import edu.sbs.cs.model.Role;
+import edu.sbs.cs.model.TeamMember;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 服务器模式的压力测试：在本进程内启动 ApiServer，模拟多个并发客户端访问。
+ * 每个客户端使用自己的用户登录 (独立会话)，然后在指定时间内不停地发送请求：
+ * 约 60% 按项目搜索任务、20% 查询自己的任务、18% 更新自己任务的状态、2% 查询项目进度报告。
+ * 客户端用异步请求串联实现，不为每个客户端占用一个线程，因此可以模拟上千个客户端。
+ * 类路径上有 SQLite 驱动时在新的临时目录中建库 (可用 -Dteam.data.dir 指定)。
+ *
+ * 用法: java -cp target/classes:target/test-classes edu.sbs.cs.service.ApiLoadTest [客户端数] [秒数] [每个用户的任务数]
+ */
+public class ApiLoadTest {
+    private static final Pattern TOKEN = Pattern.compile("\"token\":\"([0-9a-f]+)\"");
+    private static final Pattern PROJECT_ID = Pattern.compile("\"projectId\":\"([^\"]+)\"");
+    private static final Pattern TASK_ID = Pattern.compile("\"taskId\":\"([^\"]+)\"");
+    // 延迟直方图：每格 100 微秒，最后一格包含 10 秒以上的请求
+    private static final int BUCKET_MICROS = 100;
+    private static final int BUCKETS = 100_000;
+    private static final int MEMBERS_PER_PROJECT = 50;
+    private static final String PASSWORD = "load";
+
+    private final URI base;
+    private final List<String> emails;
+    private final Duration duration;
+    private final HttpClient http;
+    private final ExecutorService httpExecutor;
+
+    private final AtomicLongArray latency = new AtomicLongArray(BUCKETS);
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder loginFailures = new LongAdder();
+    private final LongAdder conflicts = new LongAdder();
+    private final Set<String> sessionTokens = ConcurrentHashMap.newKeySet();
+    private volatile List<String> projectIds = List.of();
+
+    /**
+     * @param emails 每个客户端登录使用的邮箱 (密码均为 PASSWORD)，客户端数即邮箱数
+     */
+    public ApiLoadTest(int port, List<String> emails, Duration duration) {
+        this.base = URI.create("http://localhost:" + port);
+        this.emails = emails;
+        this.duration = duration;
+        this.httpExecutor = Executors.newFixedThreadPool(
+                Math.max(2, Runtime.getRuntime().availableProcessors()), ApiServer.daemonThreads("loadtest"));
+        this.http = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(10))
+                .executor(httpExecutor)
+                .build();
+    }
+
+    public static void main(String[] args) throws Exception {
+        int clients = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        long seconds = args.length > 1 ? Long.parseLong(args[1]) : 30;
+        int tasksPerMember = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+
+        TestDataDirectory.useTemporaryUnlessSet("bench-api-load");
+        DataManager dataManager = new DataManager();
+        try {
+            List<String> emails = prepareUsers(dataManager, clients, tasksPerMember);
+            try (ApiServer server = new ApiServer(dataManager, 0)) {
+                server.start();
+                new ApiLoadTest(server.getPort(), emails, Duration.ofSeconds(seconds)).run();
+            }
+        } finally {
+            dataManager.close();
+        }
+    }
+
+    // 注册 clients 个用户，每 MEMBERS_PER_PROJECT 个用户一个项目，每个用户分配 tasksPerMember 个任务；返回用户邮箱
+    private static List<String> prepareUsers(DataManager dataManager, int clients, int tasksPerMember) {
+        long start = System.nanoTime();
+        String suffix = "-" + start + "@company.com";
+        dataManager.registerUser("压测管理员", "load-admin" + suffix, PASSWORD, Role.ADMIN);
+        if (!dataManager.login("load-admin" + suffix, PASSWORD)) {
+            throw new IllegalStateException("管理员登录失败");
+        }
+        List<String> emails = new ArrayList<>(clients);
+        for (int i = 0; i < clients; i++) {
+            emails.add("load" + i + suffix);
+            dataManager.registerUser("压测用户" + i, emails.get(i), PASSWORD, Role.USER);
+        }
+        Map<String, String> memberIds = new HashMap<>();
+        for (TeamMember member : dataManager.getMembers().values()) {
+            if (member.getEmail().endsWith(suffix)) {
+                memberIds.put(member.getEmail(), member.getMemberId());
+            }
+        }
+
+        for (int first = 0; first < clients; first += MEMBERS_PER_PROJECT) {
+            String name = "压测项目" + first + suffix;
+            dataManager.createProject(name, "", LocalDate.now().plusMonths(6));
+            String projectId = null;
+            for (Project project : dataManager.getProjects().values()) {
+                if (project.getName().equals(name)) {
+                    projectId = project.getProjectId();
+                }
+            }
+            // 每个项目的成员和任务在一个工作单元中提交，数据库模式下一个事务
+            UnitOfWork work = dataManager.beginUnitOfWork();
+            for (int i = first; i < Math.min(clients, first + MEMBERS_PER_PROJECT); i++) {
+                String memberId = memberIds.get(emails.get(i));
+                work.addMemberToProject(projectId, memberId);
+                for (int t = 0; t < tasksPerMember; t++) {
+                    String taskId = work.createFeatureTask(projectId, "压测任务" + i + "-" + t, "", Priority.MEDIUM,
+                            LocalDate.now().plusDays(30), 3, "load");
+                    work.assignTask(taskId, memberId);
+                }
+            }
+            if (!work.commit()) {
+                throw new IllegalStateException("准备压测数据失败");
+            }
+        }
+        dataManager.logout();
+        System.out.printf("准备数据: %d 个用户, %d 个任务, %.1f 秒%n",
+                clients, clients * tasksPerMember, (System.nanoTime() - start) / 1e9);
+        return emails;
+    }
+
+    // 单个模拟客户端的状态
+    private final class Client {
+        private String token;
+        private final String projectId;
+        private final List<String> taskIds = new ArrayList<>();
+
+        Client(int index) {
+            List<String> ids = projectIds;
+            this.projectId = ids.isEmpty() ? null : ids.get(index % ids.size());
+        }
+    }
+
+    public void run() throws Exception {
+        // 先用第一个用户登录获取项目列表，确认服务可用
+        String token = extract(TOKEN, login(emails.get(0)).join().body());
+        if (token == null) {
+            throw new IllegalStateException("登录失败");
+        }
+        List<String> ids = new ArrayList<>();
+        Matcher matcher = PROJECT_ID.matcher(http.send(get("/api/reports/progress", token),
+                HttpResponse.BodyHandlers.ofString()).body());
+        while (matcher.find()) ids.add(matcher.group(1));
+        projectIds = ids;
+
+        int clients = emails.size();
+        System.out.printf("压力测试: %d 个客户端 (各自的用户), %d 秒, 目标 %s%n", clients, duration.getSeconds(), base);
+        long start = System.nanoTime();
+        long deadline = start + duration.toNanos();
+        List<CompletableFuture<Void>> running = new ArrayList<>(clients);
+        for (int i = 0; i < clients; i++) {
+            Client client = new Client(i);
+            running.add(login(emails.get(i)).thenCompose(response -> {
+                client.token = extract(TOKEN, response.body());
+                if (client.token == null) {
+                    loginFailures.increment();
+                } else {
+                    sessionTokens.add(client.token);
+                }
+                return loop(client, deadline);
+            }).exceptionally(e -> {
+                failures.increment();
+                return null;
+            }));
+        }
+        CompletableFuture.allOf(running.toArray(new CompletableFuture<?>[0])).join();
+        double seconds = (System.nanoTime() - start) / 1e9;
+        httpExecutor.shutdownNow();
+        printSummary(seconds);
+    }
+
+    // 串联发送请求直到截止时间
+    private CompletableFuture<Void> loop(Client client, long deadline) {
+        if (client.token == null || System.nanoTime() >= deadline) {
+            return CompletableFuture.completedFuture(null);
+        }
+        long sent = System.nanoTime();
+        return http.sendAsync(nextRequest(client), HttpResponse.BodyHandlers.ofString())
+                .handle((response, error) -> {
+                    record(System.nanoTime() - sent);
+                    if (error != null || response.statusCode() >= 500 || response.statusCode() == 401) {
+                        failures.increment();
+                    } else if (response.statusCode() == 409) {
+                        conflicts.increment();
+                    } else if (client.taskIds.isEmpty() && response.body().contains("\"tasks\"")) {
+                        Matcher matcher = TASK_ID.matcher(response.body());
+                        while (matcher.find()) client.taskIds.add(matcher.group(1));
+                    }
+                    return null;
+                })
+                .thenCompose(ignored -> loop(client, deadline));
+    }
+
+    private HttpRequest nextRequest(Client client) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int roll = random.nextInt(100);
+        if (roll < 18 && !client.taskIds.isEmpty()) {
+            String taskId = client.taskIds.get(random.nextInt(client.taskIds.size()));
+            String body = "{\"status\":\"IN_PROGRESS\",\"progress\":" + random.nextInt(100) + "}";
+            return HttpRequest.newBuilder(base.resolve("/api/tasks/" + taskId + "/status"))
+                    .header("Authorization", "Bearer " + client.token)
+                    .POST(HttpRequest.BodyPublishers.ofString(body))
+                    .build();
+        }
+        if (roll < 38) {
+            return get("/api/tasks/mine", client.token);
+        }
+        if (roll < 40) {
+            return get("/api/reports/progress", client.token);
+        }
+        String query = client.projectId == null ? "" : "projectId=" + client.projectId + "&";
+        return get("/api/tasks?" + query + "limit=20", client.token);
+    }
+
+    private CompletableFuture<HttpResponse<String>> login(String email) {
+        StringBuilder body = new StringBuilder("{\"email\":");
+        FlatJson.appendString(body, email).append(",\"password\":");
+        FlatJson.appendString(body, PASSWORD).append('}');
+        return http.sendAsync(HttpRequest.newBuilder(base.resolve("/api/login"))
+                .POST(HttpRequest.BodyPublishers.ofString(body.toString()))
+                .build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private HttpRequest get(String path, String token) {
+        return HttpRequest.newBuilder(base.resolve(path))
+                .header("Authorization", "Bearer " + token)
+                .GET()
+                .build();
+    }
+
+    private static String extract(Pattern pattern, String text) {
+        Matcher matcher = pattern.matcher(text);
+        return matcher.find() ? matcher.group(1) : null;
+    }
+
+    private void record(long nanos) {
+        requests.increment();
+        int bucket = (int) Math.min(BUCKETS - 1, nanos / 1000 / BUCKET_MICROS);
+        latency.incrementAndGet(bucket);
+    }
+
+    private void printSummary(double seconds) {
+        long total = requests.sum();
+        System.out.printf("请求数: %d, 耗时 %.1f 秒, 吞吐量 %.0f 请求/秒%n", total, seconds, total / seconds);
+        System.out.printf("不同会话: %d, 登录失败: %d%n", sessionTokens.size(), loginFailures.sum());
+        System.out.printf("失败: %d, 版本冲突: %d%n", failures.sum(), conflicts.sum());
+        System.out.printf("延迟: p50 %.1f ms, p95 %.1f ms, p99 %.1f ms, 最大 %.1f ms%n",
+                percentile(total, 0.50), percentile(total, 0.95), percentile(total, 0.99), percentile(total, 1.0));
+    }
+
+    // 直方图中第 p 分位所在格子的上界 (毫秒)
+    private double percentile(long total, double p) {
+        long target = (long) Math.ceil(total * p);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += latency.get(i);
+            if (seen >= target && seen > 0) {
+                return (i + 1) * BUCKET_MICROS / 1000.0;
+            }
+        }
+        return 0;
+    }
+}
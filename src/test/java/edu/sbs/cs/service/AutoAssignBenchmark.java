@@ -0,0 +1,86 @@
+package edu.sbs.cs.service;
+
+import edu.sbs.cs.database.TestDataDirectory;
+import edu.sbs.cs.model.Priority;
+import edu.sbs.cs.model.Project;
+import edu.sbs.cs.model.Role;
+import edu.sbs.cs.model.TaskItem;
+import edu.sbs.cs.model.TeamMember;
+import java.time.LocalDate;
+import java.util.*;
+
+/**
+ * DataManager.autoAssignTasks 的基准测试：一个项目中 N 个未分配任务 (默认 100000) 分给 M 个成员 (默认 500)。
+ * 输出分配耗时和分配后各成员未完成工作量的最大/最小值 (检查负载是否均衡)。
+ * 类路径上有 SQLite 驱动时在新的临时目录中建库 (可用 -Dteam.data.dir 指定)，测量的时间包括批量事务写入。
+ *
+ * 用法: java -cp target/classes:target/test-classes edu.sbs.cs.service.AutoAssignBenchmark [任务数] [成员数]
+ */
+public class AutoAssignBenchmark {
+    public static void main(String[] args) throws Exception {
+        int taskCount = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        int memberCount = args.length > 1 ? Integer.parseInt(args[1]) : 500;
+
+        TestDataDirectory.useTemporaryUnlessSet("bench-auto-assign");
+        DataManager dataManager = new DataManager();
+        try {
+            // 数据库模式下空库没有示例数据，注册一个基准测试专用的管理员
+            long start = System.nanoTime();
+            String suffix = "-" + start + "@company.com";
+            dataManager.registerUser("基准管理员", "bench-admin" + suffix, "bench", Role.ADMIN);
+            if (!dataManager.login("bench-admin" + suffix, "bench")) {
+                System.err.println("管理员登录失败");
+                return;
+            }
+            dataManager.createProject("自动分配基准", "autoAssignTasks 基准测试", LocalDate.now().plusYears(1));
+            String projectId = null;
+            for (Map.Entry<String, Project> entry : dataManager.getProjects().entrySet()) {
+                if (entry.getValue().getName().equals("自动分配基准")) {
+                    projectId = entry.getKey();
+                }
+            }
+
+            for (int i = 0; i < memberCount; i++) {
+                dataManager.registerUser("成员" + i, "bench" + i + suffix, "bench", Role.USER);
+            }
+            UnitOfWork addMembers = dataManager.beginUnitOfWork();
+            for (TeamMember member : dataManager.getMembers().values()) {
+                if (member.getRole() == Role.USER && member.getEmail().endsWith(suffix)) {
+                    addMembers.addMemberToProject(projectId, member.getMemberId());
+                }
+            }
+            addMembers.commit();
+
+            Random random = new Random(42);
+            Priority[] priorities = Priority.values();
+            // 任务用工作单元分批创建，数据库模式下每批一个事务
+            for (int created = 0; created < taskCount; ) {
+                UnitOfWork work = dataManager.beginUnitOfWork();
+                for (int i = 0; i < 10_000 && created < taskCount; i++, created++) {
+                    work.createFeatureTask(projectId, "任务" + created, "", priorities[random.nextInt(priorities.length)],
+                            LocalDate.now().plusDays(1 + random.nextInt(300)), 1 + random.nextInt(13), "bench");
+                }
+                work.commit();
+            }
+            System.out.printf("准备数据: %d 个任务, %d 个成员, %.1f 秒%n",
+                    taskCount, memberCount, (System.nanoTime() - start) / 1e9);
+
+            start = System.nanoTime();
+            int assigned = dataManager.autoAssignTasks(projectId);
+            long elapsed = System.nanoTime() - start;
+            System.out.printf("autoAssignTasks: 分配 %d 个任务, 耗时 %.1f ms (%s)%n", assigned, elapsed / 1e6,
+                    dataManager.isDatabaseEnabled() ? "数据库模式" : "内存模式");
+
+            Map<String, Long> loads = new HashMap<>();
+            for (TaskItem task : dataManager.getProjects().get(projectId).getTasks()) {
+                if (task.getAssignedTo() != null) {
+                    loads.merge(task.getAssignedTo().getMemberId(), (long) task.getEffortPoints(), Long::sum);
+                }
+            }
+            LongSummaryStatistics stats = loads.values().stream().mapToLong(Long::longValue).summaryStatistics();
+            System.out.printf("成员负载: 最小 %d, 最大 %d, 平均 %.1f 点%n", stats.getMin(), stats.getMax(), stats.getAverage());
+        } finally {
+            dataManager.close();
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package edu.sbs.cs.service;
+
+import edu.sbs.cs.model.FeatureTask;
+import edu.sbs.cs.model.Priority;
+import edu.sbs.cs.model.TaskItem;
+import java.time.LocalDate;
+import java.util.*;
+
+/**
+ * CriticalPathEngine 的基准测试：一个项目 N 个任务 (默认 100000)、M 条依赖 (默认 500000)。
+ * 依赖只从编号小的任务指向附近编号大的任务 (无环)，关键路径很长。
+ * 输出完整重建的耗时和随机加边、删边、改进度的平均耗时。只用内存，不需要数据库。
+ *
+ * 用法: java -cp target/classes:target/test-classes edu.sbs.cs.service.CriticalPathBenchmark [任务数] [依赖数] [操作数]
+ */
+public class CriticalPathBenchmark {
+    private static final int WINDOW = 50; // 依赖的两个任务编号最多相差的数量
+
+    public static void main(String[] args) {
+        int taskCount = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        int edgeCount = args.length > 1 ? Integer.parseInt(args[1]) : 500_000;
+        int operations = args.length > 2 ? Integer.parseInt(args[2]) : 2000;
+        Random random = new Random(42);
+        int due = (int) LocalDate.now().toEpochDay() + 365;
+
+        List<TaskItem> tasks = new ArrayList<>(taskCount);
+        Map<String, String> taskProjectIds = new HashMap<>();
+        for (int i = 0; i < taskCount; i++) {
+            TaskItem task = new FeatureTask("T" + i, "任务" + i, "", Priority.MEDIUM, null, 1 + random.nextInt(5), "bench");
+            tasks.add(task);
+            taskProjectIds.put(task.getTaskId(), "P");
+        }
+        Set<Long> seen = new HashSet<>();
+        List<String[]> dependencies = new ArrayList<>(edgeCount);
+        while (dependencies.size() < edgeCount) {
+            int blocked = 1 + random.nextInt(taskCount - 1);
+            int blocker = Math.max(0, blocked - 1 - random.nextInt(WINDOW));
+            if (seen.add((long) blocked * taskCount + blocker)) {
+                dependencies.add(new String[]{"T" + blocked, "T" + blocker});
+            }
+        }
+
+        CriticalPathEngine engine = new CriticalPathEngine(projectId -> due);
+        long start = System.nanoTime();
+        int skipped = engine.rebuild(tasks, taskProjectIds, dependencies);
+        System.out.printf("完整重建: %d 个任务, %d 条依赖 (忽略 %d), %.1f ms, 关键路径 %d 个任务%n",
+                taskCount, edgeCount, skipped, (System.nanoTime() - start) / 1e6, engine.criticalPath("P").size());
+
+        long addNanos = 0;
+        long removeNanos = 0;
+        long updateNanos = 0;
+        int added = 0;
+        List<String[]> addedEdges = new ArrayList<>();
+        for (int i = 0; i < operations; i++) {
+            int a = random.nextInt(taskCount);
+            int b = random.nextInt(taskCount);
+            start = System.nanoTime();
+            boolean ok = engine.addDependency("T" + Math.max(a, b), "T" + Math.min(a, b));
+            addNanos += System.nanoTime() - start;
+            if (ok) {
+                added++;
+                addedEdges.add(new String[]{"T" + Math.max(a, b), "T" + Math.min(a, b)});
+            }
+        }
+        for (String[] edge : addedEdges) {
+            start = System.nanoTime();
+            engine.removeDependency(edge[0], edge[1]);
+            removeNanos += System.nanoTime() - start;
+        }
+        for (int i = 0; i < operations; i++) {
+            TaskItem task = tasks.get(random.nextInt(taskCount));
+            task.setProgress(random.nextInt(100));
+            start = System.nanoTime();
+            engine.taskChanged("P", task);
+            updateNanos += System.nanoTime() - start;
+        }
+        System.out.printf("加边: %d 次 (成功 %d), 平均 %.3f ms%n", operations, added, addNanos / 1e6 / operations);
+        System.out.printf("删边: %d 次, 平均 %.3f ms%n", addedEdges.size(),
+                addedEdges.isEmpty() ? 0.0 : removeNanos / 1e6 / addedEdges.size());
+        System.out.printf("改进度: %d 次, 平均 %.3f ms%n", operations, updateNanos / 1e6 / operations);
+    }
+}
@@ -0,0 +1,211 @@
+package edu.sbs.cs.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import edu.sbs.cs.model.FeatureTask;
+import edu.sbs.cs.model.Priority;
+import edu.sbs.cs.model.TaskItem;
+import edu.sbs.cs.model.TaskStatus;
+import java.time.LocalDate;
+import java.util.*;
+import org.junit.jupiter.api.Test;
+
+/**
+ * 增量维护的进度计划与完整重建的结果一致。
+ * 随机执行加任务、改工期和截止日期、加减依赖、删任务、改项目截止日期，
+ * 每隔若干步用同样的任务和依赖重建一个新的引擎，逐个比较所有查询结果。
+ */
+class CriticalPathEngineTest {
+    private static final String[] PROJECTS = {"P1", "P2", "P3"};
+    private static final int OPERATIONS = 3000;
+    private static final int CHECK_INTERVAL = 50;
+
+    private final Map<String, Integer> projectDueDays = new HashMap<>();
+    private final Map<String, TaskItem> tasks = new LinkedHashMap<>();
+    private final Map<String, String> taskProjectIds = new HashMap<>();
+    // {taskId, blockerId}，按 taskId + "|" + blockerId 索引
+    private final Map<String, String[]> dependencies = new LinkedHashMap<>();
+    private int nextTaskId;
+
+    @Test
+    void incrementalUpdatesMatchFullRebuild() {
+        for (long seed = 1; seed <= 20; seed++) {
+            runRandomOperations(new Random(seed));
+        }
+    }
+
+    @Test
+    void rebuildDropsOnlyEdgesInsideCycles() {
+        CriticalPathEngine engine = newEngine();
+        for (int i = 0; i < 6; i++) {
+            addTask(new Random(i), "P1");
+        }
+        List<String> ids = new ArrayList<>(tasks.keySet());
+        List<String[]> loaded = new ArrayList<>();
+        // 链 0 <- 1 <- 2 <- 3 <- 4 <- 5，再加 2 -> 1 形成循环 (1 被 2 阻塞，2 也被 1 阻塞)
+        for (int i = 1; i < ids.size(); i++) {
+            loaded.add(new String[]{ids.get(i), ids.get(i - 1)});
+        }
+        loaded.add(new String[]{ids.get(1), ids.get(2)});
+
+        List<String[]> cyclic = new ArrayList<>();
+        int skipped = engine.rebuild(tasks.values(), taskProjectIds, loaded, cyclic);
+
+        assertEquals(2, skipped);
+        Set<String> dropped = new HashSet<>();
+        for (String[] dependency : cyclic) {
+            dropped.add(dependency[0] + "|" + dependency[1]);
+        }
+        assertEquals(Set.of(ids.get(2) + "|" + ids.get(1), ids.get(1) + "|" + ids.get(2)), dropped);
+        // 循环之后的边保留
+        assertEquals(4, engine.getDependencyCount("P1"));
+        assertEquals(List.of(ids.get(2)), engine.blockersOf(ids.get(3)));
+    }
+
+    private void runRandomOperations(Random random) {
+        projectDueDays.clear();
+        tasks.clear();
+        taskProjectIds.clear();
+        dependencies.clear();
+        for (String projectId : PROJECTS) {
+            projectDueDays.put(projectId, randomDueDay(random));
+        }
+        CriticalPathEngine engine = newEngine();
+
+        for (int step = 1; step <= OPERATIONS; step++) {
+            int operation = random.nextInt(100);
+            if (operation < 20 || tasks.size() < 2) {
+                String projectId = PROJECTS[random.nextInt(PROJECTS.length)];
+                engine.taskChanged(projectId, addTask(random, projectId));
+            } else if (operation < 40) {
+                TaskItem task = randomTask(random);
+                switch (random.nextInt(3)) {
+                    case 0 -> task.setProgress(random.nextInt(101));
+                    case 1 -> task.setStatus(random.nextBoolean() ? TaskStatus.COMPLETED : TaskStatus.IN_PROGRESS);
+                    default -> task.setDueDay(randomDueDay(random));
+                }
+                engine.taskChanged(taskProjectIds.get(task.getTaskId()), task);
+            } else if (operation < 75) {
+                String taskId = randomTask(random).getTaskId();
+                String blockerId = randomTask(random).getTaskId();
+                boolean expected = taskProjectIds.get(taskId).equals(taskProjectIds.get(blockerId))
+                        && !dependencies.containsKey(taskId + "|" + blockerId) && !reaches(taskId, blockerId);
+                assertEquals(expected, engine.addDependency(taskId, blockerId), "添加依赖 " + taskId + " <- " + blockerId);
+                if (expected) {
+                    dependencies.put(taskId + "|" + blockerId, new String[]{taskId, blockerId});
+                }
+            } else if (operation < 88) {
+                if (dependencies.isEmpty()) continue;
+                List<String> keys = new ArrayList<>(dependencies.keySet());
+                String[] dependency = dependencies.remove(keys.get(random.nextInt(keys.size())));
+                assertTrue(engine.removeDependency(dependency[0], dependency[1]));
+                assertFalse(engine.removeDependency(dependency[0], dependency[1]));
+            } else if (operation < 95) {
+                String taskId = randomTask(random).getTaskId();
+                tasks.remove(taskId);
+                taskProjectIds.remove(taskId);
+                dependencies.values().removeIf(d -> d[0].equals(taskId) || d[1].equals(taskId));
+                engine.taskRemoved(taskId);
+            } else {
+                String projectId = PROJECTS[random.nextInt(PROJECTS.length)];
+                projectDueDays.put(projectId, randomDueDay(random));
+                engine.projectChanged(projectId);
+            }
+            if (step % CHECK_INTERVAL == 0) {
+                assertMatchesRebuild(engine, "第 " + step + " 步");
+            }
+        }
+    }
+
+    private CriticalPathEngine newEngine() {
+        return new CriticalPathEngine(projectId -> projectDueDays.getOrDefault(projectId, TaskItem.NO_DATE));
+    }
+
+    private TaskItem addTask(Random random, String projectId) {
+        String taskId = "T" + (++nextTaskId);
+        LocalDate due = random.nextInt(5) == 0 ? null : LocalDate.ofEpochDay(randomDueDay(random));
+        TaskItem task = new FeatureTask(taskId, taskId, "", Priority.MEDIUM, due, 1 + random.nextInt(8), "test");
+        tasks.put(taskId, task);
+        taskProjectIds.put(taskId, projectId);
+        return task;
+    }
+
+    private TaskItem randomTask(Random random) {
+        List<TaskItem> list = new ArrayList<>(tasks.values());
+        return list.get(random.nextInt(list.size()));
+    }
+
+    private static int randomDueDay(Random random) {
+        return (int) LocalDate.now().toEpochDay() + random.nextInt(60);
+    }
+
+    // 加入 "taskId 被 blockerId 阻塞" 是否形成循环：blockerId 已经直接或间接被 taskId 阻塞
+    private boolean reaches(String taskId, String blockerId) {
+        if (taskId.equals(blockerId)) return true;
+        Deque<String> pending = new ArrayDeque<>(List.of(blockerId));
+        Set<String> seen = new HashSet<>(pending);
+        while (!pending.isEmpty()) {
+            String current = pending.poll();
+            for (String[] dependency : dependencies.values()) {
+                if (dependency[0].equals(current) && seen.add(dependency[1])) {
+                    if (dependency[1].equals(taskId)) return true;
+                    pending.add(dependency[1]);
+                }
+            }
+        }
+        return false;
+    }
+
+    private void assertMatchesRebuild(CriticalPathEngine engine, String step) {
+        CriticalPathEngine rebuilt = newEngine();
+        assertEquals(0, rebuilt.rebuild(tasks.values(), taskProjectIds, new ArrayList<>(dependencies.values())), step);
+
+        for (String taskId : tasks.keySet()) {
+            assertEquals(rebuilt.earliestFinish(taskId), engine.earliestFinish(taskId), step + " 最早完成 " + taskId);
+            assertEquals(rebuilt.latestFinish(taskId), engine.latestFinish(taskId), step + " 最晚完成 " + taskId);
+            assertEquals(rebuilt.slackDays(taskId), engine.slackDays(taskId), step + " 总时差 " + taskId);
+            assertEquals(new HashSet<>(rebuilt.blockersOf(taskId)), new HashSet<>(engine.blockersOf(taskId)), step);
+        }
+        for (String projectId : PROJECTS) {
+            assertEquals(rebuilt.projectFinish(projectId), engine.projectFinish(projectId), step + " 完工日期 " + projectId);
+            assertEquals(rebuilt.getDependencyCount(projectId), engine.getDependencyCount(projectId), step);
+            assertEquals(new HashSet<>(rebuilt.lateTasks(projectId)), new HashSet<>(engine.lateTasks(projectId)), step);
+            assertValidOrder(engine.topologicalOrder(projectId), step);
+            assertValidCriticalPath(engine, projectId, step);
+        }
+    }
+
+    // 阻塞者排在被阻塞的任务之前
+    private void assertValidOrder(List<String> order, String step) {
+        Map<String, Integer> positions = new HashMap<>();
+        for (int i = 0; i < order.size(); i++) {
+            positions.put(order.get(i), i);
+        }
+        for (String[] dependency : dependencies.values()) {
+            Integer blocked = positions.get(dependency[0]);
+            if (blocked != null) {
+                assertTrue(positions.get(dependency[1]) < blocked, step + " 拓扑序 " + dependency[0] + " <- " + dependency[1]);
+            }
+        }
+    }
+
+    // 关键路径从不被阻塞的任务开始，每一步是直接阻塞者，且紧接着前一个任务完成后开始，终点决定完工日期
+    private void assertValidCriticalPath(CriticalPathEngine engine, String projectId, String step) {
+        List<String> path = engine.criticalPath(projectId);
+        if (path.isEmpty()) {
+            assertNull(engine.projectFinish(projectId), step);
+            return;
+        }
+        assertEquals(engine.projectFinish(projectId), engine.earliestFinish(path.get(path.size() - 1)), step);
+        LocalDate previousFinish = LocalDate.now();
+        for (int i = 0; i < path.size(); i++) {
+            String taskId = path.get(i);
+            if (i > 0) {
+                assertTrue(engine.blockersOf(taskId).contains(path.get(i - 1)), step + " 关键路径 " + path);
+            }
+            int days = CriticalPathEngine.remainingDays(tasks.get(taskId));
+            assertEquals(previousFinish.plusDays(days), engine.earliestFinish(taskId), step + " 关键路径 " + path);
+            previousFinish = engine.earliestFinish(taskId);
+        }
+    }
+}
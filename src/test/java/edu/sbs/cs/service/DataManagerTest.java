@@ -0,0 +1,236 @@
+package edu.sbs.cs.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import edu.sbs.cs.database.TestDataDirectory;
+import edu.sbs.cs.model.Priority;
+import edu.sbs.cs.model.Project;
+import edu.sbs.cs.model.Role;
+import edu.sbs.cs.model.TaskItem;
+import edu.sbs.cs.model.TaskStatus;
+import edu.sbs.cs.model.TeamMember;
+import java.nio.file.Path;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * DataManager 的单项写操作：先写数据库，写入失败时内存保持不变；修改在数据锁的写锁内进行。
+ * 任务依赖经快照和变更日志在重启后保留；归档的任务移出内存和任务表，重启后仍可在归档中查到。
+ * 数据库建在临时目录中。
+ */
+class DataManagerTest {
+    @TempDir
+    Path directory;
+
+    private DataManager dataManager;
+    private String projectId;
+    private TeamMember alice;
+    private TeamMember bob;
+
+    @BeforeEach
+    void setUp() {
+        TestDataDirectory.use(directory);
+        dataManager = new DataManager();
+        assertTrue(dataManager.isDatabaseEnabled());
+        assertTrue(dataManager.registerUser("测试管理员", "admin@test.com", "admin", Role.ADMIN));
+        assertTrue(dataManager.registerUser("Alice", "alice@test.com", "user", Role.USER));
+        assertTrue(dataManager.registerUser("Bob", "bob@test.com", "user", Role.USER));
+        assertTrue(dataManager.login("admin@test.com", "admin"));
+        alice = dataManager.authenticate("alice@test.com", "user");
+        bob = dataManager.authenticate("bob@test.com", "user");
+        assertTrue(dataManager.createProject("项目", "", LocalDate.now().plusMonths(1)));
+        projectId = dataManager.getProjects().keySet().iterator().next();
+        assertTrue(dataManager.addMemberToProject(projectId, alice.getMemberId()));
+        assertTrue(dataManager.addMemberToProject(projectId, bob.getMemberId()));
+    }
+
+    @AfterEach
+    void tearDown() {
+        dataManager.close();
+        System.clearProperty("team.journal.enabled");
+        System.clearProperty("team.journal.checkpointMs");
+        System.clearProperty("team.snapshot.enabled");
+        TestDataDirectory.clear();
+    }
+
+    private void reopen() {
+        dataManager = new DataManager();
+        assertTrue(dataManager.login("admin@test.com", "admin"));
+    }
+
+    private String createTask(String title) {
+        return dataManager.createFeatureTask(projectId, title, "", Priority.MEDIUM,
+                LocalDate.now().plusDays(7), 3, "test");
+    }
+
+    private List<TaskItem> assignedTo(TeamMember member) {
+        Project project = dataManager.getProjects().get(projectId);
+        return dataManager.getTaskAssignments().get(project).getOrDefault(member, List.of());
+    }
+
+    @Test
+    void reassignmentMovesTheTaskBetweenAssigneeLists() {
+        String taskId = createTask("任务");
+        TaskItem task = dataManager.getTasks().get(taskId);
+
+        assertTrue(dataManager.assignTask(taskId, alice.getMemberId()));
+        assertTrue(dataManager.assignTask(taskId, bob.getMemberId()));
+        assertTrue(dataManager.assignTask(taskId, bob.getMemberId()));
+
+        assertEquals(List.of(), assignedTo(alice));
+        assertEquals(List.of(task), assignedTo(bob));
+    }
+
+    @Test
+    void failedAssignmentWriteLeavesMemoryUnchanged() throws Exception {
+        String taskId = createTask("任务");
+        TaskItem task = dataManager.getTasks().get(taskId);
+        assertTrue(dataManager.assignTask(taskId, alice.getMemberId()));
+
+        try (Statement stmt = dataManager.getDatabaseManager().getConnection().createStatement()) {
+            stmt.execute("CREATE TEMP TRIGGER fail_assign BEFORE UPDATE OF assigned_to ON tasks "
+                    + "BEGIN SELECT RAISE(ABORT, 'forced failure'); END");
+        }
+        assertFalse(dataManager.assignTask(taskId, bob.getMemberId()));
+
+        assertSame(alice, task.getAssignedTo());
+        assertEquals(List.of(task), assignedTo(alice));
+        assertEquals(List.of(), assignedTo(bob));
+    }
+
+    @Test
+    void mutatorsWaitForReadersOfTheDataLock() throws Exception {
+        String taskId = createTask("任务");
+        UnitOfWork unitOfWork = dataManager.beginUnitOfWork();
+        unitOfWork.assignTask(taskId, bob.getMemberId());
+
+        // 例如复制快照正在读取内存集合
+        dataManager.getDataLock().readLock().lock();
+        CompletableFuture<Boolean> update;
+        CompletableFuture<Boolean> commit;
+        try {
+            update = CompletableFuture.supplyAsync(() -> dataManager.updateTaskStatus(taskId, TaskStatus.IN_PROGRESS, 30));
+            commit = CompletableFuture.supplyAsync(unitOfWork::commit);
+            assertThrows(TimeoutException.class, () -> update.get(300, TimeUnit.MILLISECONDS));
+            assertThrows(TimeoutException.class, () -> commit.get(50, TimeUnit.MILLISECONDS));
+            assertEquals(0.0, dataManager.getTasks().get(taskId).getProgress());
+        } finally {
+            dataManager.getDataLock().readLock().unlock();
+        }
+        assertTrue(update.get(10, TimeUnit.SECONDS));
+        assertTrue(commit.get(10, TimeUnit.SECONDS));
+        assertEquals(30.0, dataManager.getTasks().get(taskId).getProgress());
+        assertEquals(List.of(dataManager.getTasks().get(taskId)), assignedTo(bob));
+    }
+
+    @Test
+    void failedDependencyWritesLeaveTheScheduleUnchanged() throws Exception {
+        String blocker = createTask("前置任务");
+        String blocked = createTask("后续任务");
+        CriticalPathEngine schedule = dataManager.getSchedule();
+
+        try (Statement stmt = dataManager.getDatabaseManager().getConnection().createStatement()) {
+            stmt.execute("CREATE TEMP TRIGGER fail_dependency BEFORE INSERT ON task_dependencies "
+                    + "BEGIN SELECT RAISE(ABORT, 'forced failure'); END");
+        }
+        assertFalse(dataManager.addTaskDependency(blocked, blocker));
+        assertEquals(List.of(), schedule.blockersOf(blocked));
+
+        try (Statement stmt = dataManager.getDatabaseManager().getConnection().createStatement()) {
+            stmt.execute("DROP TRIGGER fail_dependency");
+            stmt.execute("CREATE TEMP TRIGGER fail_dependency BEFORE DELETE ON task_dependencies "
+                    + "BEGIN SELECT RAISE(ABORT, 'forced failure'); END");
+        }
+        assertTrue(dataManager.addTaskDependency(blocked, blocker));
+        assertFalse(dataManager.removeTaskDependency(blocked, blocker));
+        assertEquals(List.of(blocker), schedule.blockersOf(blocked));
+    }
+
+    @Test
+    void dependenciesSurviveRestartThroughSnapshotAndJournal() throws Exception {
+        String first = createTask("第一步");
+        String second = createTask("第二步");
+        String third = createTask("第三步");
+        assertTrue(dataManager.addTaskDependency(second, first));
+
+        // 关闭时写快照，重启从快照加载依赖
+        dataManager.close();
+        System.setProperty("team.journal.enabled", "true");
+        System.setProperty("team.journal.checkpointMs", "3600000");
+        reopen();
+        assertNotNull(dataManager.getJournal());
+        assertEquals(List.of(first), dataManager.getSchedule().blockersOf(second));
+
+        // 依赖修改只写入变更日志；模拟进程退出：不合并检查点、不写快照
+        assertTrue(dataManager.addTaskDependency(third, second));
+        assertTrue(dataManager.removeTaskDependency(second, first));
+        assertEquals(Set.of(first + "<-" + second), storedDependencies());
+        System.setProperty("team.snapshot.enabled", "false");
+        dataManager.getJournal().close();
+        dataManager.close();
+
+        // 重启时回放日志中的依赖修改
+        reopen();
+        assertEquals(List.of(), dataManager.getSchedule().blockersOf(second));
+        assertEquals(List.of(second), dataManager.getSchedule().blockersOf(third));
+
+        // 检查点把依赖修改合并到数据库
+        dataManager.checkpointJournal();
+        assertEquals(Set.of(second + "<-" + third), storedDependencies());
+    }
+
+    // 数据库中的依赖，每项为 "阻塞者<-任务"
+    private Set<String> storedDependencies() throws Exception {
+        Set<String> stored = new TreeSet<>();
+        for (String[] dependency : dataManager.getDatabaseManager().loadTaskDependencies()) {
+            stored.add(dependency[1] + "<-" + dependency[0]);
+        }
+        return stored;
+    }
+
+    @Test
+    void archivedTasksLeaveMemoryAndStaySearchableAfterRestart() throws Exception {
+        String old = dataManager.createFeatureTask(projectId, "旧任务", "", Priority.MEDIUM,
+                LocalDate.now().minusDays(30), 3, "test");
+        String oldOpen = dataManager.createFeatureTask(projectId, "未完成的旧任务", "", Priority.MEDIUM,
+                LocalDate.now().minusDays(30), 3, "test");
+        String recent = createTask("新任务");
+        assertTrue(dataManager.assignTask(old, alice.getMemberId()));
+        assertTrue(dataManager.updateTaskStatus(old, TaskStatus.COMPLETED, 100));
+        assertTrue(dataManager.updateTaskStatus(recent, TaskStatus.COMPLETED, 100));
+        assertTrue(dataManager.updateTaskStatus(oldOpen, TaskStatus.IN_PROGRESS, 50));
+
+        assertEquals(1, dataManager.archiveCompletedTasks(7));
+        assertEquals(Set.of(oldOpen, recent), new TreeSet<>(dataManager.getTasks().keySet()));
+        assertEquals(List.of(), assignedTo(alice));
+        Project project = dataManager.getProjects().get(projectId);
+        assertEquals(1, project.getArchivedTaskCount());
+        assertEquals(100.0, project.getArchivedProgressSum());
+        assertEquals(0, dataManager.archiveCompletedTasks(7));
+
+        dataManager.close();
+        reopen();
+        assertEquals(Set.of(oldOpen, recent), new TreeSet<>(dataManager.getTasks().keySet()));
+        project = dataManager.getProjects().get(projectId);
+        assertEquals(1, project.getArchivedTaskCount());
+        assertEquals(100.0, project.getArchivedProgressSum());
+
+        List<TaskItem> found = dataManager.searchArchivedTasks(projectId, "旧任务");
+        assertEquals(1, found.size());
+        TaskItem archived = found.get(0);
+        assertEquals(old, archived.getTaskId());
+        assertEquals(TaskStatus.COMPLETED, archived.getStatus());
+        assertSame(dataManager.getMembers().get(alice.getMemberId()), archived.getAssignedTo());
+        assertEquals(List.of(), dataManager.searchArchivedTasks("P999", null));
+    }
+}
@@ -0,0 +1,125 @@
+package edu.sbs.cs.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import edu.sbs.cs.database.TestDataDirectory;
+import edu.sbs.cs.model.Priority;
+import edu.sbs.cs.model.Role;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.*;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * 稳定运行时每轮进度报告的内存分配。
+ * 统计所有参与报告的线程 (报告线程、ForkJoin 计算线程、报告写入线程) 的分配字节数，
+ * 每轮把所有项目都标记为有变化，使每轮都重新计算、重新生成并写出全部报告行。
+ */
+class ProgressReporterThreadTest {
+    private static final int WARMUP_CYCLES = 200;
+    private static final int MEASURED_CYCLES = 20;
+    // 每轮允许的固定开销 (迭代器、线程池和队列的等待节点等)，与项目数无关
+    private static final long MAX_BYTES_PER_CYCLE = 8 * 1024;
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    @TempDir
+    Path directory;
+
+    @AfterEach
+    void clearDataDirectory() {
+        TestDataDirectory.clear();
+    }
+
+    @Test
+    void steadyStateCycleDoesNotAllocatePerProject() throws Exception {
+        assumeTrue(THREADS.isThreadAllocatedMemorySupported());
+        THREADS.setThreadAllocatedMemoryEnabled(true);
+
+        long small = maxBytesPerCycle(100, directory.resolve("small"));
+        long large = maxBytesPerCycle(2000, directory.resolve("large"));
+
+        assertTrue(small <= MAX_BYTES_PER_CYCLE, "100 个项目时每轮分配 " + small + " 字节");
+        assertTrue(large <= MAX_BYTES_PER_CYCLE, "2000 个项目时每轮分配 " + large + " 字节");
+        // 项目数增加 20 倍，每轮分配不应随之增长
+        assertTrue(large <= small + 1024, "每轮分配随项目数增长: " + small + " -> " + large + " 字节");
+    }
+
+    // 返回测量的各轮中，所有报告相关线程分配字节数之和的最大值
+    private long maxBytesPerCycle(int projectCount, Path baseDirectory) throws Exception {
+        TestDataDirectory.use(baseDirectory.resolve("data"));
+        DataManager dataManager = new DataManager();
+        ProgressReporterThread reporter = new ProgressReporterThread(dataManager, 3_600_000,
+                ProgressReporterThread.ScheduleMode.FIXED_DELAY, baseDirectory);
+        try {
+            // 空数据库中没有示例数据，注册一个测试用的管理员
+            assertTrue(dataManager.registerUser("测试管理员", "test-admin@company.com", "test", Role.ADMIN));
+            assertTrue(dataManager.login("test-admin@company.com", "test"));
+            for (int i = 0; i < projectCount; i++) {
+                dataManager.createProject("项目" + i, "", LocalDate.now().plusMonths(3));
+            }
+            // 任务在一个工作单元中创建 (一个数据库事务)
+            UnitOfWork work = dataManager.beginUnitOfWork();
+            for (String projectId : dataManager.getProjects().keySet()) {
+                for (int i = 0; i < 3; i++) {
+                    work.createFeatureTask(projectId, "任务" + i, "", Priority.MEDIUM,
+                            LocalDate.now().plusDays(10), 3, "test");
+                }
+            }
+            assertTrue(work.commit());
+            List<String> projectIds = new ArrayList<>(dataManager.getProjects().keySet());
+
+            for (int i = 0; i < WARMUP_CYCLES; i++) {
+                runCycle(dataManager, reporter, projectIds);
+            }
+            long max = 0;
+            for (int i = 0; i < MEASURED_CYCLES; i++) {
+                Map<Long, Long> before = allocatedByReportThreads();
+                runCycle(dataManager, reporter, projectIds);
+                Map<Long, Long> after = allocatedByReportThreads();
+                long cycle = 0;
+                for (Map.Entry<Long, Long> entry : after.entrySet()) {
+                    cycle += entry.getValue() - before.getOrDefault(entry.getKey(), 0L);
+                }
+                max = Math.max(max, cycle);
+            }
+            return max;
+        } finally {
+            reporter.stopReporting();
+            dataManager.close();
+        }
+    }
+
+    // 标记所有项目有变化，执行一轮报告，并等待写入线程写完
+    private static void runCycle(DataManager dataManager, ProgressReporterThread reporter,
+                                 List<String> projectIds) throws Exception {
+        for (String projectId : projectIds) {
+            dataManager.markProjectDirty(projectId);
+        }
+        long written = reporter.getWrittenReports();
+        reporter.runOnce();
+        long deadline = System.nanoTime() + 10_000_000_000L;
+        while (reporter.getWrittenReports() == written) {
+            assertTrue(System.nanoTime() < deadline, "报告没有写出");
+            Thread.onSpinWait();
+        }
+    }
+
+    // 报告线程、计算线程和写入线程的累计分配字节数 (线程ID -> 字节)
+    private static Map<Long, Long> allocatedByReportThreads() {
+        Map<Long, Long> allocated = new HashMap<>();
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            String name = thread.getName();
+            if (name.equals("progress-reporter") || name.equals("report-log-writer")
+                    || name.startsWith("progress-compute-")) {
+                allocated.put(thread.getId(), THREADS.getThreadAllocatedBytes(thread.getId()));
+            }
+        }
+        return allocated;
+    }
+}
@@ -0,0 +1,192 @@
+package edu.sbs.cs.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import edu.sbs.cs.database.TaskCodec;
+import edu.sbs.cs.database.TestDataDirectory;
+import edu.sbs.cs.model.*;
+import java.io.*;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.function.BooleanSupplier;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * 只读副本：重启后从自己的检查点加上主节点保留的后续记录追上主节点 (不重新传输快照)，任务依赖也随之同步；
+ * 收到不认识的记录类型时断开连接，以无效的日志ID重新握手，请求完整快照。
+ */
+class ReplicaFollowerTest {
+    @TempDir
+    Path directory;
+
+    private DataManager primary;
+    private final List<AutoCloseable> opened = new ArrayList<>();
+
+    @BeforeEach
+    void useTemporaryDirectory() {
+        TestDataDirectory.use(directory.resolve("data"));
+        // 副本只在关闭和安装快照时写检查点
+        System.setProperty("team.replica.checkpointMs", "3600000");
+    }
+
+    @AfterEach
+    void closeAll() throws Exception {
+        Collections.reverse(opened);
+        for (AutoCloseable closeable : opened) {
+            closeable.close();
+        }
+        if (primary != null) {
+            primary.close();
+        }
+        System.clearProperty("team.replication.port");
+        System.clearProperty("team.replica.checkpointMs");
+        TestDataDirectory.clear();
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            return socket.getLocalPort();
+        }
+    }
+
+    private static void await(BooleanSupplier condition, String description) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 15000;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) fail("超时: " + description);
+            Thread.sleep(20);
+        }
+    }
+
+    private ReplicaFollower startReplica(DataManager replica, int port, Path replicaDirectory) throws IOException {
+        ReplicaFollower follower = new ReplicaFollower(replica, port, replicaDirectory, replica.getDataLock());
+        follower.start();
+        return follower;
+    }
+
+    // 任务ID -> "状态|进度|版本|负责人|项目"
+    private static Map<String, String> describe(DataManager dataManager) {
+        Map<String, String> described = new TreeMap<>();
+        for (TaskItem task : dataManager.getTasks().values()) {
+            described.put(task.getTaskId(), task.getStatus() + "|" + task.getProgress() + "|" + task.getVersion()
+                    + "|" + (task.getAssignedTo() == null ? null : task.getAssignedTo().getMemberId())
+                    + "|" + dataManager.getTaskProjectIds().get(task.getTaskId()));
+        }
+        return described;
+    }
+
+    @Test
+    void restartedReplicaCatchesUpFromCheckpointAndTail() throws Exception {
+        int port = freePort();
+        System.setProperty("team.replication.port", String.valueOf(port));
+        primary = new DataManager();
+        ReplicationPrimary replication = primary.getReplicationPrimary();
+        assertNotNull(replication);
+
+        assertTrue(primary.registerUser("管理员", "admin@test.com", "x", Role.ADMIN));
+        assertTrue(primary.registerUser("成员", "member@test.com", "x", Role.USER));
+        assertTrue(primary.login("admin@test.com", "x"));
+        assertTrue(primary.createProject("项目", "", null));
+        String projectId = primary.getProjects().keySet().iterator().next();
+        String memberId = null;
+        for (TeamMember member : primary.getMembers().values()) {
+            if (member.getRole() == Role.USER) memberId = member.getMemberId();
+        }
+        assertTrue(primary.addMemberToProject(projectId, memberId));
+        List<String> taskIds = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            taskIds.add(primary.createFeatureTask(projectId, "任务" + i, "", Priority.MEDIUM, null, 2, "后端"));
+        }
+        assertTrue(primary.addTaskDependency(taskIds.get(1), taskIds.get(0)));
+        assertTrue(primary.addTaskDependency(taskIds.get(2), taskIds.get(0)));
+
+        Path replicaDirectory = directory.resolve("replica");
+        DataManager first = DataManager.createReplica();
+        ReplicaFollower follower = startReplica(first, port, replicaDirectory);
+        await(() -> follower.getAppliedLsn() == replication.getLastLsn(), "副本追上主节点");
+        assertEquals(describe(primary), describe(first));
+        assertEquals(List.of(taskIds.get(0)), first.getSchedule().blockersOf(taskIds.get(1)));
+        follower.close();
+        long checkpointLsn = follower.getAppliedLsn();
+        byte[] position = Files.readAllBytes(replicaDirectory.resolve("checkpoint.pos"));
+
+        // 副本停止期间主节点继续修改
+        assertTrue(primary.assignTask(taskIds.get(0), memberId));
+        assertTrue(primary.updateTaskStatus(taskIds.get(1), TaskStatus.IN_PROGRESS, 50));
+        assertTrue(primary.updateTaskStatus(taskIds.get(1), TaskStatus.COMPLETED, 100));
+        taskIds.add(primary.createFeatureTask(projectId, "新任务", "", Priority.HIGH, null, 1, "前端"));
+        assertTrue(primary.addTaskDependency(taskIds.get(5), taskIds.get(1)));
+        assertTrue(primary.removeTaskDependency(taskIds.get(2), taskIds.get(0)));
+        assertTrue(replication.getLastLsn() > checkpointLsn);
+
+        DataManager second = DataManager.createReplica();
+        ReplicaFollower restarted = startReplica(second, port, replicaDirectory);
+        opened.add(restarted);
+        assertTrue(restarted.getAppliedLsn() >= checkpointLsn, "先从检查点加载");
+        await(() -> restarted.getAppliedLsn() == replication.getLastLsn(), "重启的副本追上主节点");
+        assertEquals(describe(primary), describe(second));
+        assertEquals(List.of(second.getTasks().get(taskIds.get(0))),
+                second.getTaskAssignments().get(second.getProjects().get(projectId)).get(second.getMembers().get(memberId)));
+        for (String taskId : taskIds) {
+            assertEquals(primary.getSchedule().blockersOf(taskId), second.getSchedule().blockersOf(taskId), taskId);
+        }
+        // 没有安装快照 (安装快照会立即重写检查点)
+        assertArrayEquals(position, Files.readAllBytes(replicaDirectory.resolve("checkpoint.pos")));
+    }
+
+    @Test
+    void unknownRecordTypeForcesResync() throws Exception {
+        DataManager replica = DataManager.createReplica();
+        try (ServerSocket fakePrimary = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            ReplicaFollower follower = startReplica(replica, fakePrimary.getLocalPort(), directory.resolve("replica"));
+            opened.add(follower);
+
+            try (Socket socket = fakePrimary.accept()) {
+                DataInputStream in = new DataInputStream(socket.getInputStream());
+                DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+                assertEquals(0, in.readLong());
+                assertEquals(0, in.readLong());
+                frame(out, ReplicationProtocol.HELLO, ByteBuffer.allocate(16).putLong(42).putLong(2));
+
+                ByteBuffer member = record(1, ReplicationProtocol.MEMBER_SAVED);
+                TaskCodec.writeString(member, "M001");
+                TaskCodec.writeString(member, "成员");
+                member.put((byte) Role.USER.ordinal());
+                TaskCodec.writeString(member, "m@test.com");
+                TaskCodec.writeString(member, "x");
+                frame(out, ReplicationProtocol.RECORD, member);
+                await(() -> follower.getAppliedLsn() == 1, "应用第一条记录");
+
+                frame(out, ReplicationProtocol.RECORD, record(2, (byte) 99));
+                // 副本断开连接，不跳过这条记录
+                assertEquals(-1, in.read());
+            }
+            assertEquals(1, follower.getAppliedLsn());
+            assertTrue(replica.getMembers().containsKey("M001"));
+
+            try (Socket socket = fakePrimary.accept()) {
+                DataInputStream in = new DataInputStream(socket.getInputStream());
+                assertEquals(0, in.readLong(), "以无效的日志ID握手，请求完整快照");
+                assertEquals(1, in.readLong());
+            }
+        }
+    }
+
+    private static ByteBuffer record(long lsn, byte type) {
+        return ByteBuffer.allocate(256).putLong(lsn).putLong(System.currentTimeMillis()).put(type);
+    }
+
+    private static void frame(DataOutputStream out, byte type, ByteBuffer content) throws IOException {
+        out.writeByte(type);
+        out.writeInt(content.position());
+        out.write(content.array(), 0, content.position());
+        out.flush();
+    }
+}
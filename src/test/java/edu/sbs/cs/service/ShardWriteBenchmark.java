@@ -0,0 +1,110 @@
+package edu.sbs.cs.service;
+
+import edu.sbs.cs.database.TestDataDirectory;
+import edu.sbs.cs.model.Priority;
+import edu.sbs.cs.model.Project;
+import edu.sbs.cs.model.Role;
+import edu.sbs.cs.model.TaskStatus;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 并发任务状态更新的吞吐量，按服务器模式的方式执行：写锁内修改内存，释放写锁后写数据库
+ * (见 DataManager.deferStateWrites)。每次更新随机选一个项目中的任务，任务分布在多个项目 (多个分片) 中。
+ * 分片数由 -Dteam.db.shards 指定，数据库默认建在新的临时目录中 (可用 -Dteam.data.dir 指定)。
+ * 第四个参数为 locked 时在写锁内写数据库，作为对照。
+ *
+ * 用法: java -Dteam.db.shards=4 -cp target/classes:target/test-classes edu.sbs.cs.service.ShardWriteBenchmark
+ *       [线程数] [秒数] [项目数] [locked]
+ */
+public class ShardWriteBenchmark {
+    private static final int TASKS_PER_PROJECT = 20;
+
+    public static void main(String[] args) throws Exception {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        int projectCount = args.length > 2 ? Integer.parseInt(args[2]) : 64;
+        boolean writeInsideLock = args.length > 3 && args[3].equals("locked");
+
+        TestDataDirectory.useTemporaryUnlessSet("bench-shard-write");
+        DataManager dataManager = new DataManager();
+        try {
+            if (!dataManager.isDatabaseEnabled()) {
+                System.err.println("需要 SQLite 驱动 (数据库模式)");
+                return;
+            }
+            String suffix = "-" + System.nanoTime() + "@company.com";
+            dataManager.registerUser("基准管理员", "shard-admin" + suffix, "bench", Role.ADMIN);
+            if (!dataManager.login("shard-admin" + suffix, "bench")) {
+                System.err.println("管理员登录失败");
+                return;
+            }
+            for (int i = 0; i < projectCount; i++) {
+                dataManager.createProject("分片基准" + i + suffix, "", LocalDate.now().plusYears(1));
+            }
+            UnitOfWork work = dataManager.beginUnitOfWork();
+            for (Project project : dataManager.getProjects().values()) {
+                if (!project.getName().endsWith(suffix)) continue;
+                for (int i = 0; i < TASKS_PER_PROJECT; i++) {
+                    work.createFeatureTask(project.getProjectId(), "任务" + i, "", Priority.MEDIUM,
+                            LocalDate.now().plusDays(30), 3, "bench");
+                }
+            }
+            if (!work.commit()) {
+                System.err.println("创建任务失败");
+                return;
+            }
+            List<String> taskIds = new ArrayList<>();
+            for (Project project : dataManager.getProjects().values()) {
+                if (project.getName().endsWith(suffix)) {
+                    project.getTasks().forEach(task -> taskIds.add(task.getTaskId()));
+                }
+            }
+
+            ReadWriteLock lock = new ReentrantReadWriteLock();
+            LongAdder updates = new LongAdder();
+            long deadline = System.nanoTime() + seconds * 1_000_000_000L;
+            List<Thread> workers = new ArrayList<>();
+            long start = System.nanoTime();
+            for (int t = 0; t < threads; t++) {
+                Thread worker = new Thread(() -> {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    Map<String, Long> writes = new HashMap<>(2);
+                    while (System.nanoTime() < deadline) {
+                        String taskId = taskIds.get(random.nextInt(taskIds.size()));
+                        lock.writeLock().lock();
+                        try {
+                            dataManager.deferStateWrites(writes, () ->
+                                    dataManager.updateTaskStatus(taskId, TaskStatus.IN_PROGRESS, random.nextInt(100)));
+                            if (writeInsideLock) {
+                                dataManager.writeDeferredStates(writes);
+                            }
+                        } finally {
+                            lock.writeLock().unlock();
+                        }
+                        if (!writeInsideLock) {
+                            dataManager.writeDeferredStates(writes);
+                        }
+                        writes.clear();
+                        updates.increment();
+                    }
+                }, "shard-bench-" + t);
+                workers.add(worker);
+                worker.start();
+            }
+            for (Thread worker : workers) {
+                worker.join();
+            }
+            double elapsed = (System.nanoTime() - start) / 1e9;
+            System.out.printf("分片数 %s, %d 个线程, %d 个任务%s: %d 次更新, %.1f 秒, %.0f 次/秒%n",
+                    Integer.getInteger("team.db.shards", 1), threads, taskIds.size(), writeInsideLock ? " (写锁内写入)" : "",
+                    updates.sum(), elapsed, updates.sum() / elapsed);
+        } finally {
+            dataManager.close();
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package edu.sbs.cs.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import edu.sbs.cs.database.TestDataDirectory;
+import edu.sbs.cs.model.*;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.*;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * 任务计数立方体在混合的单项修改、工作单元 (提交与回滚)、自动分配和归档之后仍与任务逐个重新统计的结果一致，
+ * 重启后从数据库重新建立的计数也相同。
+ */
+class TaskCounterCubeTest {
+    private static final TaskStatus[] STATUSES = TaskStatus.values();
+    private static final Priority[] PRIORITIES = Priority.values();
+
+    @TempDir
+    Path directory;
+
+    private DataManager dataManager;
+    private final List<String> projectIds = new ArrayList<>();
+    private final List<String> memberIds = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        TestDataDirectory.use(directory);
+        dataManager = new DataManager();
+        assertTrue(dataManager.registerUser("管理员", "admin@test.com", "admin", Role.ADMIN));
+        assertTrue(dataManager.login("admin@test.com", "admin"));
+        for (int i = 0; i < 3; i++) {
+            assertTrue(dataManager.registerUser("成员" + i, "m" + i + "@test.com", "x", Role.USER));
+            memberIds.add(dataManager.authenticate("m" + i + "@test.com", "x").getMemberId());
+        }
+        for (int i = 0; i < 2; i++) {
+            assertTrue(dataManager.createProject("项目" + i, "", LocalDate.now().plusMonths(2)));
+        }
+        projectIds.addAll(new TreeSet<>(dataManager.getProjects().keySet()));
+        for (String projectId : projectIds) {
+            for (String memberId : memberIds) {
+                assertTrue(dataManager.addMemberToProject(projectId, memberId));
+            }
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        dataManager.close();
+        TestDataDirectory.clear();
+    }
+
+    @Test
+    void countsMatchTasksAfterMixedUpdates() {
+        Random random = new Random(48);
+        List<String> taskIds = new ArrayList<>();
+        for (int step = 0; step < 160; step++) {
+            String projectId = projectIds.get(random.nextInt(projectIds.size()));
+            String memberId = memberIds.get(random.nextInt(memberIds.size()));
+            String taskId = taskIds.isEmpty() ? null : taskIds.get(random.nextInt(taskIds.size()));
+            if (taskId != null && !dataManager.getTasks().containsKey(taskId)) {
+                taskId = null; // 已归档
+            }
+            TaskStatus status = STATUSES[random.nextInt(STATUSES.length)];
+            switch (taskId == null ? 0 : random.nextInt(7)) {
+                case 0: {
+                    // 一部分任务的截止日期已过，完成后可以归档
+                    LocalDate due = LocalDate.now().plusDays(random.nextInt(40) - 30);
+                    Priority priority = PRIORITIES[random.nextInt(PRIORITIES.length)];
+                    taskIds.add(random.nextBoolean()
+                            ? dataManager.createFeatureTask(projectId, "功能" + step, "", priority, due, 2, "后端")
+                            : dataManager.createBugReport(projectId, "缺陷" + step, "", priority, due,
+                            Severity.MEDIUM, "步骤", "环境"));
+                    break;
+                }
+                case 1:
+                    dataManager.assignTask(taskId, memberId);
+                    break;
+                case 2:
+                    dataManager.updateTaskStatus(taskId, status,
+                            status == TaskStatus.COMPLETED ? 100 : random.nextInt(100));
+                    break;
+                case 3: {
+                    UnitOfWork unitOfWork = dataManager.beginUnitOfWork();
+                    unitOfWork.assignTask(taskId, memberId);
+                    unitOfWork.updateTaskStatus(taskId, status, 50);
+                    unitOfWork.createFeatureTask(projectId, "批量" + step, "", Priority.LOW, null, 1, "前端");
+                    assertTrue(unitOfWork.commit());
+                    break;
+                }
+                case 4: {
+                    // 最后一个操作无效，整个工作单元回滚
+                    UnitOfWork unitOfWork = dataManager.beginUnitOfWork();
+                    unitOfWork.updateTaskStatus(taskId, status, 70);
+                    unitOfWork.assignTask(taskId, memberId);
+                    unitOfWork.assignTask(taskId, "M999");
+                    assertFalse(unitOfWork.commit());
+                    break;
+                }
+                case 5:
+                    dataManager.autoAssignTasks(projectId);
+                    break;
+                default:
+                    dataManager.archiveCompletedTasks(7);
+            }
+            if (step % 10 == 9) {
+                assertEquals(List.of(), dataManager.verifyTaskCounters(), "第 " + step + " 步");
+                assertCountsMatchTasks();
+            }
+        }
+
+        int archived = 0;
+        for (String projectId : projectIds) {
+            archived += dataManager.getProjects().get(projectId).getArchivedTaskCount();
+        }
+        assertTrue(archived > 0, "过程中归档了任务");
+
+        Map<String, String> before = summarize();
+        dataManager.close();
+        dataManager = new DataManager();
+        assertEquals(List.of(), dataManager.verifyTaskCounters());
+        assertEquals(before, summarize());
+        assertCountsMatchTasks();
+    }
+
+    // 直接遍历内存中的任务统计，与立方体的各种汇总比较
+    private void assertCountsMatchTasks() {
+        TaskCounterCube counters = dataManager.getTaskCounters();
+        for (String projectId : projectIds) {
+            List<String> members = new ArrayList<>(memberIds);
+            members.add(TaskCounterCube.UNASSIGNED);
+            for (String memberId : members) {
+                int[] byStatus = new int[STATUSES.length];
+                int[][] byPriority = new int[STATUSES.length][PRIORITIES.length];
+                for (TaskItem task : dataManager.getTasks().values()) {
+                    String assignee = task.getAssignedTo() == null ? TaskCounterCube.UNASSIGNED
+                            : task.getAssignedTo().getMemberId();
+                    if (!projectId.equals(dataManager.getTaskProjectIds().get(task.getTaskId()))
+                            || !memberId.equals(assignee)) {
+                        continue;
+                    }
+                    byStatus[task.getStatus().ordinal()]++;
+                    byPriority[task.getStatus().ordinal()][task.getPriority().ordinal()]++;
+                }
+                assertArrayEquals(byStatus, counters.countByStatus(projectId, memberId), projectId + "/" + memberId);
+                for (TaskStatus status : STATUSES) {
+                    assertArrayEquals(byPriority[status.ordinal()], counters.countByPriority(projectId, memberId, status));
+                }
+            }
+            assertEquals(dataManager.getProjects().get(projectId).getTasks().size(),
+                    counters.count(projectId, null, null, null));
+        }
+    }
+
+    // 项目 -> 按状态汇总的计数和归档任务数
+    private Map<String, String> summarize() {
+        Map<String, String> summary = new TreeMap<>();
+        for (String projectId : projectIds) {
+            summary.put(projectId, Arrays.toString(dataManager.getTaskCounters().countByStatus(projectId, null))
+                    + " 归档 " + dataManager.getProjects().get(projectId).getArchivedTaskCount());
+        }
+        return summary;
+    }
+}
@@ -0,0 +1,142 @@
+package edu.sbs.cs.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import edu.sbs.cs.database.TaskHistoryStore;
+import edu.sbs.cs.database.TestDataDirectory;
+import edu.sbs.cs.model.*;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * 任务版本链的按时刻查询：取生效时间不晚于查询时刻的最后一个版本，按保留策略截断后更早的时刻没有结果；
+ * 版本写入历史数据库，重启后重建的链给出相同的结果，已归档任务的历史从数据库查询。
+ */
+class TaskHistoryTest {
+    private static final long DAY = TimeUnit.DAYS.toMillis(1);
+
+    @TempDir
+    Path directory;
+
+    private final List<TaskHistory> opened = new ArrayList<>();
+    private final TaskItem task = new FeatureTask("T001", "任务", "", Priority.MEDIUM, null, 3, "后端");
+
+    @BeforeEach
+    void useTemporaryDirectory() {
+        TestDataDirectory.use(directory);
+    }
+
+    @AfterEach
+    void closeAll() {
+        for (TaskHistory history : opened) {
+            history.close();
+        }
+        TestDataDirectory.clear();
+    }
+
+    private TaskHistory openStored() throws Exception {
+        TaskHistory history = new TaskHistory(new TaskHistoryStore());
+        opened.add(history);
+        return history;
+    }
+
+    // 每次返回一个新的状态字 (版本号递增)
+    private long nextState(int progress) {
+        return task.updateState(progress == 100 ? TaskStatus.COMPLETED : TaskStatus.IN_PROGRESS, progress);
+    }
+
+    @Test
+    void asOfReturnsTheVersionInEffectAtThatTime() {
+        TaskHistory history = new TaskHistory(null);
+        long base = System.currentTimeMillis();
+        long created = task.getState();
+        long started = nextState(30);
+        long done = nextState(100);
+        history.record("T001", "P001", created, base);
+        history.record("T001", "P001", started, base + 1000);
+        history.record("T001", "P001", started, base + 1500); // 与上一个版本相同，不记录
+        history.record("T001", "P001", done, base + 3000);
+        assertEquals(3, history.getVersionCount());
+
+        assertEquals(TaskHistory.NONE, history.stateAsOf("T001", base - 1));
+        assertEquals(created, history.stateAsOf("T001", base));
+        assertEquals(created, history.stateAsOf("T001", base + 999));
+        assertEquals(started, history.stateAsOf("T001", base + 1000));
+        assertEquals(started, history.stateAsOf("T001", base + 2999));
+        assertEquals(done, history.stateAsOf("T001", base + 3000));
+        assertEquals(done, history.stateAsOf("T001", Long.MAX_VALUE));
+        assertEquals(TaskHistory.NONE, history.stateAsOf("T999", base + 3000));
+
+        // 时钟回拨：新版本沿用上一个版本的时间，链仍按时间有序
+        long reopened = nextState(50);
+        history.record("T001", "P001", reopened, base + 2000);
+        assertEquals(reopened, history.stateAsOf("T001", base + 3000));
+        assertEquals(started, history.stateAsOf("T001", base + 2999));
+
+        Project project = new Project("P001", "项目", "", null);
+        project.addTask(task);
+        project.addTask(new FeatureTask("T002", "未记录的任务", "", Priority.LOW, null, 1, "前端"));
+        assertEquals(Map.of("T001", started), history.projectAsOf(project, base + 1000));
+        assertEquals(Map.of(), history.projectAsOf(project, base - 1));
+    }
+
+    @Test
+    void versionsOutsideTheRetentionPeriodCollapseToOne() {
+        TaskHistory history = new TaskHistory(null);
+        long base = System.currentTimeMillis() - 200 * DAY;
+        long first = nextState(10);
+        long second = nextState(20);
+        long third = nextState(30);
+        history.record("T001", "P001", first, base);
+        history.record("T001", "P001", second, base + DAY);
+        // 保留期 90 天：最早的版本被截断，保留保留期起点当时有效的版本
+        history.record("T001", "P001", third, base + 100 * DAY);
+        assertEquals(2, history.getVersionCount());
+        assertEquals(TaskHistory.NONE, history.stateAsOf("T001", base));
+        assertEquals(second, history.stateAsOf("T001", base + 5 * DAY));
+        assertEquals(third, history.stateAsOf("T001", base + 100 * DAY));
+    }
+
+    @Test
+    void storedHistoryRebuildsAndAnswersForArchivedTasks() throws Exception {
+        TaskHistory history = openStored();
+        long base = System.currentTimeMillis() - 10 * DAY;
+        long[] states = new long[100];
+        for (int i = 0; i < states.length; i++) {
+            states[i] = nextState(i % 99);
+            history.record("T001", "P001", states[i], base + i * 1000L);
+        }
+        // 版本数超过上限 (默认 64) 的 1.25 倍时截断到上限
+        long kept = history.getVersionCount();
+        assertTrue(kept >= 64 && kept <= 80, "保留的版本数: " + kept);
+        int oldest = states.length - (int) kept;
+        TaskItem archived = new FeatureTask("T002", "已归档", "", Priority.LOW, null, 1, "前端");
+        long archivedState = archived.updateState(TaskStatus.COMPLETED, 100);
+        history.record("T002", "P001", archivedState, base + 500);
+        history.close();
+        opened.remove(history);
+
+        // 重启：T002 已归档，不加载到内存
+        TaskHistory reloaded = openStored();
+        reloaded.load(Set.of("T001"));
+        assertEquals(kept, reloaded.getVersionCount());
+        assertEquals(1, reloaded.getTaskCount());
+        assertEquals(TaskHistory.NONE, reloaded.stateAsOf("T001", base + (oldest - 1) * 1000L));
+        for (int i = oldest; i < states.length; i++) {
+            assertEquals(states[i], reloaded.stateAsOf("T001", base + i * 1000L + 999), "版本 " + i);
+        }
+
+        assertEquals(TaskHistory.NONE, reloaded.stateAsOf("T002", base + 499));
+        assertEquals(archivedState, reloaded.stateAsOf("T002", base + 500));
+        Project project = new Project("P001", "项目", "", null);
+        project.addTask(task);
+        project.addArchived(1, 100);
+        Map<String, Long> asOf = reloaded.projectAsOf(project, base + oldest * 1000L);
+        assertEquals(Map.of("T001", states[oldest], "T002", archivedState), asOf);
+    }
+}
@@ -0,0 +1,93 @@
+package edu.sbs.cs.service;
+
+import edu.sbs.cs.database.TestDataDirectory;
+import edu.sbs.cs.model.Priority;
+import edu.sbs.cs.model.Project;
+import edu.sbs.cs.model.Role;
+import edu.sbs.cs.model.TaskStatus;
+import edu.sbs.cs.model.TeamMember;
+import java.time.LocalDate;
+import java.util.*;
+
+/**
+ * UnitOfWork 的吞吐量报告：依次提交批量创建、批量分配、批量更新状态三个工作单元，每个 N 项 (默认 10000)，
+ * 输出每个工作单元的耗时和每秒项数。最后提交一个末尾含无效任务ID的工作单元，检查回滚后内存不变。
+ * 类路径上有 SQLite 驱动时在新的临时目录中建库 (可用 -Dteam.data.dir 指定)，测量的时间包括一个事务内的批量写入。
+ *
+ * 用法: java -cp target/classes:target/test-classes edu.sbs.cs.service.UnitOfWorkBenchmark [每批项数]
+ */
+public class UnitOfWorkBenchmark {
+    public static void main(String[] args) throws Exception {
+        int batchSize = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+
+        TestDataDirectory.useTemporaryUnlessSet("bench-unit-of-work");
+        DataManager dataManager = new DataManager();
+        try {
+            String suffix = "-" + System.nanoTime() + "@company.com";
+            dataManager.registerUser("基准管理员", "bench-admin" + suffix, "bench", Role.ADMIN);
+            dataManager.registerUser("基准成员", "bench-user" + suffix, "bench", Role.USER);
+            if (!dataManager.login("bench-admin" + suffix, "bench")) {
+                System.err.println("管理员登录失败");
+                return;
+            }
+            String memberId = null;
+            for (TeamMember member : dataManager.getMembers().values()) {
+                if (member.getEmail().equals("bench-user" + suffix)) {
+                    memberId = member.getMemberId();
+                }
+            }
+            dataManager.createProject("工作单元基准", "UnitOfWork 吞吐量", LocalDate.now().plusYears(1));
+            String projectId = null;
+            for (Project project : dataManager.getProjects().values()) {
+                if (project.getName().equals("工作单元基准")) {
+                    projectId = project.getProjectId();
+                }
+            }
+
+            List<String> taskIds = new ArrayList<>(batchSize);
+            UnitOfWork create = dataManager.beginUnitOfWork();
+            for (int i = 0; i < batchSize; i++) {
+                taskIds.add(create.createFeatureTask(projectId, "任务" + i, "", Priority.MEDIUM,
+                        LocalDate.now().plusDays(30), 1 + i % 8, "bench"));
+            }
+            report("批量创建", create);
+
+            UnitOfWork assign = dataManager.beginUnitOfWork();
+            for (String taskId : taskIds) {
+                assign.assignTask(taskId, memberId);
+            }
+            report("批量分配", assign);
+
+            UnitOfWork status = dataManager.beginUnitOfWork();
+            for (String taskId : taskIds) {
+                status.updateTaskStatus(taskId, TaskStatus.IN_PROGRESS, 50);
+            }
+            report("批量更新状态", status);
+
+            // 最后一项无效，整个工作单元回滚
+            int taskCount = dataManager.getTasks().size();
+            UnitOfWork failing = dataManager.beginUnitOfWork();
+            for (String taskId : taskIds) {
+                failing.updateTaskStatus(taskId, TaskStatus.COMPLETED, 100);
+            }
+            failing.updateTaskStatus("T-不存在", TaskStatus.COMPLETED, 100);
+            boolean committed = failing.commit();
+            long stillInProgress = taskIds.stream()
+                    .filter(id -> dataManager.getTasks().get(id).getStatus() == TaskStatus.IN_PROGRESS)
+                    .count();
+            System.out.printf("回滚检查: 提交%s, 状态未变的任务 %d/%d, 任务总数 %s%n",
+                    committed ? "成功 (错误)" : "失败", stillInProgress, taskIds.size(),
+                    dataManager.getTasks().size() == taskCount ? "不变" : "改变 (错误)");
+        } finally {
+            dataManager.close();
+        }
+    }
+
+    // 1000 项以上的工作单元提交成功时 commit 自己输出耗时和吞吐量
+    private static void report(String name, UnitOfWork work) {
+        System.out.print(name + " - ");
+        if (!work.commit()) {
+            System.out.println("提交失败");
+        }
+    }
+}
@@ -0,0 +1,224 @@
+package edu.sbs.cs.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import edu.sbs.cs.database.TestDataDirectory;
+import edu.sbs.cs.model.Priority;
+import edu.sbs.cs.model.Project;
+import edu.sbs.cs.model.Role;
+import edu.sbs.cs.model.TaskItem;
+import edu.sbs.cs.model.TaskStatus;
+import edu.sbs.cs.model.TeamMember;
+import java.nio.file.Path;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.Flow;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * 工作单元在提交中途失败 (数据库事务的最后一步失败、变更日志不可写) 时完整回滚：
+ * 内存中的任务、分配列表、计数、版本历史和版本号都恢复到提交前，也不发布事件。
+ */
+class UnitOfWorkTest {
+    @TempDir
+    Path directory;
+
+    private DataManager dataManager;
+    private String projectId;
+    private String carolId;
+    private final List<TaskEvent> received = Collections.synchronizedList(new ArrayList<>());
+
+    @AfterEach
+    void tearDown() {
+        if (dataManager != null) {
+            dataManager.close();
+        }
+        TestDataDirectory.clear();
+        System.clearProperty("team.journal.enabled");
+    }
+
+    @Test
+    void databaseFailureRollsBackEverything() throws Exception {
+        open();
+        List<String> taskIds = populate();
+        String before = describe();
+        int rows = countTaskRows();
+
+        // 成员关系是事务中最后写入的，任务、状态和分配的批量写入都已执行
+        try (Statement stmt = dataManager.getDatabaseManager().getConnection().createStatement()) {
+            stmt.execute("CREATE TEMP TRIGGER fail_member BEFORE INSERT ON project_members "
+                    + "BEGIN SELECT RAISE(ABORT, 'forced failure'); END");
+        }
+        long published = dataManager.getEventPublisher().getPublishedEvents();
+        assertFalse(buildUnitOfWork(taskIds).commit());
+
+        assertEquals(before, describe());
+        assertEquals(rows, countTaskRows());
+        assertEquals(published, dataManager.getEventPublisher().getPublishedEvents());
+        assertTrue(received.isEmpty());
+    }
+
+    @Test
+    void journalFailureRollsBackEverything() throws Exception {
+        System.setProperty("team.journal.enabled", "true");
+        open();
+        assertNotNull(dataManager.getJournal());
+        List<String> taskIds = populate();
+        String before = describe();
+
+        // 关闭后追加的记录无法落盘，awaitDurable 抛出 IOException
+        dataManager.getJournal().close();
+        long published = dataManager.getEventPublisher().getPublishedEvents();
+        assertFalse(buildUnitOfWork(taskIds).commit());
+
+        assertEquals(before, describe());
+        assertEquals(published, dataManager.getEventPublisher().getPublishedEvents());
+        assertTrue(received.isEmpty());
+    }
+
+    @Test
+    void successfulCommitMovesAssignmentsAndPublishes() throws Exception {
+        open();
+        List<String> taskIds = populate();
+        TaskItem first = dataManager.getTasks().get(taskIds.get(0));
+        long version = first.getVersion();
+
+        assertTrue(buildUnitOfWork(taskIds).commit());
+
+        TeamMember bob = dataManager.authenticate("bob@test.com", "user");
+        TeamMember alice = dataManager.authenticate("alice@test.com", "user");
+        Map<TeamMember, List<TaskItem>> assignment =
+                dataManager.getTaskAssignments().get(dataManager.getProjects().get(projectId));
+        assertSame(bob, first.getAssignedTo());
+        assertFalse(assignment.get(alice).contains(first));
+        assertEquals(1, Collections.frequency(assignment.get(bob), first));
+        assertEquals(version + 2, first.getVersion());
+        assertEquals(List.of(), dataManager.getTaskCounters().verify(dataManager.getProjects().values(), 10));
+        awaitReceived(1);
+    }
+
+    private void awaitReceived(long count) {
+        long deadline = System.nanoTime() + 5_000_000_000L;
+        while (received.size() < count) {
+            assertTrue(System.nanoTime() < deadline, "事件没有送达");
+            Thread.onSpinWait();
+        }
+    }
+
+    private void open() {
+        TestDataDirectory.use(directory);
+        dataManager = new DataManager();
+        assertTrue(dataManager.isDatabaseEnabled());
+        dataManager.getEventPublisher().subscribe(new Flow.Subscriber<List<TaskEvent>>() {
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                subscription.request(Long.MAX_VALUE);
+            }
+
+            @Override
+            public void onNext(List<TaskEvent> events) {
+                received.addAll(events);
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+            }
+
+            @Override
+            public void onComplete() {
+            }
+        });
+    }
+
+    // 一个项目、三个成员 (carol 不在项目中)、两个任务，第一个已分配给 alice 并开始
+    private List<String> populate() {
+        assertTrue(dataManager.registerUser("测试管理员", "admin@test.com", "admin", Role.ADMIN));
+        assertTrue(dataManager.registerUser("Alice", "alice@test.com", "user", Role.USER));
+        assertTrue(dataManager.registerUser("Bob", "bob@test.com", "user", Role.USER));
+        assertTrue(dataManager.registerUser("Carol", "carol@test.com", "user", Role.USER));
+        assertTrue(dataManager.login("admin@test.com", "admin"));
+        String aliceId = dataManager.authenticate("alice@test.com", "user").getMemberId();
+        String bobId = dataManager.authenticate("bob@test.com", "user").getMemberId();
+        carolId = dataManager.authenticate("carol@test.com", "user").getMemberId();
+        assertTrue(dataManager.createProject("项目", "", LocalDate.now().plusMonths(1)));
+        projectId = dataManager.getProjects().keySet().iterator().next();
+        assertTrue(dataManager.addMemberToProject(projectId, aliceId));
+        assertTrue(dataManager.addMemberToProject(projectId, bobId));
+
+        List<String> taskIds = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            taskIds.add(dataManager.createFeatureTask(projectId, "任务" + i, "", Priority.HIGH,
+                    LocalDate.now().plusDays(10), 3, "test"));
+        }
+        assertTrue(dataManager.assignTask(taskIds.get(0), aliceId));
+        assertTrue(dataManager.updateTaskStatus(taskIds.get(0), TaskStatus.IN_PROGRESS, 30));
+        // 等准备阶段的事件全部送达后再清空
+        awaitReceived(dataManager.getEventPublisher().getPublishedEvents());
+        received.clear();
+        return taskIds;
+    }
+
+    // 新建任务、同一任务两次更新状态、改派、分配、把 carol 加入项目
+    private UnitOfWork buildUnitOfWork(List<String> taskIds) {
+        String bobId = dataManager.authenticate("bob@test.com", "user").getMemberId();
+        String aliceId = dataManager.authenticate("alice@test.com", "user").getMemberId();
+        UnitOfWork work = dataManager.beginUnitOfWork();
+        work.createFeatureTask(projectId, "新任务", "", Priority.LOW, LocalDate.now().plusDays(3), 2, "test");
+        work.updateTaskStatus(taskIds.get(0), TaskStatus.IN_PROGRESS, 60);
+        work.updateTaskStatus(taskIds.get(0), TaskStatus.COMPLETED, 100);
+        work.updateTaskStatus(taskIds.get(1), TaskStatus.IN_PROGRESS, 10);
+        work.assignTask(taskIds.get(0), bobId);
+        work.assignTask(taskIds.get(1), aliceId);
+        work.addMemberToProject(projectId, carolId);
+        return work;
+    }
+
+    // 提交前后需要一致的全部内存状态
+    private String describe() {
+        StringBuilder out = new StringBuilder();
+        long now = System.currentTimeMillis();
+        TaskHistory history = dataManager.getTaskHistory();
+        out.append("history ").append(history.getVersionCount()).append('\n');
+        for (TaskItem task : new TreeMap<>(dataManager.getTasks()).values()) {
+            out.append(task.getTaskId()).append(' ').append(task.getState()).append(' ')
+                    .append(task.getAssignedTo() == null ? "-" : task.getAssignedTo().getMemberId()).append(' ')
+                    .append(history.stateAsOf(task.getTaskId(), now)).append('\n');
+        }
+        for (Project project : dataManager.getProjects().values()) {
+            out.append(project.getProjectId()).append(" tasks ");
+            project.getTasks().forEach(task -> out.append(task.getTaskId()).append(','));
+            out.append(" members ");
+            project.getMembers().forEach(member -> out.append(member.getMemberId()).append(','));
+            out.append('\n');
+            new TreeMap<String, List<TaskItem>>(memberIdKeys(dataManager.getTaskAssignments().get(project)))
+                    .forEach((memberId, assigned) -> {
+                        out.append("  ").append(memberId).append(": ");
+                        assigned.forEach(task -> out.append(task.getTaskId()).append(','));
+                        out.append('\n');
+                    });
+            TaskCounterCube counters = dataManager.getTaskCounters();
+            out.append("  counts ").append(new TreeMap<>(counters.countByMember(project.getProjectId(), null)))
+                    .append(' ').append(counters.statusDistribution(project.getProjectId())).append('\n');
+        }
+        assertEquals(List.of(), dataManager.getTaskCounters().verify(dataManager.getProjects().values(), 10));
+        return out.toString();
+    }
+
+    private static Map<String, List<TaskItem>> memberIdKeys(Map<TeamMember, List<TaskItem>> assignment) {
+        Map<String, List<TaskItem>> byId = new HashMap<>();
+        assignment.forEach((member, assigned) -> byId.put(member.getMemberId(), assigned));
+        return byId;
+    }
+
+    private int countTaskRows() throws Exception {
+        try (Statement stmt = dataManager.getDatabaseManager().getConnection().createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM tasks")) {
+            rs.next();
+            return rs.getInt(1);
+        }
+    }
+}